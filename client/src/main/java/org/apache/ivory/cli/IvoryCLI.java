@@ -60,11 +60,16 @@ public class IvoryCLI {
 	public static final String RESUME_OPT = "resume";
 	public static final String DELETE_OPT = "delete";
 	public static final String SUBMIT_AND_SCHEDULE_OPT = "submitAndSchedule";
+	public static final String SUBMIT_BATCH_OPT = "submitBatch";
+	public static final String SUBMIT_AND_SCHEDULE_BATCH_OPT = "submitAndScheduleBatch";
 	public static final String VALIDATE_OPT = "validate";
 	public static final String STATUS_OPT = "status";
 	public static final String DEFINITION_OPT = "definition";
 	public static final String DEPENDENCY_OPT = "dependency";
 	public static final String LIST_OPT = "list";
+	public static final String FIELDS_OPT = "fields";
+	public static final String OFFSET_OPT = "offset";
+	public static final String LIMIT_OPT = "limit";
 
 	public static final String INSTANCE_CMD = "instance";
 	public static final String START_OPT = "start";
@@ -273,6 +278,16 @@ public class IvoryCLI {
 		String colo = commandLine.getOptionValue(COLO_OPT);
 		
 		
+		// a batch holds entities of any type
+		if (optionsList.contains(SUBMIT_BATCH_OPT)
+				|| optionsList.contains(SUBMIT_AND_SCHEDULE_BATCH_OPT)) {
+			validateFilePath(optionsList, filePath);
+			validateColo(optionsList);
+			OUT_STREAM.println(client.submitBatch(filePath,
+					optionsList.contains(SUBMIT_AND_SCHEDULE_BATCH_OPT)));
+			return;
+		}
+
 		validateEntityType(optionsList, entityType);
 
 		if (optionsList.contains(SUBMIT_OPT)) {
@@ -322,7 +337,10 @@ public class IvoryCLI {
 			result = client.getDependency(entityType, entityName);
 		} else if (optionsList.contains(LIST_OPT)) {
 			validateColo(optionsList);
-			result = client.getEntityList(entityType);
+			result = client.getEntityList(entityType,
+					commandLine.getOptionValue(FIELDS_OPT),
+					getIntOption(commandLine, OFFSET_OPT, 0),
+					getIntOption(commandLine, LIMIT_OPT, -1));
 		} else if (optionsList.contains(HELP_CMD)) {
 			OUT_STREAM.println("Ivory Help");
 		} else {
@@ -331,6 +349,20 @@ public class IvoryCLI {
 		OUT_STREAM.println(result);
 	}
 	
+	private int getIntOption(CommandLine commandLine, String option,
+			int defaultValue) throws IvoryCLIException {
+		String value = commandLine.getOptionValue(option);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IvoryCLIException("Invalid value for " + option + ": "
+					+ value);
+		}
+	}
+
 	private String getColo(String colo) throws IvoryCLIException, IOException
 	{
 		if (colo == null) {
@@ -414,6 +446,11 @@ public class IvoryCLI {
 				"Gets the dependencies of entity");
 		Option list = new Option(LIST_OPT, false,
 				"List entities registerd for a type");
+		Option submitBatch = new Option(SUBMIT_BATCH_OPT, false,
+				"Submits a batch of entities, a batch xml or a zip or tar of entity xmls");
+		Option submitAndScheduleBatch = new Option(
+				SUBMIT_AND_SCHEDULE_BATCH_OPT, false,
+				"Submits a batch of entities and schedules its feeds and processes");
 
 		OptionGroup group = new OptionGroup();
 		group.addOption(submit);
@@ -428,11 +465,14 @@ public class IvoryCLI {
 		group.addOption(definition);
 		group.addOption(dependency);
 		group.addOption(list);
+		group.addOption(submitBatch);
+		group.addOption(submitAndScheduleBatch);
 
 		Option url = new Option(URL_OPTION, true, "Ivory URL");
 		Option entityType = new Option(ENTITY_TYPE_OPT, true,
 				"Entity type, can be cluster, feed or process xml");
-		entityType.setRequired(true);
+		// checked for each command, batches don't need one
+		entityType.setRequired(false);
 		Option filePath = new Option(FILE_PATH_OPT, true,
 				"Path to entity xml file");
 		Option entityName = new Option(ENTITY_NAME_OPT, true,
@@ -440,6 +480,12 @@ public class IvoryCLI {
         Option colo = new Option(COLO_OPT, true,
                 "Colo name");
         colo.setRequired(false);
+		Option fields = new Option(FIELDS_OPT, true,
+				"Fields to list, name or name,status");
+		Option offset = new Option(OFFSET_OPT, true,
+				"Index of the first entity to list");
+		Option limit = new Option(LIMIT_OPT, true,
+				"Maximum number of entities to list");
 
 		entityOptions.addOption(url);
 		entityOptions.addOptionGroup(group);
@@ -447,6 +493,9 @@ public class IvoryCLI {
 		entityOptions.addOption(entityName);
 		entityOptions.addOption(filePath);
 		entityOptions.addOption(colo);
+		entityOptions.addOption(fields);
+		entityOptions.addOption(offset);
+		entityOptions.addOption(limit);
 
 		return entityOptions;
 
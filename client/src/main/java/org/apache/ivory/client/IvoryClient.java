@@ -35,6 +35,7 @@ import javax.ws.rs.core.UriBuilder;
 
 import org.apache.ivory.entity.v0.SchemaHelper;
 import org.apache.ivory.resource.APIResult;
+import org.apache.ivory.resource.BatchResult;
 import org.apache.ivory.resource.EntityList;
 import org.apache.ivory.resource.InstancesResult;
 
@@ -56,6 +57,7 @@ public class IvoryClient {
 	private static final String USER = System.getProperty("user.name");
 	private static final String IVORY_INSTANCE_ACTION_CLUSTERS = "ivory.instance.action.clusters";
 	private static final String IVORY_INSTANCE_SOURCE_CLUSTERS = "ivory.instance.source.clusters";
+	private static final int LIST_PAGE_SIZE = 1000;
 	/**
 	 * Create a Ivory client instance.
 	 * 
@@ -115,6 +117,11 @@ public class IvoryClient {
 				"api/entities/definition/", HttpMethod.GET, MediaType.TEXT_XML), LIST(
 				"api/entities/list/", HttpMethod.GET, MediaType.TEXT_XML), DEPENDENCY(
 				"api/entities/dependencies/", HttpMethod.GET,
+				MediaType.TEXT_XML), SEARCH("api/entities/search/",
+				HttpMethod.GET, MediaType.TEXT_XML), BATCH_SUBMIT(
+				"api/entities/batch/submit", HttpMethod.POST,
+				MediaType.TEXT_XML), BATCH_SUBMITandSCHEDULE(
+				"api/entities/batch/submitAndSchedule", HttpMethod.POST,
 				MediaType.TEXT_XML);
 
 		private String path;
@@ -253,6 +260,51 @@ public class IvoryClient {
 				entityType, entityStream, null);
 	}
 
+	/**
+	 * Submits a batch of entities, given as an xml document with a batch root
+	 * element holding the entity definitions, or as a zip or an uncompressed
+	 * tar (ustar) of entity definitions; compressed tars are rejected. The
+	 * whole batch is validated before any entity is submitted, but the
+	 * entities are then published to the store one at a time, in order.
+	 * 
+	 * @param schedule
+	 *            whether to also schedule the feeds and processes of the batch
+	 * @return result of each entity in the batch, one per line
+	 */
+	public String submitBatch(String filePath, boolean schedule)
+			throws IvoryCLIException {
+		Entities operation = schedule ? Entities.BATCH_SUBMITandSCHEDULE
+				: Entities.BATCH_SUBMIT;
+		InputStream batchStream = getServletInputStream(filePath);
+		String mimeType = filePath.toLowerCase().endsWith(".zip") ? "application/zip"
+				: filePath.toLowerCase().endsWith(".tar") ? "application/x-tar"
+						: MediaType.TEXT_XML;
+
+		ClientResponse clientResponse = service.path(operation.path)
+				.header(REMOTE_USER, USER).accept(operation.mimeType)
+				.type(mimeType)
+				.method(operation.method, ClientResponse.class, batchStream);
+
+		if (clientResponse.getStatus() == Response.Status.BAD_REQUEST
+				.getStatusCode()) {
+			clientResponse.bufferEntity();
+			BatchResult result;
+			try {
+				result = clientResponse.getEntity(BatchResult.class);
+			} catch (Throwable e) {
+				// not a batch result, such as a batch that couldn't be read
+				try {
+					clientResponse.getEntityInputStream().reset();
+				} catch (IOException ignore) {
+				}
+				throw IvoryCLIException.fromReponse(clientResponse);
+			}
+			throw new IvoryCLIException(result.toString());
+		}
+
+		return clientResponse.getEntity(BatchResult.class).toString();
+	}
+
 	public String getStatus(String entityType, String entityName, String colo)
 			throws IvoryCLIException {
 
@@ -275,7 +327,58 @@ public class IvoryClient {
 	}
 
 	public String getEntityList(String entityType) throws IvoryCLIException {
-		return sendListRequest(Entities.LIST, entityType);
+		return getEntityList(entityType, null, 0, -1);
+	}
+
+	/**
+	 * Lists the entities of a type in order of name, fetching them from the
+	 * server a page at a time.
+	 * 
+	 * @param fields
+	 *            name, or name,status to also get the status of each entity
+	 * @param offset
+	 *            index of the first entity to list
+	 * @param limit
+	 *            maximum number of entities to list, all if negative
+	 */
+	public String getEntityList(String entityType, String fields, int offset,
+			int limit) throws IvoryCLIException {
+
+		StringBuilder result = new StringBuilder();
+		int listed = 0;
+		while (limit < 0 || listed < limit) {
+			int pageSize = limit < 0 ? LIST_PAGE_SIZE : Math.min(
+					LIST_PAGE_SIZE, limit - listed);
+			EntityList page = sendListRequest(Entities.LIST, entityType,
+					fields, offset + listed, pageSize);
+			if (page == null || page.getElements() == null) {
+				break;
+			}
+			result.append(page);
+			listed += page.getElements().length;
+			if (page.getTotalResults() == null
+					|| page.getElements().length < pageSize
+					|| offset + listed >= page.getTotalResults()) {
+				break;
+			}
+		}
+		return result.toString();
+	}
+
+	public String searchEntities(String entityType, String keywords,
+			int offset, int limit) throws IvoryCLIException {
+
+		ClientResponse clientResponse = service.path(Entities.SEARCH.path)
+				.path(entityType).queryParam("keywords", keywords)
+				.queryParam("offset", String.valueOf(offset))
+				.queryParam("limit", String.valueOf(limit))
+				.header(REMOTE_USER, USER).accept(Entities.SEARCH.mimeType)
+				.type(MediaType.TEXT_XML)
+				.method(Entities.SEARCH.method, ClientResponse.class);
+
+		checkIfSuccessfull(clientResponse);
+
+		return parseEntityList(clientResponse);
 	}
 
 	public String getRunningInstances(String type, String entity, String colo)
@@ -454,17 +557,22 @@ public class IvoryClient {
 
 	}
 
-	private String sendListRequest(Entities entities, String entityType)
-			throws IvoryCLIException {
+	private EntityList sendListRequest(Entities entities, String entityType,
+			String fields, int offset, int limit) throws IvoryCLIException {
 
-		ClientResponse clientResponse = service.path(entities.path)
-				.path(entityType).header(REMOTE_USER, USER)
+		WebResource resource = service.path(entities.path).path(entityType)
+				.queryParam("offset", String.valueOf(offset))
+				.queryParam("limit", String.valueOf(limit));
+		if (fields != null) {
+			resource = resource.queryParam("fields", fields);
+		}
+		ClientResponse clientResponse = resource.header(REMOTE_USER, USER)
 				.accept(entities.mimeType).type(MediaType.TEXT_XML)
 				.method(entities.method, ClientResponse.class);
 
 		checkIfSuccessfull(clientResponse);
 
-		return parseEntityList(clientResponse);
+		return clientResponse.getEntity(EntityList.class);
 
 	}
 
@@ -51,12 +51,21 @@ public enum EntityType {
     
     private static final String NS = "http://www.w3.org/2001/XMLSchema";
 
+    private static final EventHandler EVENT_HANDLER = new EventHandler();
+
     private final Class<? extends Entity> clazz;
     private JAXBContext jaxbContext;
     private Schema schema;
     private String[] immutableProperties;
     private String schemaFile;
 
+    // JAXB marshallers are not thread safe, but are cheap to reuse within a thread
+    private final ThreadLocal<Marshaller> formattedMarshaller = new ThreadLocal<Marshaller>();
+    private final ThreadLocal<Marshaller> compactMarshaller = new ThreadLocal<Marshaller>();
+    private final ThreadLocal<Marshaller> fragmentMarshaller = new ThreadLocal<Marshaller>();
+    private final ThreadLocal<Unmarshaller> validatingUnmarshaller = new ThreadLocal<Unmarshaller>();
+    private final ThreadLocal<Unmarshaller> unmarshaller = new ThreadLocal<Unmarshaller>();
+
     private EntityType(Class<? extends Entity> typeClass, String schemaFile,
                        String... immutableProperties) {
         clazz = typeClass;
@@ -82,17 +91,77 @@ public enum EntityType {
         return schemaFile;
     }
 
+    /**
+     * @return - marshaller producing formatted xml. The marshaller is cached
+     *         for the calling thread, so it must neither be reconfigured nor
+     *         handed over to another thread.
+     */
     public Marshaller getMarshaller() throws JAXBException {
-        Marshaller marshaller = jaxbContext.createMarshaller();
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        return getMarshaller(true);
+    }
+
+    /**
+     * @param formatted
+     *            - whether the xml is to be indented
+     * @return - marshaller cached for the calling thread, see
+     *         {@link #getMarshaller()}
+     */
+    public Marshaller getMarshaller(boolean formatted) throws JAXBException {
+        ThreadLocal<Marshaller> cache = formatted ? formattedMarshaller : compactMarshaller;
+        Marshaller marshaller = cache.get();
+        if (marshaller == null) {
+            marshaller = jaxbContext.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formatted);
+            cache.set(marshaller);
+        }
         return marshaller;
     }
-    
+
+    /**
+     * @return - marshaller producing formatted xml without an xml declaration,
+     *         to be embedded in a larger document. Cached for the calling
+     *         thread, see {@link #getMarshaller()}
+     */
+    public Marshaller getFragmentMarshaller() throws JAXBException {
+        Marshaller marshaller = fragmentMarshaller.get();
+        if (marshaller == null) {
+            marshaller = jaxbContext.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+            fragmentMarshaller.set(marshaller);
+        }
+        return marshaller;
+    }
+
+    /**
+     * @return - unmarshaller validating against the entity schema, failing on
+     *         the first validation event. The unmarshaller is cached for the
+     *         calling thread, so it must neither be reconfigured nor handed
+     *         over to another thread.
+     */
     public Unmarshaller getUnmarshaller() throws JAXBException {
-        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-        unmarshaller.setSchema(schema);
-        unmarshaller.setEventHandler(new EventHandler());
-        return unmarshaller;
+        return getUnmarshaller(true);
+    }
+
+    /**
+     * @param validate
+     *            - whether to validate against the entity schema. Skip only
+     *            for xml that was validated before, such as stored entities.
+     * @return - unmarshaller cached for the calling thread, see
+     *         {@link #getUnmarshaller()}
+     */
+    public Unmarshaller getUnmarshaller(boolean validate) throws JAXBException {
+        ThreadLocal<Unmarshaller> cache = validate ? validatingUnmarshaller : unmarshaller;
+        Unmarshaller result = cache.get();
+        if (result == null) {
+            result = jaxbContext.createUnmarshaller();
+            if (validate) {
+                result.setSchema(schema);
+            }
+            result.setEventHandler(EVENT_HANDLER);
+            cache.set(result);
+        }
+        return result;
     }
     
     public boolean isSchedulable() {
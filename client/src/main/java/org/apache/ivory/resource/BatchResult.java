@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.resource;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Result of submitting a batch of entities, with the outcome of each entity
+ * in the batch.
+ */
+@XmlRootElement
+public class BatchResult extends APIResult {
+
+    @XmlElement(name = "entity")
+    private EntityResult[] results;
+
+    private BatchResult() { // for jaxb
+        super();
+    }
+
+    public BatchResult(Status status, String message, EntityResult[] results) {
+        super(status, message);
+        this.results = results;
+    }
+
+    /**
+     * Status is SUCCEEDED if all the entities succeeded, FAILED if none did
+     * and PARTIAL otherwise.
+     */
+    public BatchResult(String message, List<EntityResult> results) {
+        this(getStatus(results), message, results.toArray(new EntityResult[results.size()]));
+    }
+
+    private static Status getStatus(List<EntityResult> results) {
+        int succeeded = 0;
+        for (EntityResult result : results) {
+            if (result.status == Status.SUCCEEDED) {
+                succeeded++;
+            }
+        }
+        if (succeeded == results.size()) {
+            return Status.SUCCEEDED;
+        }
+        return succeeded == 0 ? Status.FAILED : Status.PARTIAL;
+    }
+
+    public EntityResult[] getResults() {
+        return results;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(getStatus()).append(": ").append(getMessage()).append('\n');
+        if (results != null) {
+            for (EntityResult result : results) {
+                buffer.append(result).append('\n');
+            }
+        }
+        return buffer.toString();
+    }
+
+    @XmlRootElement(name = "entity")
+    public static class EntityResult {
+        @XmlElement
+        public String type;
+
+        @XmlElement
+        public String name;
+
+        @XmlElement
+        public Status status;
+
+        @XmlElement
+        public String message;
+
+        public EntityResult() {
+        }
+
+        public EntityResult(String type, String name, Status status, String message) {
+            this.type = type;
+            this.name = name;
+            this.status = status;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + type + ") " + name + "\t" + status + (message == null ? "" : "\t" + message);
+        }
+    }
+}
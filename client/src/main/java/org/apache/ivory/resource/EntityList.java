@@ -32,11 +32,16 @@ public class EntityList {
     @XmlElement (name = "entity")
     private EntityElement[] elements;
 
+    @XmlElement
+    private Integer totalResults;
+
     public static class EntityElement {
         @XmlElement
         public String type;
         @XmlElement
         public String name;
+        @XmlElement
+        public String status;
 
         public EntityElement() {
 
@@ -49,7 +54,7 @@ public class EntityList {
 
         @Override
         public String toString() {
-            return "(" + type + ") " + name + "\n";
+            return "(" + type + ") " + name + (status == null ? "" : " " + status) + "\n";
         }
     }
 
@@ -65,15 +70,30 @@ public class EntityList {
         this.elements = items;
     }
 
+    public EntityList(EntityElement[] elements, int totalResults) {
+        this.elements = elements;
+        this.totalResults = totalResults;
+    }
+
     public EntityElement[] getElements() {
         return elements;
     }
 
+    /**
+     * @return - number of entities matched when this is one page of a
+     *         larger result, null otherwise
+     */
+    public Integer getTotalResults() {
+        return totalResults;
+    }
+
     @Override
     public String toString() {
         StringBuffer buffer = new StringBuffer();
-        for (EntityElement element : elements) {
-            buffer.append(element);
+        if (elements != null) {
+            for (EntityElement element : elements) {
+                buffer.append(element);
+            }
         }
         return buffer.toString();
     }
@@ -46,7 +46,7 @@ public class ColoClusterRelation implements ConfigurationChangeListener {
     }
 
     @Override
-    public void onAdd(Entity entity) {
+    public synchronized void onAdd(Entity entity) {
         if (entity.getEntityType() != EntityType.CLUSTER)
             return;
 
@@ -56,7 +56,7 @@ public class ColoClusterRelation implements ConfigurationChangeListener {
     }
 
     @Override
-    public void onRemove(Entity entity) {
+    public synchronized void onRemove(Entity entity) {
         if (entity.getEntityType() != EntityType.CLUSTER)
             return;
 
@@ -67,7 +67,7 @@ public class ColoClusterRelation implements ConfigurationChangeListener {
     }
 
     @Override
-    public void onChange(Entity oldEntity, Entity newEntity) throws IvoryException {
+    public synchronized void onChange(Entity oldEntity, Entity newEntity) throws IvoryException {
         if (oldEntity.getEntityType() != EntityType.CLUSTER)
             return;
         throw new IvoryException("change shouldn't be supported on cluster!");
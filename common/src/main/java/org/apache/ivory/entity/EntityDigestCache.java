@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.entity;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.ivory.service.ConfigurationChangeListener;
+
+/**
+ * Memoizes the canonical form and md5 of the entity instances held by the
+ * config store. The store replaces instances rather than modifying them, so a
+ * digest stays valid until the instance is removed or replaced. Any other
+ * instance, such as a cluster view or an entity being submitted, is never
+ * cached.
+ */
+public final class EntityDigestCache implements ConfigurationChangeListener {
+
+    private static final EntityDigestCache instance = new EntityDigestCache();
+
+    private final ConcurrentHashMap<Entity, Digest> digests = new ConcurrentHashMap<Entity, Digest>();
+
+    private EntityDigestCache() {
+    }
+
+    public static EntityDigestCache get() {
+        return instance;
+    }
+
+    /**
+     * @return - digest holder if this very instance is held by the store, null
+     *         otherwise
+     */
+    Digest lookup(Entity entity) {
+        Digest digest = digests.get(entity);
+        return digest != null && digest.entity == entity ? digest : null;
+    }
+
+    @Override
+    public void onAdd(Entity entity) {
+        digests.put(entity, new Digest(entity));
+    }
+
+    @Override
+    public void onRemove(Entity entity) {
+        Digest digest = digests.get(entity);
+        if (digest != null && digest.entity == entity) {
+            digests.remove(entity, digest);
+        }
+    }
+
+    @Override
+    public void onChange(Entity oldEntity, Entity newEntity) {
+        onRemove(oldEntity);
+        onAdd(newEntity);
+    }
+
+    static final class Digest {
+        private final Entity entity;
+        volatile String canonicalForm;
+        volatile String md5;
+
+        private Digest(Entity entity) {
+            this.entity = entity;
+        }
+    }
+}
@@ -18,12 +18,12 @@
 
 package org.apache.ivory.entity;
 
+import java.beans.PropertyDescriptor;
 import java.lang.reflect.Method;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -33,7 +33,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
+import org.apache.commons.beanutils.MethodUtils;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -58,10 +62,8 @@ import org.apache.ivory.util.DeploymentUtil;
 import org.apache.ivory.util.RuntimeProperties;
 
 public class EntityUtil {
-	private static final long MINUTE_IN_MS = 60000L;
-	private static final long HOUR_IN_MS = 3600000L;
-	private static final long DAY_IN_MS = 86400000L;
-	private static final long MONTH_IN_MS = 2592000000L;
+
+    private static final ConcurrentHashMap<String, Pattern> FILTER_PATTERNS = new ConcurrentHashMap<String, Pattern>();
 
 	public static <T extends Entity> T getEntity(EntityType type, String entityName) throws IvoryException {
 		ConfigurationStore configStore = ConfigurationStore.get();
@@ -237,77 +239,26 @@ public class EntityUtil {
     }
 
 	public static Date getNextStartTime(Date startTime, Frequency frequency, TimeZone timezone, Date now) {
-		if (startTime.after(now))
-			return startTime;
-
-		Calendar startCal = Calendar.getInstance(timezone);
-		startCal.setTime(startTime);
-
-		int count = 0;
-		switch (frequency.getTimeUnit()) {
-		case months:
-			count = (int) ((now.getTime() - startTime.getTime()) / MONTH_IN_MS);
-			break;
-		case days:
-			count = (int) ((now.getTime() - startTime.getTime()) / DAY_IN_MS);
-			break;
-		case hours:
-			count = (int) ((now.getTime() - startTime.getTime()) / HOUR_IN_MS);
-			break;
-		case minutes:
-			count = (int) ((now.getTime() - startTime.getTime()) / MINUTE_IN_MS);
-			break;
-		default:
-		}
-
-		if (count > 2) {
-			startCal.add(frequency.getTimeUnit().getCalendarUnit(), ((count - 2) / frequency.getFrequency()) * frequency.getFrequency());
-		}
-		while (startCal.getTime().before(now)) {
-			startCal.add(frequency.getTimeUnit().getCalendarUnit(), frequency.getFrequency());
-		}
-		return startCal.getTime();
+		return InstanceCalendar.getNextStartTime(startTime, frequency, timezone, now);
 	}
 
 	public static int getInstanceSequence(Date startTime, Frequency frequency, TimeZone tz, Date instanceTime) {
-		if (startTime.after(instanceTime))
-			return -1;
-
-		Calendar startCal = Calendar.getInstance(tz);
-		startCal.setTime(startTime);
-
-		int count = 0;
-		switch (frequency.getTimeUnit()) {
-		case months:
-			count = (int) ((instanceTime.getTime() - startTime.getTime()) / MONTH_IN_MS);
-			break;
-		case days:
-			count = (int) ((instanceTime.getTime() - startTime.getTime()) / DAY_IN_MS);
-			break;
-		case hours:
-			count = (int) ((instanceTime.getTime() - startTime.getTime()) / HOUR_IN_MS);
-			break;
-		case minutes:
-			count = (int) ((instanceTime.getTime() - startTime.getTime()) / MINUTE_IN_MS);
-			break;
-		default:
-		}
-
-		if (count > 2) {
-			startCal.add(frequency.getTimeUnit().getCalendarUnit(), (count / frequency.getFrequency()) * frequency.getFrequency());
-			count = (count / frequency.getFrequency());
-		} else {
-            count = 0;
-        }
-		while (startCal.getTime().before(instanceTime)) {
-			startCal.add(frequency.getTimeUnit().getCalendarUnit(), frequency.getFrequency());
-			count++;
-		}
-		return count + 1;
+		return InstanceCalendar.getInstanceSequence(startTime, frequency, tz, instanceTime);
 	}
 
     public static String md5(Entity entity) throws IvoryException {
-        return new String(Hex.encodeHex(DigestUtils.md5(stringOf(entity))));
+        EntityDigestCache.Digest digest = EntityDigestCache.get().lookup(entity);
+        if (digest == null) {
+            return md5(stringOf(entity));
+        }
+        if (digest.md5 == null) {
+            digest.md5 = md5(stringOf(entity));
+        }
+        return digest.md5;
+    }
+
+    private static String md5(String canonicalForm) {
+        return new String(Hex.encodeHex(DigestUtils.md5(canonicalForm)));
     }
 
     public static boolean equals(Entity lhs, Entity rhs) throws IvoryException {
@@ -329,62 +280,165 @@ public class EntityUtil {
         }
     }
 
+    /**
+     * @return - canonical form of the entity, sorted "property=value" lines.
+     *         Memoized for entities held by the config store, see
+     *         {@link EntityDigestCache}.
+     */
     public static String stringOf(Entity entity) throws IvoryException {
         return stringOf(entity, null);
     }
     
     private static String stringOf(Entity entity, String[] filterProps) throws IvoryException {
-        Map<String, String> map = new HashMap<String, String>();
-        mapToProperties(entity, null, map, filterProps);
-        List<String> keyList = new ArrayList<String>(map.keySet());
-        Collections.sort(keyList);
+        EntityDigestCache.Digest digest = null;
+        if (filterProps == null) {
+            digest = EntityDigestCache.get().lookup(entity);
+            if (digest != null && digest.canonicalForm != null) {
+                return digest.canonicalForm;
+            }
+        }
+
+        Map<String, String> map = new TreeMap<String, String>();
+        mapToProperties(entity, null, map, compileFilters(filterProps));
         StringBuilder builer = new StringBuilder();
-        for (String key : keyList)
-            builer.append(key).append('=').append(map.get(key)).append('\n');
-        return builer.toString();
+        for (Map.Entry<String, String> entry : map.entrySet())
+            builer.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        String canonicalForm = builer.toString();
+        if (digest != null) {
+            digest.canonicalForm = canonicalForm;
+        }
+        return canonicalForm;
+    }
+
+    private static Pattern[] compileFilters(String[] filterProps) {
+        if (filterProps == null)
+            return null;
+        Pattern[] patterns = new Pattern[filterProps.length];
+        for (int index = 0; index < filterProps.length; index++) {
+            String filter = filterProps[index];
+            Pattern pattern = FILTER_PATTERNS.get(filter);
+            if (pattern == null) {
+                pattern = Pattern.compile(filter.replace(".", "\\.").replace("[", "\\[").replace("]", "\\]"));
+                FILTER_PATTERNS.putIfAbsent(filter, pattern);
+            }
+            patterns[index] = pattern;
+        }
+        return patterns;
     }
 
     @SuppressWarnings("rawtypes")
-    private static void mapToProperties(Object obj, String name, Map<String, String> propMap, String[] filterProps) throws IvoryException {
+    private static void mapToProperties(Object obj, String name, Map<String, String> propMap, Pattern[] filters) throws IvoryException {
         if (obj == null)
             return;
 
-        if (filterProps != null && name != null)
-            for (String filter : filterProps) {
-                if (name.matches(filter.replace(".", "\\.").replace("[", "\\[").replace("]", "\\]")))
+        if (filters != null && name != null)
+            for (Pattern filter : filters) {
+                if (filter.matcher(name).matches())
                     return;
             }
 
-        if (Date.class.isAssignableFrom(obj.getClass()))
-            propMap.put(name, SchemaHelper.formatDateUTC((Date)obj));
-        else if (obj.getClass().getPackage().getName().equals("java.lang"))
-            propMap.put(name, String.valueOf(obj));
-        else if (TimeZone.class.isAssignableFrom(obj.getClass()))
-            propMap.put(name, ((TimeZone) obj).getID());
-        else if (Enum.class.isAssignableFrom(obj.getClass()))
-            propMap.put(name, ((Enum) obj).name());
-        else if (List.class.isAssignableFrom(obj.getClass())) {
-            List list = (List) obj;
-            for (int index = 0; index < list.size(); index++) {
-                mapToProperties(list.get(index), name + "[" + index + "]", propMap, filterProps);
+        BeanShape shape = BeanShape.of(obj.getClass());
+        switch (shape.kind) {
+            case DATE:
+                propMap.put(name, SchemaHelper.formatDateUTC((Date) obj));
+                break;
+
+            case VALUE:
+                propMap.put(name, String.valueOf(obj));
+                break;
+
+            case TIMEZONE:
+                propMap.put(name, ((TimeZone) obj).getID());
+                break;
+
+            case ENUM:
+                propMap.put(name, ((Enum) obj).name());
+                break;
+
+            case LIST:
+                List list = (List) obj;
+                for (int index = 0; index < list.size(); index++) {
+                    mapToProperties(list.get(index), name + "[" + index + "]", propMap, filters);
+                }
+                break;
+
+            case TO_STRING:
+                propMap.put(name, obj.toString());
+                break;
+
+            default:
+                for (int index = 0; index < shape.properties.length; index++) {
+                    Object value;
+                    try {
+                        value = shape.getters[index].invoke(obj);
+                    } catch (Exception e) {
+                        throw new IvoryException(e);
+                    }
+                    String key = shape.properties[index];
+                    mapToProperties(value, name != null ? name + "." + key : key, propMap, filters);
+                }
+        }
+    }
+
+    /**
+     * How values of a class are flattened by {@link #mapToProperties}. Looked
+     * up once per class, rather than introspecting every object.
+     */
+    private static final class BeanShape {
+        private enum Kind {
+            DATE, VALUE, TIMEZONE, ENUM, LIST, TO_STRING, BEAN
+        }
+
+        private static final ConcurrentHashMap<Class<?>, BeanShape> SHAPES = new ConcurrentHashMap<Class<?>, BeanShape>();
+
+        private final Kind kind;
+        private final String[] properties;
+        private final Method[] getters;
+
+        private BeanShape(Kind kind, String[] properties, Method[] getters) {
+            this.kind = kind;
+            this.properties = properties;
+            this.getters = getters;
+        }
+
+        private static BeanShape of(Class<?> clazz) {
+            BeanShape shape = SHAPES.get(clazz);
+            if (shape == null) {
+                shape = create(clazz);
+                SHAPES.putIfAbsent(clazz, shape);
             }
-        } else {
+            return shape;
+        }
+
+        private static BeanShape create(Class<?> clazz) {
+            if (Date.class.isAssignableFrom(clazz))
+                return new BeanShape(Kind.DATE, null, null);
+            if (clazz.getPackage().getName().equals("java.lang"))
+                return new BeanShape(Kind.VALUE, null, null);
+            if (TimeZone.class.isAssignableFrom(clazz))
+                return new BeanShape(Kind.TIMEZONE, null, null);
+            if (Enum.class.isAssignableFrom(clazz))
+                return new BeanShape(Kind.ENUM, null, null);
+            if (List.class.isAssignableFrom(clazz))
+                return new BeanShape(Kind.LIST, null, null);
             try {
-                Method method = obj.getClass().getDeclaredMethod("toString");
-                propMap.put(name, (String) method.invoke(obj));
+                clazz.getDeclaredMethod("toString");
+                return new BeanShape(Kind.TO_STRING, null, null);
             } catch (NoSuchMethodException e) {
-                try {
-                    Map map = PropertyUtils.describe(obj);
-                    for (Object key : map.keySet()) {
-                        if (!key.equals("class"))
-                            mapToProperties(map.get(key), name != null ? name + "." + key : (String)key, propMap, filterProps);
-                    }
-                } catch (Exception e1) {
-                    throw new IvoryException(e1);
+                // flattened property by property
+            }
+
+            List<String> properties = new ArrayList<String>();
+            List<Method> getters = new ArrayList<Method>();
+            for (PropertyDescriptor descriptor : PropertyUtils.getPropertyDescriptors(clazz)) {
+                Method getter = MethodUtils.getAccessibleMethod(clazz, descriptor.getReadMethod());
+                if (getter != null && !descriptor.getName().equals("class")) {
+                    properties.add(descriptor.getName());
+                    getters.add(getter);
                 }
-            } catch(Exception e) {
-                throw new IvoryException(e);
             }
+            return new BeanShape(Kind.BEAN, properties.toArray(new String[properties.size()]),
+                    getters.toArray(new Method[getters.size()]));
         }
     }
 
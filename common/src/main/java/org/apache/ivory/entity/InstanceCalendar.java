@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.entity;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.TimeZone;
+
+import org.apache.ivory.entity.v0.Frequency;
+import org.apache.ivory.entity.v0.Frequency.TimeUnit;
+
+/**
+ * Instance times of an entity that starts at a given time and runs at a given
+ * frequency in a given time zone. Instance n, counting from 1, is at start
+ * time + (n - 1) * frequency.
+ * <p/>
+ * Minute and hour instances, and day instances in UTC, are a fixed number of
+ * milliseconds apart and are worked out directly. Day instances in other time
+ * zones keep their wall clock time across daylight saving changes, and month
+ * instances keep their day of month, so those are worked out with a calendar
+ * from an estimate that is off by at most an instance or two. Either way,
+ * the cost doesn't grow with the number of instances from the start.
+ * <p/>
+ * As each instance is worked out from the start rather than from the one
+ * before it, month instances of a start on the 31st are on the last day of
+ * shorter months and back on the 31st after them, and day instances of a
+ * start in a daylight saving gap are back at the wall clock time of the start
+ * after the gap.
+ */
+public final class InstanceCalendar {
+
+    private static final long MINUTE_IN_MS = 60000L;
+    private static final long HOUR_IN_MS = 3600000L;
+    private static final long DAY_IN_MS = 86400000L;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    // calendars of the static lookups, set to the time zone of each lookup
+    private static final ThreadLocal<Calendar> CALENDARS = new ThreadLocal<Calendar>() {
+        @Override
+        protected Calendar initialValue() {
+            return Calendar.getInstance(UTC);
+        }
+    };
+
+    private final Date startTime;
+    private final long start;
+    private final TimeUnit timeUnit;
+    private final int frequency;
+
+    // milliseconds between instances, 0 if they aren't a fixed time apart
+    private final long step;
+
+    // used under its own lock, only if instances aren't a fixed time apart
+    private final Calendar calendar;
+    private final int startMonth;
+
+    public InstanceCalendar(Date startTime, Frequency frequency, TimeZone timeZone) {
+        this.startTime = startTime;
+        this.start = startTime.getTime();
+        this.timeUnit = frequency.getTimeUnit();
+        this.frequency = frequency.getFrequency();
+        this.step = step(timeUnit, this.frequency, timeZone);
+
+        if (step == 0) {
+            calendar = Calendar.getInstance(timeZone);
+            calendar.setTimeInMillis(start);
+            startMonth = months(calendar);
+        } else {
+            calendar = null;
+            startMonth = 0;
+        }
+    }
+
+    private static long step(TimeUnit timeUnit, int frequency, TimeZone timeZone) {
+        switch (timeUnit) {
+        case minutes:
+            return frequency * MINUTE_IN_MS;
+        case hours:
+            return frequency * HOUR_IN_MS;
+        case days:
+            return UTC.hasSameRules(timeZone) ? frequency * DAY_IN_MS : 0;
+        default:
+            return 0;
+        }
+    }
+
+    private static int months(Calendar calendar) {
+        return calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+    }
+
+    /**
+     * @return time of the first instance at or after now, as
+     *         {@link #getNextStartTime(Date)} of a calendar of the given start,
+     *         frequency and time zone, without creating one
+     */
+    public static Date getNextStartTime(Date startTime, Frequency frequency, TimeZone timeZone, Date now) {
+        long start = startTime.getTime();
+        if (start > now.getTime()) {
+            return startTime;
+        }
+        TimeUnit timeUnit = frequency.getTimeUnit();
+        long step = step(timeUnit, frequency.getFrequency(), timeZone);
+        Calendar calendar = step == 0 ? calendarAt(timeZone, start) : null;
+        long index = indexAtOrAfter(start, timeUnit, frequency.getFrequency(), step, calendar,
+                calendar == null ? 0 : months(calendar), now.getTime());
+        return new Date(instanceAt(start, timeUnit, frequency.getFrequency(), step, calendar, index));
+    }
+
+    /**
+     * @return sequence of the first instance at or after the given time, as
+     *         {@link #getInstanceSequence(Date)} of a calendar of the given
+     *         start, frequency and time zone, without creating one
+     */
+    public static int getInstanceSequence(Date startTime, Frequency frequency, TimeZone timeZone, Date instanceTime) {
+        long start = startTime.getTime();
+        if (start > instanceTime.getTime()) {
+            return -1;
+        }
+        TimeUnit timeUnit = frequency.getTimeUnit();
+        long step = step(timeUnit, frequency.getFrequency(), timeZone);
+        Calendar calendar = step == 0 ? calendarAt(timeZone, start) : null;
+        return (int) indexAtOrAfter(start, timeUnit, frequency.getFrequency(), step, calendar,
+                calendar == null ? 0 : months(calendar), instanceTime.getTime()) + 1;
+    }
+
+    private static Calendar calendarAt(TimeZone timeZone, long time) {
+        Calendar calendar = CALENDARS.get();
+        calendar.setTimeZone(timeZone);
+        calendar.setTimeInMillis(time);
+        return calendar;
+    }
+
+    /**
+     * @return time of the instance with the given index, counting from 0
+     */
+    private static long instanceAt(long start, TimeUnit timeUnit, int frequency, long step, Calendar calendar,
+                                   long index) {
+        if (step != 0) {
+            return start + index * step;
+        }
+        calendar.setTimeInMillis(start);
+        calendar.add(timeUnit.getCalendarUnit(), (int) (index * frequency));
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * @return index of the first instance at or after the given time
+     */
+    private static long indexAtOrAfter(long start, TimeUnit timeUnit, int frequency, long step,
+                                       Calendar calendar, int startMonth, long time) {
+        if (time <= start) {
+            return 0;
+        }
+        if (step != 0) {
+            return (time - start + step - 1) / step;
+        }
+
+        long index;
+        if (timeUnit == TimeUnit.months) {
+            calendar.setTimeInMillis(time);
+            index = (months(calendar) - startMonth) / frequency;
+        } else {
+            index = (time - start) / (frequency * DAY_IN_MS);
+        }
+        index = Math.max(0, index);
+        while (instanceAt(start, timeUnit, frequency, step, calendar, index) < time) {
+            index++;
+        }
+        while (index > 0 && instanceAt(start, timeUnit, frequency, step, calendar, index - 1) >= time) {
+            index--;
+        }
+        return index;
+    }
+
+    private long instanceAt(long index) {
+        if (step != 0) {
+            return instanceAt(start, timeUnit, frequency, step, null, index);
+        }
+        synchronized (calendar) {
+            return instanceAt(start, timeUnit, frequency, step, calendar, index);
+        }
+    }
+
+    private long indexAtOrAfter(long time) {
+        if (step != 0) {
+            return indexAtOrAfter(start, timeUnit, frequency, step, null, 0, time);
+        }
+        synchronized (calendar) {
+            return indexAtOrAfter(start, timeUnit, frequency, step, calendar, startMonth, time);
+        }
+    }
+
+    /**
+     * @return time of the given instance, counting from 1
+     */
+    public Date getInstanceTime(int sequence) {
+        return new Date(instanceAt(sequence - 1));
+    }
+
+    /**
+     * @return sequence, counting from 1, of the first instance at or after the
+     *         given time, or -1 if the time is before the start
+     */
+    public int getInstanceSequence(Date instanceTime) {
+        if (start > instanceTime.getTime()) {
+            return -1;
+        }
+        return (int) indexAtOrAfter(instanceTime.getTime()) + 1;
+    }
+
+    /**
+     * @return time of the first instance at or after now
+     */
+    public Date getNextStartTime(Date now) {
+        if (start > now.getTime()) {
+            return startTime;
+        }
+        return new Date(instanceAt(indexAtOrAfter(now.getTime())));
+    }
+
+    /**
+     * @return times of the instances between from and to, both inclusive
+     */
+    public Iterable<Date> getInstances(final Date from, final Date to) {
+        return new Iterable<Date>() {
+            @Override
+            public Iterator<Date> iterator() {
+                return new Iterator<Date>() {
+                    private long index = indexAtOrAfter(from.getTime());
+                    private long next = instanceAt(index);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next <= to.getTime();
+                    }
+
+                    @Override
+                    public Date next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Date instance = new Date(next);
+                        next = instanceAt(++index);
+                        return instance;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.entity.parser;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.ivory.entity.v0.EntityType;
+import org.apache.log4j.Logger;
+
+/**
+ * Parses a batch of entity definitions. A batch is either an xml document
+ * with a <code>batch</code> root holding any number of cluster, database,
+ * feed and process definitions, or a zip or tar archive of such documents
+ * and of single entity definitions. Tar archives are read in the ustar format
+ * written by tar and pax, uncompressed. Each entity is validated against its schema as
+ * it is read, without building the whole document in memory.
+ */
+public final class EntityBatchParser {
+
+    private static final Logger LOG = Logger.getLogger(EntityBatchParser.class);
+
+    public static final String BATCH = "batch";
+
+    private static final byte[] ZIP_MAGIC = { 'P', 'K', 3, 4 };
+
+    private static final int TAR_BLOCK = 512;
+    private static final int TAR_MAGIC_OFFSET = 257;
+    private static final byte[] TAR_MAGIC = { 'u', 's', 't', 'a', 'r' };
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private EntityBatchParser() {
+    }
+
+    /**
+     * @return - entities in the order they appear in the batch
+     */
+    public static List<Entity> parse(InputStream in) throws IvoryException {
+        List<Entity> entities = new ArrayList<Entity>();
+        try {
+            InputStream stream = in.markSupported() ? in : new BufferedInputStream(in);
+            if (isZip(stream)) {
+                ZipInputStream zip = new ZipInputStream(stream);
+                // xml readers may close the stream they are done with
+                InputStream entryStream = new FilterInputStream(zip) {
+                    @Override
+                    public void close() {
+                    }
+                };
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    if (!entry.isDirectory()) {
+                        try {
+                            parseXml(entryStream, entities);
+                        } catch (IvoryException e) {
+                            throw new ValidationException("Invalid entry " + entry.getName() + " in batch", e);
+                        }
+                    }
+                }
+            } else if (isTar(stream)) {
+                parseTar(stream, entities);
+            } else {
+                parseXml(stream, entities);
+            }
+        } catch (IOException e) {
+            throw new IvoryException("Unable to read batch", e);
+        }
+        LOG.info("Parsed batch of " + entities.size() + " entities");
+        return entities;
+    }
+
+    private static boolean isZip(InputStream in) throws IOException {
+        in.mark(ZIP_MAGIC.length);
+        try {
+            for (byte magic : ZIP_MAGIC) {
+                if (in.read() != magic) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    private static boolean isTar(InputStream in) throws IOException {
+        in.mark(TAR_BLOCK);
+        try {
+            byte[] header = new byte[TAR_BLOCK];
+            int read = 0;
+            int count;
+            while (read < header.length && (count = in.read(header, read, header.length - read)) >= 0) {
+                read += count;
+            }
+            if (read < header.length) {
+                return false;
+            }
+            for (int index = 0; index < TAR_MAGIC.length; index++) {
+                if (header[TAR_MAGIC_OFFSET + index] != TAR_MAGIC[index]) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    private static void parseTar(InputStream in, List<Entity> entities) throws IOException, IvoryException {
+        byte[] header = new byte[TAR_BLOCK];
+        while (readFully(in, header) && header[0] != 0) {
+            String name = tarString(header, 345, 155);
+            name = (name.length() == 0 ? "" : name + "/") + tarString(header, 0, 100);
+            String octalSize = tarString(header, 124, 12).trim();
+            long size;
+            try {
+                size = octalSize.length() == 0 ? 0 : Long.parseLong(octalSize, 8);
+            } catch (NumberFormatException e) {
+                throw new ValidationException("Invalid size of entry " + name + " in batch");
+            }
+            byte flag = header[156];
+            TarEntryStream entry = new TarEntryStream(in, size);
+            // regular files only, such as no directories or pax headers
+            if (flag == '0' || flag == 0) {
+                try {
+                    parseXml(entry, entities);
+                } catch (IvoryException e) {
+                    throw new ValidationException("Invalid entry " + name + " in batch", e);
+                }
+            }
+            entry.skipToEnd();
+            long padding = (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+            skipFully(in, padding);
+        }
+    }
+
+    private static String tarString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        try {
+            return new String(header, offset, end - offset, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // false if the stream ends before the first byte
+    private static boolean readFully(InputStream in, byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int count = in.read(buffer, read, buffer.length - read);
+            if (count < 0) {
+                if (read == 0) {
+                    return false;
+                }
+                throw new EOFException("Batch ends within a tar header");
+            }
+            read += count;
+        }
+        return true;
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Batch ends within a tar entry");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Data of a tar entry. Xml readers may close the stream they are done
+     * with, so closing it leaves the archive open.
+     */
+    private static final class TarEntryStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        private TarEntryStream(InputStream in, long size) {
+            this.in = in;
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = in.read();
+            if (value < 0) {
+                throw new EOFException("Batch ends within a tar entry");
+            }
+            remaining--;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (count < 0) {
+                throw new EOFException("Batch ends within a tar entry");
+            }
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void skipToEnd() throws IOException {
+            skipFully(in, remaining);
+            remaining = 0;
+        }
+    }
+
+    private static void parseXml(InputStream in, List<Entity> entities) throws IvoryException {
+        try {
+            XMLStreamReader reader;
+            synchronized (XML_INPUT_FACTORY) {
+                reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            }
+            try {
+                reader.nextTag();
+                if (!BATCH.equals(reader.getLocalName())) {
+                    entities.add(unmarshal(reader));
+                    return;
+                }
+
+                reader.next();
+                while (true) {
+                    // the unmarshaller leaves the reader past the end of the
+                    // entity, which may already be the start of the next one
+                    while (!reader.isStartElement() && !reader.isEndElement()) {
+                        reader.next();
+                    }
+                    if (reader.isEndElement()) {
+                        break;
+                    }
+                    entities.add(unmarshal(reader));
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new ValidationException("Unable to parse batch", e);
+        }
+    }
+
+    private static Entity unmarshal(XMLStreamReader reader) throws IvoryException {
+        String element = reader.getLocalName();
+        EntityType type;
+        try {
+            type = EntityType.valueOf(element.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Unknown entity " + element + " at line "
+                    + reader.getLocation().getLineNumber() + " of batch");
+        }
+
+        try {
+            return (Entity) type.getUnmarshaller().unmarshal(reader);
+        } catch (JAXBException e) {
+            throw new ValidationException("Invalid " + element + " at line " + reader.getLocation().getLineNumber()
+                    + " of batch", e);
+        }
+    }
+
+    /**
+     * Writes out the entities as a batch that can be read back with
+     * {@link #parse(InputStream)}.
+     */
+    public static void write(List<? extends Entity> entities, OutputStream out) throws IvoryException {
+        try {
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<" + BATCH + ">\n");
+            for (Entity entity : entities) {
+                entity.getEntityType().getFragmentMarshaller().marshal(entity, writer);
+                writer.write("\n");
+            }
+            writer.write("</" + BATCH + ">\n");
+            writer.flush();
+        } catch (JAXBException e) {
+            throw new IvoryException("Unable to write batch", e);
+        } catch (IOException e) {
+            throw new IvoryException("Unable to write batch", e);
+        }
+    }
+}
@@ -85,6 +85,9 @@ public class FeedEntityParser extends EntityParser<Feed> {
         // feed reference
         EntityGraph graph = EntityGraph.get();
         Set<Entity> referenced = graph.getDependents(oldFeed);
+        if (referenced == null)
+            return; // Nothing depends on the feed
+
         Set<Process> processes = findProcesses(referenced);
         if (processes.isEmpty())
             return;
@@ -23,13 +23,30 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.xml.bind.JAXBException;
 
@@ -40,8 +57,10 @@ import org.apache.hadoop.fs.Path;
 import org.apache.ivory.IvoryException;
 import org.apache.ivory.entity.v0.Entity;
 import org.apache.ivory.entity.v0.EntityType;
+import org.apache.ivory.service.AsyncConfigurationChangeListener;
 import org.apache.ivory.service.ConfigurationChangeListener;
 import org.apache.ivory.service.IvoryService;
+import org.apache.ivory.transaction.Journal;
 import org.apache.ivory.util.ReflectionUtils;
 import org.apache.ivory.util.StartupProperties;
 import org.apache.log4j.Logger;
@@ -52,21 +71,53 @@ public class ConfigurationStore implements IvoryService {
     private static final Logger AUDIT = Logger.getLogger("AUDIT");
     private static final String UTF_8 = "UTF-8";
 
+    /**
+     * Order in which entities are restored on startup, so that entities are
+     * always announced to the listeners after the entities they refer to.
+     */
+    private static final List<EntityType> RESTORE_ORDER = Arrays.asList(EntityType.CLUSTER, EntityType.FEED,
+            EntityType.PROCESS, EntityType.DATABASE);
+
     private static final ConfigurationStore store = new ConfigurationStore();
 
-    private Set<ConfigurationChangeListener> listeners = new LinkedHashSet<ConfigurationChangeListener>();
+    /**
+     * Listeners are notified of a change by the thread that made it, without
+     * any lock of the store's besides that of the entity changed. Changes to
+     * an entity reach them in order, while changes to unrelated entities may
+     * reach them concurrently.
+     */
+    private final CopyOnWriteArrayList<ConfigurationChangeListener> listeners =
+            new CopyOnWriteArrayList<ConfigurationChangeListener>();
 
+    // the entity being updated by this thread, which it gets from the store
     private ThreadLocal<Entity> updatesInProgress = new ThreadLocal<Entity>();
 
+    // entities being updated by any thread, by type and name
+    private final ConcurrentHashMap<String, Entity> updatesStarted = new ConcurrentHashMap<String, Entity>();
+
+    private ThreadLocal<Map<EntityType, Map<String, Entity>>> stagedEntities =
+            new ThreadLocal<Map<EntityType, Map<String, Entity>>>();
+
     public static ConfigurationStore get() {
         return store;
     }
 
     private final Map<EntityType, ConcurrentHashMap<String, Entity>> dictionary = new HashMap<EntityType, ConcurrentHashMap<String, Entity>>();
 
+    // names in the dictionary kept in order, so that they can be listed a page at a time
+    private final Map<EntityType, ConcurrentSkipListSet<String>> sortedNames =
+            new HashMap<EntityType, ConcurrentSkipListSet<String>>();
+
     private final FileSystem fs;
     private final Path storePath;
 
+    private volatile Thread loader;
+
+    private final ReentrantLock[] locks;
+
+    // entities are persisted as one xml file each unless a journal is enabled
+    private Journal journal;
+
     private static final Entity NULL = new Entity() {
         @Override
         public String getName() {
@@ -74,19 +125,22 @@ public class ConfigurationStore implements IvoryService {
         }
     };
 
-    @SuppressWarnings("unchecked")
     private ConfigurationStore() {
-        Class<? extends Entity>[] entityClasses = new Class[EntityType.values().length];
-
-        int index = 0;
+        this(new Path(StartupProperties.get().getProperty("config.store.uri")));
+    }
 
+    ConfigurationStore(Path storePath) {
         for (EntityType type : EntityType.values()) {
             dictionary.put(type, new ConcurrentHashMap<String, Entity>());
-            entityClasses[index++] = type.getEntityClass();
+            sortedNames.put(type, new ConcurrentSkipListSet<String>());
         }
 
-        String uri = StartupProperties.get().getProperty("config.store.uri");
-        storePath = new Path(uri);
+        locks = new ReentrantLock[Integer.parseInt(StartupProperties.get().getProperty("config.store.lock.stripes", "64"))];
+        for (int index = 0; index < locks.length; index++) {
+            locks[index] = new ReentrantLock();
+        }
+
+        this.storePath = storePath;
         try {
             fs = FileSystem.get(storePath.toUri(), new Configuration());
         } catch (Exception e) {
@@ -98,36 +152,237 @@ public class ConfigurationStore implements IvoryService {
     public void init() throws IvoryException {
         String listenerClassNames = StartupProperties.get().
                 getProperty("configstore.listeners", "org.apache.ivory.entity.v0.EntityGraph");
+        Set<String> asyncListeners = new HashSet<String>();
+        for (String listenerClassName : StartupProperties.get().getProperty("configstore.async.listeners", "").split(",")) {
+            asyncListeners.add(listenerClassName.trim());
+        }
+        int backlog = Integer.parseInt(StartupProperties.get().getProperty("configstore.async.listener.backlog", "1000"));
+        long timeoutMillis = Long.parseLong(StartupProperties.get().getProperty(
+                "configstore.async.listener.timeout.millis", "10000"));
         for(String listenerClassName:listenerClassNames.split(",")) {
             listenerClassName = listenerClassName.trim();
             if (listenerClassName.isEmpty()) continue;
             ConfigurationChangeListener listener = ReflectionUtils.getInstanceByClassName(listenerClassName);
+            if (asyncListeners.contains(listenerClassName)) {
+                listener = new AsyncConfigurationChangeListener(listener, backlog, timeoutMillis);
+            }
             registerListener(listener);
         }
-        
-        try {
-            for (EntityType type : EntityType.values()) {
-                ConcurrentHashMap<String, Entity> entityMap = dictionary.get(type);
-                FileStatus[] files = fs.globStatus(new Path(storePath, type.name() + Path.SEPARATOR + "*"));
-                if (files != null) {
-                    for (FileStatus file : files) {
-                        String fileName = file.getPath().getName();
-                        String encodedEntityName = fileName.substring(0, fileName.length() - 4); // drop
-                                                                                                 // ".xml"
-                        String entityName = URLDecoder.decode(encodedEntityName, UTF_8);
-                        Entity entity = restore(type, entityName);
-                        entityMap.put(entityName, entity);
+
+        if (Boolean.parseBoolean(StartupProperties.get().getProperty("config.store.journal.enabled", "false"))) {
+            if (journal != null) {
+                journal.close();
+            }
+            journal = ReflectionUtils.getInstance("journal.impl");
+            journal.open(fs, new Path(storePath, "journal"), new Journal.EntitySource() {
+                @Override
+                public Map<EntityType, Collection<Entity>> getEntities() {
+                    return journaledEntities();
+                }
+            });
+            Map<EntityType, Map<String, Entity>> entities = journal.recover();
+            if (entities != null) {
+                for (EntityType type : RESTORE_ORDER) {
+                    for (Entity entity : entities.get(type).values()) {
+                        dictionary.get(type).put(entity.getName(), entity);
+                        sortedNames.get(type).add(entity.getName());
                         onAdd(entity);
                     }
                 }
+                return;
             }
+            LOG.info("Journal is empty, migrating configurations from " + storePath);
+        }
+
+        try {
+            loadIndex();
         } catch (IOException e) {
             throw new IvoryException("Unable to restore configurations", e);
         }
+
+        int threads = Integer.parseInt(StartupProperties.get().getProperty("config.store.restore.threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        boolean lazy = journal == null
+                && Boolean.parseBoolean(StartupProperties.get().getProperty("config.store.lazy.load", "false"));
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new RestoreThreadFactory());
+        if (lazy) {
+            loader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        restoreAll(executor);
+                    } catch (IvoryException e) {
+                        LOG.error("Unable to restore configurations", e);
+                    }
+                }
+            }, "ConfigStoreLoader");
+            loader.setDaemon(true);
+            loader.start();
+        } else {
+            restoreAll(executor);
+        }
+
+        if (journal != null) {
+            journal.compact();
+        }
+    }
+
+    /**
+     * @return - entities of the store, once those journaled so far are in the
+     *         dictionary. An entity is journaled and then put in the
+     *         dictionary under its lock, so each lock is taken once first.
+     */
+    private Map<EntityType, Collection<Entity>> journaledEntities() {
+        for (Lock lock : locks) {
+            lock.lock();
+            lock.unlock();
+        }
+        Map<EntityType, Collection<Entity>> entities = new HashMap<EntityType, Collection<Entity>>();
+        for (EntityType type : EntityType.values()) {
+            entities.put(type, new ArrayList<Entity>(dictionary.get(type).values()));
+        }
+        return entities;
+    }
+
+    /**
+     * Registers every persisted entity name against a NULL placeholder, so that
+     * the store knows of all entities before any of them is de-serialized.
+     */
+    private void loadIndex() throws IOException {
+        for (EntityType type : EntityType.values()) {
+            ConcurrentHashMap<String, Entity> entityMap = dictionary.get(type);
+            FileStatus[] files = fs.globStatus(new Path(storePath, type.name() + Path.SEPARATOR + "*"));
+            if (files != null) {
+                for (FileStatus file : files) {
+                    String fileName = file.getPath().getName();
+                    String encodedEntityName = fileName.substring(0, fileName.length() - 4); // drop
+                                                                                             // ".xml"
+                    String entityName = URLDecoder.decode(encodedEntityName, UTF_8);
+                    entityMap.putIfAbsent(entityName, NULL);
+                    sortedNames.get(type).add(entityName);
+                }
+            }
+            LOG.info("Indexed " + entityMap.size() + " " + type + " entities");
+        }
+    }
+
+    /**
+     * De-serializes all entities still holding a placeholder on the given
+     * executor. A type is fully restored before moving to the next one in
+     * {@link #RESTORE_ORDER}.
+     */
+    private void restoreAll(ExecutorService executor) throws IvoryException {
+        long start = System.currentTimeMillis();
+        try {
+            for (final EntityType type : RESTORE_ORDER) {
+                List<Future<Entity>> futures = new ArrayList<Future<Entity>>();
+                for (Map.Entry<String, Entity> entry : dictionary.get(type).entrySet()) {
+                    if (entry.getValue() != NULL) continue;
+                    final String name = entry.getKey();
+                    futures.add(executor.submit(new Callable<Entity>() {
+                        @Override
+                        public Entity call() throws Exception {
+                            return materialize(type, name);
+                        }
+                    }));
+                }
+                for (Future<Entity> future : futures) {
+                    future.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IvoryException("Interrupted while restoring configurations", e);
+        } catch (ExecutionException e) {
+            throw new IvoryException("Unable to restore configurations", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.info("Restored configurations in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Restores an entity that is registered with a placeholder and notifies the
+     * listeners, unless another thread got there first.
+     * 
+     * @return - the entity as currently held in the dictionary, null if it was
+     *         removed meanwhile
+     */
+    private Entity materialize(EntityType type, String name) throws IOException, IvoryException {
+        ConcurrentHashMap<String, Entity> entityMap = dictionary.get(type);
+        if (entityMap.get(name) != NULL) {
+            return entityMap.get(name);
+        }
+        Entity entity = restore(type, name);
+        if (entityMap.replace(name, NULL, entity)) {
+            onAdd(entity);
+            return entity;
+        }
+        return entityMap.get(name);
+    }
+
+    /**
+     * Waits for a lazy restore started by {@link #init()} to finish.
+     */
+    void awaitRestore() throws InterruptedException {
+        Thread thread = loader;
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Changes to an entity are made holding its lock, so they are serialized
+     * while unrelated entities can be changed concurrently. Locks are
+     * reentrant and shared by entities hashing to the same stripe. Callers
+     * that check an entity before changing it should hold the lock across
+     * both, and never take the lock of another entity while holding one;
+     * changes spanning entities take all their locks from
+     * {@link #getLocks(Collection)} instead.
+     */
+    public Lock getLock(EntityType type, String name) {
+        return locks[stripe(type, name)];
+    }
+
+    /**
+     * @return - locks of the given entities, each stripe once, in the order in
+     *         which they are to be taken, so that callers locking several
+     *         entities can't deadlock. Unlock them in reverse order.
+     */
+    public List<Lock> getLocks(Collection<? extends Entity> entities) {
+        Map<Integer, Lock> ordered = new TreeMap<Integer, Lock>();
+        for (Entity entity : entities) {
+            int stripe = stripe(entity.getEntityType(), entity.getName());
+            ordered.put(stripe, locks[stripe]);
+        }
+        return new ArrayList<Lock>(ordered.values());
+    }
+
+    private int stripe(EntityType type, String name) {
+        int hash = 31 * type.ordinal() + name.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % locks.length;
+    }
+
+    /**
+     * Waits for the listeners notified asynchronously to handle all the
+     * changes made so far.
+     * 
+     * @return - true if all of them caught up within the timeout
+     */
+    public boolean awaitListeners(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ConfigurationChangeListener listener : listeners) {
+            if (listener instanceof AsyncConfigurationChangeListener
+                    && !((AsyncConfigurationChangeListener) listener).awaitCatchUp(
+                            Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public void registerListener(ConfigurationChangeListener listener) {
-        listeners.add(listener);
+        listeners.addIfAbsent(listener);
     }
 
     /**
@@ -138,11 +393,14 @@ public class ConfigurationStore implements IvoryService {
      *            - Reference to the Entity Object
      * @throws IvoryException
      */
-    public synchronized void publish(EntityType type, Entity entity) throws IvoryException {
+    public void publish(EntityType type, Entity entity) throws IvoryException {
+        Lock lock = getLock(type, entity.getName());
+        lock.lock();
         try {
             if (get(type, entity.getName()) == null) {
                 persist(type, entity);
                 dictionary.get(type).put(entity.getName(), entity);
+                sortedNames.get(type).add(entity.getName());
                 onAdd(entity);
             } else {
                 throw new EntityAlreadyExistsException(entity.toShortString() + " already registered with configuration store. "
@@ -150,11 +408,15 @@ public class ConfigurationStore implements IvoryService {
             }
         } catch (IOException e) {
             throw new StoreAccessException(e);
+        } finally {
+            lock.unlock();
         }
         AUDIT.info(type + "/" + entity.getName() + " is published into config store");
     }
 
-    private synchronized void updateInternal(EntityType type, Entity entity) throws IvoryException {
+    private void updateInternal(EntityType type, Entity entity) throws IvoryException {
+        Lock lock = getLock(type, entity.getName());
+        lock.lock();
         try {
             if (get(type, entity.getName()) != null) {
                 persist(type, entity);
@@ -165,15 +427,17 @@ public class ConfigurationStore implements IvoryService {
             }
         } catch (IOException e) {
             throw new StoreAccessException(e);
+        } finally {
+            lock.unlock();
         }
         AUDIT.info(type + "/" + entity.getName() + " is replaced into config store");
     }
 
-    public synchronized void rollbackUpdate(EntityType type, Entity entity) throws IvoryException {
+    public void rollbackUpdate(EntityType type, Entity entity) throws IvoryException {
         updateInternal(type, entity);
     }
 
-    public synchronized void update(EntityType type, Entity entity) throws IvoryException {
+    public void update(EntityType type, Entity entity) throws IvoryException {
         if (updatesInProgress.get() == entity) {
             updateInternal(type, entity);
         } else {
@@ -193,15 +457,26 @@ public class ConfigurationStore implements IvoryService {
 
     private void onChange(Entity oldEntity, Entity newEntity) throws IvoryException {
         for (ConfigurationChangeListener listener : listeners) {
-			listener.onChange(oldEntity, newEntity);
+            listener.onChange(oldEntity, newEntity);
         }
     }
 
-    public synchronized void initiateUpdate(Entity entity) throws IvoryException {
-        if (get(entity.getEntityType(), entity.getName()) == null || updatesInProgress.get() != null) {
-            throw new IvoryException("An update for " + entity.toShortString() + " is already in progress or doesn't exist");
+    public void initiateUpdate(Entity entity) throws IvoryException {
+        Lock lock = getLock(entity.getEntityType(), entity.getName());
+        lock.lock();
+        try {
+            if (get(entity.getEntityType(), entity.getName()) == null || updatesInProgress.get() != null
+                    || updatesStarted.putIfAbsent(updateKey(entity), entity) != null) {
+                throw new IvoryException("An update for " + entity.toShortString() + " is already in progress or doesn't exist");
+            }
+            updatesInProgress.set(entity);
+        } finally {
+            lock.unlock();
         }
-        updatesInProgress.set(entity);
+    }
+
+    private String updateKey(Entity entity) {
+        return entity.getEntityType() + "/" + entity.getName();
     }
 
     /**
@@ -229,24 +504,75 @@ public class ConfigurationStore implements IvoryService {
             T entity = (T) entityMap.get(name);
             if (entity == NULL) { // Object equality being checked
                 try {
-                    entity = this.<T>restore(type, name);
+                    return (T) materialize(type, name);
                 } catch (IOException e) {
                     throw new StoreAccessException(e);
                 }
-                entityMap.put(name, entity);
-                return entity;
             } else {
                 return entity;
             }
         } else {
+            Map<EntityType, Map<String, Entity>> staged = stagedEntities.get();
+            if (staged != null && staged.containsKey(type)) {
+                return (T) staged.get(type).get(name);
+            }
             return null;
         }
     }
 
+    /**
+     * Makes an entity that is yet to be published visible to lookups made
+     * by the calling thread, so that entities submitted together can be
+     * validated against each other before any of them is published. Entities
+     * in the store take precedence over staged entities of the same name.
+     * 
+     * @param entity
+     *            - Entity to stage until {@link #cleanupStaged()}
+     */
+    public void stage(Entity entity) {
+        Map<EntityType, Map<String, Entity>> staged = stagedEntities.get();
+        if (staged == null) {
+            staged = new HashMap<EntityType, Map<String, Entity>>();
+            stagedEntities.set(staged);
+        }
+        Map<String, Entity> entities = staged.get(entity.getEntityType());
+        if (entities == null) {
+            entities = new HashMap<String, Entity>();
+            staged.put(entity.getEntityType(), entities);
+        }
+        entities.put(entity.getName(), entity);
+    }
+
+    public void cleanupStaged() {
+        stagedEntities.remove();
+    }
+
     public Collection<String> getEntities(EntityType type) {
         return Collections.unmodifiableCollection(dictionary.get(type).keySet());
     }
 
+    /**
+     * @param offset
+     *            - number of names to skip
+     * @param limit
+     *            - maximum number of names to return, all if negative
+     * @return - one page of the names of the entities of a type, in order,
+     *         without sorting all of them
+     */
+    public List<String> getEntities(EntityType type, int offset, int limit) {
+        List<String> names = new ArrayList<String>();
+        int index = 0;
+        for (String name : sortedNames.get(type)) {
+            if (limit >= 0 && names.size() >= limit) {
+                break;
+            }
+            if (index++ >= offset) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
     /**
      * Remove an entity which is already stored in the config store
      * 
@@ -260,17 +586,25 @@ public class ConfigurationStore implements IvoryService {
      */
     public boolean remove(EntityType type, String name) throws IvoryException {
         Map<String, Entity> entityMap = dictionary.get(type);
-        if (entityMap.containsKey(name)) {
-            try {
-                archive(type, name);
-                onRemove(entityMap.remove(name));
-            } catch (IOException e) {
-                throw new StoreAccessException(e);
+        Lock lock = getLock(type, name);
+        lock.lock();
+        try {
+            if (!entityMap.containsKey(name)) {
+                return false;
+            }
+            archive(type, name);
+            Entity entity = entityMap.remove(name);
+            sortedNames.get(type).remove(name);
+            if (entity != null && entity != NULL) { // listeners never saw an entity not yet restored
+                onRemove(entity);
             }
-            AUDIT.info(type + " " + name + " is removed from config store");
-            return true;
+        } catch (IOException e) {
+            throw new StoreAccessException(e);
+        } finally {
+            lock.unlock();
         }
-        return false;
+        AUDIT.info(type + " " + name + " is removed from config store");
+        return true;
     }
 
     private void onRemove(Entity entity) {
@@ -278,9 +612,8 @@ public class ConfigurationStore implements IvoryService {
             try {
                 listener.onRemove(entity);
             } catch (Throwable e) {
-                LOG.warn(
-                        "Encountered exception while notifying " + listener + "(" + entity.getEntityType() + ") " + entity.getName(),
-                        e);
+                LOG.warn("Encountered exception while notifying " + listener + "(" + entity.getEntityType() + ") "
+                        + entity.getName(), e);
             }
         }
     }
@@ -292,10 +625,24 @@ public class ConfigurationStore implements IvoryService {
      * @param keywords
      *            - List of keywords to search for. only entities that have all
      *            the keywords being searched would be returned
-     * @return - Array of entity types
+     * @return - Names of the matching entities, sorted. Served from
+     *         {@link EntitySearchIndex} without loading any entity when it is
+     *         one of the registered listeners, by scanning the store
+     *         otherwise.
+     * @throws IvoryException
      */
-    public Entity[] search(EntityType type, String... keywords) {
-        return null;// TODO
+    public List<String> search(EntityType type, String... keywords) throws IvoryException {
+        if (listeners.contains(EntitySearchIndex.get())) {
+            return new ArrayList<String>(EntitySearchIndex.get().search(type, keywords));
+        }
+        Set<String> names = new TreeSet<String>();
+        for (String name : dictionary.get(type).keySet()) {
+            Entity entity = get(type, name);
+            if (entity != null && EntitySearchIndex.matches(entity, keywords)) {
+                names.add(name);
+            }
+        }
+        return new ArrayList<String>(names);
     }
 
     /**
@@ -311,6 +658,11 @@ public class ConfigurationStore implements IvoryService {
      * @throws IvoryException
      */
     private void persist(EntityType type, Entity entity) throws IOException, IvoryException {
+        if (journal != null) {
+            journal.record(entity);
+            LOG.info("Journaled configuration " + type + "/" + entity.getName());
+            return;
+        }
         OutputStream out = fs
                 .create(new Path(storePath, type + Path.SEPARATOR + URLEncoder.encode(entity.getName(), UTF_8) + ".xml"));
         try {
@@ -333,12 +685,26 @@ public class ConfigurationStore implements IvoryService {
      *            - name
      * @throws IOException
      *             If any error in accessing the storage
+     * @throws IvoryException
      */
-    private void archive(EntityType type, String name) throws IOException {
+    private void archive(EntityType type, String name) throws IOException, IvoryException {
         Path archivePath = new Path(storePath, "archive" + Path.SEPARATOR + type);
         fs.mkdirs(archivePath);
-        fs.rename(new Path(storePath, type + Path.SEPARATOR + URLEncoder.encode(name, UTF_8) + ".xml"), new Path(archivePath,
-                URLEncoder.encode(name, UTF_8) + "." + System.currentTimeMillis()));
+        Path archiveFile = new Path(archivePath, URLEncoder.encode(name, UTF_8) + "." + System.currentTimeMillis());
+        if (journal != null) {
+            Entity entity = get(type, name);
+            OutputStream out = fs.create(archiveFile);
+            try {
+                type.getMarshaller().marshal(entity, out);
+            } catch (JAXBException e) {
+                throw new StoreAccessException("Unable to serialize the entity object " + type + "/" + name, e);
+            } finally {
+                out.close();
+            }
+            journal.remove(type, name);
+        } else {
+            fs.rename(new Path(storePath, type + Path.SEPARATOR + URLEncoder.encode(name, UTF_8) + ".xml"), archiveFile);
+        }
         LOG.info("Archived configuration " + type + "/" + name);
     }
 
@@ -356,7 +722,7 @@ public class ConfigurationStore implements IvoryService {
      * @throws IvoryException
      */
     @SuppressWarnings("unchecked")
-    private synchronized <T extends Entity> T restore(EntityType type, String name) throws IOException, IvoryException {
+    private <T extends Entity> T restore(EntityType type, String name) throws IOException, IvoryException {
 
         InputStream in = fs.open(new Path(storePath, type + Path.SEPARATOR + URLEncoder.encode(name, UTF_8) + ".xml"));
         try {
@@ -370,7 +736,11 @@ public class ConfigurationStore implements IvoryService {
     }
 
     public void cleanupUpdateInit() {
-        updatesInProgress.set(null);
+        Entity entity = updatesInProgress.get();
+        if (entity != null) {
+            updatesStarted.remove(updateKey(entity), entity);
+            updatesInProgress.set(null);
+        }
     }
 
     @Override
@@ -379,5 +749,25 @@ public class ConfigurationStore implements IvoryService {
     }
 
     @Override
-    public void destroy() { }
+    public void destroy() {
+        if (journal != null) {
+            journal.close();
+        }
+        for (ConfigurationChangeListener listener : listeners) {
+            if (listener instanceof AsyncConfigurationChangeListener) {
+                ((AsyncConfigurationChangeListener) listener).close();
+            }
+        }
+    }
+
+    private static class RestoreThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ConfigStoreRestore-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.entity.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.ivory.entity.v0.EntityType;
+import org.apache.ivory.entity.v0.cluster.Cluster;
+import org.apache.ivory.entity.v0.database.Database;
+import org.apache.ivory.entity.v0.feed.Feed;
+import org.apache.ivory.entity.v0.feed.Location;
+import org.apache.ivory.entity.v0.feed.Locations;
+import org.apache.ivory.entity.v0.process.Process;
+import org.apache.ivory.service.ConfigurationChangeListener;
+import org.apache.log4j.Logger;
+
+/**
+ * Inverted index over the searchable attributes of the entities in the config
+ * store: name, groups, clusters, colo, feed path templates and ACL owner.
+ *
+ * A keyword either names the attribute it should match, as in
+ * <code>colo:ua2</code>, or matches any attribute. Values are also broken into
+ * words, so <code>clicks</code> finds the feed <code>clicks-hourly</code>, and
+ * a trailing <code>*</code> turns a keyword into a prefix.
+ */
+public class EntitySearchIndex implements ConfigurationChangeListener {
+
+    private static final Logger LOG = Logger.getLogger(EntitySearchIndex.class);
+
+    public static final String NAME = "name";
+    public static final String GROUP = "group";
+    public static final String CLUSTER = "cluster";
+    public static final String COLO = "colo";
+    public static final String PATH = "path";
+    public static final String OWNER = "owner";
+
+    private static final Pattern VARIABLE = Pattern.compile("\\$\\{[^}]*\\}");
+    private static final Pattern SEPARATOR = Pattern.compile("[^a-z0-9]+");
+
+    private static final EntitySearchIndex instance = new EntitySearchIndex();
+
+    private final Map<EntityType, ConcurrentSkipListMap<String, Set<String>>> postings =
+            new ConcurrentHashMap<EntityType, ConcurrentSkipListMap<String, Set<String>>>();
+
+    private final Map<EntityType, Map<String, Set<String>>> indexed = new ConcurrentHashMap<EntityType, Map<String, Set<String>>>();
+
+    EntitySearchIndex() {
+        for (EntityType type : EntityType.values()) {
+            postings.put(type, new ConcurrentSkipListMap<String, Set<String>>());
+            indexed.put(type, new ConcurrentHashMap<String, Set<String>>());
+        }
+    }
+
+    public static EntitySearchIndex get() {
+        return instance;
+    }
+
+    @Override
+    public synchronized void onAdd(Entity entity) throws IvoryException {
+        EntityType type = entity.getEntityType();
+        Set<String> terms = terms(entity);
+        Set<String> previous = indexed.get(type).put(entity.getName(), terms);
+        if (previous != null) {
+            unindex(type, entity.getName(), previous);
+        }
+        ConcurrentSkipListMap<String, Set<String>> typePostings = postings.get(type);
+        for (String term : terms) {
+            Set<String> names = typePostings.get(term);
+            if (names == null) {
+                names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                typePostings.put(term, names);
+            }
+            names.add(entity.getName());
+        }
+    }
+
+    @Override
+    public synchronized void onRemove(Entity entity) throws IvoryException {
+        Set<String> terms = indexed.get(entity.getEntityType()).remove(entity.getName());
+        if (terms != null) {
+            unindex(entity.getEntityType(), entity.getName(), terms);
+        }
+    }
+
+    @Override
+    public synchronized void onChange(Entity oldEntity, Entity newEntity) throws IvoryException {
+        onRemove(oldEntity);
+        onAdd(newEntity);
+    }
+
+    private void unindex(EntityType type, String name, Set<String> terms) {
+        ConcurrentSkipListMap<String, Set<String>> typePostings = postings.get(type);
+        for (String term : terms) {
+            Set<String> names = typePostings.get(term);
+            if (names != null) {
+                names.remove(name);
+                if (names.isEmpty()) {
+                    typePostings.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param type
+     *            - Entity type to search
+     * @param keywords
+     *            - Keywords all of which an entity should match
+     * @return - Names of the matching entities in sorted order
+     */
+    public SortedSet<String> search(EntityType type, String... keywords) {
+        ConcurrentSkipListMap<String, Set<String>> typePostings = postings.get(type);
+        List<Set<String>> matches = new ArrayList<Set<String>>();
+        for (String keyword : normalize(keywords)) {
+            Set<String> names = lookup(typePostings, keyword);
+            if (names.isEmpty()) {
+                return new TreeSet<String>();
+            }
+            matches.add(names);
+        }
+        if (matches.isEmpty()) {
+            return new TreeSet<String>(indexed.get(type).keySet());
+        }
+
+        // intersect starting from the rarest keyword
+        Set<String> smallest = matches.get(0);
+        for (Set<String> names : matches) {
+            if (names.size() < smallest.size()) {
+                smallest = names;
+            }
+        }
+        SortedSet<String> result = new TreeSet<String>();
+        for (String name : smallest) {
+            boolean matchesAll = true;
+            for (Set<String> names : matches) {
+                if (names != smallest && !names.contains(name)) {
+                    matchesAll = false;
+                    break;
+                }
+            }
+            if (matchesAll) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    private Set<String> lookup(ConcurrentSkipListMap<String, Set<String>> typePostings, String keyword) {
+        if (!keyword.endsWith("*")) {
+            Set<String> names = typePostings.get(keyword);
+            return names == null ? Collections.<String> emptySet() : names;
+        }
+
+        String prefix = keyword.substring(0, keyword.length() - 1);
+        Set<String> names = new HashSet<String>();
+        for (Set<String> termNames : typePostings.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            names.addAll(termNames);
+        }
+        return names;
+    }
+
+    /**
+     * Checks an entity against the keywords without consulting the index.
+     */
+    public static boolean matches(Entity entity, String... keywords) {
+        Set<String> terms = terms(entity);
+        for (String keyword : normalize(keywords)) {
+            if (keyword.endsWith("*")) {
+                String prefix = keyword.substring(0, keyword.length() - 1);
+                boolean found = false;
+                for (String term : terms) {
+                    if (term.startsWith(prefix)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            } else if (!terms.contains(keyword)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> normalize(String... keywords) {
+        List<String> normalized = new ArrayList<String>();
+        if (keywords != null) {
+            for (String keyword : keywords) {
+                if (keyword != null && !keyword.trim().isEmpty()) {
+                    normalized.add(keyword.trim().toLowerCase());
+                }
+            }
+        }
+        return normalized;
+    }
+
+    static Set<String> terms(Entity entity) {
+        Set<String> terms = new HashSet<String>();
+        addTerms(terms, NAME, entity.getName());
+        switch (entity.getEntityType()) {
+        case CLUSTER:
+            addTerms(terms, COLO, ((Cluster) entity).getColo());
+            break;
+
+        case DATABASE:
+            addTerms(terms, COLO, ((Database) entity).getColo());
+            break;
+
+        case FEED:
+            Feed feed = (Feed) entity;
+            if (feed.getGroups() != null) {
+                for (String group : feed.getGroups().split(",")) {
+                    addTerms(terms, GROUP, group);
+                }
+            }
+            if (feed.getACL() != null) {
+                addTerms(terms, OWNER, feed.getACL().getOwner());
+            }
+            addPaths(terms, feed.getLocations());
+            if (feed.getClusters() != null) {
+                for (org.apache.ivory.entity.v0.feed.Cluster cluster : feed.getClusters().getClusters()) {
+                    addCluster(terms, cluster.getName());
+                    addPaths(terms, cluster.getLocations());
+                }
+            }
+            break;
+
+        case PROCESS:
+            Process process = (Process) entity;
+            if (process.getClusters() != null) {
+                for (org.apache.ivory.entity.v0.process.Cluster cluster : process.getClusters().getClusters()) {
+                    addCluster(terms, cluster.getName());
+                }
+            }
+            break;
+        }
+        return terms;
+    }
+
+    private static void addCluster(Set<String> terms, String clusterName) {
+        addTerms(terms, CLUSTER, clusterName);
+        try {
+            Cluster cluster = ConfigurationStore.get().get(EntityType.CLUSTER, clusterName);
+            if (cluster != null) {
+                addTerms(terms, COLO, cluster.getColo());
+            }
+        } catch (IvoryException e) {
+            LOG.warn("Unable to resolve colo of cluster " + clusterName, e);
+        }
+    }
+
+    private static void addPaths(Set<String> terms, Locations locations) {
+        if (locations != null) {
+            for (Location location : locations.getLocations()) {
+                addTerms(terms, PATH, location.getPath());
+            }
+        }
+    }
+
+    private static void addTerms(Set<String> terms, String field, String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+        value = value.trim().toLowerCase();
+        terms.add(field + ":" + value);
+        terms.add(value);
+        for (String word : SEPARATOR.split(VARIABLE.matcher(value).replaceAll("/"))) {
+            if (!word.isEmpty()) {
+                terms.add(field + ":" + word);
+                terms.add(word);
+            }
+        }
+    }
+}
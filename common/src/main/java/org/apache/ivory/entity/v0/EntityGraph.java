@@ -18,8 +18,12 @@
 
 package org.apache.ivory.entity.v0;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -34,13 +38,28 @@ import org.apache.ivory.entity.v0.process.Process;
 import org.apache.ivory.service.ConfigurationChangeListener;
 import org.apache.log4j.Logger;
 
+/**
+ * Index of the relations between entities, maintained as config store
+ * listener. Besides the undirected dependencies (process - feed - cluster), it
+ * keeps the directed data lineage: a feed is upstream of the processes
+ * consuming it, a process is upstream of the feeds it produces.
+ * 
+ * Changes are applied by the (serialized) store notifications, while lookups
+ * may run concurrently from any thread.
+ */
 public class EntityGraph implements ConfigurationChangeListener {
 
     private static Logger LOG = Logger.getLogger(EntityGraph.class);
 
     private static EntityGraph instance = new EntityGraph();
 
-    private Map<Node, Set<Node>> graph = new ConcurrentHashMap<Node, Set<Node>>();
+    private final Map<Node, Set<Node>> graph = new ConcurrentHashMap<Node, Set<Node>>();
+
+    private final Map<Node, Set<Node>> upstream = new ConcurrentHashMap<Node, Set<Node>>();
+
+    private final Map<Node, Set<Node>> downstream = new ConcurrentHashMap<Node, Set<Node>>();
+
+    private final Map<Node, Entity> entities = new ConcurrentHashMap<Node, Entity>();
 
     private EntityGraph() {
     }
@@ -51,11 +70,11 @@ public class EntityGraph implements ConfigurationChangeListener {
 
     public Set<Entity> getDependents(Entity entity) throws IvoryException {
         Node entityNode = new Node(entity.getEntityType(), entity.getName());
-        if (graph.containsKey(entityNode)) {
-            ConfigurationStore store = ConfigurationStore.get();
+        Set<Node> nodes = graph.get(entityNode);
+        if (nodes != null) {
             Set<Entity> dependents = new HashSet<Entity>();
-            for (Node node : graph.get(entityNode)) {
-                Entity dependentEntity = store.get(node.type, node.name);
+            for (Node node : nodes) {
+                Entity dependentEntity = resolve(node);
                 assert dependentEntity != null : "Unable to find " + node;
                 dependents.add(dependentEntity);
             }
@@ -65,12 +84,73 @@ public class EntityGraph implements ConfigurationChangeListener {
         }
     }
 
+    /**
+     * @param entity
+     *            - feed or process whose lineage is looked up
+     * @param depth
+     *            - number of hops to follow (feed to process is one hop), all
+     *            of them if not positive
+     * @return - entities the given entity is derived from, nearest first
+     */
+    public Set<Entity> getUpstream(Entity entity, int depth) throws IvoryException {
+        return traverse(entity, upstream, depth);
+    }
+
+    /**
+     * @param entity
+     *            - feed or process whose lineage is looked up
+     * @param depth
+     *            - number of hops to follow (feed to process is one hop), all
+     *            of them if not positive
+     * @return - entities derived from the given entity, nearest first
+     */
+    public Set<Entity> getDownstream(Entity entity, int depth) throws IvoryException {
+        return traverse(entity, downstream, depth);
+    }
+
+    private Set<Entity> traverse(Entity entity, Map<Node, Set<Node>> edges, int depth) throws IvoryException {
+        Node start = new Node(entity.getEntityType(), entity.getName());
+        Set<Node> visited = new HashSet<Node>();
+        visited.add(start);
+        Set<Entity> lineage = new LinkedHashSet<Entity>();
+        List<Node> frontier = Collections.singletonList(start);
+        for (int hop = 0; !frontier.isEmpty() && (depth <= 0 || hop < depth); hop++) {
+            List<Node> next = new ArrayList<Node>();
+            for (Node node : frontier) {
+                Set<Node> adjacent = edges.get(node);
+                if (adjacent == null)
+                    continue;
+                for (Node adjacentNode : adjacent) {
+                    if (visited.add(adjacentNode)) {
+                        next.add(adjacentNode);
+                        Entity adjacentEntity = resolve(adjacentNode);
+                        if (adjacentEntity != null) {
+                            lineage.add(adjacentEntity);
+                        }
+                    }
+                }
+            }
+            frontier = next;
+        }
+        return lineage;
+    }
+
+    private Entity resolve(Node node) throws IvoryException {
+        Entity entity = entities.get(node);
+        if (entity == null) {
+            entity = ConfigurationStore.get().get(node.type, node.name);
+        }
+        return entity;
+    }
+
     @Override
-    public void onAdd(Entity entity) throws IvoryException {
+    public synchronized void onAdd(Entity entity) throws IvoryException {
+        entities.put(new Node(entity.getEntityType(), entity.getName()), entity);
         Map<Node, Set<Node>> nodeEdges = null;
         switch (entity.getEntityType()) {
             case PROCESS:
                 nodeEdges = getEdgesFor((Process) entity);
+                addLineage((Process) entity);
                 break;
             case FEED:
                 nodeEdges = getEdgesFor((Feed) entity);
@@ -79,23 +159,21 @@ public class EntityGraph implements ConfigurationChangeListener {
         if (nodeEdges == null)
             return;
         LOG.trace("Adding edges for " + entity.getName() + ": " + nodeEdges);
-
-        for (Map.Entry<Node, Set<Node>> entry : nodeEdges.entrySet()) {
-            if (graph.containsKey(entry.getKey())) {
-                graph.get(entry.getKey()).addAll(entry.getValue());
-            } else {
-                graph.put(entry.getKey(), entry.getValue());
-            }
-        }
+        merge(graph, nodeEdges);
         LOG.trace("Merged edges to graph " + entity.getName());
     }
 
     @Override
-    public void onRemove(Entity entity) throws IvoryException {
+    public synchronized void onRemove(Entity entity) throws IvoryException {
+        Node entityNode = new Node(entity.getEntityType(), entity.getName());
+        if (entities.get(entityNode) == entity) {
+            entities.remove(entityNode);
+        }
         Map<Node, Set<Node>> nodeEdges = null;
         switch (entity.getEntityType()) {
             case PROCESS:
                 nodeEdges = getEdgesFor((Process) entity);
+                removeLineage((Process) entity);
                 break;
             case FEED:
                 nodeEdges = getEdgesFor((Feed) entity);
@@ -103,21 +181,75 @@ public class EntityGraph implements ConfigurationChangeListener {
         }
         if (nodeEdges == null)
             return;
+        unmerge(graph, nodeEdges);
+    }
+
+    @Override
+    public synchronized void onChange(Entity oldEntity, Entity newEntity) throws IvoryException {
+        onRemove(oldEntity);
+        onAdd(newEntity);
+    }
 
+    private static void merge(Map<Node, Set<Node>> edges, Map<Node, Set<Node>> nodeEdges) {
         for (Map.Entry<Node, Set<Node>> entry : nodeEdges.entrySet()) {
-            if (graph.containsKey(entry.getKey())) {
-                graph.get(entry.getKey()).removeAll(entry.getValue());
-                if (graph.get(entry.getKey()).isEmpty()) {
-                    graph.remove(entry.getKey());
+            Set<Node> nodes = edges.get(entry.getKey());
+            if (nodes == null) {
+                nodes = Collections.newSetFromMap(new ConcurrentHashMap<Node, Boolean>());
+                edges.put(entry.getKey(), nodes);
+            }
+            nodes.addAll(entry.getValue());
+        }
+    }
+
+    private static void unmerge(Map<Node, Set<Node>> edges, Map<Node, Set<Node>> nodeEdges) {
+        for (Map.Entry<Node, Set<Node>> entry : nodeEdges.entrySet()) {
+            Set<Node> nodes = edges.get(entry.getKey());
+            if (nodes != null) {
+                nodes.removeAll(entry.getValue());
+                if (nodes.isEmpty()) {
+                    edges.remove(entry.getKey());
                 }
             }
         }
     }
 
-    @Override
-    public void onChange(Entity oldEntity, Entity newEntity) throws IvoryException {
-        onRemove(oldEntity);
-        onAdd(newEntity);
+    private void addLineage(Process process) {
+        merge(upstream, getLineageFor(process, true));
+        merge(downstream, getLineageFor(process, false));
+    }
+
+    private void removeLineage(Process process) {
+        unmerge(upstream, getLineageFor(process, true));
+        unmerge(downstream, getLineageFor(process, false));
+    }
+
+    /**
+     * @return - upstream (or downstream) edges contributed by a process: its
+     *         input feeds are upstream of it, its output feeds downstream
+     */
+    private Map<Node, Set<Node>> getLineageFor(Process process, boolean up) {
+        Map<Node, Set<Node>> nodeEdges = new HashMap<Node, Set<Node>>();
+        Node processNode = new Node(EntityType.PROCESS, process.getName());
+        if (process.getInputs() != null) {
+            for (Input input : process.getInputs().getInputs()) {
+                Node feedNode = new Node(EntityType.FEED, input.getFeed());
+                addEdge(nodeEdges, up ? processNode : feedNode, up ? feedNode : processNode);
+            }
+        }
+        if (process.getOutputs() != null) {
+            for (Output output : process.getOutputs().getOutputs()) {
+                Node feedNode = new Node(EntityType.FEED, output.getFeed());
+                addEdge(nodeEdges, up ? feedNode : processNode, up ? processNode : feedNode);
+            }
+        }
+        return nodeEdges;
+    }
+
+    private static void addEdge(Map<Node, Set<Node>> nodeEdges, Node from, Node to) {
+        if (!nodeEdges.containsKey(from)) {
+            nodeEdges.put(from, new HashSet<Node>());
+        }
+        nodeEdges.get(from).add(to);
     }
 
     private Map<Node, Set<Node>> getEdgesFor(Process process) {
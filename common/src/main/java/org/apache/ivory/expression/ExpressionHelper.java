@@ -18,16 +18,23 @@
 
 package org.apache.ivory.expression;
 
+import org.apache.commons.el.Coercions;
+import org.apache.commons.el.Expression;
 import org.apache.commons.el.ExpressionEvaluatorImpl;
+import org.apache.commons.el.ExpressionString;
+import org.apache.commons.el.Logger;
 import org.apache.ivory.IvoryException;
 
 import javax.servlet.jsp.el.ELException;
-import javax.servlet.jsp.el.ExpressionEvaluator;
 import javax.servlet.jsp.el.FunctionMapper;
 import javax.servlet.jsp.el.VariableResolver;
 import java.lang.reflect.Method;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
@@ -42,9 +49,63 @@ public final class ExpressionHelper implements FunctionMapper, VariableResolver
 
     private static final Pattern sysPropertyPattern = Pattern.compile("\\$\\{[A-Za-z0-9_.]+\\}");
 
-    private static final ExpressionEvaluator EVALUATOR = new ExpressionEvaluatorImpl();
+    // parses without caching, as compiled expressions are cached here
+    private static final ExpressionEvaluatorImpl EVALUATOR = new ExpressionEvaluatorImpl(true);
+    private static final Logger EL_LOGGER = new Logger(System.out);
     private static final ExpressionHelper resolver = ExpressionHelper.get();
 
+    private static final Map<String, Method> FUNCTIONS = new HashMap<String, Method>();
+
+    static {
+        for (Method method : ExpressionHelper.class.getDeclaredMethods()) {
+            if (!FUNCTIONS.containsKey(method.getName())) {
+                FUNCTIONS.put(method.getName(), method);
+            }
+        }
+    }
+
+    // durations, such as hours(2), don't depend on the reference date or
+    // variables, so are evaluated once
+    private static final Pattern DURATION_PATTERN = Pattern.compile(
+            "\\$\\{\\s*(minutes|hours|days|months|years)\\s*\\(\\s*(-?\\d{1,9})\\s*\\)\\s*\\}");
+
+    private static final int MAX_CACHED_EXPRESSIONS = 1000;
+
+    private static final Map<String, CompiledExpression> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, CompiledExpression>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+                    return size() > MAX_CACHED_EXPRESSIONS;
+                }
+            });
+
+    private static final class CompiledExpression {
+        private final Object parsed;
+        private final Class<?> type;
+        private final boolean constant;
+
+        private CompiledExpression(Object parsed, Class<?> type, boolean constant) {
+            this.parsed = parsed;
+            this.type = type;
+            this.constant = constant;
+        }
+
+        private Object evaluate() throws ELException {
+            if (constant) {
+                return parsed;
+            }
+            Object value;
+            if (parsed instanceof Expression) {
+                value = ((Expression) parsed).evaluate(resolver, resolver, EL_LOGGER);
+            } else if (parsed instanceof ExpressionString) {
+                value = ((ExpressionString) parsed).evaluate(resolver, resolver, EL_LOGGER);
+            } else {
+                value = parsed;
+            }
+            return Coercions.coerce(value, type, EL_LOGGER);
+        }
+    }
+
     public static ExpressionHelper get() {
         return instance;
     }
@@ -58,19 +119,40 @@ public final class ExpressionHelper implements FunctionMapper, VariableResolver
     @SuppressWarnings("unchecked")
     public <T> T evaluateFullExpression(String expression, Class<T> clazz) throws IvoryException {
         try {
-            return (T) EVALUATOR.evaluate(expression, clazz, resolver, resolver);
+            return (T) compile(expression, clazz).evaluate();
         } catch (ELException e) {
             throw new IvoryException("Unable to evaluate " + expression, e);
         }
     }
 
+    private CompiledExpression compile(String expression, Class<?> clazz) throws ELException {
+        String key = clazz.getName() + ":" + expression;
+        CompiledExpression compiled = CACHE.get(key);
+        if (compiled == null) {
+            Matcher duration = DURATION_PATTERN.matcher(expression);
+            if (duration.matches()) {
+                Object value;
+                try {
+                    value = FUNCTIONS.get(duration.group(1)).invoke(null, Integer.valueOf(duration.group(2)));
+                } catch (Exception e) {
+                    throw new ELException(e);
+                }
+                compiled = new CompiledExpression(Coercions.coerce(value, clazz, EL_LOGGER), clazz, true);
+            } else {
+                compiled = new CompiledExpression(EVALUATOR.parseExpressionString(expression), clazz, false);
+            }
+            CACHE.put(key, compiled);
+        }
+        return compiled;
+    }
+
     @Override
     public Method resolveFunction(String prefix, String name) {
-        for (Method method : ExpressionHelper.class.getDeclaredMethods()) {
-            if (method.getName().equals(name))
-                return method;
+        Method method = FUNCTIONS.get(name);
+        if (method == null) {
+            throw new UnsupportedOperationException("Not found " + prefix + ":" + name);
         }
-        throw new UnsupportedOperationException("Not found " + prefix + ":" + name);
+        return method;
     }
 
     public void setPropertiesForVariable(Properties properties) {
@@ -54,7 +54,7 @@ public class FeedGroupMap implements ConfigurationChangeListener {
 	}
 
 	@Override
-	public void onAdd(Entity entity) throws IvoryException {
+	public synchronized void onAdd(Entity entity) throws IvoryException {
 
 		if (entity.getEntityType().equals(EntityType.FEED)) {
 			Feed feed = (Feed) entity;
@@ -68,7 +68,7 @@ public class FeedGroupMap implements ConfigurationChangeListener {
 	}
 
 	@Override
-	public void onRemove(Entity entity) throws IvoryException {
+	public synchronized void onRemove(Entity entity) throws IvoryException {
 		if (entity.getEntityType().equals(EntityType.FEED)) {
 			Feed feed = (Feed) entity;
 			if (StringUtils.isEmpty(feed.getGroups())) {
@@ -87,7 +87,7 @@ public class FeedGroupMap implements ConfigurationChangeListener {
 	}
 
 	@Override
-	public void onChange(Entity oldEntity, Entity newEntity)
+	public synchronized void onChange(Entity oldEntity, Entity newEntity)
 			throws IvoryException {
 		onRemove(oldEntity);
 		onAdd(newEntity);
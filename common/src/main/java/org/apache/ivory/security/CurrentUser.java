@@ -52,6 +52,19 @@ public final class CurrentUser {
         return instance.currentSubject.get();
     }
 
+    /**
+     * Makes the given subject the current one of the calling thread, or
+     * logs out if it is null, such as when handing a request over to a
+     * pooled thread and back.
+     */
+    public static void setSubject(Subject subject) {
+        if (subject == null) {
+            instance.currentSubject.remove();
+        } else {
+            instance.currentSubject.set(subject);
+        }
+    }
+
     public static String getUser() {
         String user = getUserInternal();
         if (user == null) {
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.service;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.aspect.GenericAlert;
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.log4j.Logger;
+
+/**
+ * Hands config store changes to a listener on a thread of its own, in the
+ * order they were queued, so that slow listeners don't hold up the request
+ * that made the change. At most backlog changes are queued, after which
+ * further changes wait for the listener up to a timeout and then fail.
+ * Failures of the listener are logged and do not reach the store.
+ */
+public class AsyncConfigurationChangeListener implements ConfigurationChangeListener {
+
+    private static final Logger LOG = Logger.getLogger(AsyncConfigurationChangeListener.class);
+
+    private enum EventType {
+        ADD, CHANGE, REMOVE
+    }
+
+    private static class Event {
+        private final EventType type;
+        private final Entity oldEntity;
+        private final Entity entity;
+        private final long queuedAt = System.nanoTime();
+
+        private Event(EventType type, Entity oldEntity, Entity entity) {
+            this.type = type;
+            this.oldEntity = oldEntity;
+            this.entity = entity;
+        }
+    }
+
+    private final ConfigurationChangeListener listener;
+    private final String name;
+    private final BlockingQueue<Event> queue;
+    private final long timeoutMillis;
+    private final Thread dispatcher;
+
+    private long queued;
+    private long dispatched;
+    private long failed;
+    private long totalLatency;
+    private long maxLatency;
+
+    public AsyncConfigurationChangeListener(ConfigurationChangeListener listener, int backlog) {
+        this(listener, backlog, 10000);
+    }
+
+    public AsyncConfigurationChangeListener(ConfigurationChangeListener listener, int backlog, long timeoutMillis) {
+        this.listener = listener;
+        this.name = listener.getClass().getSimpleName();
+        this.queue = new LinkedBlockingQueue<Event>(backlog);
+        this.timeoutMillis = timeoutMillis;
+        this.dispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "ConfigListener-" + name);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    public ConfigurationChangeListener getListener() {
+        return listener;
+    }
+
+    @Override
+    public void onAdd(Entity entity) throws IvoryException {
+        enqueue(new Event(EventType.ADD, null, entity));
+    }
+
+    @Override
+    public void onRemove(Entity entity) throws IvoryException {
+        enqueue(new Event(EventType.REMOVE, null, entity));
+    }
+
+    @Override
+    public void onChange(Entity oldEntity, Entity newEntity) throws IvoryException {
+        enqueue(new Event(EventType.CHANGE, oldEntity, newEntity));
+    }
+
+    private void enqueue(Event event) throws IvoryException {
+        // the store notifies listeners of the changes to an entity holding
+        // its lock, so they are queued in the order they were made
+        boolean offered;
+        try {
+            offered = queue.offer(event, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IvoryException("Interrupted while queueing change of " + event.entity.toShortString() + " for "
+                    + name, e);
+        }
+        if (!offered) {
+            throw new IvoryException("Backlog of " + name + " is full, unable to queue change of "
+                    + event.entity.toShortString() + " within " + timeoutMillis + " ms");
+        }
+        synchronized (this) {
+            queued++;
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            Event event;
+            try {
+                event = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long lag = System.nanoTime() - event.queuedAt;
+            long start = System.nanoTime();
+            boolean succeeded = true;
+            try {
+                switch (event.type) {
+                case ADD:
+                    listener.onAdd(event.entity);
+                    break;
+
+                case CHANGE:
+                    listener.onChange(event.oldEntity, event.entity);
+                    break;
+
+                case REMOVE:
+                    listener.onRemove(event.entity);
+                    break;
+                }
+            } catch (Throwable e) {
+                succeeded = false;
+                LOG.warn("Encountered exception while notifying " + name + " of " + event.type + " of "
+                        + event.entity.toShortString(), e);
+            }
+            long latency = System.nanoTime() - start;
+            GenericAlert.instrumentListenerEvent(name, event.type.name(), event.entity.getEntityType().name(),
+                    event.entity.getName(), String.valueOf(TimeUnit.NANOSECONDS.toMillis(lag)), latency);
+
+            synchronized (this) {
+                dispatched++;
+                if (!succeeded) {
+                    failed++;
+                }
+                totalLatency += latency;
+                maxLatency = Math.max(maxLatency, latency);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits for the listener to handle all the changes queued so far.
+     *
+     * @return - true if the listener caught up within the timeout
+     */
+    public synchronized boolean awaitCatchUp(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = queued;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (dispatched < target) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * @return - number of changes the listener is yet to handle
+     */
+    public synchronized long getLag() {
+        // a change can be dispatched before it is counted as queued
+        return Math.max(0, queued - dispatched);
+    }
+
+    /**
+     * @return - milliseconds the oldest change yet to be handled has waited
+     */
+    public long getLagMillis() {
+        Event oldest = queue.peek();
+        return oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.queuedAt);
+    }
+
+    public synchronized long getDispatched() {
+        return dispatched;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return - average time in milliseconds the listener took per change
+     */
+    public synchronized double getAverageLatencyMillis() {
+        return dispatched == 0 ? 0 : totalLatency / (dispatched * 1000000.0);
+    }
+
+    public synchronized long getMaxLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatency);
+    }
+
+    public void close() {
+        dispatcher.interrupt();
+    }
+
+    @Override
+    public String toString() {
+        return "async " + listener;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.transaction;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.ivory.entity.v0.EntityType;
+
+/**
+ * Persistence for the configuration store as a snapshot of all entities plus
+ * a log of the changes made since the snapshot was taken.
+ */
+public interface Journal {
+
+    /**
+     * Entities a snapshot is written from, as held by the store.
+     */
+    interface EntitySource {
+
+        /**
+         * @return - entities of the store by type, reflecting at least every
+         *         change recorded before the call
+         */
+        Map<EntityType, Collection<Entity>> getEntities() throws IvoryException;
+    }
+
+    /**
+     * Opens the journal kept under the given directory, whose snapshots are
+     * written from the given source.
+     */
+    void open(FileSystem fs, Path path, EntitySource source) throws IvoryException;
+
+    /**
+     * @return - entities as of the last recorded change, by type and name;
+     *         null if nothing was ever recorded in this journal
+     */
+    Map<EntityType, Map<String, Entity>> recover() throws IvoryException;
+
+    /**
+     * Records that the entity was added or replaced.
+     */
+    void record(Entity entity) throws IvoryException;
+
+    /**
+     * Records that the entity was removed.
+     */
+    void remove(EntityType type, String name) throws IvoryException;
+
+    /**
+     * Writes a fresh snapshot and drops the changes it covers.
+     */
+    void compact() throws IvoryException;
+
+    void close();
+}
@@ -0,0 +1,431 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.transaction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.ivory.entity.v0.EntityType;
+import org.apache.ivory.util.StartupProperties;
+import org.apache.log4j.Logger;
+
+/**
+ * Journal kept on a (shared) hadoop file system. Changes are appended to
+ * numbered segments (journal-N) and synced after every record. A snapshot
+ * (snapshot-N) is a deflated dump of all entities as of the start of segment N,
+ * so recovery loads the latest snapshot and replays segments N and later.
+ * Once config.store.journal.compact.threshold records are appended to a
+ * segment, a new snapshot is written in the background from the entities of
+ * the store and older files are dropped. The snapshot may also hold changes
+ * recorded in segment N, which replaying them again leaves as they are.
+ *
+ * Every record is framed as length, bytes, crc32, so that a record torn by a
+ * crash at the tail of a segment is detected and ignored.
+ */
+public class SharedFileSystemJournal implements Journal {
+
+    private static final Logger LOG = Logger.getLogger(SharedFileSystemJournal.class);
+
+    private static final String SNAPSHOT = "snapshot-";
+    private static final String SEGMENT = "journal-";
+    private static final String TMP = ".tmp";
+    private static final int MAGIC = 0x49564a4c;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private static final byte PUT = 0;
+    private static final byte DELETE = 1;
+
+    private final int compactThreshold = Integer.parseInt(StartupProperties.get().getProperty(
+            "config.store.journal.compact.threshold", "1000"));
+
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "JournalCompactor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Object compactLock = new Object();
+
+    private FileSystem fs;
+    private Path path;
+    private EntitySource source;
+    private FSDataOutputStream out;
+    private long segment;
+    private int records;
+    private boolean compacting;
+
+    @Override
+    public void open(FileSystem fs, Path path, EntitySource source) throws IvoryException {
+        this.fs = fs;
+        this.path = path;
+        this.source = source;
+        try {
+            fs.mkdirs(path);
+        } catch (IOException e) {
+            throw new IvoryException("Unable to create journal directory " + path, e);
+        }
+    }
+
+    @Override
+    public synchronized Map<EntityType, Map<String, Entity>> recover() throws IvoryException {
+        try {
+            long snapshot = -1;
+            SortedSet<Long> segments = new TreeSet<Long>();
+            FileStatus[] files = fs.listStatus(path);
+            if (files != null) {
+                for (FileStatus file : files) {
+                    String name = file.getPath().getName();
+                    if (name.endsWith(TMP)) {
+                        fs.delete(file.getPath(), false);
+                    } else if (name.startsWith(SNAPSHOT)) {
+                        snapshot = Math.max(snapshot, Long.parseLong(name.substring(SNAPSHOT.length())));
+                    } else if (name.startsWith(SEGMENT)) {
+                        segments.add(Long.parseLong(name.substring(SEGMENT.length())));
+                    }
+                }
+            }
+
+            // serialized entities as of the last record
+            Map<EntityType, Map<String, byte[]>> state = new HashMap<EntityType, Map<String, byte[]>>();
+            for (EntityType type : EntityType.values()) {
+                state.put(type, new HashMap<String, byte[]>());
+            }
+            long last = -1;
+            if (snapshot >= 0) {
+                readSnapshot(snapshot, state);
+                last = snapshot;
+            }
+            for (long seq : segments.tailSet(Math.max(snapshot, 0))) {
+                replay(seq, state);
+                last = seq;
+            }
+            startSegment(last + 1);
+
+            if (snapshot < 0 && segments.isEmpty()) {
+                return null;
+            }
+            LOG.info("Recovered journal " + path + " from snapshot " + snapshot + " and " + segments.size()
+                    + " segment(s)");
+            return decode(state);
+        } catch (IOException e) {
+            throw new IvoryException("Unable to recover journal " + path, e);
+        }
+    }
+
+    @Override
+    public void record(Entity entity) throws IvoryException {
+        byte[] payload = serialize(entity);
+        synchronized (this) {
+            append(PUT, entity.getEntityType(), entity.getName(), payload);
+        }
+    }
+
+    @Override
+    public void remove(EntityType type, String name) throws IvoryException {
+        synchronized (this) {
+            append(DELETE, type, name, new byte[0]);
+        }
+    }
+
+    private void append(byte op, EntityType type, String name, byte[] payload) throws IvoryException {
+        if (out == null) {
+            throw new IvoryException("Journal " + path + " is not recovered yet");
+        }
+        try {
+            writeRecord(out, op, type, name, payload);
+            out.sync();
+        } catch (IOException e) {
+            throw new IvoryException("Unable to append to journal " + path, e);
+        }
+        if (++records >= compactThreshold && !compacting) {
+            compacting = true;
+            compactor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compact();
+                    } catch (IvoryException e) {
+                        LOG.warn("Journal compaction failed", e);
+                    } finally {
+                        synchronized (SharedFileSystemJournal.this) {
+                            compacting = false;
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public void compact() throws IvoryException {
+        synchronized (compactLock) {
+            long seq;
+            try {
+                synchronized (this) {
+                    if (out == null) {
+                        throw new IvoryException("Journal " + path + " is not recovered yet");
+                    }
+                    seq = segment + 1;
+                    startSegment(seq);
+                }
+                // changes from here on go to segment seq, replayed over the
+                // snapshot
+                writeSnapshot(seq, source.getEntities());
+                FileStatus[] files = fs.listStatus(path);
+                for (FileStatus file : files) {
+                    String name = file.getPath().getName();
+                    if ((name.startsWith(SNAPSHOT) && !name.endsWith(TMP)
+                            && Long.parseLong(name.substring(SNAPSHOT.length())) < seq)
+                            || (name.startsWith(SEGMENT) && Long.parseLong(name.substring(SEGMENT.length())) < seq)) {
+                        fs.delete(file.getPath(), false);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IvoryException("Unable to compact journal " + path, e);
+            }
+            LOG.info("Compacted journal " + path + " into snapshot " + seq);
+        }
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdown();
+        synchronized (this) {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    LOG.warn("Unable to close journal " + path, e);
+                }
+                out = null;
+            }
+        }
+    }
+
+    private void startSegment(long seq) throws IOException {
+        if (out != null) {
+            out.close();
+        }
+        out = fs.create(new Path(path, SEGMENT + seq), false);
+        out.writeInt(MAGIC);
+        out.sync();
+        segment = seq;
+        records = 0;
+    }
+
+    private void writeSnapshot(long seq, Map<EntityType, Collection<Entity>> entities) throws IOException,
+            IvoryException {
+        Path tmp = new Path(path, SNAPSHOT + seq + TMP);
+        int count = 0;
+        for (Collection<Entity> entityList : entities.values()) {
+            count += entityList.size();
+        }
+        DataOutputStream snapshot = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(
+                fs.create(tmp, true))));
+        try {
+            snapshot.writeInt(MAGIC);
+            snapshot.writeInt(count);
+            for (Map.Entry<EntityType, Collection<Entity>> entry : entities.entrySet()) {
+                for (Entity entity : entry.getValue()) {
+                    writeRecord(snapshot, PUT, entry.getKey(), entity.getName(), serialize(entity));
+                }
+            }
+        } finally {
+            snapshot.close();
+        }
+        if (!fs.rename(tmp, new Path(path, SNAPSHOT + seq))) {
+            throw new IOException("Unable to rename " + tmp);
+        }
+    }
+
+    private void readSnapshot(long seq, Map<EntityType, Map<String, byte[]>> state) throws IOException {
+        Path snapshotPath = new Path(path, SNAPSHOT + seq);
+        DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(fs.open(snapshotPath))));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(snapshotPath + " is not a journal snapshot");
+            }
+            int count = in.readInt();
+            for (int index = 0; index < count; index++) {
+                Record record = readRecord(in);
+                if (record == null) {
+                    throw new IOException(snapshotPath + " is truncated at record " + index + " of " + count);
+                }
+                apply(record, state);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void replay(long seq, Map<EntityType, Map<String, byte[]>> state) throws IOException {
+        Path segmentPath = new Path(path, SEGMENT + seq);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(fs.open(segmentPath)));
+        try {
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(segmentPath + " is not a journal segment");
+                }
+            } catch (EOFException e) {
+                return; // segment created but never written to
+            }
+            int count = 0;
+            try {
+                Record record;
+                while ((record = readRecord(in)) != null) {
+                    apply(record, state);
+                    count++;
+                }
+            } catch (IOException e) {
+                LOG.warn("Ignoring tail of " + segmentPath + " after " + count + " records", e);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void apply(Record record, Map<EntityType, Map<String, byte[]>> state) {
+        if (record.op == PUT) {
+            state.get(record.type).put(record.name, record.payload);
+        } else {
+            state.get(record.type).remove(record.name);
+        }
+    }
+
+    private Map<EntityType, Map<String, Entity>> decode(Map<EntityType, Map<String, byte[]>> state)
+            throws IvoryException {
+        Map<EntityType, Map<String, Entity>> entities = new HashMap<EntityType, Map<String, Entity>>();
+        for (Map.Entry<EntityType, Map<String, byte[]>> entry : state.entrySet()) {
+            EntityType type = entry.getKey();
+            Map<String, Entity> entityMap = new HashMap<String, Entity>();
+            try {
+                // entities were validated when they were submitted
+                Unmarshaller unmarshaller = type.getUnmarshaller(false);
+                for (Map.Entry<String, byte[]> entity : entry.getValue().entrySet()) {
+                    entityMap.put(entity.getKey(), (Entity) unmarshaller.unmarshal(new ByteArrayInputStream(entity.getValue())));
+                }
+            } catch (JAXBException e) {
+                throw new IvoryException("Unable to un-marshall journal entries for " + type, e);
+            }
+            entities.put(type, entityMap);
+        }
+        return entities;
+    }
+
+    private byte[] serialize(Entity entity) throws IvoryException {
+        try {
+            Marshaller marshaller = entity.getEntityType().getMarshaller(false);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            marshaller.marshal(entity, bytes);
+            return bytes.toByteArray();
+        } catch (JAXBException e) {
+            throw new IvoryException("Unable to serialize " + entity.toShortString(), e);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte op, EntityType type, String name, byte[] payload)
+            throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(payload.length + 64);
+        DataOutputStream record = new DataOutputStream(buffer);
+        record.writeByte(op);
+        record.writeUTF(type.name());
+        record.writeUTF(name);
+        record.writeInt(payload.length);
+        record.write(payload);
+        record.flush();
+
+        byte[] bytes = buffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeLong(crc.getValue());
+    }
+
+    /**
+     * @return - next record, null at the end of the stream
+     * @throws IOException
+     *             if the record is truncated or corrupt
+     */
+    private static Record readRecord(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length <= 0 || length > MAX_RECORD_SIZE) {
+            throw new IOException("Invalid record length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        long checksum = in.readLong();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if (crc.getValue() != checksum) {
+            throw new IOException("Checksum mismatch");
+        }
+
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+        Record result = new Record();
+        result.op = record.readByte();
+        result.type = EntityType.valueOf(record.readUTF());
+        result.name = record.readUTF();
+        result.payload = new byte[record.readInt()];
+        record.readFully(result.payload);
+        return result;
+    }
+
+    private static class Record {
+        private byte op;
+        private EntityType type;
+        private String name;
+        private byte[] payload;
+    }
+}
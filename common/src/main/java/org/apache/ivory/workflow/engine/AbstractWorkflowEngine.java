@@ -72,6 +72,12 @@ public abstract class AbstractWorkflowEngine {
 	public abstract String getWorkflowStatus(String cluster, String jobId) throws IvoryException;
 	
 	public abstract String getWorkflowProperty(String cluster, String jobId , String property) throws IvoryException;
+
+	/**
+	 * @return properties a workflow was run with, fetched together; they may
+	 *         be cached for a short while
+	 */
+	public abstract Properties getWorkflowProperties(String cluster, String jobId) throws IvoryException;
 	
 	public abstract InstancesResult  getJobDetails(String cluster, String jobId) throws IvoryException;
 }
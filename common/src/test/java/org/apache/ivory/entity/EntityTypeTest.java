@@ -18,12 +18,36 @@
 
 package org.apache.ivory.entity;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.apache.ivory.entity.v0.Entity;
 import org.apache.ivory.entity.v0.EntityType;
+import org.apache.ivory.entity.v0.feed.Feed;
+import org.apache.log4j.Logger;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+/**
+ * Tests of entity types and their cached marshallers. The benchmark group,
+ * run with -Pbenchmark, times round trips with and without the cache.
+ */
 public class EntityTypeTest {
 
+	private static Logger LOG = Logger.getLogger(EntityTypeTest.class);
+
 	@Test
 	public void testGetEntityClass() {
 		Assert.assertEquals(EntityType.PROCESS.getEntityClass().getName(),
@@ -36,4 +60,116 @@ public class EntityTypeTest {
 		Assert.assertTrue(EntityType.FEED.isSchedulable());
 		Assert.assertFalse(EntityType.CLUSTER.isSchedulable());
 	}
+
+	@Test
+	public void testMarshallersCachedPerThread() throws Exception {
+		Assert.assertSame(EntityType.FEED.getMarshaller(), EntityType.FEED.getMarshaller());
+		Assert.assertNotSame(EntityType.FEED.getMarshaller(), EntityType.FEED.getMarshaller(false));
+		Assert.assertNotSame(EntityType.FEED.getMarshaller(), EntityType.PROCESS.getMarshaller());
+		Assert.assertSame(EntityType.FEED.getUnmarshaller(), EntityType.FEED.getUnmarshaller());
+		Assert.assertNotNull(EntityType.FEED.getUnmarshaller().getSchema());
+		Assert.assertNull(EntityType.FEED.getUnmarshaller(false).getSchema());
+
+		final Object[] other = new Object[1];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					other[0] = EntityType.FEED.getMarshaller();
+				} catch (Exception e) {
+					other[0] = e;
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+		Assert.assertTrue(other[0] instanceof Marshaller);
+		Assert.assertNotSame(other[0], EntityType.FEED.getMarshaller());
+	}
+
+	@Test
+	public void testInvalidXmlRejectedAfterReuse() throws Exception {
+		Unmarshaller unmarshaller = EntityType.FEED.getUnmarshaller();
+		try {
+			unmarshaller.unmarshal(new StringReader("<feed xmlns=\"uri:ivory:feed:0.1\" name=\"bad\"/>"));
+			Assert.fail("Expected validation failure");
+		} catch (Exception expected) {
+			// expected
+		}
+		Entity feed = (Entity) EntityType.FEED.getUnmarshaller().unmarshal(
+				getClass().getResource("/config/feed/feed-0.1.xml"));
+		Assert.assertEquals(Entity.fromString(EntityType.FEED, feed.toString()).getName(), feed.getName());
+	}
+
+	@Test
+	public void testConcurrentRoundTrips() throws Exception {
+		final Feed feed = (Feed) EntityType.FEED.getUnmarshaller().unmarshal(
+				getClass().getResource("/config/feed/feed-0.1.xml"));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int thread = 0; thread < 4; thread++) {
+				final String prefix = "feed" + thread + "-";
+				final String group = "group" + thread;
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						// each thread reads back what it wrote, through
+						// marshallers no other thread uses
+						for (int index = 0; index < 200; index++) {
+							Feed copy = (Feed) feed.clone();
+							copy.setName(prefix + index);
+							copy.setGroups(group);
+							Feed read = (Feed) Entity.fromString(EntityType.FEED, copy.toString());
+							Assert.assertEquals(read.getName(), prefix + index);
+							Assert.assertEquals(read.getGroups(), group);
+							Assert.assertEquals(read.getFrequency(), feed.getFrequency());
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Compares entity round trip (marshal + validating unmarshal) throughput of
+	 * marshallers created per call, as was done before, against the cached
+	 * ones.
+	 */
+	@Test(groups = "benchmark")
+	public void testRoundTripThroughput() throws Exception {
+		Feed feed = (Feed) EntityType.FEED.getUnmarshaller().unmarshal(
+				getClass().getResource("/config/feed/feed-0.1.xml"));
+		JAXBContext context = JAXBContext.newInstance(Feed.class);
+		Schema schema = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema").newSchema(
+				getClass().getResource(EntityType.FEED.getSchemaFile()));
+		int iterations = 2000;
+
+		long start = System.nanoTime();
+		for (int index = 0; index < iterations; index++) {
+			Marshaller marshaller = context.createMarshaller();
+			marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+			StringWriter xml = new StringWriter();
+			marshaller.marshal(feed, xml);
+			Unmarshaller unmarshaller = context.createUnmarshaller();
+			unmarshaller.setSchema(schema);
+			Assert.assertNotNull(unmarshaller.unmarshal(new StringReader(xml.toString())));
+		}
+		long uncached = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int index = 0; index < iterations; index++) {
+			Assert.assertNotNull(feed.clone());
+		}
+		long cached = System.nanoTime() - start;
+
+		LOG.info("Feed round trips/sec: uncached " + iterations * 1000000000L / uncached + ", cached "
+				+ iterations * 1000000000L / cached);
+	}
 }
@@ -63,6 +63,45 @@ public class EntityUtilTest extends AbstractTestBase{
         Assert.assertEquals(view.getClusters().getClusters().size(), 2);
     }
     
+    @Test
+    public void testDigestCachedForStoreEntities() throws Exception {
+        Process process = (Process) EntityType.PROCESS.getUnmarshaller().unmarshal(
+                getClass().getResourceAsStream(PROCESS_XML));
+        String md5 = EntityUtil.md5(process);
+        process.getClusters().getClusters().get(0).getValidity().setEnd(SchemaHelper.parseDateUTC("2013-04-21T00:00Z"));
+        String changedMd5 = EntityUtil.md5(process);
+        Assert.assertFalse(md5.equals(changedMd5));
+
+        // an equal entity that is not the cached instance is not served from the cache
+        Process other = (Process) EntityType.PROCESS.getUnmarshaller().unmarshal(
+                getClass().getResourceAsStream(PROCESS_XML));
+        EntityDigestCache.get().onAdd(process);
+        try {
+            Assert.assertEquals(EntityUtil.md5(process), changedMd5);
+            Assert.assertSame(EntityUtil.stringOf(process), EntityUtil.stringOf(process));
+            Assert.assertEquals(EntityUtil.md5(other), md5);
+
+            EntityDigestCache.get().onChange(process, other);
+            Assert.assertEquals(EntityUtil.md5(other), md5);
+            Assert.assertEquals(EntityUtil.md5(process), changedMd5);
+        } finally {
+            EntityDigestCache.get().onRemove(process);
+            EntityDigestCache.get().onRemove(other);
+        }
+    }
+
+    @Test
+    public void testCanonicalForm() throws Exception {
+        Process process = (Process) EntityType.PROCESS.getUnmarshaller().unmarshal(
+                getClass().getResourceAsStream(PROCESS_XML));
+        String canonicalForm = EntityUtil.stringOf(process);
+        Assert.assertTrue(canonicalForm.contains("name=" + process.getName() + "\n"));
+        Assert.assertTrue(canonicalForm.contains("clusters.clusters[0].validity.end="
+                + SchemaHelper.formatDateUTC(process.getClusters().getClusters().get(0).getValidity().getEnd()) + "\n"));
+        Assert.assertTrue(canonicalForm.contains("frequency=" + process.getFrequency().toString() + "\n"));
+        Assert.assertFalse(canonicalForm.contains("class="));
+    }
+
     @Test
     public void testEquals() throws Exception {
         Process process1 = (Process) EntityType.PROCESS.getUnmarshaller().unmarshal(
@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.entity;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.apache.ivory.entity.v0.Frequency;
+import org.apache.ivory.entity.v0.Frequency.TimeUnit;
+import org.apache.ivory.entity.v0.SchemaHelper;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks instance calendars against instances found by stepping a calendar,
+ * as EntityUtil used to, for random starts, frequencies and time zones, and
+ * pins down where the two differ. The lookup overhead is measured by the
+ * benchmark group test, run with -Pbenchmark; the number of calls timed can
+ * be changed with -Divory.calendar.benchmark.size.
+ */
+public class InstanceCalendarTest {
+
+    private static Logger LOG = Logger.getLogger(InstanceCalendarTest.class);
+
+    private static final int SIZE = Integer.getInteger("ivory.calendar.benchmark.size", 100000);
+
+    private static final TimeZone[] ZONES = { TimeZone.getTimeZone("UTC"),
+            TimeZone.getTimeZone("America/Los_Angeles"), TimeZone.getTimeZone("Europe/London"),
+            TimeZone.getTimeZone("Asia/Kolkata") };
+
+    private static final long MINUTE_IN_MS = 60000L;
+    private static final long DAY_IN_MS = 86400000L;
+    private static final long MONTH_IN_MS = 2592000000L;
+
+    // the old EntityUtil.getNextStartTime
+    private static Date legacyNextStartTime(Date startTime, Frequency frequency, TimeZone timezone, Date now) {
+        if (startTime.after(now))
+            return startTime;
+
+        Calendar startCal = Calendar.getInstance(timezone);
+        startCal.setTime(startTime);
+        int count = estimate(startTime, frequency, now);
+        if (count > 2) {
+            startCal.add(frequency.getTimeUnit().getCalendarUnit(),
+                    ((count - 2) / frequency.getFrequency()) * frequency.getFrequency());
+        }
+        while (startCal.getTime().before(now)) {
+            startCal.add(frequency.getTimeUnit().getCalendarUnit(), frequency.getFrequency());
+        }
+        return startCal.getTime();
+    }
+
+    // the old EntityUtil.getInstanceSequence
+    private static int legacyInstanceSequence(Date startTime, Frequency frequency, TimeZone tz, Date instanceTime) {
+        if (startTime.after(instanceTime))
+            return -1;
+
+        Calendar startCal = Calendar.getInstance(tz);
+        startCal.setTime(startTime);
+        int count = estimate(startTime, frequency, instanceTime);
+        if (count > 2) {
+            startCal.add(frequency.getTimeUnit().getCalendarUnit(),
+                    (count / frequency.getFrequency()) * frequency.getFrequency());
+            count = (count / frequency.getFrequency());
+        } else {
+            count = 0;
+        }
+        while (startCal.getTime().before(instanceTime)) {
+            startCal.add(frequency.getTimeUnit().getCalendarUnit(), frequency.getFrequency());
+            count++;
+        }
+        return count + 1;
+    }
+
+    private static int estimate(Date startTime, Frequency frequency, Date time) {
+        long span = time.getTime() - startTime.getTime();
+        switch (frequency.getTimeUnit()) {
+        case months:
+            return (int) (span / MONTH_IN_MS);
+        case days:
+            return (int) (span / DAY_IN_MS);
+        case hours:
+            return (int) (span / (60 * MINUTE_IN_MS));
+        default:
+            return (int) (span / MINUTE_IN_MS);
+        }
+    }
+
+    private static class Case {
+        private final Date start;
+        private final Frequency frequency;
+        private final TimeZone timeZone;
+
+        private Case(Date start, Frequency frequency, TimeZone timeZone) {
+            this.start = start;
+            this.frequency = frequency;
+            this.timeZone = timeZone;
+        }
+
+        @Override
+        public String toString() {
+            return SchemaHelper.formatDateUTC(start) + " " + frequency + " " + timeZone.getID();
+        }
+    }
+
+    /**
+     * Stepping a calendar drifts off the wall clock time of the start after a
+     * daylight saving gap, and off the day of month after a short month, so
+     * starts are kept clear of both. Month spans are kept within 4 years, as
+     * the old estimate overshoots beyond about 5.
+     */
+    private static Case randomCase(Random random, TimeUnit timeUnit) {
+        int[] maxFrequency = { 60, 24, 31, 12 };
+        Frequency frequency = new Frequency(1 + random.nextInt(maxFrequency[timeUnit.ordinal()]), timeUnit);
+        TimeZone timeZone = ZONES[random.nextInt(ZONES.length)];
+
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.clear();
+        calendar.set(2005 + random.nextInt(8), random.nextInt(12), 1 + random.nextInt(28),
+                4 + random.nextInt(20), random.nextInt(60));
+        return new Case(calendar.getTime(), frequency, timeZone);
+    }
+
+    private static Date randomTime(Random random, Case c) {
+        long span = (c.frequency.getTimeUnit() == TimeUnit.months ? 4 * 365 : 3 * 365) * DAY_IN_MS;
+        long offset = (long) (random.nextDouble() * span) - DAY_IN_MS;
+        return new Date((c.start.getTime() + offset) / MINUTE_IN_MS * MINUTE_IN_MS);
+    }
+
+    @Test
+    public void testAgainstStepping() throws Exception {
+        Random random = new Random(7);
+        for (TimeUnit timeUnit : TimeUnit.values()) {
+            for (int index = 0; index < 2000; index++) {
+                Case c = randomCase(random, timeUnit);
+                InstanceCalendar calendar = new InstanceCalendar(c.start, c.frequency, c.timeZone);
+                for (int time = 0; time < 5; time++) {
+                    Date now = randomTime(random, c);
+                    Date next = legacyNextStartTime(c.start, c.frequency, c.timeZone, now);
+                    Assert.assertEquals(calendar.getNextStartTime(now), next, c + " at " + now);
+                    int sequence = legacyInstanceSequence(c.start, c.frequency, c.timeZone, now);
+                    Assert.assertEquals(calendar.getInstanceSequence(now), sequence, c + " at " + now);
+                    // as looked up without a calendar of their own
+                    Assert.assertEquals(InstanceCalendar.getNextStartTime(c.start, c.frequency, c.timeZone, now),
+                            next, c + " at " + now);
+                    Assert.assertEquals(InstanceCalendar.getInstanceSequence(c.start, c.frequency, c.timeZone, now),
+                            sequence, c + " at " + now);
+                    // instances themselves
+                    Assert.assertEquals(calendar.getInstanceSequence(next),
+                            legacyInstanceSequence(c.start, c.frequency, c.timeZone, next), c + " at " + next);
+                    if (sequence > 0) {
+                        Assert.assertEquals(calendar.getInstanceTime(sequence), next, c + " at " + now);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInstances() throws Exception {
+        Random random = new Random(11);
+        for (TimeUnit timeUnit : TimeUnit.values()) {
+            for (int index = 0; index < 200; index++) {
+                Case c = randomCase(random, timeUnit);
+                Date from = randomTime(random, c);
+                Date to = new Date(from.getTime() + 40L * c.frequency.getFrequency()
+                        * (timeUnit == TimeUnit.months ? 31 * DAY_IN_MS : MINUTE_IN_MS * (timeUnit == TimeUnit.minutes ? 1
+                        : timeUnit == TimeUnit.hours ? 60 : 1440)));
+
+                List<Date> expected = new ArrayList<Date>();
+                Calendar stepper = Calendar.getInstance(c.timeZone);
+                stepper.setTime(legacyNextStartTime(c.start, c.frequency, c.timeZone, from));
+                while (!stepper.getTime().after(to)) {
+                    expected.add(stepper.getTime());
+                    stepper.add(timeUnit.getCalendarUnit(), c.frequency.getFrequency());
+                }
+
+                List<Date> instances = new ArrayList<Date>();
+                for (Date instance : new InstanceCalendar(c.start, c.frequency, c.timeZone).getInstances(from, to)) {
+                    instances.add(instance);
+                }
+                Assert.assertEquals(instances, expected, c + " from " + from + " to " + to);
+            }
+        }
+    }
+
+    @Test
+    public void testDaylightSaving() throws Exception {
+        TimeZone tz = TimeZone.getTimeZone("America/Los_Angeles");
+        Date start = SchemaHelper.parseDateUTC("2012-03-01T08:00Z"); // midnight local
+        InstanceCalendar calendar = new InstanceCalendar(start, new Frequency("days(1)"), tz);
+
+        // still at midnight local after the switch on March 11th
+        Assert.assertEquals(calendar.getInstanceTime(12), SchemaHelper.parseDateUTC("2012-03-12T07:00Z"));
+        Assert.assertEquals(calendar.getInstanceSequence(SchemaHelper.parseDateUTC("2012-03-12T07:00Z")), 12);
+        Assert.assertEquals(calendar.getInstanceSequence(SchemaHelper.parseDateUTC("2012-03-12T07:01Z")), 13);
+        Assert.assertEquals(calendar.getNextStartTime(SchemaHelper.parseDateUTC("2012-11-05T07:30Z")),
+                SchemaHelper.parseDateUTC("2012-11-05T08:00Z"));
+    }
+
+    @Test
+    public void testMonthEnd() throws Exception {
+        TimeZone tz = TimeZone.getTimeZone("UTC");
+        Date start = SchemaHelper.parseDateUTC("2012-01-31T10:00Z");
+        Frequency frequency = new Frequency("months(1)");
+        InstanceCalendar calendar = new InstanceCalendar(start, frequency, tz);
+
+        // on the last day of shorter months, and back on the 31st after them
+        Assert.assertEquals(calendar.getInstanceTime(2), SchemaHelper.parseDateUTC("2012-02-29T10:00Z"));
+        Assert.assertEquals(calendar.getInstanceTime(3), SchemaHelper.parseDateUTC("2012-03-31T10:00Z"));
+        Assert.assertEquals(calendar.getInstanceTime(4), SchemaHelper.parseDateUTC("2012-04-30T10:00Z"));
+        Assert.assertEquals(calendar.getInstanceTime(5), SchemaHelper.parseDateUTC("2012-05-31T10:00Z"));
+        Date now = SchemaHelper.parseDateUTC("2012-03-29T10:00Z");
+        Assert.assertEquals(calendar.getInstanceSequence(now), 3);
+        Assert.assertEquals(calendar.getNextStartTime(now), SchemaHelper.parseDateUTC("2012-03-31T10:00Z"));
+        Assert.assertEquals(EntityUtil.getNextStartTime(start, frequency, tz, now),
+                SchemaHelper.parseDateUTC("2012-03-31T10:00Z"));
+        // where stepping stayed on the 29th
+        Assert.assertEquals(legacyNextStartTime(start, frequency, tz, now), now);
+    }
+
+    @Test
+    public void testDaylightSavingGap() throws Exception {
+        TimeZone tz = TimeZone.getTimeZone("America/Los_Angeles");
+        Date start = SchemaHelper.parseDateUTC("2012-03-10T10:30Z"); // 02:30 local
+        Frequency frequency = new Frequency("days(1)");
+        InstanceCalendar calendar = new InstanceCalendar(start, frequency, tz);
+
+        // 02:30 doesn't exist on March 11th, the calendar puts that instance
+        // an hour back, at 01:30
+        Assert.assertEquals(calendar.getInstanceTime(2), SchemaHelper.parseDateUTC("2012-03-11T09:30Z"));
+        // and those after it are back at 02:30
+        Assert.assertEquals(calendar.getInstanceTime(3), SchemaHelper.parseDateUTC("2012-03-12T09:30Z"));
+        Date now = SchemaHelper.parseDateUTC("2012-03-12T08:00Z");
+        Assert.assertEquals(calendar.getInstanceSequence(now), 3);
+        Assert.assertEquals(EntityUtil.getInstanceSequence(start, frequency, tz, now), 3);
+        Assert.assertEquals(calendar.getNextStartTime(now), SchemaHelper.parseDateUTC("2012-03-12T09:30Z"));
+        // where stepping stayed at 01:30
+        Assert.assertEquals(legacyNextStartTime(start, frequency, tz, now),
+                SchemaHelper.parseDateUTC("2012-03-12T08:30Z"));
+    }
+
+    @Test
+    public void testLongMonthSpans() throws Exception {
+        TimeZone tz = TimeZone.getTimeZone("UTC");
+        Date start = SchemaHelper.parseDateUTC("2000-01-15T00:00Z");
+        Date instance = SchemaHelper.parseDateUTC("2010-01-15T00:00Z");
+        InstanceCalendar calendar = new InstanceCalendar(start, new Frequency("months(1)"), tz);
+
+        Assert.assertEquals(calendar.getInstanceSequence(instance), 121);
+        Assert.assertEquals(calendar.getNextStartTime(instance), instance);
+        // where stepping from an estimate of 30 day months overshot
+        Assert.assertEquals(legacyInstanceSequence(start, new Frequency("months(1)"), tz, instance), 122);
+    }
+
+    @Test(groups = "benchmark")
+    public void testSequenceOverhead() throws Exception {
+        Date start = SchemaHelper.parseDateUTC("2010-01-01T00:00Z");
+        Frequency frequency = new Frequency("minutes(1)");
+        TimeZone tz = TimeZone.getTimeZone("UTC");
+        InstanceCalendar calendar = new InstanceCalendar(start, frequency, tz);
+        Date[] times = new Date[1000];
+        for (int index = 0; index < times.length; index++) {
+            times[index] = new Date(start.getTime() + (index * 5237L + 17) * MINUTE_IN_MS);
+        }
+
+        long check = 0;
+        for (int index = 0; index < SIZE; index++) { // warm up
+            check += legacyInstanceSequence(start, frequency, tz, times[index % times.length]);
+            check -= calendar.getInstanceSequence(times[index % times.length]);
+        }
+        Assert.assertEquals(check, 0);
+
+        long begin = System.nanoTime();
+        for (int index = 0; index < SIZE; index++) {
+            check += legacyInstanceSequence(start, frequency, tz, times[index % times.length]);
+        }
+        long legacy = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        for (int index = 0; index < SIZE; index++) {
+            check -= calendar.getInstanceSequence(times[index % times.length]);
+        }
+        long formula = System.nanoTime() - begin;
+        Assert.assertEquals(check, 0);
+
+        LOG.info(SIZE + " instance sequences: instance calendar " + formula / SIZE + " ns/call, stepping "
+                + legacy / SIZE + " ns/call");
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.entity.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.ivory.entity.v0.EntityType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class EntityBatchParserTest {
+
+    private static final String[] RESOURCES = { "/config/cluster/cluster-0.1.xml", "/config/feed/feed-0.1.xml",
+            "/config/process/process-0.1.xml" };
+
+    private void assertBatch(List<Entity> entities) {
+        Assert.assertEquals(entities.size(), 3);
+        Assert.assertEquals(entities.get(0).getEntityType(), EntityType.CLUSTER);
+        Assert.assertEquals(entities.get(0).getName(), "testCluster");
+        Assert.assertEquals(entities.get(1).getEntityType(), EntityType.FEED);
+        Assert.assertEquals(entities.get(1).getName(), "clicks");
+        Assert.assertEquals(entities.get(2).getEntityType(), EntityType.PROCESS);
+        Assert.assertEquals(entities.get(2).getName(), "sample");
+    }
+
+    @Test
+    public void testZipRoundTrip() throws Exception {
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(zipped);
+        for (String resource : RESOURCES) {
+            zip.putNextEntry(new ZipEntry(resource.substring(1)));
+            IOUtils.copy(getClass().getResourceAsStream(resource), zip);
+            zip.closeEntry();
+        }
+        zip.close();
+
+        List<Entity> entities = EntityBatchParser.parse(new ByteArrayInputStream(zipped.toByteArray()));
+        assertBatch(entities);
+
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        EntityBatchParser.write(entities, batch);
+        List<Entity> parsed = EntityBatchParser.parse(new ByteArrayInputStream(batch.toByteArray()));
+        assertBatch(parsed);
+        Assert.assertEquals(parsed.get(1).toString(), entities.get(1).toString());
+
+        // a single entity is a batch of one
+        parsed = EntityBatchParser.parse(getClass().getResourceAsStream(RESOURCES[1]));
+        Assert.assertEquals(parsed.size(), 1);
+    }
+
+    private void tarHeader(ByteArrayOutputStream out, String name, long size, char flag) throws Exception {
+        byte[] header = new byte[512];
+        System.arraycopy(name.getBytes("UTF-8"), 0, header, 0, name.length());
+        byte[] octal = String.format("%011o", size).getBytes("UTF-8");
+        System.arraycopy(octal, 0, header, 124, octal.length);
+        header[156] = (byte) flag;
+        System.arraycopy("ustar".getBytes("UTF-8"), 0, header, 257, 5);
+        out.write(header);
+    }
+
+    @Test
+    public void testTar() throws Exception {
+        ByteArrayOutputStream tarred = new ByteArrayOutputStream();
+        tarHeader(tarred, "config/", 0, '5');
+        for (String resource : RESOURCES) {
+            byte[] data = IOUtils.toByteArray(getClass().getResourceAsStream(resource));
+            tarHeader(tarred, resource.substring(1), data.length, '0');
+            tarred.write(data);
+            tarred.write(new byte[(512 - data.length % 512) % 512]);
+        }
+        tarred.write(new byte[1024]);
+
+        assertBatch(EntityBatchParser.parse(new ByteArrayInputStream(tarred.toByteArray())));
+    }
+
+    @Test
+    public void testInvalidBatch() throws Exception {
+        try {
+            EntityBatchParser.parse(new ByteArrayInputStream("<batch><pipeline name=\"x\"/></batch>".getBytes()));
+            Assert.fail("Unknown entity was accepted");
+        } catch (ValidationException expected) {
+        }
+
+        try {
+            EntityBatchParser.parse(new ByteArrayInputStream(
+                    "<batch><feed name=\"x\" xmlns=\"uri:ivory:feed:0.1\"/></batch>".getBytes()));
+            Assert.fail("Feed failing schema validation was accepted");
+        } catch (IvoryException expected) {
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.entity.store;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.fs.Path;
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.ivory.entity.v0.EntityType;
+import org.apache.ivory.entity.v0.process.Process;
+import org.apache.ivory.service.ConfigurationChangeListener;
+import org.apache.ivory.util.StartupProperties;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Submits, updates and removes entities from many threads at once. The number
+ * of entities can be changed with -Divory.store.stress.size.
+ */
+public class ConfigurationStoreConcurrencyTest {
+
+  private static Logger LOG = Logger.getLogger(ConfigurationStoreConcurrencyTest.class);
+
+  private static final int SIZE = Integer.getInteger("ivory.store.stress.size", 2000);
+  private static final int THREADS = 16;
+
+  private final File storeDir = new File("target/store-stress");
+  private String listeners;
+  private ConfigurationStore store;
+  private ExecutorService executor;
+
+  @BeforeMethod
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(storeDir);
+    listeners = StartupProperties.get().getProperty("configstore.listeners");
+    StartupProperties.get().setProperty("configstore.listeners", "");
+    store = new ConfigurationStore(new Path(storeDir.getAbsolutePath()));
+    store.init();
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @AfterMethod
+  public void cleanup() throws Exception {
+    executor.shutdownNow();
+    StartupProperties.get().setProperty("configstore.listeners", listeners);
+    FileUtils.deleteDirectory(storeDir);
+  }
+
+  private void runAll(List<Callable<Void>> tasks) throws Exception {
+    for (Future<Void> future : executor.invokeAll(tasks)) {
+      future.get();
+    }
+  }
+
+  @Test
+  public void testConcurrentSubmit() throws Exception {
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < SIZE; i++) {
+      final String name = "process-" + i;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          Process process = (Process) EntityType.PROCESS.getUnmarshaller().
+              unmarshal(getClass().getResource("/config/process/process-0.1.xml"));
+          process.setName(name);
+          store.publish(EntityType.PROCESS, process);
+          Assert.assertSame(store.get(EntityType.PROCESS, name), process);
+          return null;
+        }
+      });
+    }
+    long start = System.currentTimeMillis();
+    runAll(tasks);
+    LOG.info("Submitted " + SIZE + " entities from " + THREADS + " threads in "
+        + (System.currentTimeMillis() - start) + " ms");
+
+    Assert.assertEquals(store.getEntities(EntityType.PROCESS).size(), SIZE);
+    ConfigurationStore restored = new ConfigurationStore(new Path(storeDir.getAbsolutePath()));
+    restored.init();
+    Assert.assertEquals(restored.getEntities(EntityType.PROCESS).size(), SIZE);
+    Assert.assertNotNull(restored.get(EntityType.PROCESS, "process-" + (SIZE - 1)));
+  }
+
+  @Test
+  public void testSameEntityIsSerialized() throws Exception {
+    final AtomicInteger published = new AtomicInteger();
+    final AtomicInteger rejected = new AtomicInteger();
+    final CountDownLatch ready = new CountDownLatch(THREADS);
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < THREADS; i++) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          Process process = new Process();
+          process.setName("contended");
+          ready.countDown();
+          ready.await();
+          try {
+            store.publish(EntityType.PROCESS, process);
+            published.incrementAndGet();
+          } catch (EntityAlreadyExistsException e) {
+            rejected.incrementAndGet();
+          }
+          return null;
+        }
+      });
+    }
+    runAll(tasks);
+    Assert.assertEquals(published.get(), 1);
+    Assert.assertEquals(rejected.get(), THREADS - 1);
+
+    // concurrent updates and removals of the same entity interleave cleanly
+    tasks.clear();
+    for (int i = 0; i < SIZE; i++) {
+      final int index = i;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          Process process = new Process();
+          process.setName("contended");
+          Lock lock = store.getLock(EntityType.PROCESS, "contended");
+          lock.lock();
+          try {
+            if (index % 10 == 0) {
+              store.remove(EntityType.PROCESS, "contended");
+              store.publish(EntityType.PROCESS, process);
+            } else {
+              store.initiateUpdate(process);
+              store.update(EntityType.PROCESS, process);
+            }
+          } finally {
+            store.cleanupUpdateInit();
+            lock.unlock();
+          }
+          return null;
+        }
+      });
+    }
+    runAll(tasks);
+    Assert.assertNotNull(store.get(EntityType.PROCESS, "contended"));
+    Assert.assertEquals(store.getEntities(EntityType.PROCESS).size(), 1);
+  }
+
+  @Test
+  public void testUpdateInProgressOnAnotherThread() throws Exception {
+    Process process = new Process();
+    process.setName("updated");
+    store.publish(EntityType.PROCESS, process);
+    final Process other = new Process();
+    other.setName("updated");
+    Callable<Boolean> initiate = new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        try {
+          store.initiateUpdate(other);
+        } catch (IvoryException e) {
+          return false;
+        } finally {
+          store.cleanupUpdateInit();
+        }
+        return true;
+      }
+    };
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Process updated = new Process();
+      updated.setName("updated");
+      store.initiateUpdate(updated);
+      try {
+        Assert.assertFalse(executor.submit(initiate).get());
+      } finally {
+        store.cleanupUpdateInit();
+      }
+      Assert.assertTrue(executor.submit(initiate).get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testLocksOfSeveralEntities() throws Exception {
+    List<Process> processes = new ArrayList<Process>();
+    for (int i = 0; i < 200; i++) {
+      Process process = new Process();
+      process.setName("locked-" + i);
+      processes.add(process);
+    }
+    List<Lock> locks = store.getLocks(processes);
+    Assert.assertEquals(new HashSet<Lock>(locks).size(), locks.size());
+    Collections.reverse(processes);
+    // the same order whatever the order of the entities
+    Assert.assertEquals(store.getLocks(processes), locks);
+    Assert.assertTrue(locks.contains(store.getLock(EntityType.PROCESS, "locked-7")));
+  }
+
+  @Test
+  public void testSlowListenerDoesNotHoldUpOtherEntities() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    store.registerListener(new ConfigurationChangeListener() {
+      @Override
+      public void onAdd(Entity entity) throws IvoryException {
+        if (entity.getName().equals("slow")) {
+          blocked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new IvoryException(e);
+          }
+        }
+      }
+
+      @Override
+      public void onRemove(Entity entity) throws IvoryException {
+      }
+
+      @Override
+      public void onChange(Entity oldEntity, Entity newEntity) throws IvoryException {
+      }
+    });
+
+    Future<Void> slow = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        Process process = new Process();
+        process.setName("slow");
+        store.publish(EntityType.PROCESS, process);
+        return null;
+      }
+    });
+    Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+    try {
+      Future<Void> fast = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          Process process = new Process();
+          process.setName("fast");
+          store.publish(EntityType.PROCESS, process);
+          return null;
+        }
+      });
+      fast.get(10, TimeUnit.SECONDS);
+      Assert.assertFalse(slow.isDone());
+    } finally {
+      release.countDown();
+    }
+    slow.get();
+    Assert.assertEquals(store.getEntities(EntityType.PROCESS).size(), 2);
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.entity.store;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URLEncoder;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.fs.Path;
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.ivory.entity.v0.EntityType;
+import org.apache.ivory.entity.v0.process.Process;
+import org.apache.ivory.util.StartupProperties;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Restores a synthetic store on startup, eagerly and lazily. Startup of a
+ * large store is measured by the tests of the benchmark group, run with
+ * -Pbenchmark; the number of entities can be changed with
+ * -Divory.store.benchmark.size.
+ */
+public class ConfigurationStoreStartupTest {
+
+    private static Logger LOG = Logger.getLogger(ConfigurationStoreStartupTest.class);
+
+    private static final int SIZE = Integer.getInteger("ivory.store.benchmark.size", 10000);
+
+    private final File storeDir = new File("target/store-startup");
+    private String listeners;
+    private int clusters;
+    private int feeds;
+    private int processes;
+
+    @BeforeClass(alwaysRun = true)
+    public void disableListeners() {
+        listeners = StartupProperties.get().getProperty("configstore.listeners");
+        StartupProperties.get().setProperty("configstore.listeners", "");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void cleanup() throws Exception {
+        StartupProperties.get().setProperty("configstore.listeners", listeners);
+        StartupProperties.get().remove("config.store.restore.threads");
+        StartupProperties.get().remove("config.store.lazy.load");
+        FileUtils.deleteDirectory(storeDir);
+    }
+
+    private void createStore(int size) throws Exception {
+        FileUtils.deleteDirectory(storeDir);
+        clusters = Math.max(1, size / 20);
+        feeds = (size - clusters) / 2;
+        processes = size - clusters - feeds;
+        write(EntityType.CLUSTER, "/config/cluster/cluster-0.1.xml", clusters);
+        write(EntityType.FEED, "/config/feed/feed-0.1.xml", feeds);
+        write(EntityType.PROCESS, "/config/process/process-0.1.xml", processes);
+    }
+
+    private void write(EntityType type, String resource, int count) throws Exception {
+        Entity entity = (Entity) type.getUnmarshaller().unmarshal(getClass().getResource(resource));
+        File dir = new File(storeDir, type.name());
+        dir.mkdirs();
+        for (int i = 0; i < count; i++) {
+            String name = type.name().toLowerCase() + "-" + i;
+            entity.getClass().getMethod("setName", String.class).invoke(entity, name);
+            StringWriter xml = new StringWriter();
+            type.getMarshaller().marshal(entity, xml);
+            OutputStream out = new FileOutputStream(new File(dir, URLEncoder.encode(name, "UTF-8") + ".xml"));
+            try {
+                out.write(xml.toString().getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private ConfigurationStore init(int threads, boolean lazy) throws Exception {
+        StartupProperties.get().setProperty("config.store.restore.threads", String.valueOf(threads));
+        StartupProperties.get().setProperty("config.store.lazy.load", String.valueOf(lazy));
+        ConfigurationStore store = new ConfigurationStore(new Path(storeDir.getAbsolutePath()));
+        store.init();
+        return store;
+    }
+
+    private ConfigurationStore startup(int threads, boolean lazy) throws Exception {
+        long start = System.currentTimeMillis();
+        ConfigurationStore store = init(threads, lazy);
+        long initialized = System.currentTimeMillis();
+        store.awaitRestore();
+        long restored = System.currentTimeMillis();
+        LOG.info("Startup of " + SIZE + " entities with " + threads + " thread(s), lazy=" + lazy + ": init "
+                + (initialized - start) + " ms, fully restored " + (restored - start) + " ms");
+        return store;
+    }
+
+    private void verify(ConfigurationStore store) throws Exception {
+        Assert.assertEquals(store.getEntities(EntityType.CLUSTER).size(), clusters);
+        Assert.assertEquals(store.getEntities(EntityType.FEED).size(), feeds);
+        Assert.assertEquals(store.getEntities(EntityType.PROCESS).size(), processes);
+        Process process = store.get(EntityType.PROCESS, "process-" + (processes - 1));
+        Assert.assertNotNull(process);
+        Assert.assertEquals(process.getName(), "process-" + (processes - 1));
+    }
+
+    @Test
+    public void testEagerStartup() throws Exception {
+        createStore(60);
+        ConfigurationStore store = init(2, false);
+        store.awaitRestore();
+        verify(store);
+    }
+
+    @Test
+    public void testLazyStartup() throws Exception {
+        createStore(60);
+        ConfigurationStore store = init(2, true);
+        // entities not restored yet are faulted in on access
+        Process process = store.get(EntityType.PROCESS, "process-0");
+        Assert.assertNotNull(process);
+        Assert.assertSame(store.get(EntityType.PROCESS, "process-0"), process);
+        store.awaitRestore();
+        Assert.assertSame(store.get(EntityType.PROCESS, "process-0"), process);
+        verify(store);
+    }
+
+    @Test(groups = "benchmark")
+    public void testStartupTime() throws Exception {
+        createStore(SIZE);
+        verify(startup(1, false));
+        verify(startup(Math.max(2, Runtime.getRuntime().availableProcessors()), false));
+        verify(startup(2, true));
+    }
+}
@@ -22,6 +22,8 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.ivory.entity.v0.EntityType;
+import org.apache.ivory.entity.v0.cluster.Cluster;
+import org.apache.ivory.entity.v0.feed.Feed;
 import org.apache.ivory.entity.v0.process.Process;
 import org.apache.ivory.util.StartupProperties;
 import org.apache.log4j.Logger;
@@ -31,6 +33,8 @@ import org.testng.annotations.BeforeSuite;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 
 public class ConfigurationStoreTest {
 
@@ -65,9 +69,114 @@ public class ConfigurationStoreTest {
     Assert.assertNull(p);
   }
 
+  @Test
+  public void testJournal() throws Exception {
+    Path path = new Path("target/store-journal");
+    FileSystem.getLocal(new Configuration()).delete(path, true);
+    String listeners = StartupProperties.get().getProperty("configstore.listeners");
+    StartupProperties.get().setProperty("configstore.listeners", "");
+    StartupProperties.get().setProperty("config.store.journal.enabled", "true");
+    try {
+      ConfigurationStore journaled = new ConfigurationStore(path);
+      journaled.init();
+      Process process = new Process();
+      process.setName("journaled");
+      journaled.publish(EntityType.PROCESS, process);
+      process = new Process();
+      process.setName("removed");
+      journaled.publish(EntityType.PROCESS, process);
+      journaled.remove(EntityType.PROCESS, "removed");
+      journaled.destroy();
+
+      journaled = new ConfigurationStore(path);
+      journaled.init();
+      Assert.assertNotNull(journaled.get(EntityType.PROCESS, "journaled"));
+      Assert.assertNull(journaled.get(EntityType.PROCESS, "removed"));
+      journaled.destroy();
+    } finally {
+      StartupProperties.get().setProperty("configstore.listeners", listeners);
+      StartupProperties.get().remove("config.store.journal.enabled");
+    }
+  }
+
+  @Test
+  public void testGetEntitiesPage() throws Exception {
+    Path path = new Path("target/store-pages");
+    FileSystem.getLocal(new Configuration()).delete(path, true);
+    ConfigurationStore pages = new ConfigurationStore(path);
+    for (String name : new String[] { "c", "a", "e", "b", "d" }) {
+      Process process = (Process) EntityType.PROCESS.getUnmarshaller().
+          unmarshal(getClass().getResource("/config/process/process-0.1.xml"));
+      process.setName(name);
+      pages.publish(EntityType.PROCESS, process);
+    }
+    pages.remove(EntityType.PROCESS, "d");
+    Assert.assertEquals(pages.getEntities(EntityType.PROCESS, 0, -1), Arrays.asList("a", "b", "c", "e"));
+    Assert.assertEquals(pages.getEntities(EntityType.PROCESS, 1, 2), Arrays.asList("b", "c"));
+    Assert.assertEquals(pages.getEntities(EntityType.PROCESS, 3, Integer.MAX_VALUE), Arrays.asList("e"));
+    Assert.assertTrue(pages.getEntities(EntityType.PROCESS, 4, 2).isEmpty());
+
+    // names indexed on startup are listed in order too
+    String listeners = StartupProperties.get().getProperty("configstore.listeners");
+    StartupProperties.get().setProperty("configstore.listeners", "");
+    try {
+      pages = new ConfigurationStore(path);
+      pages.init();
+      Assert.assertEquals(pages.getEntities(EntityType.PROCESS, 2, 5), Arrays.asList("c", "e"));
+    } finally {
+      StartupProperties.get().setProperty("configstore.listeners", listeners);
+    }
+  }
+
   @Test
   public void testSearch() throws Exception {
-    //TODO
+    Cluster cluster = (Cluster) EntityType.CLUSTER.getUnmarshaller().
+        unmarshal(getClass().getResource("/config/cluster/cluster-0.1.xml"));
+    cluster.setName("searchCluster");
+    store.publish(EntityType.CLUSTER, cluster);
+    Feed clicks = feed("search-clicks", "online,bi", "testuser");
+    Feed views = feed("search-views", "offline", "other");
+    store.publish(EntityType.FEED, clicks);
+    store.publish(EntityType.FEED, views);
+
+    EntitySearchIndex index = new EntitySearchIndex();
+    index.onAdd(cluster);
+    index.onAdd(clicks);
+    index.onAdd(views);
+    Assert.assertEquals(index.search(EntityType.CLUSTER, "colo:gs"), Collections.singleton("searchCluster"));
+    Assert.assertEquals(index.search(EntityType.FEED, "group:online"), Collections.singleton("search-clicks"));
+    Assert.assertEquals(index.search(EntityType.FEED, "colo:gs").size(), 2);
+    Assert.assertEquals(index.search(EntityType.FEED, "clicks").size(), 2);
+    Assert.assertEquals(index.search(EntityType.FEED, "colo:gs", "OWNER:other"), Collections.singleton("search-views"));
+    Assert.assertEquals(index.search(EntityType.FEED, "search-v*"), Collections.singleton("search-views"));
+    Assert.assertEquals(index.search(EntityType.FEED, "path:/projects/ivory/clicks"), index.search(EntityType.FEED, "search*"));
+    Assert.assertTrue(index.search(EntityType.FEED, "group:online", "owner:other").isEmpty());
+    Assert.assertTrue(index.search(EntityType.PROCESS, "colo:gs").isEmpty());
+
+    Feed updated = feed("search-views", "online", "other");
+    index.onChange(views, updated);
+    Assert.assertEquals(index.search(EntityType.FEED, "group:online").size(), 2);
+    Assert.assertTrue(index.search(EntityType.FEED, "group:offline").isEmpty());
+    index.onRemove(clicks);
+    Assert.assertEquals(index.search(EntityType.FEED, "group:online"), Collections.singleton("search-views"));
+
+    // without the index registered the store scans its entities
+    Assert.assertEquals(store.search(EntityType.FEED, "group:bi", "search*"), Arrays.asList("search-clicks"));
+    Assert.assertEquals(store.search(EntityType.FEED, "search*"), Arrays.asList("search-clicks", "search-views"));
+
+    store.remove(EntityType.FEED, "search-clicks");
+    store.remove(EntityType.FEED, "search-views");
+    store.remove(EntityType.CLUSTER, "searchCluster");
+  }
+
+  private Feed feed(String name, String groups, String owner) throws Exception {
+    Feed feed = (Feed) EntityType.FEED.getUnmarshaller().
+        unmarshal(getClass().getResource("/config/feed/feed-0.1.xml"));
+    feed.setName(name);
+    feed.setGroups(groups);
+    feed.getACL().setOwner(owner);
+    feed.getClusters().getClusters().get(0).setName("searchCluster");
+    return feed;
   }
 
   @BeforeSuite
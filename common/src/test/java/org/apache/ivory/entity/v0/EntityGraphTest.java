@@ -18,6 +18,8 @@
 
 package org.apache.ivory.entity.v0;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Set;
 
 import org.apache.ivory.entity.AbstractTestBase;
@@ -142,6 +144,46 @@ public class EntityGraphTest extends AbstractTestBase{
         return f1;
     }
 
+    @Test
+    public void testLineage() throws Exception {
+        Cluster cluster = new Cluster();
+        cluster.setName("lc1");
+        cluster.setColo("4");
+        Process p1 = new Process();
+        p1.setName("lp1");
+        Process p2 = new Process();
+        p2.setName("lp2");
+        Feed f1 = addInput(p1, "lf1", cluster);
+        Feed f2 = addOutput(p1, "lf2", cluster);
+        attachInput(p2, f2);
+        Feed f3 = addOutput(p2, "lf3", cluster);
+        for (Process process : new Process[] {p1, p2}) {
+            org.apache.ivory.entity.v0.process.Cluster processCluster = new org.apache.ivory.entity.v0.process.Cluster();
+            processCluster.setName("lc1");
+            process.setClusters(new org.apache.ivory.entity.v0.process.Clusters());
+            process.getClusters().getClusters().add(processCluster);
+        }
+
+        store.publish(EntityType.CLUSTER, cluster);
+        store.publish(EntityType.FEED, f1);
+        store.publish(EntityType.FEED, f2);
+        store.publish(EntityType.FEED, f3);
+        store.publish(EntityType.PROCESS, p1);
+        store.publish(EntityType.PROCESS, p2);
+
+        Assert.assertEquals(new ArrayList<Entity>(graph.getDownstream(f1, 0)), Arrays.<Entity>asList(p1, f2, p2, f3));
+        Assert.assertEquals(new ArrayList<Entity>(graph.getDownstream(f1, 2)), Arrays.<Entity>asList(p1, f2));
+        Assert.assertEquals(new ArrayList<Entity>(graph.getUpstream(f3, 0)), Arrays.<Entity>asList(p2, f2, p1, f1));
+        Assert.assertEquals(new ArrayList<Entity>(graph.getUpstream(f3, 1)), Arrays.<Entity>asList(p2));
+        Assert.assertEquals(new ArrayList<Entity>(graph.getUpstream(p2, 0)), Arrays.<Entity>asList(f2, p1, f1));
+        Assert.assertTrue(graph.getUpstream(f1, 0).isEmpty());
+        Assert.assertTrue(graph.getDownstream(cluster, 0).isEmpty());
+
+        store.remove(EntityType.PROCESS, p2.getName());
+        Assert.assertEquals(new ArrayList<Entity>(graph.getDownstream(f1, 0)), Arrays.<Entity>asList(p1, f2));
+        Assert.assertTrue(graph.getUpstream(f3, 0).isEmpty());
+    }
+
     @Test
     public void testOnRemove() throws Exception {
         Process process = new Process();
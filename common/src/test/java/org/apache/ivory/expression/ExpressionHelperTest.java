@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.expression;
+
+import java.util.Date;
+import java.util.Properties;
+
+import javax.servlet.jsp.el.ExpressionEvaluator;
+
+import org.apache.commons.el.ExpressionEvaluatorImpl;
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.entity.v0.SchemaHelper;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Compares evaluation of compiled expressions with that of the EL evaluator.
+ * Evaluate throughput is measured by the benchmark group test, run with
+ * -Pbenchmark; the number of calls timed can be changed with
+ * -Divory.expression.benchmark.size.
+ */
+public class ExpressionHelperTest {
+
+    private static Logger LOG = Logger.getLogger(ExpressionHelperTest.class);
+
+    private static final int SIZE = Integer.getInteger("ivory.expression.benchmark.size", 100000);
+
+    private static final Object[][] EXPRESSIONS = { { "now(0,-5)", Date.class }, { "today(1,30)", Date.class },
+            { "yesterday(0,0)", Date.class }, { "currentMonth(2,0,0)", Date.class },
+            { "lastYear(1,1,0,0)", Date.class }, { "hours(2)", Long.class }, { "days( 90 )", Long.class },
+            { "minutes(-15)", Long.class }, { "months(2)", Long.class }, { "hours(1) + minutes(30)", Long.class },
+            { "limit", Long.class }, { "limit * 2", Long.class }, { "hours(2)", String.class } };
+
+    private final ExpressionHelper helper = ExpressionHelper.get();
+    private final ExpressionEvaluator evaluator = new ExpressionEvaluatorImpl();
+
+    private Object evaluate(String expression, Class<?> type) throws Exception {
+        return evaluator.evaluate("${" + expression + "}", type, helper, helper);
+    }
+
+    private void setUp() throws Exception {
+        ExpressionHelper.setReferenceDate(SchemaHelper.parseDateUTC("2012-05-17T10:37Z"));
+        Properties properties = new Properties();
+        properties.put("limit", "7");
+        helper.setPropertiesForVariable(properties);
+    }
+
+    @Test
+    public void testEvaluate() throws Exception {
+        setUp();
+        for (Object[] pair : EXPRESSIONS) {
+            String expression = (String) pair[0];
+            Class<?> type = (Class<?>) pair[1];
+            for (int index = 0; index < 2; index++) { // compiled, then cached
+                Assert.assertEquals(helper.evaluate(expression, type), evaluate(expression, type), expression);
+            }
+        }
+        Assert.assertEquals(helper.evaluate("now(0,-5)", Date.class),
+                SchemaHelper.parseDateUTC("2012-05-17T10:32Z"));
+        Assert.assertEquals(helper.evaluate("days(90)", Long.class), Long.valueOf(90L * 24 * 3600 * 1000));
+        Assert.assertEquals(helper.evaluate("hours(2)", String.class), "7200000");
+
+        // evaluated against the reference date of the time
+        ExpressionHelper.setReferenceDate(SchemaHelper.parseDateUTC("2013-01-01T00:00Z"));
+        Assert.assertEquals(helper.evaluate("now(0,-5)", Date.class),
+                SchemaHelper.parseDateUTC("2012-12-31T23:55Z"));
+    }
+
+    @Test(expectedExceptions = IvoryException.class)
+    public void testInvalid() throws Exception {
+        helper.evaluate("hours(2", Long.class);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testUnknownFunction() throws Exception {
+        helper.evaluate("weeks(2)", Long.class);
+    }
+
+    @Test(groups = "benchmark")
+    public void testEvaluateThroughput() throws Exception {
+        setUp();
+        String[] expressions = { "now(0,-5)", "hours(2)", "days(90)", "limit * 2" };
+        Class<?>[] types = { Date.class, Long.class, Long.class, Long.class };
+        for (int index = 0; index < SIZE; index++) { // warm up
+            helper.evaluate(expressions[index % 4], types[index % 4]);
+            evaluate(expressions[index % 4], types[index % 4]);
+        }
+
+        long start = System.nanoTime();
+        for (int index = 0; index < SIZE; index++) {
+            evaluate(expressions[index % 4], types[index % 4]);
+        }
+        long baseline = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int index = 0; index < SIZE; index++) {
+            helper.evaluate(expressions[index % 4], types[index % 4]);
+        }
+        long compiled = System.nanoTime() - start;
+
+        LOG.info(SIZE + " evaluations: compiled " + compiled / SIZE + " ns/call, EL evaluator "
+                + baseline / SIZE + " ns/call");
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.ivory.entity.v0.process.Process;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class AsyncConfigurationChangeListenerTest {
+
+    private static class RecordingListener implements ConfigurationChangeListener {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch release;
+
+        private RecordingListener(CountDownLatch release) {
+            this.release = release;
+        }
+
+        private void record(String event) throws IvoryException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IvoryException(e);
+            }
+            if (event.endsWith("bad")) {
+                throw new IvoryException("Failing " + event);
+            }
+            events.add(event);
+        }
+
+        @Override
+        public void onAdd(Entity entity) throws IvoryException {
+            record("add " + entity.getName());
+        }
+
+        @Override
+        public void onRemove(Entity entity) throws IvoryException {
+            record("remove " + entity.getName());
+        }
+
+        @Override
+        public void onChange(Entity oldEntity, Entity newEntity) throws IvoryException {
+            record("change " + newEntity.getName());
+        }
+    }
+
+    private Process process(String name) {
+        Process process = new Process();
+        process.setName(name);
+        return process;
+    }
+
+    @Test
+    public void testOrderedDispatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener recorder = new RecordingListener(release);
+        AsyncConfigurationChangeListener listener = new AsyncConfigurationChangeListener(recorder, 100);
+        try {
+            listener.onAdd(process("a"));
+            listener.onAdd(process("bad"));
+            listener.onChange(process("a"), process("a"));
+            listener.onRemove(process("a"));
+
+            // the caller is not held up by the listener
+            Assert.assertTrue(recorder.events.isEmpty());
+            Assert.assertEquals(listener.getLag(), 4);
+            Assert.assertFalse(listener.awaitCatchUp(10, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            Assert.assertTrue(listener.awaitCatchUp(10, TimeUnit.SECONDS));
+            Assert.assertEquals(recorder.events.toString(), "[add a, change a, remove a]");
+            Assert.assertEquals(listener.getLag(), 0);
+            Assert.assertEquals(listener.getLagMillis(), 0);
+            Assert.assertEquals(listener.getDispatched(), 4);
+            Assert.assertEquals(listener.getFailed(), 1);
+        } finally {
+            listener.close();
+        }
+    }
+
+    @Test
+    public void testBoundedBacklog() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener recorder = new RecordingListener(release);
+        final AsyncConfigurationChangeListener listener = new AsyncConfigurationChangeListener(recorder, 2);
+        try {
+            // one change being handled and two queued fill the backlog
+            for (int index = 0; index < 3; index++) {
+                listener.onAdd(process("p" + index));
+            }
+            final CountDownLatch queued = new CountDownLatch(1);
+            Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        listener.onAdd(process("p3"));
+                        queued.countDown();
+                    } catch (IvoryException ignore) {
+                    }
+                }
+            };
+            producer.start();
+            Assert.assertFalse(queued.await(200, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            Assert.assertTrue(queued.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(listener.awaitCatchUp(10, TimeUnit.SECONDS));
+            Assert.assertEquals(recorder.events.size(), 4);
+            Assert.assertTrue(listener.getMaxLatencyMillis() >= 0);
+        } finally {
+            listener.close();
+        }
+    }
+
+    @Test
+    public void testFullBacklogFailsChange() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener recorder = new RecordingListener(release);
+        AsyncConfigurationChangeListener listener = new AsyncConfigurationChangeListener(recorder, 1, 100);
+        try {
+            listener.onAdd(process("p0"));
+            // p0 being handled and p1 queued fill the backlog
+            listener.onAdd(process("p1"));
+            try {
+                listener.onAdd(process("p2"));
+                Assert.fail("Expected the full backlog to fail the change");
+            } catch (IvoryException expected) {
+            }
+
+            // the change that failed is not waited for
+            release.countDown();
+            Assert.assertTrue(listener.awaitCatchUp(10, TimeUnit.SECONDS));
+            Assert.assertEquals(recorder.events.toString(), "[add p0, add p1]");
+            Assert.assertEquals(listener.getLag(), 0);
+        } finally {
+            listener.close();
+        }
+    }
+}
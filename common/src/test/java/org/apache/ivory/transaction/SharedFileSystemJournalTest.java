@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.transaction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.ivory.entity.v0.EntityType;
+import org.apache.ivory.entity.v0.cluster.Cluster;
+import org.apache.ivory.entity.v0.feed.Feed;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SharedFileSystemJournalTest {
+
+    private final Path path = new Path("target/journal");
+    private FileSystem fs;
+    // entities as a store would hold them, which snapshots are written from
+    private final Map<EntityType, Map<String, Entity>> store = new HashMap<EntityType, Map<String, Entity>>();
+
+    @BeforeMethod
+    public void cleanup() throws Exception {
+        fs = FileSystem.getLocal(new Configuration());
+        fs.delete(path, true);
+        for (EntityType type : EntityType.values()) {
+            store.put(type, new HashMap<String, Entity>());
+        }
+    }
+
+    private SharedFileSystemJournal open() throws Exception {
+        SharedFileSystemJournal journal = new SharedFileSystemJournal();
+        journal.open(fs, path, new Journal.EntitySource() {
+            @Override
+            public Map<EntityType, Collection<Entity>> getEntities() {
+                Map<EntityType, Collection<Entity>> entities = new HashMap<EntityType, Collection<Entity>>();
+                for (EntityType type : EntityType.values()) {
+                    entities.put(type, new ArrayList<Entity>(store.get(type).values()));
+                }
+                return entities;
+            }
+        });
+        return journal;
+    }
+
+    private void record(Journal journal, Entity entity) throws IvoryException {
+        journal.record(entity);
+        store.get(entity.getEntityType()).put(entity.getName(), entity);
+    }
+
+    private void remove(Journal journal, EntityType type, String name) throws IvoryException {
+        journal.remove(type, name);
+        store.get(type).remove(name);
+    }
+
+    private Cluster cluster(String name) throws Exception {
+        Cluster cluster = (Cluster) EntityType.CLUSTER.getUnmarshaller().unmarshal(
+                getClass().getResource("/config/cluster/cluster-0.1.xml"));
+        cluster.setName(name);
+        return cluster;
+    }
+
+    private Feed feed(String name) throws Exception {
+        Feed feed = (Feed) EntityType.FEED.getUnmarshaller().unmarshal(getClass().getResource("/config/feed/feed-0.1.xml"));
+        feed.setName(name);
+        return feed;
+    }
+
+    @Test
+    public void testEmptyJournal() throws Exception {
+        SharedFileSystemJournal journal = open();
+        Assert.assertNull(journal.recover());
+        journal.close();
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        SharedFileSystemJournal journal = open();
+        journal.recover();
+        record(journal, cluster("corp"));
+        record(journal, feed("clicks"));
+        record(journal, feed("impressions"));
+        Feed feed = feed("clicks");
+        feed.setGroups("online");
+        record(journal, feed);
+        remove(journal, EntityType.FEED, "impressions");
+        journal.close();
+
+        journal = open();
+        Map<EntityType, Map<String, Entity>> entities = journal.recover();
+        Assert.assertEquals(entities.get(EntityType.CLUSTER).keySet().iterator().next(), "corp");
+        Assert.assertEquals(entities.get(EntityType.FEED).size(), 1);
+        Assert.assertEquals(((Feed) entities.get(EntityType.FEED).get("clicks")).getGroups(), "online");
+        Assert.assertTrue(entities.get(EntityType.PROCESS).isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        SharedFileSystemJournal journal = open();
+        journal.recover();
+        for (int index = 0; index < 10; index++) {
+            record(journal, feed("feed" + index));
+        }
+        remove(journal, EntityType.FEED, "feed0");
+        journal.compact();
+        record(journal, feed("feed10"));
+        journal.close();
+
+        int snapshots = 0;
+        for (FileStatus file : fs.listStatus(path)) {
+            if (file.getPath().getName().startsWith("snapshot-")) {
+                snapshots++;
+            }
+        }
+        Assert.assertEquals(snapshots, 1);
+
+        journal = open();
+        Map<EntityType, Map<String, Entity>> entities = journal.recover();
+        Assert.assertEquals(entities.get(EntityType.FEED).size(), 10);
+        Assert.assertFalse(entities.get(EntityType.FEED).containsKey("feed0"));
+        Assert.assertTrue(entities.get(EntityType.FEED).containsKey("feed10"));
+        journal.close();
+    }
+
+    @Test
+    public void testSnapshotAheadOfSegment() throws Exception {
+        SharedFileSystemJournal journal = open();
+        journal.recover();
+        record(journal, feed("clicks"));
+        record(journal, feed("impressions"));
+        // changed in the store while the snapshot is written, and recorded
+        // in the segment that follows it
+        Feed feed = feed("clicks");
+        feed.setGroups("online");
+        store.get(EntityType.FEED).put("clicks", feed);
+        store.get(EntityType.FEED).remove("impressions");
+        journal.compact();
+        journal.record(feed);
+        journal.remove(EntityType.FEED, "impressions");
+        journal.close();
+
+        journal = open();
+        Map<EntityType, Map<String, Entity>> entities = journal.recover();
+        Assert.assertEquals(entities.get(EntityType.FEED).keySet().iterator().next(), "clicks");
+        Assert.assertEquals(entities.get(EntityType.FEED).size(), 1);
+        Assert.assertEquals(((Feed) entities.get(EntityType.FEED).get("clicks")).getGroups(), "online");
+        journal.close();
+    }
+
+    @Test
+    public void testTornTail() throws Exception {
+        SharedFileSystemJournal journal = open();
+        journal.recover();
+        record(journal, feed("clicks"));
+        journal.close();
+
+        // a crash in the middle of a record leaves a partial record behind
+        Path segmentPath = new Path(path, "journal-0");
+        byte[] segment = new byte[(int) fs.getFileStatus(segmentPath).getLen()];
+        FSDataInputStream in = fs.open(segmentPath);
+        in.readFully(segment);
+        in.close();
+        FSDataOutputStream out = fs.create(segmentPath, true);
+        out.write(segment, 0, segment.length - 5);
+        out.close();
+
+        journal = open();
+        Map<EntityType, Map<String, Entity>> entities = journal.recover();
+        Assert.assertTrue(entities.get(EntityType.FEED).isEmpty());
+        journal.close();
+    }
+}
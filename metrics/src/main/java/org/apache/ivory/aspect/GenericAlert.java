@@ -101,6 +101,27 @@ public class GenericAlert {
 		return "IGNORE";
 	}
 	
+	@Monitored(event = "config-listener-event")
+	public static String instrumentListenerEvent(
+			@Dimension(value = "listener") String listener,
+			@Dimension(value = "event") String event,
+			@Dimension(value = "entity-type") String entityType,
+			@Dimension(value = "entity-name") String entityName,
+			@Dimension(value = "lag") String lag,
+			@TimeTaken long timeTaken) {
+		return "IGNORE";
+	}
+
+	@Monitored(event = "colo-call")
+	public static String instrumentColoCall(
+			@Dimension(value = "colo") String colo,
+			@Dimension(value = "entity-type") String entityType,
+			@Dimension(value = "entity-name") String entityName,
+			@Dimension(value = "status") String status,
+			@TimeTaken long timeTaken) {
+		return "IGNORE";
+	}
+
 	@Monitored(event = "log-cleanup-service-failed")
 	public static String alertLogCleanupServiceFailed(
 			@Dimension(value = "message") String message,
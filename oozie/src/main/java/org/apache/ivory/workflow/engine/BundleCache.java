@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.workflow.engine;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.entity.EntityUtil;
+import org.apache.ivory.entity.v0.Entity;
+import org.apache.ivory.util.StartupProperties;
+import org.apache.oozie.client.BundleJob;
+
+/**
+ * Bundles of an entity on a cluster, and the coordinators of each bundle, as
+ * last read from oozie. Entries live for oozie.bundle.cache.ttl.millis, and
+ * are dropped when the entity is scheduled, suspended, resumed, deleted or
+ * updated through the workflow engine.
+ * <p/>
+ * Each entity on a cluster has a generation, bumped on every invalidation.
+ * Callers take the generation before reading from oozie and pass it along
+ * with what they read, which is only kept if there was no invalidation in
+ * between, so a read that raced a schedule, suspend or resume can't put
+ * stale bundles back.
+ */
+public final class BundleCache implements WorkflowEngineActionListener {
+
+    private static final BundleCache INSTANCE = new BundleCache(Long.parseLong(
+            StartupProperties.get().getProperty("oozie.bundle.cache.ttl.millis", "30000")));
+
+    private final long ttlMillis;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private static final class Entry {
+        private final long expiry;
+        private final long generation;
+        private final List<BundleJob> bundles;
+        private final ConcurrentMap<String, BundleJob> bundleInfos = new ConcurrentHashMap<String, BundleJob>();
+
+        private Entry(long expiry, long generation, List<BundleJob> bundles) {
+            this.expiry = expiry;
+            this.generation = generation;
+            this.bundles = bundles;
+        }
+    }
+
+    BundleCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public static BundleCache get() {
+        return INSTANCE;
+    }
+
+    private String key(Entity entity, String cluster) {
+        return cluster + "/" + EntityUtil.getWorkflowName(entity);
+    }
+
+    private Entry getEntry(Entity entity, String cluster) {
+        Entry entry = entries.get(key(entity, cluster));
+        if (entry != null && entry.expiry <= System.currentTimeMillis()) {
+            entries.remove(key(entity, cluster), entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private AtomicLong generation(String key) {
+        AtomicLong generation = generations.get(key);
+        if (generation == null) {
+            AtomicLong created = new AtomicLong();
+            generation = generations.putIfAbsent(key, created);
+            if (generation == null) {
+                generation = created;
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * @return generation of the entity on the cluster, to be taken before
+     *         reading its bundles from oozie
+     */
+    long getGeneration(Entity entity, String cluster) {
+        return generation(key(entity, cluster)).get();
+    }
+
+    private <T> T count(T value) {
+        (value == null ? misses : hits).incrementAndGet();
+        return value;
+    }
+
+    /**
+     * @return bundles of the entity on the cluster, or null if not cached
+     */
+    List<BundleJob> getBundles(Entity entity, String cluster) {
+        Entry entry = getEntry(entity, cluster);
+        return count(entry == null ? null : entry.bundles);
+    }
+
+    /**
+     * Bundles read from oozie are only kept if the entity wasn't invalidated
+     * since the given generation was taken.
+     */
+    void putBundles(Entity entity, String cluster, List<BundleJob> bundles, long generation) {
+        String key = key(entity, cluster);
+        Entry entry = new Entry(System.currentTimeMillis() + ttlMillis, generation, bundles);
+        entries.put(key, entry);
+        // invalidate bumps the generation before it removes the entry, so
+        // either it removes this one or this check sees the new generation
+        if (generation(key).get() != generation) {
+            entries.remove(key, entry);
+        }
+    }
+
+    /**
+     * @return bundle with its coordinators, or null if not cached
+     */
+    BundleJob getBundleInfo(Entity entity, String cluster, String bundleId) {
+        Entry entry = getEntry(entity, cluster);
+        return count(entry == null ? null : entry.bundleInfos.get(bundleId));
+    }
+
+    /**
+     * Bundle infos are kept with, and expire along with, the bundles of the
+     * entity. They aren't kept if those aren't cached, or were read in
+     * another generation.
+     */
+    void putBundleInfo(Entity entity, String cluster, BundleJob bundle, long generation) {
+        Entry entry = getEntry(entity, cluster);
+        if (entry != null && entry.generation == generation) {
+            entry.bundleInfos.put(bundle.getId(), bundle);
+        }
+    }
+
+    public void invalidate(Entity entity, String cluster) {
+        String key = key(entity, cluster);
+        generation(key).incrementAndGet();
+        if (entries.remove(key) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void beforeSchedule(Entity entity, String cluster) throws IvoryException {
+        invalidate(entity, cluster);
+    }
+
+    @Override
+    public void afterSchedule(Entity entity, String cluster) throws IvoryException {
+        invalidate(entity, cluster);
+    }
+
+    @Override
+    public void beforeDelete(Entity entity, String cluster) throws IvoryException {
+        invalidate(entity, cluster);
+    }
+
+    @Override
+    public void afterDelete(Entity entity, String cluster) throws IvoryException {
+        invalidate(entity, cluster);
+    }
+
+    @Override
+    public void beforeSuspend(Entity entity, String cluster) throws IvoryException {
+        invalidate(entity, cluster);
+    }
+
+    @Override
+    public void afterSuspend(Entity entity, String cluster) throws IvoryException {
+        invalidate(entity, cluster);
+    }
+
+    @Override
+    public void beforeResume(Entity entity, String cluster) throws IvoryException {
+        invalidate(entity, cluster);
+    }
+
+    @Override
+    public void afterResume(Entity entity, String cluster) throws IvoryException {
+        invalidate(entity, cluster);
+    }
+}
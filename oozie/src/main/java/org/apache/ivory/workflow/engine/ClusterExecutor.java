@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.workflow.engine;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.util.StartupProperties;
+
+/**
+ * Runs a call on each of a number of clusters at the same time, on a pool of
+ * oozie.cluster.threads shared by all calls. Calls made from a thread of the
+ * pool run on that thread, one cluster after another, so that a pool full of
+ * waiting callers can't deadlock.
+ */
+final class ClusterExecutor {
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            Integer.parseInt(StartupProperties.get().getProperty("oozie.cluster.threads", "10")),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "OozieCluster-" + count.incrementAndGet()) {
+                        @Override
+                        public void run() {
+                            IN_POOL.set(Boolean.TRUE);
+                            super.run();
+                        }
+                    };
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static final ThreadLocal<Boolean> IN_POOL = new ThreadLocal<Boolean>();
+
+    private ClusterExecutor() {
+    }
+
+    interface ClusterCall<T> {
+        T call(String cluster) throws IvoryException;
+    }
+
+    /**
+     * Every cluster is called, even if the call fails on some. The failure of
+     * the first cluster, in the order of clusters, is then thrown as it would
+     * have been had the clusters been called in turn.
+     *
+     * @return result of each cluster, in the order of clusters
+     */
+    static <T> Map<String, T> execute(Collection<String> clusters, final ClusterCall<T> call)
+            throws IvoryException {
+        Map<String, T> results = new LinkedHashMap<String, T>();
+        if (clusters.size() < 2 || IN_POOL.get() != null) {
+            for (String cluster : clusters) {
+                results.put(cluster, call.call(cluster));
+            }
+            return results;
+        }
+
+        Map<String, Future<T>> futures = new LinkedHashMap<String, Future<T>>();
+        for (final String cluster : clusters) {
+            futures.put(cluster, EXECUTOR.submit(new Callable<T>() {
+                @Override
+                public T call() throws IvoryException {
+                    return call.call(cluster);
+                }
+            }));
+        }
+
+        Throwable failure = null;
+        for (Map.Entry<String, Future<T>> entry : futures.entrySet()) {
+            try {
+                results.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IvoryException(e);
+            }
+        }
+        if (failure instanceof IvoryException) {
+            throw (IvoryException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new IvoryException(failure);
+        }
+        return results;
+    }
+}
@@ -39,18 +39,20 @@ public class OozieClientFactory {
     private static final String LOCAL_OOZIE = "local";
     private static volatile boolean localInitialized = false;
 
-    public synchronized static OozieClient get(Cluster cluster)
+    public static OozieClient get(Cluster cluster)
             throws IvoryException {
         assert cluster != null : "Cluster cant be null";
         String oozieUrl = ClusterHelper.getOozieUrl(cluster);
-        if (!cache.containsKey(oozieUrl)) {
-            OozieClient ref = getClientRef(oozieUrl);
+        OozieClient ref = cache.get(oozieUrl);
+        if (ref == null) {
+            ref = getClientRef(oozieUrl);
+            OozieClient cached = cache.putIfAbsent(oozieUrl, ref);
+            if (cached != null) {
+                return cached;
+            }
             LOG.info("Caching Oozie client object for " + oozieUrl);
-            cache.putIfAbsent(oozieUrl, ref);
-            return ref;
-        } else {
-            return cache.get(oozieUrl);
         }
+        return ref;
     }
 
     public static OozieClient get(String cluster) throws IvoryException {
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.workflow.engine;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ivory.util.StartupProperties;
+import org.apache.log4j.Logger;
+import org.apache.oozie.client.OozieClientException;
+
+/**
+ * Circuit breaker and bulkhead in front of an oozie server.
+ * <p/>
+ * After oozie.client.breaker.failures successive calls fail to reach the
+ * server, calls fail at once for oozie.client.breaker.open.millis. Then one
+ * call is let through, and the breaker closes if it succeeds. At most
+ * oozie.client.max.concurrent.calls calls are made to the server at a time;
+ * calls waiting longer than oozie.client.bulkhead.wait.millis for their turn
+ * are rejected. Reads that fail to connect to the server are retried up to
+ * oozie.client.read.retries times, after a jittered exponential backoff;
+ * reads that time out waiting for the server's answer aren't, as each of
+ * those already took the client's read timeout.
+ */
+public final class OozieClientGuard {
+
+    private static final Logger LOG = Logger.getLogger(OozieClientGuard.class);
+
+    public static final String CIRCUIT_OPEN = "CIRCUIT_OPEN";
+    public static final String BULKHEAD_FULL = "BULKHEAD_FULL";
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public interface Call<T> {
+        T call() throws OozieClientException;
+    }
+
+    private static final ConcurrentMap<String, OozieClientGuard> GUARDS =
+            new ConcurrentHashMap<String, OozieClientGuard>();
+
+    // calls made by a guarded call, such as overloads of the client calling
+    // each other, go straight through
+    private static final ThreadLocal<Boolean> IN_CALL = new ThreadLocal<Boolean>();
+
+    private static final Random RANDOM = new Random();
+
+    private final String oozieUrl;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final int maxConcurrentCalls;
+    private final long bulkheadWaitMillis;
+    private final int readRetries;
+    private final long backoffMillis;
+
+    private final Semaphore permits;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong callFailures = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    OozieClientGuard(String oozieUrl, int failureThreshold, long openMillis, int maxConcurrentCalls,
+                     long bulkheadWaitMillis, int readRetries, long backoffMillis) {
+        this.oozieUrl = oozieUrl;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.bulkheadWaitMillis = bulkheadWaitMillis;
+        this.readRetries = readRetries;
+        this.backoffMillis = backoffMillis;
+        this.permits = new Semaphore(maxConcurrentCalls);
+    }
+
+    public static OozieClientGuard get(String oozieUrl) {
+        OozieClientGuard guard = GUARDS.get(oozieUrl);
+        if (guard == null) {
+            Properties props = StartupProperties.get();
+            guard = new OozieClientGuard(oozieUrl,
+                    Integer.parseInt(props.getProperty("oozie.client.breaker.failures", "5")),
+                    Long.parseLong(props.getProperty("oozie.client.breaker.open.millis", "30000")),
+                    Integer.parseInt(props.getProperty("oozie.client.max.concurrent.calls", "20")),
+                    Long.parseLong(props.getProperty("oozie.client.bulkhead.wait.millis", "1000")),
+                    Integer.parseInt(props.getProperty("oozie.client.read.retries", "2")),
+                    Long.parseLong(props.getProperty("oozie.client.retry.backoff.millis", "200")));
+            OozieClientGuard existing = GUARDS.putIfAbsent(oozieUrl, guard);
+            if (existing != null) {
+                guard = existing;
+            }
+        }
+        return guard;
+    }
+
+    /**
+     * @return guards of the oozie servers called so far, by oozie url
+     */
+    public static Map<String, OozieClientGuard> getGuards() {
+        return new TreeMap<String, OozieClientGuard>(GUARDS);
+    }
+
+    /**
+     * Call that is safe to repeat, and is retried if it fails to connect to
+     * the server.
+     */
+    public <T> T read(Call<T> call) throws OozieClientException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return execute(call);
+            } catch (OozieClientException e) {
+                if (attempt >= readRetries || !isConnectFailure(e)) {
+                    throw e;
+                }
+                retries.incrementAndGet();
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Call that changes the server's state, and is made at most once.
+     */
+    public <T> T write(Call<T> call) throws OozieClientException {
+        return execute(call);
+    }
+
+    private <T> T execute(Call<T> call) throws OozieClientException {
+        if (IN_CALL.get() != null) {
+            return call.call();
+        }
+
+        if (!allowCall()) {
+            rejections.incrementAndGet();
+            throw new OozieClientException(CIRCUIT_OPEN, "Calls to " + oozieUrl + " are suspended after "
+                    + failureThreshold + " failures to reach it");
+        }
+        boolean acquired = false;
+        try {
+            acquired = permits.tryAcquire(bulkheadWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!acquired) {
+            rejections.incrementAndGet();
+            releaseTrial();
+            throw new OozieClientException(BULKHEAD_FULL, maxConcurrentCalls + " calls to " + oozieUrl
+                    + " are in progress already");
+        }
+
+        IN_CALL.set(Boolean.TRUE);
+        calls.incrementAndGet();
+        boolean recorded = false;
+        try {
+            T result = call.call();
+            recordSuccess();
+            recorded = true;
+            return result;
+        } catch (OozieClientException e) {
+            if (isUnreachable(e)) {
+                recordFailure();
+            } else {
+                recordSuccess(); // the server is up, even if the call is wrong
+            }
+            recorded = true;
+            throw e;
+        } finally {
+            // such as a runtime exception or an error thrown by the call
+            if (!recorded) {
+                releaseTrial();
+            }
+            IN_CALL.remove();
+            permits.release();
+        }
+    }
+
+    private boolean isUnreachable(OozieClientException e) {
+        return OozieClientException.IO_ERROR.equals(e.getErrorCode());
+    }
+
+    private boolean isConnectFailure(OozieClientException e) {
+        if (!isUnreachable(e)) {
+            return false;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException
+                    || cause instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void backoff(int attempt) throws OozieClientException {
+        long delay = (long) (backoffMillis * (1L << attempt) * (0.5 + RANDOM.nextDouble()));
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OozieClientException(OozieClientException.IO_ERROR, e);
+        }
+    }
+
+    private synchronized boolean allowCall() {
+        switch (state) {
+        case CLOSED:
+            return true;
+
+        case OPEN:
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            LOG.info("Trying a call to " + oozieUrl + " after " + openMillis + " ms");
+            state = State.HALF_OPEN;
+            return true;
+
+        default: // a trial call is in progress
+            return false;
+        }
+    }
+
+    // the trial call didn't tell whether the server is up, so let the next
+    // call try
+    private synchronized void releaseTrial() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = 0;
+        }
+    }
+
+    private synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            LOG.info("Calls to " + oozieUrl + " are resumed");
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    private synchronized void recordFailure() {
+        callFailures.incrementAndGet();
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            LOG.warn("Suspending calls to " + oozieUrl + " for " + openMillis + " ms after " + failures
+                    + " failures");
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public int getActiveCalls() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getFailures() {
+        return callFailures.get();
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+}
@@ -21,21 +21,34 @@ package org.apache.ivory.workflow.engine;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.ivory.IvoryException;
 import org.apache.ivory.Tag;
 import org.apache.ivory.entity.EntityUtil;
+import org.apache.ivory.entity.InstanceCalendar;
 import org.apache.ivory.entity.v0.Entity;
 import org.apache.ivory.entity.v0.EntityGraph;
 import org.apache.ivory.entity.v0.EntityType;
@@ -48,8 +61,10 @@ import org.apache.ivory.resource.InstancesResult.Instance;
 import org.apache.ivory.resource.InstancesResult.WorkflowStatus;
 import org.apache.ivory.update.UpdateHelper;
 import org.apache.ivory.util.OozieUtils;
+import org.apache.ivory.util.StartupProperties;
 import org.apache.ivory.workflow.OozieWorkflowBuilder;
 import org.apache.ivory.workflow.WorkflowBuilder;
+import org.apache.ivory.workflow.engine.ClusterExecutor.ClusterCall;
 import org.apache.log4j.Logger;
 import org.apache.oozie.client.*;
 import org.apache.oozie.client.CoordinatorJob.Timeunit;
@@ -84,6 +99,10 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 	private static final List<Job.Status> BUNDLE_RUNNING_STATUS = Arrays.asList(
 			Job.Status.PREP, Job.Status.RUNNING);
 
+	private static final List<Job.Status> COORD_DONE_STATUS = Arrays.asList(
+			Job.Status.SUCCEEDED, Job.Status.KILLED, Job.Status.FAILED,
+			Job.Status.DONEWITHERROR);
+
 	private static final List<Job.Status> BUNDLE_SUSPEND_PRECOND = Arrays.asList(
 			Job.Status.PREP, Job.Status.RUNNING, Job.Status.DONEWITHERROR);
 	private static final List<Job.Status> BUNDLE_RESUME_PRECOND = Arrays.asList(
@@ -94,13 +113,51 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 	private static final String[] BUNDLE_UPDATEABLE_PROPS = new String[] {
 			"parallel", "clusters.clusters[\\d+].validity.end" };
 
+	private static final int COORD_ACTION_PAGE_SIZE = Integer.parseInt(StartupProperties
+			.get().getProperty("oozie.coord.action.page.size", "500"));
+	private static final int WORKFLOW_PAGE_SIZE = 1000;
+
+	// workflows of instances are looked up and acted on in parallel
+	private static final ExecutorService INSTANCE_EXECUTOR = Executors.newFixedThreadPool(
+			Integer.parseInt(StartupProperties.get().getProperty(
+					"oozie.instance.action.threads", "10")), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "OozieInstanceAction-"
+							+ count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	// configurations of workflows, by cluster and workflow id, so that the
+	// properties of a workflow are fetched once for a late data check
+	private static final long WORKFLOW_CONF_TTL_MILLIS = Long.parseLong(StartupProperties
+			.get().getProperty("oozie.workflow.conf.ttl.millis", "60000"));
+	private static final int MAX_CACHED_WORKFLOW_CONFS = 1000;
+	private static final ConcurrentMap<String, CachedConf> WORKFLOW_CONFS =
+			new ConcurrentHashMap<String, CachedConf>();
+
+	private static final class CachedConf {
+		private final Properties props;
+		private final long expiry;
+
+		private CachedConf(Properties props, long expiry) {
+			this.props = props;
+			this.expiry = expiry;
+		}
+	}
+
     public OozieWorkflowEngine() {
         registerListener(new OozieHouseKeepingService());
+        registerListener(BundleCache.get());
     }
 
 	@Override
-	public void schedule(Entity entity) throws IvoryException {
-		Map<String, BundleJob> bundleMap = findLatestBundle(entity);
+	public void schedule(final Entity entity) throws IvoryException {
+		Map<String, BundleJob> bundleMap = findLatestBundle(entity, false);
 		List<String> schedClusters = new ArrayList<String>();
 		for (String cluster : bundleMap.keySet()) {
 			if (bundleMap.get(cluster) == MISSING)
@@ -112,13 +169,16 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 		if (!schedClusters.isEmpty()) {
 			WorkflowBuilder<Entity> builder = WorkflowBuilder.getBuilder(
 					ENGINE, entity);
-			Map<String, Properties> newFlows = builder.newWorkflowSchedule(
+			final Map<String, Properties> newFlows = builder.newWorkflowSchedule(
 					entity, schedClusters);
-			for (String cluster : newFlows.keySet()) {
-				LOG.info("Scheduling " + entity.toShortString()
-						+ " on cluster " + cluster);
-				scheduleEntity(cluster, newFlows.get(cluster), entity);
-			}
+			ClusterExecutor.execute(newFlows.keySet(), new ClusterCall<String>() {
+				@Override
+				public String call(String cluster) throws IvoryException {
+					LOG.info("Scheduling " + entity.toShortString()
+							+ " on cluster " + cluster);
+					return scheduleEntity(cluster, newFlows.get(cluster), entity);
+				}
+			});
 		}
 	}
 
@@ -138,7 +198,7 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 
 	private boolean isBundleInState(Entity entity, BundleStatus status)
 			throws IvoryException {
-		Map<String, BundleJob> bundles = findLatestBundle(entity);
+		Map<String, BundleJob> bundles = findLatestBundle(entity, true);
 		for (BundleJob bundle : bundles.values()) {
 			if (bundle == MISSING) // There is no active bundle
 				return false;
@@ -178,41 +238,50 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 	private List<BundleJob> findBundles(Entity entity, String cluster)
 			throws IvoryException {
 		try {
+			long generation = BundleCache.get().getGeneration(entity, cluster);
 			OozieClient client = OozieClientFactory.get(cluster);
 			List<BundleJob> jobs = client.getBundleJobsInfo(
 					OozieClient.FILTER_NAME + "="
 							+ EntityUtil.getWorkflowName(entity) + ";", 0, 256);
+			List<BundleJob> filteredJobs = new ArrayList<BundleJob>();
 			if (jobs != null) {
-			    List<BundleJob> filteredJobs = new ArrayList<BundleJob>();
 			    for(BundleJob job:jobs)
 			        if(job.getStatus() != Job.Status.KILLED || job.getEndTime() == null)
 			            filteredJobs.add(job);
-				return filteredJobs;
 			}
-			return new ArrayList<BundleJob>();
+			BundleCache.get().putBundles(entity, cluster, filteredJobs, generation);
+			return filteredJobs;
 		} catch (OozieClientException e) {
 			throw new IvoryException(e);
 		}
 	}
 
-	private Map<String, List<BundleJob>> findBundles(Entity entity)
+	// Bundles as cached for status and instance lookups. Actions on the
+	// bundles themselves use findBundles, which always asks oozie
+	private List<BundleJob> getCachedBundles(Entity entity, String cluster)
 			throws IvoryException {
-		Set<String> clusters = EntityUtil.getClustersDefinedInColos(entity);
-		Map<String, List<BundleJob>> jobMap = new HashMap<String, List<BundleJob>>();
+		List<BundleJob> bundles = BundleCache.get().getBundles(entity, cluster);
+		return bundles == null ? findBundles(entity, cluster) : bundles;
+	}
 
-		for (String cluster : clusters) {
-			jobMap.put(cluster, findBundles(entity, cluster));
-		}
-		return jobMap;
+	private Map<String, List<BundleJob>> findBundles(final Entity entity,
+			final boolean cached) throws IvoryException {
+		Set<String> clusters = EntityUtil.getClustersDefinedInColos(entity);
+		return ClusterExecutor.execute(clusters, new ClusterCall<List<BundleJob>>() {
+			@Override
+			public List<BundleJob> call(String cluster) throws IvoryException {
+				return cached ? getCachedBundles(entity, cluster) : findBundles(entity, cluster);
+			}
+		});
 	}
 
 	// During update, a new bundle may not be created if next start time >= end
 	// time
 	// In this case, there will not be a bundle with the latest entity md5
 	// So, pick last created bundle
-	private Map<String, BundleJob> findLatestBundle(Entity entity)
-			throws IvoryException {
-		Map<String, List<BundleJob>> bundlesMap = findBundles(entity);
+	private Map<String, BundleJob> findLatestBundle(Entity entity,
+			boolean cached) throws IvoryException {
+		Map<String, List<BundleJob>> bundlesMap = findBundles(entity, cached);
 		Map<String, BundleJob> bundleMap = new HashMap<String, BundleJob>();
 		for (String cluster : bundlesMap.keySet()) {
 			Date latest = null;
@@ -262,11 +331,16 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 		SUSPEND, RESUME, KILL
 	}
 
-    private String doBundleAction(Entity entity, BundleAction action) throws IvoryException {
+    private String doBundleAction(final Entity entity, final BundleAction action) throws IvoryException {
         Set<String> clusters = EntityUtil.getClustersDefinedInColos(entity);
         String result = null;
-        for(String cluster:clusters)
-            result = doBundleAction(entity, action, cluster);
+        for (String clusterResult : ClusterExecutor.execute(clusters, new ClusterCall<String>() {
+            @Override
+            public String call(String cluster) throws IvoryException {
+                return doBundleAction(entity, action, cluster);
+            }
+        }).values())
+            result = clusterResult;
         return result;
     }
     
@@ -371,48 +445,107 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
     }
 
 	@Override
-	public InstancesResult getRunningInstances(Entity entity)
+	public InstancesResult getRunningInstances(final Entity entity)
 			throws IvoryException {
-		try {
-			WorkflowBuilder<Entity> builder = WorkflowBuilder.getBuilder(
-					ENGINE, entity);
-			Set<String> clusters = EntityUtil.getClustersDefinedInColos(entity);
-			List<Instance> runInstances = new ArrayList<Instance>();
-			String[] wfNames = builder.getWorkflowNames(entity);
-			List<String> coordNames = new ArrayList<String>();
-			for (String wfName : wfNames) {
-				if (EntityUtil.getWorkflowName(Tag.RETENTION, entity)
-						.toString().equals(wfName))
-					continue;
-				coordNames.add(wfName);
+		WorkflowBuilder<Entity> builder = WorkflowBuilder.getBuilder(
+				ENGINE, entity);
+		Set<String> clusters = EntityUtil.getClustersDefinedInColos(entity);
+		List<Instance> runInstances = new ArrayList<Instance>();
+		String[] wfNames = builder.getWorkflowNames(entity);
+		final List<String> coordNames = new ArrayList<String>();
+		for (String wfName : wfNames) {
+			if (EntityUtil.getWorkflowName(Tag.RETENTION, entity)
+					.toString().equals(wfName))
+				continue;
+			coordNames.add(wfName);
+		}
+
+		for (List<Instance> instances : ClusterExecutor.execute(clusters,
+				new ClusterCall<List<Instance>>() {
+					@Override
+					public List<Instance> call(String cluster) throws IvoryException {
+						return getRunningInstances(entity, cluster, coordNames);
+					}
+				}).values()) {
+			runInstances.addAll(instances);
+		}
+		return new InstancesResult("Running Instances",
+				runInstances.toArray(new Instance[runInstances.size()]));
+	}
+
+	private List<Instance> getRunningInstances(Entity entity, String cluster,
+			List<String> coordNames) throws IvoryException {
+		List<CoordinatorJob> coords = new ArrayList<CoordinatorJob>();
+		for (BundleJob bundle : getCachedBundles(entity, cluster)) {
+			for (CoordinatorJob coord : getCachedBundleInfo(entity, cluster,
+					bundle.getId()).getCoordinators()) {
+				if (coordNames.contains(coord.getAppName())
+						&& !COORD_DONE_STATUS.contains(coord.getStatus()))
+					coords.add(coord);
 			}
+		}
+		return getRunningInstances(entity, cluster,
+				OozieClientFactory.get(cluster), coords);
+	}
+
+	/**
+	 * Lists the running actions of each coord in pages, rather than looking up
+	 * the coord action of each running workflow. Start times come from a
+	 * listing of running workflows, and are looked up for workflows started
+	 * since.
+	 */
+	List<Instance> getRunningInstances(Entity entity, String cluster,
+			OozieClient client, List<CoordinatorJob> coords)
+			throws IvoryException {
+		List<Instance> runInstances = new ArrayList<Instance>();
+		if (coords.isEmpty()) {
+			return runInstances;
+		}
+
+		Set<String> wfNames = new LinkedHashSet<String>();
+		for (CoordinatorJob coord : coords) {
+			wfNames.add(coord.getAppName());
+		}
+		Map<String, Date> startTimes = new HashMap<String, Date>();
+		for (WorkflowJob wf : getRunningWorkflows(client, wfNames)) {
+			startTimes.put(wf.getId(), wf.getStartTime());
+		}
 
-			for (String cluster : clusters) {
-				OozieClient client = OozieClientFactory.get(cluster);
-				List<WorkflowJob> wfs = getRunningWorkflows(cluster, coordNames);
-				if (wfs != null) {
-					for (WorkflowJob job : wfs) {
-						WorkflowJob wf = client.getJobInfo(job.getId());
-						if (StringUtils.isEmpty(wf.getParentId()))
+		String filter = OozieClient.FILTER_STATUS + "="
+				+ CoordinatorAction.Status.RUNNING.name();
+		try {
+			for (CoordinatorJob coord : coords) {
+				String sourceCluster = null;
+				if (entity.getEntityType() == EntityType.FEED) {
+					sourceCluster = EntityUtil.getWorkflowNameSuffix(
+							coord.getAppName(), entity);
+				}
+				for (int offset = 1;; offset += COORD_ACTION_PAGE_SIZE) {
+					List<CoordinatorAction> actions = client.getCoordJobInfo(
+							coord.getId(), filter, offset,
+							COORD_ACTION_PAGE_SIZE).getActions();
+					for (CoordinatorAction action : actions) {
+						if (action.getStatus() != CoordinatorAction.Status.RUNNING
+								|| StringUtils.isEmpty(action.getExternalId()))
 							continue;
 
-						CoordinatorAction action = client.getCoordActionInfo(wf
-								.getParentId());
-						String nominalTimeStr = SchemaHelper
-								.formatDateUTC(action.getNominalTime());
-						Instance instance = new Instance(cluster,
-								nominalTimeStr, WorkflowStatus.RUNNING);
-						instance.startTime = wf.getStartTime();
-						if (entity.getEntityType() == EntityType.FEED) {
-							instance.sourceCluster = getSourceCluster(cluster,
-									action, entity);
+						Date startTime = startTimes.get(action.getExternalId());
+						if (startTime == null) {
+							startTime = client.getJobInfo(action.getExternalId())
+									.getStartTime();
 						}
+						Instance instance = new Instance(cluster,
+								SchemaHelper.formatDateUTC(action.getNominalTime()),
+								WorkflowStatus.RUNNING);
+						instance.startTime = startTime;
+						instance.sourceCluster = sourceCluster;
 						runInstances.add(instance);
 					}
+					if (actions.size() < COORD_ACTION_PAGE_SIZE)
+						break;
 				}
 			}
-			return new InstancesResult("Running Instances",
-					runInstances.toArray(new Instance[runInstances.size()]));
+			return runInstances;
 
 		} catch (OozieClientException e) {
 			throw new IvoryException(e);
@@ -463,8 +596,8 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 		}
 	}
 
-	private InstancesResult doJobAction(JobAction action, Entity entity,
-			Date start, Date end, Properties props) throws IvoryException {
+	private InstancesResult doJobAction(final JobAction action, Entity entity,
+			Date start, Date end, final Properties props) throws IvoryException {
 
 		Map<String, List<CoordinatorAction>> actionsMap = getCoordActions(
 				entity, start, end);
@@ -475,60 +608,46 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 		APIResult.Status overallStatus = APIResult.Status.SUCCEEDED;
 		int instanceCount = 0;
 
-		List<Instance> instances = new ArrayList<Instance>();
-		for (String cluster : actionsMap.keySet()) {
+		List<Future<Instance>> futures = new ArrayList<Future<Instance>>();
+		for (final String cluster : actionsMap.keySet()) {
 			if (clusterList.size() != 0 && !clusterList.contains(cluster))
 				continue;
 
 			List<CoordinatorAction> actions = actionsMap.get(cluster);
-			String sourceCluster = null;
-			for (CoordinatorAction coordinatorAction : actions) {
+			Map<String, String> sourceClusters = new HashMap<String, String>();
+			for (final CoordinatorAction coordinatorAction : actions) {
+				String sourceCluster = null;
 				if (entity.getEntityType() == EntityType.FEED) {
-					sourceCluster = getSourceCluster(cluster,
-							coordinatorAction, entity);
+					// actions of a coord share the source cluster
+					sourceCluster = sourceClusters.get(coordinatorAction.getJobId());
+					if (sourceCluster == null) {
+						sourceCluster = getSourceCluster(cluster,
+								coordinatorAction, entity);
+						sourceClusters.put(coordinatorAction.getJobId(), sourceCluster);
+					}
 					if (sourceClusterList.size() != 0
 							&& !sourceClusterList.contains(sourceCluster))
 						continue;
 				}
-				String status = mapActionStatus(coordinatorAction.getStatus());
-				WorkflowJob jobInfo = null;
-				if (coordinatorAction.getExternalId() != null) {
-					jobInfo = getWorkflowInfo(cluster,
-							coordinatorAction.getExternalId());
-				}
 				instanceCount++;
-				if (jobInfo != null) {
-					status = mapWorkflowStatus(jobInfo.getStatus());
-					try {
-						status = performAction(action, props, cluster, status,
-								jobInfo);
-					} catch (IvoryException e) {
-						LOG.warn("Unable to perform action " + action
-								+ " on cluster ", e);
-						status = WorkflowStatus.ERROR.name();
-						overallStatus = APIResult.Status.PARTIAL;
+				final String instanceSourceCluster = sourceCluster;
+				futures.add(INSTANCE_EXECUTOR.submit(new Callable<Instance>() {
+					@Override
+					public Instance call() throws IvoryException {
+						return doJobAction(action, props, cluster,
+								coordinatorAction, instanceSourceCluster);
 					}
-				}
-				if (action != OozieWorkflowEngine.JobAction.STATUS
-						&& coordinatorAction.getExternalId() != null) {
-					jobInfo = getWorkflowInfo(cluster,
-							coordinatorAction.getExternalId());
-				}
+				}));
+			}
+		}
 
-				String nominalTimeStr = SchemaHelper
-						.formatDateUTC(coordinatorAction.getNominalTime());
-				InstancesResult.Instance instance = new InstancesResult.Instance(
-						cluster, nominalTimeStr, WorkflowStatus.valueOf(status));
-				if (jobInfo != null) {
-					instance.startTime = jobInfo.getStartTime();
-					instance.endTime = jobInfo.getEndTime();
-					instance.logFile = jobInfo.getConsoleUrl();
-					instance.sourceCluster = sourceCluster;
-				}
-                instance.details = coordinatorAction
-                        .getMissingDependencies();
-                instances.add(instance);
+		List<Instance> instances = new ArrayList<Instance>();
+		for (Future<Instance> future : futures) {
+			Instance instance = getResult(future);
+			if (instance.status == WorkflowStatus.ERROR) {
+				overallStatus = APIResult.Status.PARTIAL;
 			}
+			instances.add(instance);
 		}
 		if (instanceCount < 2 && overallStatus == APIResult.Status.PARTIAL) {
 			overallStatus = APIResult.Status.FAILED;
@@ -540,6 +659,62 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 		return instancesResult;
 	}
 
+	/**
+	 * ERROR is the status of an instance only if the action on it failed.
+	 */
+	private Instance doJobAction(JobAction action, Properties props,
+			String cluster, CoordinatorAction coordinatorAction,
+			String sourceCluster) throws IvoryException {
+		String status = mapActionStatus(coordinatorAction.getStatus());
+		WorkflowJob jobInfo = null;
+		if (coordinatorAction.getExternalId() != null) {
+			jobInfo = getWorkflowInfo(cluster,
+					coordinatorAction.getExternalId());
+		}
+		if (jobInfo != null) {
+			status = mapWorkflowStatus(jobInfo.getStatus());
+			try {
+				status = performAction(action, props, cluster, status,
+						jobInfo);
+			} catch (IvoryException e) {
+				LOG.warn("Unable to perform action " + action
+						+ " on cluster ", e);
+				status = WorkflowStatus.ERROR.name();
+			}
+		}
+		if (action != OozieWorkflowEngine.JobAction.STATUS
+				&& coordinatorAction.getExternalId() != null) {
+			jobInfo = getWorkflowInfo(cluster,
+					coordinatorAction.getExternalId());
+		}
+
+		String nominalTimeStr = SchemaHelper
+				.formatDateUTC(coordinatorAction.getNominalTime());
+		InstancesResult.Instance instance = new InstancesResult.Instance(
+				cluster, nominalTimeStr, WorkflowStatus.valueOf(status));
+		if (jobInfo != null) {
+			instance.startTime = jobInfo.getStartTime();
+			instance.endTime = jobInfo.getEndTime();
+			instance.logFile = jobInfo.getConsoleUrl();
+			instance.sourceCluster = sourceCluster;
+		}
+		instance.details = coordinatorAction.getMissingDependencies();
+		return instance;
+	}
+
+	private <T> T getResult(Future<T> future) throws IvoryException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IvoryException) {
+				throw (IvoryException) e.getCause();
+			}
+			throw new IvoryException(e.getCause());
+		} catch (InterruptedException e) {
+			throw new IvoryException(e);
+		}
+	}
+
 	private String performAction(JobAction action, Properties props,
 			String cluster, String status, WorkflowJob jobInfo)
 			throws IvoryException {
@@ -631,49 +806,86 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 	}
 
 	protected Map<String, List<CoordinatorAction>> getCoordActions(
-			Entity entity, Date start, Date end) throws IvoryException {
-		Map<String, List<BundleJob>> bundlesMap = findBundles(entity);
-		Map<String, List<CoordinatorAction>> actionsMap = new HashMap<String, List<CoordinatorAction>>();
+			final Entity entity, final Date start, final Date end) throws IvoryException {
+		Set<String> clusters = EntityUtil.getClustersDefinedInColos(entity);
+		return ClusterExecutor.execute(clusters, new ClusterCall<List<CoordinatorAction>>() {
+			@Override
+			public List<CoordinatorAction> call(String cluster) throws IvoryException {
+				return getCoordActions(entity, cluster, start, end);
+			}
+		});
+	}
 
-		for (String cluster : bundlesMap.keySet()) {
-			List<BundleJob> bundles = bundlesMap.get(cluster);
-			OozieClient client = OozieClientFactory.get(cluster);
-			List<CoordinatorJob> applicableCoords = getApplicableCoords(entity,
-					client, start, end, bundles);
-			List<CoordinatorAction> actions = new ArrayList<CoordinatorAction>();
-
-			for (CoordinatorJob coord : applicableCoords) {
-				Frequency freq = createFrequency(coord.getFrequency(),
-						coord.getTimeUnit());
-				TimeZone tz = EntityUtil.getTimeZone(coord.getTimeZone());
-				Date iterStart = EntityUtil.getNextStartTime(
-						coord.getStartTime(), freq, tz, start);
-				final Date iterEnd = (coord.getNextMaterializedTime().before(end) ? coord.getNextMaterializedTime() : end);
-				while (!iterStart.after(iterEnd)) {
-					int sequence = EntityUtil.getInstanceSequence(
-							coord.getStartTime(), freq, tz, iterStart);
-					String actionId = coord.getId() + "@" + sequence;
-					CoordinatorAction coordActionInfo = null;
-					try {
-						coordActionInfo = client.getCoordActionInfo(actionId);
-					} catch (OozieClientException e) {
-						LOG.debug("Unable to get action for " + actionId + " "
-								+ e.getMessage());
-					}
-					if (coordActionInfo != null) {
-						actions.add(coordActionInfo);
-					}
-					Calendar startCal = Calendar.getInstance(EntityUtil
-							.getTimeZone(coord.getTimeZone()));
-					startCal.setTime(iterStart);
-					startCal.add(freq.getTimeUnit().getCalendarUnit(),
-							coord.getFrequency());
-					iterStart = startCal.getTime();
+	private List<CoordinatorAction> getCoordActions(Entity entity,
+			String cluster, Date start, Date end) throws IvoryException {
+		List<BundleJob> bundles = getCachedBundles(entity, cluster);
+		OozieClient client = OozieClientFactory.get(cluster);
+		List<CoordinatorJob> applicableCoords = getApplicableCoords(entity,
+				cluster, start, end, bundles);
+		List<CoordinatorAction> actions = new ArrayList<CoordinatorAction>();
+
+		for (CoordinatorJob coord : applicableCoords) {
+			Frequency freq = createFrequency(coord.getFrequency(),
+					coord.getTimeUnit());
+			TimeZone tz = EntityUtil.getTimeZone(coord.getTimeZone());
+			InstanceCalendar calendar = new InstanceCalendar(
+					coord.getStartTime(), freq, tz);
+			final Date iterEnd = (coord.getNextMaterializedTime().before(end) ? coord.getNextMaterializedTime() : end);
+			List<Integer> sequences = new ArrayList<Integer>();
+			for (Date instance : calendar.getInstances(start, iterEnd)) {
+				sequences.add(calendar.getInstanceSequence(instance));
+			}
+			actions.addAll(getCoordActions(client, coord, sequences));
+		}
+		return actions;
+	}
+
+	/**
+	 * Fetches the actions of a coord in pages of its job info, rather than
+	 * one at a time. Actions missing from the pages are looked up by id.
+	 *
+	 * @return actions with the given sequence numbers, in the same order
+	 */
+	List<CoordinatorAction> getCoordActions(OozieClient client,
+			CoordinatorJob coord, List<Integer> sequences) {
+		List<CoordinatorAction> actions = new ArrayList<CoordinatorAction>();
+		if (sequences.isEmpty()) {
+			return actions;
+		}
+
+		Map<Integer, CoordinatorAction> fetched = new HashMap<Integer, CoordinatorAction>();
+		int first = sequences.get(0);
+		int last = sequences.get(sequences.size() - 1);
+		for (int offset = first; offset <= last; offset += COORD_ACTION_PAGE_SIZE) {
+			int len = Math.min(COORD_ACTION_PAGE_SIZE, last - offset + 1);
+			try {
+				for (CoordinatorAction action : client.getCoordJobInfo(
+						coord.getId(), null, offset, len).getActions()) {
+					fetched.put(action.getActionNumber(), action);
 				}
+			} catch (OozieClientException e) {
+				LOG.debug("Unable to get actions " + offset + " to "
+						+ (offset + len - 1) + " of " + coord.getId() + " "
+						+ e.getMessage());
 			}
-			actionsMap.put(cluster, actions);
 		}
-		return actionsMap;
+
+		for (int sequence : sequences) {
+			CoordinatorAction coordActionInfo = fetched.get(sequence);
+			if (coordActionInfo == null) {
+				String actionId = coord.getId() + "@" + sequence;
+				try {
+					coordActionInfo = client.getCoordActionInfo(actionId);
+				} catch (OozieClientException e) {
+					LOG.debug("Unable to get action for " + actionId + " "
+							+ e.getMessage());
+				}
+			}
+			if (coordActionInfo != null) {
+				actions.add(coordActionInfo);
+			}
+		}
+		return actions;
 	}
 
 	private Frequency createFrequency(int frequency, Timeunit timeUnit) {
@@ -701,31 +913,38 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 	}
 
 	private List<CoordinatorJob> getApplicableCoords(Entity entity,
-			OozieClient client, Date start, Date end, List<BundleJob> bundles)
+			String cluster, Date start, Date end, List<BundleJob> bundles)
 			throws IvoryException {
 		List<CoordinatorJob> applicableCoords = new ArrayList<CoordinatorJob>();
-		try {
-			for (BundleJob bundle : bundles) {
-				List<CoordinatorJob> coords = client.getBundleJobInfo(
-						bundle.getId()).getCoordinators();
-				for (CoordinatorJob coord : coords) {
-					String coordName = EntityUtil.getWorkflowName(
-							Tag.RETENTION, entity).toString();
-					if (coordName.equals(coord.getAppName()))
-						continue;
-					// if end time is before coord-start time or start time is
-					// after coord-end time ignore.
-					if (!(end.compareTo(coord.getStartTime()) <= 0 || start
-							.compareTo(coord.getEndTime()) >= 0)) {
-						applicableCoords.add(coord);
-					}
+		for (BundleJob bundle : bundles) {
+			List<CoordinatorJob> coords = getCachedBundleInfo(entity,
+					cluster, bundle.getId()).getCoordinators();
+			for (CoordinatorJob coord : coords) {
+				String coordName = EntityUtil.getWorkflowName(
+						Tag.RETENTION, entity).toString();
+				if (coordName.equals(coord.getAppName()))
+					continue;
+				// if end time is before coord-start time or start time is
+				// after coord-end time ignore.
+				if (!(end.compareTo(coord.getStartTime()) <= 0 || start
+						.compareTo(coord.getEndTime()) >= 0)) {
+					applicableCoords.add(coord);
 				}
 			}
-			sortCoordsByStartTime(applicableCoords);
-			return applicableCoords;
-		} catch (OozieClientException e) {
-			throw new IvoryException(e);
 		}
+		sortCoordsByStartTime(applicableCoords);
+		return applicableCoords;
+	}
+
+	private BundleJob getCachedBundleInfo(Entity entity, String cluster,
+			String bundleId) throws IvoryException {
+		BundleJob bundle = BundleCache.get().getBundleInfo(entity, cluster, bundleId);
+		if (bundle == null) {
+			long generation = BundleCache.get().getGeneration(entity, cluster);
+			bundle = getBundleInfo(cluster, bundleId);
+			BundleCache.get().putBundleInfo(entity, cluster, bundle, generation);
+		}
+		return bundle;
 	}
 
 	protected void sortCoordsByStartTime(List<CoordinatorJob> consideredCoords) {
@@ -751,6 +970,17 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
             return;
         }
 
+        try {
+            updateEntity(oldEntity, newEntity, cluster);
+        } finally {
+            // coords are changed without going through the listeners
+            BundleCache.get().invalidate(oldEntity, cluster);
+            BundleCache.get().invalidate(newEntity, cluster);
+        }
+    }
+
+    private void updateEntity(Entity oldEntity, Entity newEntity, String cluster) throws IvoryException {
+
         BundleJob bundle = findLatestBundle(oldEntity, cluster);
         if (bundle != MISSING) {
             LOG.info("Updating entity through Workflow Engine" + newEntity.toShortString());
@@ -777,8 +1007,9 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
                     + bundle.getId());
         }
         
-        //Update affected entities
-        Set<Entity> affectedEntities = EntityGraph.get().getDependents(oldEntity);
+        //Update affected entities, the processes producing or consuming the feed
+        Set<Entity> affectedEntities = new LinkedHashSet<Entity>(EntityGraph.get().getUpstream(oldEntity, 1));
+        affectedEntities.addAll(EntityGraph.get().getDownstream(oldEntity, 1));
         for (Entity affectedEntity : affectedEntities) {
             if (affectedEntity.getEntityType() != EntityType.PROCESS)
                 continue;
@@ -804,6 +1035,7 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
             
             updateInternal(affectedEntity, affectedEntity, cluster, affectedProcBundle,
                     false);
+            BundleCache.get().invalidate(affectedEntity, cluster);
             LOG.info("Entity update complete : " + affectedEntity.toShortString() + cluster
                     + ", bundle: " + affectedProcBundle.getId());
         }
@@ -966,8 +1198,8 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 		}
 	}
 
-	private List<WorkflowJob> getRunningWorkflows(String cluster,
-			List<String> wfNames) throws IvoryException {
+	private List<WorkflowJob> getRunningWorkflows(OozieClient client,
+			Collection<String> wfNames) throws IvoryException {
 		StringBuilder filter = new StringBuilder();
 		filter.append(OozieClient.FILTER_STATUS).append('=')
 				.append(Job.Status.RUNNING.name());
@@ -975,9 +1207,18 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 			filter.append(';').append(OozieClient.FILTER_NAME).append('=')
 					.append(wfName);
 
-		OozieClient client = OozieClientFactory.get(cluster);
+		List<WorkflowJob> wfs = new ArrayList<WorkflowJob>();
 		try {
-			return client.getJobsInfo(filter.toString(), 1, 1000);
+			for (int offset = 1;; offset += WORKFLOW_PAGE_SIZE) {
+				List<WorkflowJob> page = client.getJobsInfo(filter.toString(),
+						offset, WORKFLOW_PAGE_SIZE);
+				if (page == null)
+					break;
+				wfs.addAll(page);
+				if (page.size() < WORKFLOW_PAGE_SIZE)
+					break;
+			}
+			return wfs;
 		} catch (OozieClientException e) {
 			throw new IvoryException(e);
 		}
@@ -998,6 +1239,7 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 				}
 			jobprops.remove(OozieClient.COORDINATOR_APP_PATH);
 			jobprops.remove(OozieClient.BUNDLE_APP_PATH);
+			WORKFLOW_CONFS.remove(cluster + "/" + jobId);
 			client.reRun(jobId, jobprops);
 			assertStatus(cluster, jobId, WorkflowJob.Status.RUNNING);
 			LOG.info("Rerun job " + jobId + " on cluster " + cluster);
@@ -1185,15 +1427,43 @@ public class OozieWorkflowEngine extends AbstractWorkflowEngine {
 	@Override
 	public String getWorkflowProperty(String cluster, String jobId,
 			String property) throws IvoryException {
-		OozieClient client = OozieClientFactory.get(cluster);
-		try {
-			WorkflowJob jobInfo = client.getJobInfo(jobId);
-			String conf = jobInfo.getConf();
-			Properties props = OozieUtils.toProperties(conf);
-			return props.getProperty(property);
-		} catch (Exception e) {
-			throw new IvoryException(e);
+		return getWorkflowProperties(cluster, jobId).getProperty(property);
+	}
+
+	@Override
+	public Properties getWorkflowProperties(String cluster, String jobId)
+			throws IvoryException {
+		return getWorkflowProperties(cluster, OozieClientFactory.get(cluster), jobId);
+	}
+
+	Properties getWorkflowProperties(String cluster, OozieClient client,
+			String jobId) throws IvoryException {
+		String key = cluster + "/" + jobId;
+		long now = System.currentTimeMillis();
+		CachedConf cached = WORKFLOW_CONFS.get(key);
+		if (cached == null || cached.expiry <= now) {
+			try {
+				WorkflowJob jobInfo = client.getJobInfo(jobId);
+				cached = new CachedConf(OozieUtils.toProperties(jobInfo.getConf()),
+						now + WORKFLOW_CONF_TTL_MILLIS);
+			} catch (Exception e) {
+				throw new IvoryException(e);
+			}
+			if (WORKFLOW_CONFS.size() >= MAX_CACHED_WORKFLOW_CONFS) {
+				for (Iterator<CachedConf> iter = WORKFLOW_CONFS.values().iterator(); iter.hasNext();) {
+					if (iter.next().expiry <= now) {
+						iter.remove();
+					}
+				}
+				if (WORKFLOW_CONFS.size() >= MAX_CACHED_WORKFLOW_CONFS) {
+					WORKFLOW_CONFS.clear();
+				}
+			}
+			WORKFLOW_CONFS.put(key, cached);
 		}
+		Properties props = new Properties();
+		props.putAll(cached.props);
+		return props;
 	}
 
 	@Override
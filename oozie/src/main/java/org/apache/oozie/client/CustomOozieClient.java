@@ -1,6 +1,8 @@
 package org.apache.oozie.client;
 
 import org.apache.ivory.util.RuntimeProperties;
+import org.apache.ivory.workflow.engine.OozieClientGuard;
+import org.apache.ivory.workflow.engine.OozieClientGuard.Call;
 import org.apache.oozie.client.rest.RestConstants;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
@@ -11,6 +13,7 @@ import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -18,16 +21,268 @@ public class CustomOozieClient extends OozieClient {
 
     private static final Map<String, String> none = new HashMap<String, String>();
 
+    private final OozieClientGuard guard;
+
     public CustomOozieClient(String oozieUrl) {
         super(oozieUrl);
+        guard = OozieClientGuard.get(oozieUrl);
     }
 
     public Properties getConfiguration() throws OozieClientException {
-        return (new OozieConfiguration(RestConstants.ADMIN_CONFIG_RESOURCE)).call();
+        return guard.read(new Call<Properties>() {
+            @Override
+            public Properties call() throws OozieClientException {
+                return (new OozieConfiguration(RestConstants.ADMIN_CONFIG_RESOURCE)).call();
+            }
+        });
     }
 
     public Properties getProperties() throws OozieClientException {
-        return (new OozieConfiguration(RestConstants.ADMIN_JAVA_SYS_PROPS_RESOURCE)).call();
+        return guard.read(new Call<Properties>() {
+            @Override
+            public Properties call() throws OozieClientException {
+                return (new OozieConfiguration(RestConstants.ADMIN_JAVA_SYS_PROPS_RESOURCE)).call();
+            }
+        });
+    }
+
+    // reads are retried by the guard if oozie can't be reached, calls that
+    // change oozie's state aren't
+
+    @Override
+    public WorkflowJob getJobInfo(final String jobId) throws OozieClientException {
+        return guard.read(new Call<WorkflowJob>() {
+            @Override
+            public WorkflowJob call() throws OozieClientException {
+                return CustomOozieClient.super.getJobInfo(jobId);
+            }
+        });
+    }
+
+    @Override
+    public WorkflowJob getJobInfo(final String jobId, final int start, final int len) throws OozieClientException {
+        return guard.read(new Call<WorkflowJob>() {
+            @Override
+            public WorkflowJob call() throws OozieClientException {
+                return CustomOozieClient.super.getJobInfo(jobId, start, len);
+            }
+        });
+    }
+
+    @Override
+    public WorkflowAction getWorkflowActionInfo(final String actionId) throws OozieClientException {
+        return guard.read(new Call<WorkflowAction>() {
+            @Override
+            public WorkflowAction call() throws OozieClientException {
+                return CustomOozieClient.super.getWorkflowActionInfo(actionId);
+            }
+        });
+    }
+
+    @Override
+    public String getJobLog(final String jobId) throws OozieClientException {
+        return guard.read(new Call<String>() {
+            @Override
+            public String call() throws OozieClientException {
+                return CustomOozieClient.super.getJobLog(jobId);
+            }
+        });
+    }
+
+    @Override
+    public String getJobDefinition(final String jobId) throws OozieClientException {
+        return guard.read(new Call<String>() {
+            @Override
+            public String call() throws OozieClientException {
+                return CustomOozieClient.super.getJobDefinition(jobId);
+            }
+        });
+    }
+
+    @Override
+    public BundleJob getBundleJobInfo(final String jobId) throws OozieClientException {
+        return guard.read(new Call<BundleJob>() {
+            @Override
+            public BundleJob call() throws OozieClientException {
+                return CustomOozieClient.super.getBundleJobInfo(jobId);
+            }
+        });
+    }
+
+    @Override
+    public CoordinatorJob getCoordJobInfo(final String jobId) throws OozieClientException {
+        return guard.read(new Call<CoordinatorJob>() {
+            @Override
+            public CoordinatorJob call() throws OozieClientException {
+                return CustomOozieClient.super.getCoordJobInfo(jobId);
+            }
+        });
+    }
+
+    @Override
+    public CoordinatorJob getCoordJobInfo(final String jobId, final String filter, final int start, final int len) throws OozieClientException {
+        return guard.read(new Call<CoordinatorJob>() {
+            @Override
+            public CoordinatorJob call() throws OozieClientException {
+                return CustomOozieClient.super.getCoordJobInfo(jobId, filter, start, len);
+            }
+        });
+    }
+
+    @Override
+    public CoordinatorAction getCoordActionInfo(final String actionId) throws OozieClientException {
+        return guard.read(new Call<CoordinatorAction>() {
+            @Override
+            public CoordinatorAction call() throws OozieClientException {
+                return CustomOozieClient.super.getCoordActionInfo(actionId);
+            }
+        });
+    }
+
+    @Override
+    public List<WorkflowJob> getJobsInfo(final String filter, final int start, final int len) throws OozieClientException {
+        return guard.read(new Call<List<WorkflowJob>>() {
+            @Override
+            public List<WorkflowJob> call() throws OozieClientException {
+                return CustomOozieClient.super.getJobsInfo(filter, start, len);
+            }
+        });
+    }
+
+    @Override
+    public List<WorkflowJob> getJobsInfo(final String filter) throws OozieClientException {
+        return guard.read(new Call<List<WorkflowJob>>() {
+            @Override
+            public List<WorkflowJob> call() throws OozieClientException {
+                return CustomOozieClient.super.getJobsInfo(filter);
+            }
+        });
+    }
+
+    @Override
+    public List<CoordinatorJob> getCoordJobsInfo(final String filter, final int start, final int len) throws OozieClientException {
+        return guard.read(new Call<List<CoordinatorJob>>() {
+            @Override
+            public List<CoordinatorJob> call() throws OozieClientException {
+                return CustomOozieClient.super.getCoordJobsInfo(filter, start, len);
+            }
+        });
+    }
+
+    @Override
+    public List<BundleJob> getBundleJobsInfo(final String filter, final int start, final int len) throws OozieClientException {
+        return guard.read(new Call<List<BundleJob>>() {
+            @Override
+            public List<BundleJob> call() throws OozieClientException {
+                return CustomOozieClient.super.getBundleJobsInfo(filter, start, len);
+            }
+        });
+    }
+
+    @Override
+    public String submit(final Properties conf) throws OozieClientException {
+        return guard.write(new Call<String>() {
+            @Override
+            public String call() throws OozieClientException {
+                return CustomOozieClient.super.submit(conf);
+            }
+        });
+    }
+
+    @Override
+    public void start(final String jobId) throws OozieClientException {
+        guard.write(new Call<Void>() {
+            @Override
+            public Void call() throws OozieClientException {
+                CustomOozieClient.super.start(jobId);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public String run(final Properties conf) throws OozieClientException {
+        return guard.write(new Call<String>() {
+            @Override
+            public String call() throws OozieClientException {
+                return CustomOozieClient.super.run(conf);
+            }
+        });
+    }
+
+    @Override
+    public void reRun(final String jobId, final Properties conf) throws OozieClientException {
+        guard.write(new Call<Void>() {
+            @Override
+            public Void call() throws OozieClientException {
+                CustomOozieClient.super.reRun(jobId, conf);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void suspend(final String jobId) throws OozieClientException {
+        guard.write(new Call<Void>() {
+            @Override
+            public Void call() throws OozieClientException {
+                CustomOozieClient.super.suspend(jobId);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void resume(final String jobId) throws OozieClientException {
+        guard.write(new Call<Void>() {
+            @Override
+            public Void call() throws OozieClientException {
+                CustomOozieClient.super.resume(jobId);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void kill(final String jobId) throws OozieClientException {
+        guard.write(new Call<Void>() {
+            @Override
+            public Void call() throws OozieClientException {
+                CustomOozieClient.super.kill(jobId);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void change(final String jobId, final String changeValue) throws OozieClientException {
+        guard.write(new Call<Void>() {
+            @Override
+            public Void call() throws OozieClientException {
+                CustomOozieClient.super.change(jobId, changeValue);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public List<CoordinatorAction> reRunCoord(final String jobId, final String rerunType, final String scope, final boolean refresh, final boolean noCleanup) throws OozieClientException {
+        return guard.write(new Call<List<CoordinatorAction>>() {
+            @Override
+            public List<CoordinatorAction> call() throws OozieClientException {
+                return CustomOozieClient.super.reRunCoord(jobId, rerunType, scope, refresh, noCleanup);
+            }
+        });
+    }
+
+    @Override
+    public Void reRunBundle(final String jobId, final String coordScope, final String dateScope, final boolean refresh, final boolean noCleanup) throws OozieClientException {
+        return guard.write(new Call<Void>() {
+            @Override
+            public Void call() throws OozieClientException {
+                return CustomOozieClient.super.reRunBundle(jobId, coordScope, dateScope, refresh, noCleanup);
+            }
+        });
     }
 
     @Override
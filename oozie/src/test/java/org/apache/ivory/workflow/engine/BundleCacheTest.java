@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.workflow.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ivory.entity.v0.process.Process;
+import org.apache.oozie.client.BundleJob;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class BundleCacheTest {
+
+    private Process process(String name) {
+        Process process = new Process();
+        process.setName(name);
+        return process;
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        BundleCache cache = new BundleCache(60000);
+        Process process = process("sample");
+        List<BundleJob> bundles = new ArrayList<BundleJob>();
+
+        Assert.assertNull(cache.getBundles(process, "c1"));
+        cache.putBundles(process, "c1", bundles, cache.getGeneration(process, "c1"));
+        Assert.assertSame(cache.getBundles(process, "c1"), bundles);
+        Assert.assertNull(cache.getBundles(process, "c2"));
+        Assert.assertNull(cache.getBundles(process("other"), "c1"));
+
+        NullBundleJob bundle = new NullBundleJob() {
+            @Override
+            public String getId() {
+                return "bundle-B";
+            }
+        };
+        cache.putBundleInfo(process, "c1", bundle, cache.getGeneration(process, "c1"));
+        Assert.assertSame(cache.getBundleInfo(process, "c1", bundle.getId()), bundle);
+
+        cache.afterSuspend(process, "c1");
+        Assert.assertNull(cache.getBundles(process, "c1"));
+        Assert.assertNull(cache.getBundleInfo(process, "c1", bundle.getId()));
+
+        // bundle infos aren't kept without the bundles of the entity
+        cache.putBundleInfo(process, "c1", bundle, cache.getGeneration(process, "c1"));
+        Assert.assertNull(cache.getBundleInfo(process, "c1", bundle.getId()));
+
+        Assert.assertEquals(cache.getHits(), 2);
+        Assert.assertEquals(cache.getMisses(), 6);
+        Assert.assertEquals(cache.getInvalidations(), 1);
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        BundleCache cache = new BundleCache(100);
+        Process process = process("sample");
+        cache.putBundles(process, "c1", new ArrayList<BundleJob>(), cache.getGeneration(process, "c1"));
+        Assert.assertNotNull(cache.getBundles(process, "c1"));
+        Thread.sleep(200);
+        Assert.assertNull(cache.getBundles(process, "c1"));
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testReadRacingInvalidation() throws Exception {
+        BundleCache cache = new BundleCache(60000);
+        Process process = process("sample");
+
+        // read from oozie before a resume, put after it
+        long generation = cache.getGeneration(process, "c1");
+        cache.afterResume(process, "c1");
+        cache.putBundles(process, "c1", new ArrayList<BundleJob>(), generation);
+        Assert.assertNull(cache.getBundles(process, "c1"));
+        Assert.assertEquals(cache.size(), 0);
+
+        List<BundleJob> bundles = new ArrayList<BundleJob>();
+        generation = cache.getGeneration(process, "c1");
+        cache.putBundles(process, "c1", bundles, generation);
+        Assert.assertSame(cache.getBundles(process, "c1"), bundles);
+
+        NullBundleJob bundle = new NullBundleJob() {
+            @Override
+            public String getId() {
+                return "bundle-B";
+            }
+        };
+        // bundle info read before the bundles were read again
+        cache.afterSuspend(process, "c1");
+        long fresh = cache.getGeneration(process, "c1");
+        cache.putBundles(process, "c1", bundles, fresh);
+        cache.putBundleInfo(process, "c1", bundle, generation);
+        Assert.assertNull(cache.getBundleInfo(process, "c1", bundle.getId()));
+        cache.putBundleInfo(process, "c1", bundle, fresh);
+        Assert.assertSame(cache.getBundleInfo(process, "c1", bundle.getId()), bundle);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.workflow.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.workflow.engine.ClusterExecutor.ClusterCall;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ClusterExecutorTest {
+
+    private static final List<String> CLUSTERS = Arrays.asList("c1", "c2", "c3", "c4");
+
+    @Test
+    public void testParallel() throws Exception {
+        long start = System.currentTimeMillis();
+        Map<String, String> results = ClusterExecutor.execute(CLUSTERS, new ClusterCall<String>() {
+            @Override
+            public String call(String cluster) throws IvoryException {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    throw new IvoryException(e);
+                }
+                return cluster.toUpperCase();
+            }
+        });
+        long elapsed = System.currentTimeMillis() - start;
+
+        Assert.assertTrue(elapsed < 1500, "Took " + elapsed + " ms");
+        Assert.assertEquals(results.keySet().toString(), "[c1, c2, c3, c4]");
+        Assert.assertEquals(results.get("c3"), "C3");
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        final Map<String, String> calls = new ConcurrentHashMap<String, String>();
+        try {
+            ClusterExecutor.execute(CLUSTERS, new ClusterCall<String>() {
+                @Override
+                public String call(String cluster) throws IvoryException {
+                    calls.put(cluster, cluster);
+                    if (!cluster.equals("c1")) {
+                        throw new IvoryException("failed on " + cluster);
+                    }
+                    return cluster;
+                }
+            });
+            Assert.fail("Expected failure");
+        } catch (IvoryException e) {
+            // the first failing cluster, though every cluster is called
+            Assert.assertEquals(e.getMessage(), "failed on c2");
+            Assert.assertEquals(calls.size(), 4);
+        }
+    }
+
+    @Test
+    public void testNested() throws Exception {
+        Map<String, Boolean> results = ClusterExecutor.execute(CLUSTERS, new ClusterCall<Boolean>() {
+            @Override
+            public Boolean call(String cluster) throws IvoryException {
+                // runs on the calling pool thread, rather than waiting on the pool
+                final String thread = Thread.currentThread().getName();
+                Map<String, String> nested = ClusterExecutor.execute(CLUSTERS, new ClusterCall<String>() {
+                    @Override
+                    public String call(String nested) {
+                        return Thread.currentThread().getName();
+                    }
+                });
+                return thread.startsWith("OozieCluster-")
+                        && new HashSet<String>(nested.values()).equals(Collections.singleton(thread));
+            }
+        });
+        Assert.assertEquals(results.values().toString(), "[true, true, true, true]");
+    }
+}
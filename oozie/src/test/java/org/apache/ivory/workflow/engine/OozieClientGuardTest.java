@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.workflow.engine;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ivory.workflow.engine.OozieClientGuard.Call;
+import org.apache.ivory.workflow.engine.OozieClientGuard.State;
+import org.apache.oozie.client.OozieClientException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class OozieClientGuardTest {
+
+    private static class CountingCall implements Call<String> {
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile String errorCode;
+        private volatile IOException cause;
+
+        @Override
+        public String call() throws OozieClientException {
+            calls.incrementAndGet();
+            if (cause != null) {
+                throw new OozieClientException(OozieClientException.IO_ERROR, cause);
+            }
+            if (errorCode != null) {
+                throw new OozieClientException(errorCode, "failed");
+            }
+            return "ok";
+        }
+    }
+
+    private String errorCode(OozieClientGuard guard, Call<String> call, boolean read) {
+        try {
+            if (read) {
+                guard.read(call);
+            } else {
+                guard.write(call);
+            }
+            return null;
+        } catch (OozieClientException e) {
+            return e.getErrorCode();
+        }
+    }
+
+    @Test
+    public void testBreaker() throws Exception {
+        OozieClientGuard guard = new OozieClientGuard("http://oozie", 3, 200, 10, 100, 0, 1);
+        CountingCall call = new CountingCall();
+
+        // errors from a server that is up don't count
+        call.errorCode = "E0604";
+        for (int index = 0; index < 5; index++) {
+            Assert.assertEquals(errorCode(guard, call, false), "E0604");
+        }
+        Assert.assertEquals(guard.getState(), State.CLOSED);
+
+        call.errorCode = OozieClientException.IO_ERROR;
+        for (int index = 0; index < 3; index++) {
+            Assert.assertEquals(errorCode(guard, call, false), OozieClientException.IO_ERROR);
+        }
+        Assert.assertEquals(guard.getState(), State.OPEN);
+        Assert.assertEquals(errorCode(guard, call, false), OozieClientGuard.CIRCUIT_OPEN);
+        Assert.assertEquals(call.calls.get(), 8);
+
+        // a failed trial opens the breaker again
+        Thread.sleep(300);
+        Assert.assertEquals(errorCode(guard, call, false), OozieClientException.IO_ERROR);
+        Assert.assertEquals(guard.getState(), State.OPEN);
+        Assert.assertEquals(errorCode(guard, call, false), OozieClientGuard.CIRCUIT_OPEN);
+
+        Thread.sleep(300);
+        call.errorCode = null;
+        Assert.assertEquals(guard.write(call), "ok");
+        Assert.assertEquals(guard.getState(), State.CLOSED);
+        Assert.assertEquals(guard.getFailures(), 4);
+        Assert.assertEquals(guard.getRejections(), 2);
+    }
+
+    @Test
+    public void testReadRetries() throws Exception {
+        OozieClientGuard guard = new OozieClientGuard("http://oozie", 10, 200, 10, 100, 2, 1);
+        CountingCall call = new CountingCall();
+        call.cause = new ConnectException("Connection refused");
+
+        Assert.assertEquals(errorCode(guard, call, true), OozieClientException.IO_ERROR);
+        Assert.assertEquals(call.calls.get(), 3);
+        Assert.assertEquals(guard.getRetries(), 2);
+
+        // writes aren't retried, nor are reads that timed out or the server
+        // failed
+        Assert.assertEquals(errorCode(guard, call, false), OozieClientException.IO_ERROR);
+        Assert.assertEquals(call.calls.get(), 4);
+        call.cause = new SocketTimeoutException("Read timed out");
+        Assert.assertEquals(errorCode(guard, call, true), OozieClientException.IO_ERROR);
+        Assert.assertEquals(call.calls.get(), 5);
+        call.cause = null;
+        call.errorCode = "E0604";
+        Assert.assertEquals(errorCode(guard, call, true), "E0604");
+        Assert.assertEquals(call.calls.get(), 6);
+        Assert.assertEquals(guard.getRetries(), 2);
+    }
+
+    @Test
+    public void testTrialThrowingError() throws Exception {
+        OozieClientGuard guard = new OozieClientGuard("http://oozie", 1, 100, 10, 100, 0, 1);
+        CountingCall call = new CountingCall();
+        call.errorCode = OozieClientException.IO_ERROR;
+        Assert.assertEquals(errorCode(guard, call, false), OozieClientException.IO_ERROR);
+        Assert.assertEquals(guard.getState(), State.OPEN);
+
+        Thread.sleep(200);
+        try {
+            guard.write(new Call<String>() {
+                @Override
+                public String call() {
+                    throw new AssertionError("trial");
+                }
+            });
+            Assert.fail("Expected the error to be thrown");
+        } catch (AssertionError expected) {
+            Assert.assertEquals(expected.getMessage(), "trial");
+        }
+        // the next call gets to try instead of being rejected for good
+        call.errorCode = null;
+        Assert.assertEquals(guard.write(call), "ok");
+        Assert.assertEquals(guard.getState(), State.CLOSED);
+    }
+
+    @Test
+    public void testBulkhead() throws Exception {
+        final OozieClientGuard guard = new OozieClientGuard("http://oozie", 3, 200, 1, 100, 0, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread slow = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    guard.write(new Call<String>() {
+                        @Override
+                        public String call() {
+                            started.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException ignore) {
+                            }
+                            return "ok";
+                        }
+                    });
+                } catch (OozieClientException ignore) {
+                }
+            }
+        };
+        slow.start();
+        started.await();
+
+        Assert.assertEquals(guard.getActiveCalls(), 1);
+        Assert.assertEquals(errorCode(guard, new CountingCall(), true), OozieClientGuard.BULKHEAD_FULL);
+        release.countDown();
+        slow.join();
+        Assert.assertEquals(guard.read(new CountingCall()), "ok");
+        Assert.assertEquals(guard.getState(), State.CLOSED);
+    }
+}
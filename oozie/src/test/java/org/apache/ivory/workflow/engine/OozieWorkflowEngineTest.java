@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.workflow.engine;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.ivory.entity.v0.process.Process;
+import org.apache.ivory.resource.InstancesResult.Instance;
+import org.apache.ivory.resource.InstancesResult.WorkflowStatus;
+import org.apache.oozie.client.CoordinatorAction;
+import org.apache.oozie.client.CoordinatorJob;
+import org.apache.oozie.client.OozieClient;
+import org.apache.oozie.client.OozieClientException;
+import org.apache.oozie.client.WorkflowJob;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class OozieWorkflowEngineTest {
+
+    /**
+     * @return - bean of the given type whose getters return the value mapped
+     *         to their name
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T bean(Class<T> type, final Map<String, Object> values) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return values.get(method.getName());
+            }
+        });
+    }
+
+    private static CoordinatorAction action(String coordId, int sequence) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("getId", coordId + "@" + sequence);
+        values.put("getActionNumber", sequence);
+        return bean(CoordinatorAction.class, values);
+    }
+
+    /**
+     * Coord whose actions come in pages, except for action 7, which has to be
+     * looked up by id.
+     */
+    private static class PagingClient extends OozieClient {
+        private final List<String> calls = new ArrayList<String>();
+
+        @Override
+        public CoordinatorJob getCoordJobInfo(String jobId, String filter, int start, int len) {
+            calls.add(start + "+" + len);
+            List<CoordinatorAction> actions = new ArrayList<CoordinatorAction>();
+            for (int sequence = start + len - 1; sequence >= start; sequence--) {
+                if (sequence != 7) {
+                    actions.add(action(jobId, sequence));
+                }
+            }
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put("getActions", actions);
+            return bean(CoordinatorJob.class, values);
+        }
+
+        @Override
+        public CoordinatorAction getCoordActionInfo(String actionId) throws OozieClientException {
+            calls.add(actionId);
+            if (!actionId.endsWith("@7")) {
+                throw new OozieClientException("E0605", "Action doesn't exist");
+            }
+            return action(actionId.substring(0, actionId.indexOf('@')), 7);
+        }
+    }
+
+    @Test
+    public void testGetCoordActionsInPages() throws Exception {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("getId", "coord");
+        CoordinatorJob coord = bean(CoordinatorJob.class, values);
+
+        List<Integer> sequences = new ArrayList<Integer>();
+        for (int sequence = 5; sequence <= 1204; sequence++) {
+            sequences.add(sequence);
+        }
+        PagingClient client = new PagingClient();
+        List<CoordinatorAction> actions = new OozieWorkflowEngine().getCoordActions(client, coord, sequences);
+
+        Assert.assertEquals(client.calls.toString(), "[5+500, 505+500, 1005+200, coord@7]");
+        Assert.assertEquals(actions.size(), 1200);
+        for (int index = 0; index < actions.size(); index++) {
+            Assert.assertEquals(actions.get(index).getId(), "coord@" + (index + 5));
+        }
+
+        client = new PagingClient();
+        Assert.assertTrue(new OozieWorkflowEngine().getCoordActions(client, coord,
+                new ArrayList<Integer>()).isEmpty());
+        Assert.assertTrue(client.calls.isEmpty());
+    }
+
+    private static WorkflowJob workflow(String id, long startTime) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("getId", id);
+        values.put("getStartTime", new Date(startTime));
+        return bean(WorkflowJob.class, values);
+    }
+
+    /**
+     * Coord with 501 running actions, which have 1001 running workflows
+     * between them. Action 501 started after workflows were listed.
+     */
+    private static class RunningClient extends OozieClient {
+        private final List<String> calls = new ArrayList<String>();
+
+        @Override
+        public List<WorkflowJob> getJobsInfo(String filter, int start, int len) {
+            calls.add("jobs " + start + "+" + len);
+            List<WorkflowJob> wfs = new ArrayList<WorkflowJob>();
+            for (int index = start; index < start + len && index <= 1001; index++) {
+                wfs.add(workflow("wf-" + index, index));
+            }
+            return wfs;
+        }
+
+        @Override
+        public CoordinatorJob getCoordJobInfo(String jobId, String filter, int start, int len) {
+            calls.add(filter + " " + start + "+" + len);
+            List<CoordinatorAction> actions = new ArrayList<CoordinatorAction>();
+            for (int sequence = start; sequence < start + len && sequence <= 502; sequence++) {
+                Map<String, Object> values = new HashMap<String, Object>();
+                values.put("getNominalTime", new Date(sequence * 60000L));
+                // the filter needn't be supported by oozie
+                values.put("getStatus", sequence == 2 ? CoordinatorAction.Status.SUCCEEDED
+                        : CoordinatorAction.Status.RUNNING);
+                values.put("getExternalId", sequence == 502 ? "wf-new" : "wf-" + sequence);
+                actions.add(bean(CoordinatorAction.class, values));
+            }
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put("getActions", actions);
+            return bean(CoordinatorJob.class, values);
+        }
+
+        @Override
+        public WorkflowJob getJobInfo(String jobId) {
+            calls.add(jobId);
+            return workflow(jobId, 5000);
+        }
+    }
+
+    @Test
+    public void testGetRunningInstances() throws Exception {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("getId", "coord");
+        values.put("getAppName", "IVORY_PROCESS_DEFAULT_sample");
+        CoordinatorJob coord = bean(CoordinatorJob.class, values);
+        Process process = new Process();
+        process.setName("sample");
+
+        RunningClient client = new RunningClient();
+        List<Instance> instances = new OozieWorkflowEngine().getRunningInstances(process, "c1", client,
+                Arrays.asList(coord));
+
+        Assert.assertEquals(client.calls.toString(), "[jobs 1+1000, jobs 1001+1000, "
+                + "status=RUNNING 1+500, status=RUNNING 501+500, wf-new]");
+        Assert.assertEquals(instances.size(), 501);
+        Instance instance = instances.get(0);
+        Assert.assertEquals(instance.cluster, "c1");
+        Assert.assertEquals(instance.instance, "1970-01-01T00:01Z");
+        Assert.assertEquals(instance.status, WorkflowStatus.RUNNING);
+        Assert.assertEquals(instance.startTime, new Date(1));
+        Assert.assertEquals(instances.get(1).instance, "1970-01-01T00:03Z");
+        Assert.assertEquals(instances.get(500).startTime, new Date(5000));
+    }
+    private static class ConfClient extends OozieClient {
+        private int calls;
+
+        @Override
+        public WorkflowJob getJobInfo(String jobId) {
+            calls++;
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put("getId", jobId);
+            values.put("getConf", "<configuration><property><name>logDir</name><value>/logs/" + jobId
+                    + "</value></property><property><name>nameNode</name><value>hdfs://nn:8020</value>"
+                    + "</property></configuration>");
+            return bean(WorkflowJob.class, values);
+        }
+    }
+
+    @Test
+    public void testGetWorkflowProperties() throws Exception {
+        ConfClient client = new ConfClient();
+        OozieWorkflowEngine engine = new OozieWorkflowEngine();
+
+        Properties props = engine.getWorkflowProperties("c1", client, "wf-conf");
+        Assert.assertEquals(props.getProperty("logDir"), "/logs/wf-conf");
+        Assert.assertEquals(props.getProperty("nameNode"), "hdfs://nn:8020");
+        props.setProperty("logDir", "changed");
+
+        // the workflow is fetched once for all its properties
+        props = engine.getWorkflowProperties("c1", client, "wf-conf");
+        Assert.assertEquals(props.getProperty("logDir"), "/logs/wf-conf");
+        Assert.assertEquals(client.calls, 1);
+
+        engine.getWorkflowProperties("c2", client, "wf-conf");
+        Assert.assertEquals(client.calls, 2);
+    }
+}
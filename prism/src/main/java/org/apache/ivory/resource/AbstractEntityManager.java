@@ -20,14 +20,23 @@ package org.apache.ivory.resource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang.ObjectUtils;
@@ -38,6 +47,7 @@ import org.apache.ivory.IvoryWebException;
 import org.apache.ivory.Pair;
 import org.apache.ivory.entity.EntityNotRegisteredException;
 import org.apache.ivory.entity.EntityUtil;
+import org.apache.ivory.entity.parser.EntityBatchParser;
 import org.apache.ivory.entity.parser.EntityParser;
 import org.apache.ivory.entity.parser.EntityParserFactory;
 import org.apache.ivory.entity.parser.ValidationException;
@@ -61,6 +71,13 @@ public abstract class AbstractEntityManager {
     private static final Logger AUDIT = Logger.getLogger("AUDIT");
     protected static final int XML_DEBUG_LEN = 10 * 1024;
 
+    /**
+     * Order in which the entities of a batch are validated and published, so
+     * that entities always come after the entities they refer to.
+     */
+    private static final List<EntityType> BATCH_ORDER = Arrays.asList(EntityType.CLUSTER, EntityType.DATABASE,
+            EntityType.FEED, EntityType.PROCESS);
+
     private AbstractWorkflowEngine workflowEngine;
     protected ConfigurationStore configStore = ConfigurationStore.get();
 
@@ -159,6 +176,150 @@ public abstract class AbstractEntityManager {
         }
     }
 
+    /**
+     * Submit a batch of entities, as described in EntityBatchParser. Entities
+     * in the batch may refer to each other as well as to entities submitted
+     * earlier. The batch is validated as a whole and is rejected without
+     * submitting any of its entities if one of them is invalid. Entities
+     * identical to ones already submitted are accepted as they are.
+     * 
+     * @param request
+     *            - Servlet Request
+     * @param colo
+     *            - applicable colo
+     * @return result of each entity in the batch
+     */
+    public BatchResult submitBatch(HttpServletRequest request, String colo) {
+        checkColo(colo);
+        try {
+            audit(request, "STREAMED_DATA", "batch", "SUBMIT_BATCH");
+            return submitBatchInternal(request, null);
+        } catch (IvoryWebException e) {
+            throw e;
+        } catch (Throwable e) {
+            LOG.error("Unable to submit batch", e);
+            throw IvoryWebException.newException(e, Response.Status.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * @param submitted
+     *            - if not null, gets the entities of the batch as held in the
+     *            store, along with their results
+     * @return results of a batch that was accepted, rejected batches are
+     *         thrown back with the result of each entity
+     */
+    protected BatchResult submitBatchInternal(HttpServletRequest request,
+            List<Pair<Entity, BatchResult.EntityResult>> submitted) throws IOException, IvoryException {
+
+        List<Entity> entities = parseBatch(request);
+        List<BatchResult.EntityResult> results = new ArrayList<BatchResult.EntityResult>(entities.size());
+        List<Entity> existingEntities = new ArrayList<Entity>(entities.size());
+        Set<String> names = new HashSet<String>();
+        boolean rejected = false;
+        try {
+            for (Entity entity : entities) {
+                BatchResult.EntityResult result = new BatchResult.EntityResult(entity.getEntityType().name()
+                        .toLowerCase(), entity.getName(), APIResult.Status.SUCCEEDED, null);
+                results.add(result);
+                Entity existingEntity = null;
+                boolean stage = false;
+                try {
+                    if (!names.add(entity.toShortString())) {
+                        throw new ValidationException(entity.toShortString() + " appears more than once in batch");
+                    }
+                    existingEntity = configStore.get(entity.getEntityType(), entity.getName());
+                    stage = existingEntity == null;
+                    // validation fills in defaults, so it comes before comparing
+                    validate(entity);
+                    if (existingEntity != null && !EntityUtil.equals(existingEntity, entity)) {
+                        throw new EntityAlreadyExistsException(entity.toShortString() + " already registered with "
+                                + "configuration store. Can't be submitted again. Try removing before submitting.");
+                    }
+                } catch (Exception e) {
+                    LOG.info("Rejecting batch for " + entity.toShortString(), e);
+                    result.status = APIResult.Status.FAILED;
+                    result.message = e.getMessage();
+                    rejected = true;
+                }
+                // staged even if invalid, so that only the invalid entity is
+                // reported and not the entities referring to it
+                if (stage) {
+                    configStore.stage(entity);
+                }
+                existingEntities.add(existingEntity);
+            }
+        } finally {
+            configStore.cleanupStaged();
+        }
+
+        if (rejected) {
+            for (BatchResult.EntityResult result : results) {
+                if (result.status == APIResult.Status.SUCCEEDED) {
+                    result.status = APIResult.Status.FAILED;
+                    result.message = "Not submitted, batch rejected";
+                }
+            }
+            throw IvoryWebException.newException(new BatchResult(APIResult.Status.FAILED, "Batch of " + entities.size()
+                    + " entities rejected", results.toArray(new BatchResult.EntityResult[results.size()])),
+                    Response.Status.BAD_REQUEST);
+        }
+
+        // validation holds as long as the entities are published in order,
+        // skip the rest of the batch once one of them can't be published.
+        // The store has no bulk publish, so each entity is still a write and
+        // a round of listeners of its own
+        String failure = null;
+        int published = 0;
+        for (int index = 0; index < entities.size(); index++) {
+            Entity entity = entities.get(index);
+            BatchResult.EntityResult result = results.get(index);
+            if (failure != null) {
+                result.status = APIResult.Status.FAILED;
+                result.message = "Not submitted as " + failure + " failed";
+                continue;
+            }
+            if (existingEntities.get(index) != null) {
+                entity = existingEntities.get(index);
+                result.message = "Already submitted";
+            } else {
+                try {
+                    configStore.publish(entity.getEntityType(), entity);
+                    result.message = "Submitted";
+                    published++;
+                } catch (IvoryException e) {
+                    LOG.error("Unable to publish " + entity.toShortString() + " of batch", e);
+                    result.status = APIResult.Status.FAILED;
+                    result.message = e.getMessage();
+                    failure = entity.toShortString();
+                    continue;
+                }
+            }
+            if (submitted != null) {
+                submitted.add(new Pair<Entity, BatchResult.EntityResult>(entity, result));
+            }
+        }
+        LOG.info("Submitted " + published + " of batch of " + entities.size() + " entities");
+        return new BatchResult("Submitted " + published + " of " + entities.size() + " entities", results);
+    }
+
+    /**
+     * @return entities of the batch in the order they are to be submitted
+     */
+    protected List<Entity> parseBatch(HttpServletRequest request) throws IOException, IvoryException {
+        List<Entity> entities = EntityBatchParser.parse(request.getInputStream());
+        if (entities.isEmpty()) {
+            throw new ValidationException("Batch has no entities");
+        }
+        Collections.sort(entities, new Comparator<Entity>() {
+            @Override
+            public int compare(Entity first, Entity second) {
+                return BATCH_ORDER.indexOf(first.getEntityType()) - BATCH_ORDER.indexOf(second.getEntityType());
+            }
+        });
+        return entities;
+    }
+
     /**
      * Post an entity XML with entity type. Validates the XML which can be
      * Process, Feed or Dataendpoint
@@ -215,12 +376,16 @@ public abstract class AbstractEntityManager {
     }
 
     // Parallel update can get very clumsy if two feeds are updated which
-    // are referred by a single process. Sequencing them.
-    public synchronized APIResult update(HttpServletRequest request, String type, String entityName, String colo) {
+    // are referred by a single process, as updating a feed updates the
+    // processes using it in the workflow engine. Sequencing them by holding
+    // the locks of the entity and of the processes depending on it.
+    public APIResult update(HttpServletRequest request, String type, String entityName, String colo) {
         checkColo(colo);
+        List<Lock> locks = new ArrayList<Lock>();
         try {
             EntityType entityType = EntityType.valueOf(type.toUpperCase());
             audit(request, entityName, type, "UPDATE");
+            lockForUpdate(EntityUtil.getEntity(type, entityName), locks);
             Entity oldEntity = EntityUtil.getEntity(type, entityName);
             Entity newEntity = deserializeEntity(request, entityType);
             validate(newEntity);
@@ -252,6 +417,28 @@ public abstract class AbstractEntityManager {
             throw IvoryWebException.newException(e, Response.Status.BAD_REQUEST);
         } finally {
             ConfigurationStore.get().cleanupUpdateInit();
+            for (int index = locks.size() - 1; index >= 0; index--) {
+                locks.get(index).unlock();
+            }
+        }
+    }
+
+    // takes the locks of the entity and of the processes depending on it,
+    // adding each to the given list once held
+    private void lockForUpdate(Entity entity, List<Lock> held) throws IvoryException {
+        Set<Entity> affected = new HashSet<Entity>();
+        affected.add(entity);
+        Set<Entity> dependents = EntityGraph.get().getDependents(entity);
+        if (dependents != null) {
+            for (Entity dependent : dependents) {
+                if (dependent.getEntityType() == EntityType.PROCESS) {
+                    affected.add(dependent);
+                }
+            }
+        }
+        for (Lock lock : configStore.getLocks(affected)) {
+            lock.lock();
+            held.add(lock);
         }
     }
 
@@ -288,22 +475,28 @@ public abstract class AbstractEntityManager {
         }
     }
 
-    protected synchronized Entity submitInternal(HttpServletRequest request, String type) throws IOException, IvoryException {
+    protected Entity submitInternal(HttpServletRequest request, String type) throws IOException, IvoryException {
 
         EntityType entityType = EntityType.valueOf(type.toUpperCase());
         Entity entity = deserializeEntity(request, entityType);
 
-        Entity existingEntity = configStore.get(entityType, entity.getName());
-        if (existingEntity != null) {
-            if (EntityUtil.equals(existingEntity, entity))
-                return existingEntity;
+        Lock lock = configStore.getLock(entityType, entity.getName());
+        lock.lock();
+        try {
+            Entity existingEntity = configStore.get(entityType, entity.getName());
+            if (existingEntity != null) {
+                if (EntityUtil.equals(existingEntity, entity))
+                    return existingEntity;
 
-            throw new EntityAlreadyExistsException(entity.toShortString() + " already registered with configuration store. "
-                    + "Can't be submitted again. Try removing before submitting.");
-        }
+                throw new EntityAlreadyExistsException(entity.toShortString() + " already registered with configuration store. "
+                        + "Can't be submitted again. Try removing before submitting.");
+            }
 
-        validate(entity);
-        configStore.publish(entityType, entity);
+            validate(entity);
+            configStore.publish(entityType, entity);
+        } finally {
+            lock.unlock();
+        }
         LOG.info("Submit successful: (" + type + ")" + entity.getName());
         return entity;
     }
@@ -367,23 +560,7 @@ public abstract class AbstractEntityManager {
         Entity entityObj = null;
         try {
             entityObj = EntityUtil.getEntity(type, entity);
-            EntityType entityType = EntityType.valueOf(type.toUpperCase());
-            String status;
-
-            if (entityType.isSchedulable()) {
-                if (workflowEngine.isActive(entityObj)) {
-                    if (workflowEngine.isSuspended(entityObj)) {
-                        status = EntityStatus.SUSPENDED.name();
-                    } else {
-                        status = EntityStatus.RUNNING.name();
-                    }
-                } else {
-                    status = EntityStatus.SUBMITTED.name();
-                }
-            } else {
-                status = EntityStatus.SUBMITTED.name();
-            }
-            return new APIResult(Status.SUCCEEDED, status);
+            return new APIResult(Status.SUCCEEDED, getStatusString(entityObj));
         } catch (IvoryWebException e) {
             throw e;
         } catch (Exception e) {
@@ -393,6 +570,16 @@ public abstract class AbstractEntityManager {
         }
     }
 
+    protected String getStatusString(Entity entity) throws IvoryException {
+        if (entity.getEntityType().isSchedulable() && workflowEngine.isActive(entity)) {
+            if (workflowEngine.isSuspended(entity)) {
+                return EntityStatus.SUSPENDED.name();
+            }
+            return EntityStatus.RUNNING.name();
+        }
+        return EntityStatus.SUBMITTED.name();
+    }
+
     /**
      * Returns dependencies.
      * 
@@ -414,30 +601,174 @@ public abstract class AbstractEntityManager {
     }
 
     /**
-     * Returns the list of entities registered of a given type.
+     * Returns the data lineage of a feed or process.
      * 
      * @param type
-     * @return String
+     * @param entity
+     * @param direction
+     *            - upstream for the entities it is derived from, downstream
+     *            for the entities derived from it
+     * @param depth
+     *            - number of hops to follow, all if not positive
+     * @return EntityList
      */
-    public EntityList getDependencies(String type) {
+    public EntityList getLineage(String type, String entity, String direction, int depth) {
         try {
-            EntityType entityType = EntityType.valueOf(type.toUpperCase());
-            Collection<String> entityNames = configStore.getEntities(entityType);
-            if (entityNames == null || entityNames.equals("")) {
-                return new EntityList(new Entity[] {});
+            Entity entityObj = EntityUtil.getEntity(type, entity);
+            Set<Entity> lineage;
+            if ("upstream".equalsIgnoreCase(direction)) {
+                lineage = EntityGraph.get().getUpstream(entityObj, depth);
+            } else if ("downstream".equalsIgnoreCase(direction)) {
+                lineage = EntityGraph.get().getDownstream(entityObj, depth);
+            } else {
+                throw new IllegalArgumentException("Invalid lineage direction " + direction
+                        + ", expected upstream or downstream");
+            }
+            return new EntityList(lineage.toArray(new Entity[lineage.size()]));
+        } catch (Exception e) {
+            LOG.error("Unable to get lineage for entity " + entity + "(" + type + ")", e);
+            throw IvoryWebException.newException(e, Response.Status.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Returns the entities registered of a given type, in order of name.
+     * 
+     * @param type
+     * @param fields
+     *            - name, or name,status to also report the status of each
+     *            entity
+     * @param offset
+     *            - index of the first entity to return
+     * @param limit
+     *            - maximum number of entities to return, all if negative
+     * @param stream
+     *            - write the entities out as they are looked up instead of
+     *            building the whole list first
+     * @return Response with the EntityList
+     */
+    public Response getEntityList(String type, String fields, int offset, int limit, boolean stream) {
+        try {
+            final EntityType entityType = EntityType.valueOf(type.toUpperCase());
+            final boolean withStatus = isStatusRequested(fields);
+            if (offset < 0) {
+                throw new IllegalArgumentException("Invalid offset " + offset + ", can not be negative");
             }
-            Entity[] entities = new Entity[entityNames.size()];
-            int index = 0;
-            for (String entityName : entityNames) {
-                entities[index++] = configStore.get(entityType, entityName);
+            final List<String> names = configStore.getEntities(entityType, offset, limit);
+            final int total = configStore.getEntities(entityType).size();
+            if (!stream) {
+                EntityList.EntityElement[] elements = new EntityList.EntityElement[names.size()];
+                int index = 0;
+                for (String name : names) {
+                    elements[index++] = getElement(entityType, name, withStatus);
+                }
+                return Response.ok(new EntityList(elements, total)).build();
             }
-            return new EntityList(entities);
+
+            StreamingOutput output = new StreamingOutput() {
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    try {
+                        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+                        writer.writeStartDocument("UTF-8", "1.0");
+                        writer.writeStartElement("entities");
+                        for (String name : names) {
+                            EntityList.EntityElement element = getElement(entityType, name, withStatus);
+                            writer.writeStartElement("entity");
+                            writeElement(writer, "type", element.type);
+                            writeElement(writer, "name", element.name);
+                            writeElement(writer, "status", element.status);
+                            writer.writeEndElement();
+                            writer.flush();
+                        }
+                        writeElement(writer, "totalResults", String.valueOf(total));
+                        writer.writeEndElement();
+                        writer.writeEndDocument();
+                        writer.close();
+                    } catch (XMLStreamException e) {
+                        throw new IOException("Unable to stream list of entities for (" + entityType + ")", e);
+                    } catch (IvoryException e) {
+                        throw new IOException("Unable to stream list of entities for (" + entityType + ")", e);
+                    }
+                }
+            };
+            return Response.ok(output).build();
         } catch (Exception e) {
             LOG.error("Unable to get list for entities for (" + type + ")", e);
             throw IvoryWebException.newException(e, Response.Status.BAD_REQUEST);
         }
     }
 
+    private boolean isStatusRequested(String fields) {
+        boolean status = false;
+        if (fields != null) {
+            for (String field : fields.split(",")) {
+                field = field.trim();
+                if (field.equalsIgnoreCase("status")) {
+                    status = true;
+                } else if (!field.isEmpty() && !field.equalsIgnoreCase("name")) {
+                    throw new IllegalArgumentException("Invalid field " + field + ", expected name or status");
+                }
+            }
+        }
+        return status;
+    }
+
+    private EntityList.EntityElement getElement(EntityType entityType, String name, boolean withStatus)
+            throws IvoryException {
+        EntityList.EntityElement element = new EntityList.EntityElement(entityType.name().toLowerCase(), name);
+        if (withStatus) {
+            Entity entity = configStore.get(entityType, name);
+            if (entity != null) {
+                element.status = getStatusString(entity);
+            }
+        }
+        return element;
+    }
+
+    private void writeElement(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+        if (value != null) {
+            writer.writeStartElement(name);
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * Returns one page of the entities of a type that match all of the given
+     * keywords, in order of name.
+     * 
+     * @param type
+     * @param keywords
+     *            - comma or space separated keywords, see EntitySearchIndex
+     * @param offset
+     *            - index of the first match to return
+     * @param limit
+     *            - maximum number of matches to return
+     * @return EntityList
+     */
+    public EntityList search(String type, String keywords, int offset, int limit) {
+        try {
+            EntityType entityType = EntityType.valueOf(type.toUpperCase());
+            if (offset < 0 || limit < 0) {
+                throw new IllegalArgumentException("Invalid page, offset " + offset + " and limit " + limit
+                        + " can not be negative");
+            }
+            String[] words = keywords == null ? new String[] {} : keywords.trim().split("[,\\s]+");
+            List<String> matches = configStore.search(entityType, words);
+            int from = Math.min(offset, matches.size());
+            int to = (int) Math.min(matches.size(), (long) from + limit);
+            EntityList.EntityElement[] elements = new EntityList.EntityElement[to - from];
+            for (int index = from; index < to; index++) {
+                elements[index - from] = new EntityList.EntityElement(type.toLowerCase(), matches.get(index));
+            }
+            return new EntityList(elements, matches.size());
+        } catch (Exception e) {
+            LOG.error("Unable to search entities of type (" + type + ") for " + keywords, e);
+            throw IvoryWebException.newException(e, Response.Status.BAD_REQUEST);
+        }
+    }
+
     /**
      * Returns the entity definition as an XML based on name
      * 
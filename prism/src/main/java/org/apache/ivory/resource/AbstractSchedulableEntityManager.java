@@ -18,6 +18,22 @@
 
 package org.apache.ivory.resource;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.core.Context;
@@ -25,11 +41,14 @@ import javax.ws.rs.core.Response;
 
 import org.apache.ivory.IvoryException;
 import org.apache.ivory.IvoryWebException;
+import org.apache.ivory.Pair;
 import org.apache.ivory.entity.EntityUtil;
 import org.apache.ivory.entity.v0.Entity;
 import org.apache.ivory.entity.v0.EntityType;
 import org.apache.ivory.entity.v0.UnschedulableEntityException;
 import org.apache.ivory.monitors.Dimension;
+import org.apache.ivory.util.DeploymentUtil;
+import org.apache.ivory.util.StartupProperties;
 import org.apache.log4j.Logger;
 
 /**
@@ -40,6 +59,25 @@ public abstract class AbstractSchedulableEntityManager extends AbstractEntityMan
 
     private static final Logger LOG = Logger.getLogger(AbstractSchedulableEntityManager.class);
 
+    // entities of batches are scheduled on a shared pool, with at most a few
+    // of them being scheduled on any one cluster at a time
+    private static final ExecutorService BATCH_EXECUTOR = Executors.newFixedThreadPool(
+            Integer.parseInt(StartupProperties.get().getProperty("batch.schedule.threads", "10")), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "BatchScheduler-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static final int CLUSTER_PARALLELISM = Integer.parseInt(StartupProperties.get().getProperty(
+            "batch.schedule.cluster.parallelism", "2"));
+
+    private static final ConcurrentMap<String, Semaphore> CLUSTER_PERMITS = new ConcurrentHashMap<String, Semaphore>();
+
     /**
      * Schedules an submitted entity immediately
      * 
@@ -60,10 +98,16 @@ public abstract class AbstractSchedulableEntityManager extends AbstractEntityMan
         }
     }
 
-    private synchronized void scheduleInternal(String type, String entity) throws IvoryException {
+    private void scheduleInternal(String type, String entity) throws IvoryException {
         checkSchedulableEntity(type);
-        Entity entityObj = EntityUtil.getEntity(type, entity);
-        getWorkflowEngine().schedule(entityObj);
+        Lock lock = configStore.getLock(EntityType.valueOf(type.toUpperCase()), entity);
+        lock.lock();
+        try {
+            Entity entityObj = EntityUtil.getEntity(type, entity);
+            getWorkflowEngine().schedule(entityObj);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -87,6 +131,102 @@ public abstract class AbstractSchedulableEntityManager extends AbstractEntityMan
         }
     }
 
+    /**
+     * Submits a batch of entities and schedules its feeds and then its
+     * processes, see {@link #submitBatch(HttpServletRequest, String)}.
+     * Entities already scheduled are left as they are.
+     * 
+     * @param colo
+     * @return result of each entity in the batch
+     */
+    public BatchResult submitAndScheduleBatch(@Context HttpServletRequest request,
+            @Dimension("colo") @PathParam("colo") String colo) {
+        checkColo(colo);
+        try {
+            audit(request, "STREAMED_DATA", "batch", "SUBMIT_AND_SCHEDULE_BATCH");
+            List<Pair<Entity, BatchResult.EntityResult>> submitted = new ArrayList<Pair<Entity, BatchResult.EntityResult>>();
+            BatchResult result = submitBatchInternal(request, submitted);
+            if (DeploymentUtil.isPrism()) {
+                return result;
+            }
+
+            scheduleBatch(submitted, EntityType.FEED);
+            scheduleBatch(submitted, EntityType.PROCESS);
+            List<BatchResult.EntityResult> results = new ArrayList<BatchResult.EntityResult>();
+            for (BatchResult.EntityResult entityResult : result.getResults()) {
+                results.add(entityResult);
+            }
+            return new BatchResult(result.getMessage(), results);
+        } catch (IvoryWebException e) {
+            throw e;
+        } catch (Throwable e) {
+            LOG.error("Unable to submit and schedule batch", e);
+            throw IvoryWebException.newException(e, Response.Status.BAD_REQUEST);
+        }
+    }
+
+    private void scheduleBatch(List<Pair<Entity, BatchResult.EntityResult>> submitted, EntityType type)
+            throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final Pair<Entity, BatchResult.EntityResult> pair : submitted) {
+            if (pair.first.getEntityType() != type) {
+                continue;
+            }
+            futures.add(BATCH_EXECUTOR.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    scheduleBatchEntity(pair.first, pair.second);
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                LOG.error("Unable to schedule entity of batch", e.getCause());
+            }
+        }
+    }
+
+    private void scheduleBatchEntity(Entity entity, BatchResult.EntityResult result) {
+        // permits are taken in order of cluster name, so that entities
+        // spanning the same clusters can't hold each other up
+        Set<String> clusters = new TreeSet<String>(EntityUtil.getClustersDefined(entity));
+        List<Semaphore> acquired = new ArrayList<Semaphore>();
+        try {
+            for (String cluster : clusters) {
+                Semaphore permits = CLUSTER_PERMITS.get(cluster);
+                if (permits == null) {
+                    CLUSTER_PERMITS.putIfAbsent(cluster, new Semaphore(CLUSTER_PARALLELISM));
+                    permits = CLUSTER_PERMITS.get(cluster);
+                }
+                permits.acquire();
+                acquired.add(permits);
+            }
+
+            if (getWorkflowEngine().isActive(entity)) {
+                result.message = result.message + ", already scheduled";
+            } else {
+                scheduleInternal(entity.getEntityType().name(), entity.getName());
+                result.message = result.message + " and scheduled";
+            }
+        } catch (Throwable e) {
+            // anything not caught here would leave the entity reported as
+            // scheduled
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            LOG.error("Unable to schedule " + entity.toShortString() + " of batch", e);
+            result.status = APIResult.Status.FAILED;
+            result.message = result.message + ", but not scheduled: " + e.getMessage();
+        } finally {
+            for (Semaphore permits : acquired) {
+                permits.release();
+            }
+        }
+    }
+
     /**
      * Suspends a running entity
      * 
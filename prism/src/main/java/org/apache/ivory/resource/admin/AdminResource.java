@@ -1,10 +1,18 @@
 package org.apache.ivory.resource.admin;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.ivory.rerun.event.RerunEvent.RerunType;
+import org.apache.ivory.rerun.handler.AbstractRerunConsumer;
+import org.apache.ivory.rerun.handler.AbstractRerunHandler;
+import org.apache.ivory.rerun.handler.RerunHandlerFactory;
+import org.apache.ivory.resource.proxy.ColoFanOut;
+import org.apache.ivory.resource.proxy.ColoFanOut.ColoLatency;
 import org.apache.ivory.util.BuildProperties;
 import org.apache.ivory.util.DeploymentProperties;
 import org.apache.ivory.util.RuntimeProperties;
 import org.apache.ivory.util.StartupProperties;
+import org.apache.ivory.workflow.engine.BundleCache;
+import org.apache.ivory.workflow.engine.OozieClientGuard;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -16,6 +24,7 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 @Path("admin")
@@ -73,6 +82,93 @@ public class AdminResource {
         }
     }
 
+    @GET
+    @Path("colo/latency")
+    @Produces(MediaType.TEXT_XML)
+    public PropertyList getColoLatency() {
+        List<Property> props = new ArrayList<Property>();
+        for (Map.Entry<String, ColoLatency> entry : ColoFanOut.getLatencies().entrySet()) {
+            String colo = entry.getKey();
+            ColoLatency latency = entry.getValue();
+            props.add(newProperty(colo + ".calls", latency.getCalls()));
+            props.add(newProperty(colo + ".failures", latency.getFailures()));
+            props.add(newProperty(colo + ".timeouts", latency.getTimeouts()));
+            props.add(newProperty(colo + ".latency.avg.millis", latency.getAverageMillis()));
+            props.add(newProperty(colo + ".latency.max.millis", latency.getMaxMillis()));
+        }
+        PropertyList propertyList = new PropertyList();
+        propertyList.properties = props;
+        return propertyList;
+    }
+
+    @GET
+    @Path("cache/bundle")
+    @Produces(MediaType.TEXT_XML)
+    public PropertyList getBundleCacheStats() {
+        BundleCache cache = BundleCache.get();
+        List<Property> props = new ArrayList<Property>();
+        props.add(newProperty("hits", cache.getHits()));
+        props.add(newProperty("misses", cache.getMisses()));
+        props.add(newProperty("invalidations", cache.getInvalidations()));
+        props.add(newProperty("size", cache.size()));
+        PropertyList propertyList = new PropertyList();
+        propertyList.properties = props;
+        return propertyList;
+    }
+
+    @GET
+    @Path("oozie/breakers")
+    @Produces(MediaType.TEXT_XML)
+    public PropertyList getOozieBreakers() {
+        List<Property> props = new ArrayList<Property>();
+        for (Map.Entry<String, OozieClientGuard> entry : OozieClientGuard.getGuards().entrySet()) {
+            String oozieUrl = entry.getKey();
+            OozieClientGuard guard = entry.getValue();
+            Property state = new Property();
+            state.key = oozieUrl + ".state";
+            state.value = guard.getState().name();
+            props.add(state);
+            props.add(newProperty(oozieUrl + ".calls.active", guard.getActiveCalls()));
+            props.add(newProperty(oozieUrl + ".calls", guard.getCalls()));
+            props.add(newProperty(oozieUrl + ".failures", guard.getFailures()));
+            props.add(newProperty(oozieUrl + ".rejections", guard.getRejections()));
+            props.add(newProperty(oozieUrl + ".retries", guard.getRetries()));
+        }
+        PropertyList propertyList = new PropertyList();
+        propertyList.properties = props;
+        return propertyList;
+    }
+
+    @GET
+    @Path("rerun/consumers")
+    @Produces(MediaType.TEXT_XML)
+    public PropertyList getRerunConsumers() {
+        List<Property> props = new ArrayList<Property>();
+        for (RerunType type : RerunType.values()) {
+            AbstractRerunHandler<?, ?> handler = RerunHandlerFactory.getRerunHandler(type);
+            String name = type.name().toLowerCase();
+            props.add(newProperty(name + ".queue.size", handler.getQueueSize()));
+            AbstractRerunConsumer<?, ?> consumer = handler.getConsumer();
+            if (consumer != null) {
+                props.add(newProperty(name + ".threads", consumer.getThreads()));
+                props.add(newProperty(name + ".pending", consumer.getPending()));
+                props.add(newProperty(name + ".handled", consumer.getHandled()));
+                props.add(newProperty(name + ".lag.millis", consumer.getLagMillis()));
+                props.add(newProperty(name + ".lag.max.millis", consumer.getMaxLagMillis()));
+            }
+        }
+        PropertyList propertyList = new PropertyList();
+        propertyList.properties = props;
+        return propertyList;
+    }
+
+    private Property newProperty(String key, long value) {
+        Property property = new Property();
+        property.key = key;
+        property.value = String.valueOf(value);
+        return property;
+    }
+
     private PropertyList getProperties(Properties properties) {
         List<Property> props = new ArrayList<Property>();
 
@@ -1,8 +1,12 @@
 package org.apache.ivory.resource.channel;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
@@ -12,7 +16,6 @@ import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
-import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -24,10 +27,13 @@ import org.apache.ivory.resource.proxy.BufferedRequest;
 import org.apache.ivory.security.CurrentUser;
 import org.apache.ivory.util.DeploymentProperties;
 import org.apache.ivory.util.RuntimeProperties;
+import org.apache.ivory.util.StartupProperties;
 import org.apache.log4j.Logger;
 
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.config.ClientConfig;
 import com.sun.jersey.api.client.config.DefaultClientConfig;
 
 public class HTTPChannel extends AbstractChannel {
@@ -40,8 +46,21 @@ public class HTTPChannel extends AbstractChannel {
 
     private static final Properties deploymentProperties = DeploymentProperties.get();
 
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // Clients are thread safe, and connections they open are kept alive and
+    // reused by the jdk, up to http.maxConnections per colo. That is a jvm
+    // wide system property read once, so it is to be set on the command line
+    // of the server, e.g. -Dhttp.maxConnections=20
+    private static final ConcurrentHashMap<String, Client> clients =
+            new ConcurrentHashMap<String, Client>();
+
+    private final ConcurrentHashMap<Method, Invocation> invocations =
+            new ConcurrentHashMap<Method, Invocation>();
+
     private Class service;
     private String urlPrefix;
+    private Client client;
 
     public void init(String colo, String serviceName) throws IvoryException {
         String prefixPath = deploymentProperties.
@@ -49,6 +68,7 @@ public class HTTPChannel extends AbstractChannel {
         String ivoryEndPoint = RuntimeProperties.get().
                 getProperty("ivory." + colo + ".endpoint");
         urlPrefix = ivoryEndPoint + "/" + prefixPath;
+        client = getClient(colo);
 
         try {
             String proxyClassName = deploymentProperties.
@@ -61,37 +81,59 @@ public class HTTPChannel extends AbstractChannel {
         }
     }
 
+    private static Client getClient(String colo) {
+        Client client = clients.get(colo);
+        if (client == null) {
+            Properties properties = StartupProperties.get();
+            client = Client.create(new DefaultClientConfig());
+            client.setConnectTimeout(Integer.parseInt(properties.
+                    getProperty("prism.http.connect.timeout.millis", "10000")));
+            client.setReadTimeout(Integer.parseInt(properties.
+                    getProperty("prism.http.read.timeout.millis", "120000")));
+            Client existing = clients.putIfAbsent(colo, client);
+            if (existing != null) {
+                client.destroy();
+                client = existing;
+            }
+        }
+        return client;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <T> T invoke(String methodName, Object... args)
             throws IvoryException {
 
+        ClientResponse response = null;
         try {
-            Method method = getMethod(service, methodName, args);
-            String url = urlPrefix + "/" + pathValue(method, args);
+            Invocation invocation = getInvocation(getMethod(service, methodName, args));
+            String url = urlPrefix + "/" + invocation.pathValue(args);
             LOG.debug("Executing " + url);
 
-            HttpServletRequest incomingRequest = getIncomingRequest(args);
-            incomingRequest.getInputStream().reset();
-            String httpMethod = getHttpMethod(method);
-            String mimeType = getConsumes(method);
             String accept = MediaType.WILDCARD;
             String user = CurrentUser.getUser();
 
-            ClientResponse response = Client.create(new DefaultClientConfig())
-                    .resource(UriBuilder.fromUri(url).build())
+            WebResource resource = client.resource(UriBuilder.fromUri(url).build());
+            InputStream body = null;
+            if (invocation.post) {
+                body = getBody(getIncomingRequest(args));
+                if (!(body instanceof ByteArrayInputStream)) {
+                    // size isn't known up front, stream it rather than have
+                    // the connection buffer all of it
+                    resource.setProperty(ClientConfig.PROPERTY_CHUNKED_ENCODING_SIZE, CHUNK_SIZE);
+                }
+            }
+            response = resource
                     .header(REMOTE_USER, user).accept(accept)
-                    .type(mimeType).method(httpMethod, ClientResponse.class,
-                            (isPost(httpMethod) ? incomingRequest.getInputStream() : null));
-            incomingRequest.getInputStream().reset();
+                    .type(invocation.mimeType).method(invocation.httpMethod, ClientResponse.class, body);
 
             Family status = response.getClientResponseStatus().getFamily();
             if (status == Family.INFORMATIONAL || status == Family.SUCCESSFUL) {
-                return (T) response.getEntity(method.getReturnType());
+                return (T) response.getEntity(invocation.returnType);
             } else if (response.getClientResponseStatus().getStatusCode() ==
                     Response.Status.BAD_REQUEST.getStatusCode()) {
                 LOG.error("Request failed: " + response.getClientResponseStatus().getStatusCode());
-                return (T) response.getEntity(method.getReturnType());
+                return (T) response.getEntity(invocation.returnType);
             } else {
                 LOG.error("Request failed: " + response.getClientResponseStatus().getStatusCode());
                 throw new IvoryException(response.getEntity(String.class));
@@ -99,56 +141,75 @@ public class HTTPChannel extends AbstractChannel {
         } catch (Throwable e) {
             LOG.error("Request failed", e);
             throw new IvoryException(e);
+        } finally {
+            if (response != null) {
+                response.close(); // hands the connection back for reuse
+            }
         }
     }
 
-    private boolean isPost(String httpMethod) {
-        if(httpMethod.equals("POST") || httpMethod.equals("PUT"))
-            return true;
-        return false;
+    private Invocation getInvocation(Method method) throws IvoryException {
+        Invocation invocation = invocations.get(method);
+        if (invocation == null) {
+            invocation = new Invocation(method);
+            invocations.putIfAbsent(method, invocation);
+        }
+        return invocation;
     }
 
-    private String pathValue(Method method, Object... args)
-            throws IvoryException {
-
-        Path pathParam = method.getAnnotation(Path.class);
-        if (pathParam == null) {
-            throw new IvoryException("No path param mentioned for " + method);
-        }
-        String pathValue = pathParam.value();
-
-        Annotation[][] paramAnnotations = method.getParameterAnnotations();
-        StringBuilder queryString = new StringBuilder("?");
-        for (int index = 0; index < args.length; index++) {
-            if (args[index] instanceof String) {
-                String arg = (String) args[index];
-                for (int annotation = 0; annotation < paramAnnotations[index].length; annotation++) {
-                    Annotation paramAnnotation = paramAnnotations[index][annotation];
-                    String annotationClass = paramAnnotation.annotationType().getName();
-
-                    if (annotationClass.equals(QueryParam.class.getName())) {
-                        queryString.append(getAnnotationValue(paramAnnotation, "value")).
-                                append('=').append(arg).append("&");
-                    } else if (annotationClass.equals(PathParam.class.getName())) {
-                        pathValue = pathValue.replace("{" +
-                                getAnnotationValue(paramAnnotation, "value") + "}", arg);
+    /**
+     * What it takes to call a method of the service over http, worked out
+     * once from its annotations.
+     */
+    private static final class Invocation {
+        private final Class returnType;
+        private final String httpMethod;
+        private final boolean post;
+        private final String mimeType;
+        private final String path;
+        private final String[] queryParams;
+        private final String[] pathParams;
+
+        private Invocation(Method method) throws IvoryException {
+            Path pathParam = method.getAnnotation(Path.class);
+            if (pathParam == null) {
+                throw new IvoryException("No path param mentioned for " + method);
+            }
+            path = pathParam.value();
+            returnType = method.getReturnType();
+            httpMethod = getHttpMethod(method);
+            post = httpMethod.equals(HttpMethod.POST) || httpMethod.equals(HttpMethod.PUT);
+            mimeType = getConsumes(method);
+
+            Annotation[][] paramAnnotations = method.getParameterAnnotations();
+            queryParams = new String[paramAnnotations.length];
+            pathParams = new String[paramAnnotations.length];
+            for (int index = 0; index < paramAnnotations.length; index++) {
+                for (Annotation paramAnnotation : paramAnnotations[index]) {
+                    if (paramAnnotation instanceof QueryParam) {
+                        queryParams[index] = ((QueryParam) paramAnnotation).value();
+                    } else if (paramAnnotation instanceof PathParam) {
+                        pathParams[index] = "{" + ((PathParam) paramAnnotation).value() + "}";
                     }
                 }
             }
         }
-        return pathValue + queryString.toString();
-    }
 
-    private String getAnnotationValue(Annotation paramAnnotation,
-                                      String annotationAttribute)
-            throws IvoryException {
-
-        try {
-            return String.valueOf(paramAnnotation.annotationType().
-                    getMethod(annotationAttribute).invoke(paramAnnotation));
-        } catch (Exception e) {
-            throw new IvoryException("Unable to get attribute value for " +
-                    paramAnnotation + "[" + annotationAttribute + "]");
+        private String pathValue(Object... args) {
+            String pathValue = path;
+            StringBuilder queryString = new StringBuilder("?");
+            for (int index = 0; index < args.length; index++) {
+                if (args[index] instanceof String) {
+                    String arg = (String) args[index];
+                    if (queryParams[index] != null) {
+                        queryString.append(queryParams[index]).append('=').append(arg).append("&");
+                    }
+                    if (pathParams[index] != null) {
+                        pathValue = pathValue.replace(pathParams[index], arg);
+                    }
+                }
+            }
+            return pathValue + queryString.toString();
         }
     }
 
@@ -161,7 +222,15 @@ public class HTTPChannel extends AbstractChannel {
         return new BufferedRequest(DEFAULT_NULL_REQUEST);
     }
 
-    private String getHttpMethod(Method method) {
+    private InputStream getBody(HttpServletRequest request) throws IOException {
+        if (request instanceof BufferedRequest) {
+            return ((BufferedRequest) request).getBody();
+        }
+        request.getInputStream().reset();
+        return request.getInputStream();
+    }
+
+    private static String getHttpMethod(Method method) {
         PUT put = method.getAnnotation(PUT.class);
         if (put != null) return HttpMethod.PUT;
 
@@ -174,20 +243,11 @@ public class HTTPChannel extends AbstractChannel {
         return HttpMethod.GET;
     }
 
-    private String getConsumes(Method method) {
+    private static String getConsumes(Method method) {
         Consumes consumes = method.getAnnotation(Consumes.class);
         if (consumes == null || consumes.value() == null) {
             return MediaType.TEXT_PLAIN;
         }
         return consumes.value()[0];
     }
-
-    private String getProduces(Method method) {
-        Produces produces = method.getAnnotation(Produces.class);
-        if (produces.value() == null) {
-            return MediaType.WILDCARD;
-        }
-        return produces.value()[0];
-    }
-
 }
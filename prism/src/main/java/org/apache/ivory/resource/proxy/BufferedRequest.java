@@ -1,7 +1,8 @@
 package org.apache.ivory.resource.proxy;
 
-import org.apache.hadoop.io.IOUtils;
 import org.apache.ivory.IvoryWebException;
+import org.apache.ivory.util.StartupProperties;
+import org.apache.log4j.Logger;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletInputStream;
@@ -10,57 +11,211 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import javax.ws.rs.core.Response;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.Principal;
 import java.util.Enumeration;
 import java.util.Locale;
 import java.util.Map;
 
-public class BufferedRequest implements HttpServletRequest {
+/**
+ * Request whose body is read once and can then be read any number of times,
+ * by any number of threads, as a request is proxied to colos. The body is
+ * kept in memory, or in a temp file if it is larger than
+ * prism.request.buffer.max.bytes, and is never copied after it is read.
+ * Whoever creates a request closes it once done with it, which releases the
+ * temp file.
+ */
+public class BufferedRequest implements HttpServletRequest, Closeable {
+    private static final Logger LOG = Logger.getLogger(BufferedRequest.class);
 
-    private final HttpServletRequest request;
+    private static final int MAX_BUFFER_SIZE = Integer.parseInt(StartupProperties.get().
+            getProperty("prism.request.buffer.max.bytes", "1048576"));
 
-    private final ServletInputStream stream;
+    private final HttpServletRequest request;
 
-    private final ThreadLocal<ByteArrayOutputStream> streams =
-            new ThreadLocal<ByteArrayOutputStream>() {
-                @Override
-                protected ByteArrayOutputStream initialValue() {
-                    return new ByteArrayOutputStream(2 * 1024);
-                }
-            };
+    // body is either the first length bytes of buffer, or the file of channel
+    private final byte[] buffer;
+    private final FileInputStream file;
+    private final FileChannel channel;
+    private final long length;
 
     public BufferedRequest(HttpServletRequest request) throws IvoryWebException {
+        this(request, MAX_BUFFER_SIZE);
+    }
+
+    BufferedRequest(HttpServletRequest request, int maxBufferSize) throws IvoryWebException {
         try {
             this.request = request;
-            ByteArrayOutputStream copyBuffer = streams.get();
-            copyBuffer.reset();
-            IOUtils.copyBytes(request.getInputStream(), copyBuffer, 4096, false);
-            final ByteArrayInputStream buffer =
-                    new ByteArrayInputStream(copyBuffer.toByteArray(), 0, copyBuffer.size());
-            stream = new ServletInputStream() {
-                @Override
-                public int read() throws IOException {
-                    return buffer.read();
+            InputStream in = request.getInputStream();
+            Buffer copyBuffer = new Buffer(Math.min(Math.max(request.getContentLength(), 4096), maxBufferSize));
+            if (copy(in, copyBuffer, maxBufferSize + 1L) <= maxBufferSize) {
+                buffer = copyBuffer.getBuffer();
+                length = copyBuffer.size();
+                file = null;
+                channel = null;
+            } else {
+                File spill = File.createTempFile("ivory-request", ".tmp");
+                try {
+                    OutputStream out = new FileOutputStream(spill);
+                    try {
+                        copyBuffer.writeTo(out);
+                        copyBuffer = null;
+                        copy(in, out, Long.MAX_VALUE);
+                    } finally {
+                        out.close();
+                    }
+                    file = new FileInputStream(spill);
+                } finally {
+                    // the open file stays readable, and goes when it is closed
+                    if (!spill.delete()) {
+                        spill.deleteOnExit();
+                    }
                 }
+                channel = file.getChannel();
+                length = channel.size();
+                buffer = null;
+                LOG.debug("Buffered request body of " + length + " bytes in " + spill);
+            }
+        } catch (IOException e) {
+            throw IvoryWebException.newException(e, Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
 
-                @Override
-                public void mark(int readlimit) {
-                    buffer.mark(readlimit);
-                }
+    /**
+     * Request with the given body, which is used as it is.
+     */
+    public BufferedRequest(HttpServletRequest request, byte[] body) {
+        this.request = request;
+        this.buffer = body;
+        this.length = body.length;
+        this.file = null;
+        this.channel = null;
+    }
+
+    private static long copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] chunk = new byte[4096];
+        long count = 0;
+        int read;
+        while (count < limit && (read = in.read(chunk)) != -1) {
+            out.write(chunk, 0, read);
+            count += read;
+        }
+        return count;
+    }
 
-                @Override
-                public void reset() throws IOException {
-                    buffer.reset();
-                }
+    /**
+     * @return - a new stream over the whole body. Streams over a body kept in
+     *         memory are ByteArrayInputStreams, so that their size is known.
+     */
+    public InputStream getBody() {
+        if (buffer != null) {
+            return new ByteArrayInputStream(buffer, 0, (int) length);
+        }
+        return new BodyStream(this);
+    }
 
-                @Override
-                public boolean markSupported() {
-                    return buffer.markSupported();
-                }
-            };
-            stream.mark(10 * 1024 * 1024);
-        } catch (IOException e) {
-            throw IvoryWebException.newException(e, Response.Status.INTERNAL_SERVER_ERROR);
+    public long getBodyLength() {
+        return length;
+    }
+
+    private int read(long position, byte[] bytes, int offset, int count) throws IOException {
+        if (position >= length) {
+            return -1;
+        }
+        count = (int) Math.min(count, length - position);
+        if (buffer != null) {
+            System.arraycopy(buffer, (int) position, bytes, offset, count);
+            return count;
+        }
+        // positional reads leave the channel's own position alone, so threads
+        // can read the file at the same time
+        ByteBuffer target = ByteBuffer.wrap(bytes, offset, count);
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position() - offset) == -1) {
+                break;
+            }
+        }
+        return target.position() - offset;
+    }
+
+    /**
+     * Releases the temp file the body was kept in, if any. Streams over the
+     * body fail once it is closed.
+     */
+    @Override
+    public void close() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close buffered request body", e);
+            }
+        }
+    }
+
+    private static final class BodyStream extends ServletInputStream {
+        private final BufferedRequest body;
+        private long position;
+        private long mark;
+
+        private BodyStream(BufferedRequest body) {
+            this.body = body;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            int read = body.read(position, bytes, offset, count);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) {
+            long skipped = Math.max(0, Math.min(count, body.length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, body.length - position);
+        }
+
+        @Override
+        public void mark(int readlimit) { // the whole body can always be read again
+            mark = position;
+        }
+
+        @Override
+        public void reset() {
+            position = mark;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        private Buffer(int size) {
+            super(size);
+        }
+
+        private byte[] getBuffer() { // without copying it
+            return buf;
         }
     }
 
@@ -220,7 +375,9 @@ public class BufferedRequest implements HttpServletRequest {
 
     @Override
     public ServletInputStream getInputStream() throws IOException {
-        return stream;
+        // the body is read by every colo a request is sent to, and colos may
+        // be served in parallel, so each read is through a stream of its own
+        return new BodyStream(this);
     }
 
     @Override
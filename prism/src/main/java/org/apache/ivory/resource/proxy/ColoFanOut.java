@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.resource.proxy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.security.auth.Subject;
+
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.aspect.GenericAlert;
+import org.apache.ivory.security.CurrentUser;
+import org.apache.ivory.util.StartupProperties;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs a call against a number of colos in parallel, on a pool shared by the
+ * prism proxies. A colo that doesn't answer within prism.colo.timeout.millis
+ * is reported as failed, so that one slow colo doesn't hold up the results
+ * of the others. Latency of the calls is tracked per colo.
+ */
+public final class ColoFanOut {
+
+    private static final Logger LOG = Logger.getLogger(ColoFanOut.class);
+
+    private static final long TIMEOUT_MILLIS = Long.parseLong(StartupProperties.get().getProperty(
+            "prism.colo.timeout.millis", "120000"));
+
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        int threads = Integer.parseInt(StartupProperties.get().getProperty("prism.colo.threads", "20"));
+        EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 10), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "ColoFanOut-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy()); // a busy prism degrades to calling colos in turn
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static final ConcurrentMap<String, ColoLatency> LATENCIES = new ConcurrentHashMap<String, ColoLatency>();
+
+    private ColoFanOut() {
+    }
+
+    /**
+     * A call to be made on each colo.
+     */
+    public interface ColoCall<T> {
+        T execute(String colo) throws IvoryException;
+
+        /**
+         * Unchecked exceptions of a call are not handed here, they are thrown
+         * back to the caller as they would have been from a call made on the
+         * caller's thread.
+         *
+         * @return - result standing in for a colo that failed or timed out
+         */
+        T failed(String colo, Throwable cause);
+    }
+
+    /**
+     * @return - result of each colo, in the order of colos
+     */
+    public static <T> Map<String, T> execute(Set<String> colos, String type, String name, ColoCall<T> call) {
+        return execute(colos, type, name, call, TIMEOUT_MILLIS);
+    }
+
+    static <T> Map<String, T> execute(Set<String> colos, final String type, final String name,
+                                      final ColoCall<T> call, long timeoutMillis) {
+        Map<String, T> results = new LinkedHashMap<String, T>();
+        if (colos.size() == 1) { // nothing to overlap with
+            String colo = colos.iterator().next();
+            try {
+                results.put(colo, executeOn(colo, type, name, call, System.nanoTime()));
+            } catch (IvoryException e) {
+                results.put(colo, call.failed(colo, e));
+            }
+            return results;
+        }
+
+        // pooled threads act as the caller, or as nobody if the caller is not
+        // logged in, and are left as they were found
+        final Subject subject = CurrentUser.getSubject();
+        final long start = System.nanoTime();
+        Map<String, Future<T>> futures = new LinkedHashMap<String, Future<T>>();
+        for (final String colo : colos) {
+            futures.put(colo, EXECUTOR.submit(new Callable<T>() {
+                @Override
+                public T call() throws IvoryException {
+                    Subject previous = CurrentUser.getSubject();
+                    CurrentUser.setSubject(subject);
+                    try {
+                        return executeOn(colo, type, name, call, start);
+                    } finally {
+                        CurrentUser.setSubject(previous);
+                    }
+                }
+            }));
+        }
+
+        long deadline = TimeUnit.NANOSECONDS.toMillis(start) + timeoutMillis;
+        for (Map.Entry<String, Future<T>> entry : futures.entrySet()) {
+            String colo = entry.getKey();
+            Future<T> future = entry.getValue();
+            try {
+                long wait = Math.max(0, deadline - TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+                results.put(colo, future.get(wait, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                LOG.error("No response from colo " + colo + " for " + type + "/" + name + " in " + timeoutMillis
+                        + " ms");
+                getLatency(colo).timeouts.incrementAndGet();
+                results.put(colo, call.failed(colo, new TimeoutException("No response in " + timeoutMillis + " ms")));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                results.put(colo, call.failed(colo, e.getCause()));
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                results.put(colo, call.failed(colo, e));
+            }
+        }
+        return results;
+    }
+
+    private static <T> T executeOn(String colo, String type, String name, ColoCall<T> call, long start)
+            throws IvoryException {
+        boolean failed = true;
+        try {
+            T result = call.execute(colo);
+            failed = false;
+            return result;
+        } finally {
+            long timeTaken = System.nanoTime() - start;
+            getLatency(colo).record(failed, timeTaken);
+            GenericAlert.instrumentColoCall(colo, type, name, failed ? "FAILED" : "SUCCEEDED", timeTaken);
+        }
+    }
+
+    private static ColoLatency getLatency(String colo) {
+        ColoLatency latency = LATENCIES.get(colo);
+        if (latency == null) {
+            LATENCIES.putIfAbsent(colo, new ColoLatency());
+            latency = LATENCIES.get(colo);
+        }
+        return latency;
+    }
+
+    /**
+     * Latency of a call includes time spent waiting for a thread of the pool.
+     * Calls that time out are counted as timeouts when the caller gives up on
+     * them, and as calls once they complete.
+     *
+     * @return - latency of calls to each colo since startup, by colo
+     */
+    public static Map<String, ColoLatency> getLatencies() {
+        return Collections.unmodifiableMap(new TreeMap<String, ColoLatency>(LATENCIES));
+    }
+
+    public static final class ColoLatency {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(boolean failed, long nanos) {
+            calls.incrementAndGet();
+            if (failed) {
+                failures.incrementAndGet();
+            }
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        public long getAverageMillis() {
+            long count = calls.get();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / count);
+        }
+
+        public long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+        }
+    }
+}
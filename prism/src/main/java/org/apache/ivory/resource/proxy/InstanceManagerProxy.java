@@ -1,10 +1,10 @@
 package org.apache.ivory.resource.proxy;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
@@ -32,7 +32,7 @@ import org.apache.ivory.resource.channel.ChannelFactory;
 @Path("instance")
 public class InstanceManagerProxy extends AbstractInstanceManager {
 
-    private final Map<String, Channel> processInstanceManagerChannels = new HashMap<String, Channel>();
+    private final Map<String, Channel> processInstanceManagerChannels = new ConcurrentHashMap<String, Channel>();
 
     public InstanceManagerProxy() {
         try {
@@ -126,14 +126,18 @@ public class InstanceManagerProxy extends AbstractInstanceManager {
                                         @Dimension("end-time") @QueryParam("end") final String endStr,
                                         @Dimension("colo") @QueryParam("colo") final String colo) {
 
-        final HttpServletRequest bufferedRequest = new BufferedRequest(request);
-        return new InstanceProxy() {
-            @Override
-            protected InstancesResult doExecute(String colo) throws IvoryException {
-                return getInstanceManager(colo).invoke("killInstance",
-                    bufferedRequest, type, entity, startStr, endStr, colo);
-            }
-        }.execute(colo, type, entity);
+        final BufferedRequest bufferedRequest = new BufferedRequest(request);
+        try {
+            return new InstanceProxy() {
+                @Override
+                protected InstancesResult doExecute(String colo) throws IvoryException {
+                    return getInstanceManager(colo).invoke("killInstance",
+                        bufferedRequest, type, entity, startStr, endStr, colo);
+                }
+            }.execute(colo, type, entity);
+        } finally {
+            bufferedRequest.close();
+        }
     }
 
     @POST
@@ -147,14 +151,18 @@ public class InstanceManagerProxy extends AbstractInstanceManager {
                                            @Dimension("start-time") @QueryParam("start") final String startStr,
                                            @Dimension("end-time") @QueryParam("end") final String endStr,
                                            @Dimension("colo") @QueryParam("colo") String colo) {
-        final HttpServletRequest bufferedRequest = new BufferedRequest(request);
-        return new InstanceProxy() {
-            @Override
-            protected InstancesResult doExecute(String colo) throws IvoryException {
-                return getInstanceManager(colo).invoke("suspendInstance",
-                    bufferedRequest, type, entity, startStr, endStr, colo);
-            }
-        }.execute(colo, type, entity);
+        final BufferedRequest bufferedRequest = new BufferedRequest(request);
+        try {
+            return new InstanceProxy() {
+                @Override
+                protected InstancesResult doExecute(String colo) throws IvoryException {
+                    return getInstanceManager(colo).invoke("suspendInstance",
+                        bufferedRequest, type, entity, startStr, endStr, colo);
+                }
+            }.execute(colo, type, entity);
+        } finally {
+            bufferedRequest.close();
+        }
     }
 
     @POST
@@ -169,14 +177,18 @@ public class InstanceManagerProxy extends AbstractInstanceManager {
                                           @Dimension("end-time") @QueryParam("end") final String endStr,
                                           @Dimension("colo") @QueryParam("colo") String colo) {
 
-        final HttpServletRequest bufferedRequest = new BufferedRequest(request);
-        return new InstanceProxy() {
-            @Override
-            protected InstancesResult doExecute(String colo) throws IvoryException {
-                return getInstanceManager(colo).invoke("resumeInstance",
-                    bufferedRequest, type, entity, startStr, endStr, colo);
-            }
-        }.execute(colo, type, entity);
+        final BufferedRequest bufferedRequest = new BufferedRequest(request);
+        try {
+            return new InstanceProxy() {
+                @Override
+                protected InstancesResult doExecute(String colo) throws IvoryException {
+                    return getInstanceManager(colo).invoke("resumeInstance",
+                        bufferedRequest, type, entity, startStr, endStr, colo);
+                }
+            }.execute(colo, type, entity);
+        } finally {
+            bufferedRequest.close();
+        }
     }
 
     @POST
@@ -191,14 +203,18 @@ public class InstanceManagerProxy extends AbstractInstanceManager {
                                                 @Context HttpServletRequest request,
                                                 @Dimension("colo") @QueryParam("colo") String colo) {
 
-        final HttpServletRequest bufferedRequest = new BufferedRequest(request);
-        return new InstanceProxy() {
-            @Override
-            protected InstancesResult doExecute(String colo) throws IvoryException {
-                return getInstanceManager(colo).invoke("reRunInstance",
-                    type, entity, startStr, endStr, bufferedRequest, colo);
-            }
-        }.execute(colo, type, entity);
+        final BufferedRequest bufferedRequest = new BufferedRequest(request);
+        try {
+            return new InstanceProxy() {
+                @Override
+                protected InstancesResult doExecute(String colo) throws IvoryException {
+                    return getInstanceManager(colo).invoke("reRunInstance",
+                        type, entity, startStr, endStr, bufferedRequest, colo);
+                }
+            }.execute(colo, type, entity);
+        } finally {
+            bufferedRequest.close();
+        }
     }
 
     private abstract class InstanceProxy {
@@ -206,21 +222,25 @@ public class InstanceManagerProxy extends AbstractInstanceManager {
         public InstancesResult execute(String coloExpr, String type, String name) {
             Set<String> colos = getColosFromExpression(coloExpr, type, name);
 
-            Map<String, InstancesResult> results = new HashMap<String, InstancesResult>();
-            for (String colo:colos) {
-                try {
+            Map<String, InstancesResult> results = ColoFanOut.execute(colos, type, name,
+                    new ColoFanOut.ColoCall<InstancesResult>() {
+                @Override
+                public InstancesResult execute(String colo) throws IvoryException {
                     APIResult resultHolder = doExecute(colo);
                     if (resultHolder instanceof InstancesResult) {
-                        results.put(colo, (InstancesResult) resultHolder);
+                        return (InstancesResult) resultHolder;
                     } else {
                         throw new IvoryException(resultHolder.getMessage());
                     }
-                } catch (IvoryException e) {
-                    results.put(colo, new InstancesResult(APIResult.Status.FAILED,
-                            e.getClass().getName() + "::" + e.getMessage(),
-                            new InstancesResult.Instance[0]));
                 }
-            }
+
+                @Override
+                public InstancesResult failed(String colo, Throwable cause) {
+                    return new InstancesResult(APIResult.Status.FAILED,
+                            cause.getClass().getName() + "::" + cause.getMessage(),
+                            new InstancesResult.Instance[0]);
+                }
+            });
             InstancesResult finalResult = consolidateInstanceResult(results);
             if (finalResult.getStatus() != APIResult.Status.SUCCEEDED) {
                 throw IvoryWebException.newException(finalResult, Response.Status.BAD_REQUEST);
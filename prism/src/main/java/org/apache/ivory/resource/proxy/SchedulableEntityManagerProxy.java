@@ -1,14 +1,20 @@
 package org.apache.ivory.resource.proxy;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -24,23 +30,26 @@ import org.apache.ivory.IvoryRuntimException;
 import org.apache.ivory.IvoryWebException;
 import org.apache.ivory.entity.EntityNotRegisteredException;
 import org.apache.ivory.entity.EntityUtil;
+import org.apache.ivory.entity.parser.EntityBatchParser;
 import org.apache.ivory.entity.v0.Entity;
 import org.apache.ivory.entity.v0.EntityType;
 import org.apache.ivory.monitors.Dimension;
 import org.apache.ivory.monitors.Monitored;
 import org.apache.ivory.resource.APIResult;
 import org.apache.ivory.resource.AbstractSchedulableEntityManager;
+import org.apache.ivory.resource.BatchResult;
 import org.apache.ivory.resource.EntityList;
 import org.apache.ivory.resource.channel.Channel;
 import org.apache.ivory.resource.channel.ChannelFactory;
+import org.apache.ivory.resource.channel.NullServletRequest;
 import org.apache.ivory.util.DeploymentUtil;
 
 @Path("entities")
 public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityManager {
     private static final String PRISM_TAG = "prism";
 
-    private final Map<String, Channel> entityManagerChannels = new HashMap<String, Channel>();
-    private final Map<String, Channel> configSyncChannels = new HashMap<String, Channel>();
+    private final Map<String, Channel> entityManagerChannels = new ConcurrentHashMap<String, Channel>();
+    private final Map<String, Channel> configSyncChannels = new ConcurrentHashMap<String, Channel>();
     private boolean embeddedMode = DeploymentUtil.isEmbeddedMode();
     private String currentColo = DeploymentUtil.getCurrentColo();
 
@@ -83,6 +92,14 @@ public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityMana
         return new BufferedRequest(request);
     }
 
+    // closes a request buffered by getBufferedRequest, unless it was handed
+    // in buffered already, in which case it is closed by whoever buffered it
+    private void close(BufferedRequest bufferedRequest, HttpServletRequest request) {
+        if (bufferedRequest != request) {
+            bufferedRequest.close();
+        }
+    }
+
     @POST
     @Path("submit/{type}")
     @Consumes({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN })
@@ -92,18 +109,22 @@ public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityMana
     public APIResult submit(@Context HttpServletRequest request, @Dimension("entityType") @PathParam("type") final String type,
             @Dimension("colo") @QueryParam("colo") final String ignore) {
 
-        final HttpServletRequest bufferedRequest = getBufferedRequest(request);
-        if (!embeddedMode) {
-            super.submit(bufferedRequest, type, currentColo);
-        }
-
-        final String entity = getEntity(bufferedRequest, type).getName();
-        return new EntityProxy(type, entity) {
-            @Override
-            protected APIResult doExecute(String colo) throws IvoryException {
-                return getConfigSyncChannel(colo).invoke("submit", bufferedRequest, type, colo);
+        final BufferedRequest bufferedRequest = getBufferedRequest(request);
+        try {
+            if (!embeddedMode) {
+                super.submit(bufferedRequest, type, currentColo);
             }
-        }.execute();
+
+            final String entity = getEntity(bufferedRequest, type).getName();
+            return new EntityProxy(type, entity) {
+                @Override
+                protected APIResult doExecute(String colo) throws IvoryException {
+                    return getConfigSyncChannel(colo).invoke("submit", bufferedRequest, type, colo);
+                }
+            }.execute();
+        } finally {
+            close(bufferedRequest, request);
+        }
     }
 
     private Entity getEntity(HttpServletRequest request, String type) {
@@ -117,6 +138,164 @@ public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityMana
         }
     }
 
+    @POST
+    @Path("batch/submit")
+    @Consumes({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN, "application/zip", "application/x-tar" })
+    @Produces({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN })
+    @Monitored(event = "submitBatch")
+    @Override
+    public BatchResult submitBatch(@Context HttpServletRequest request,
+            @Dimension("colo") @QueryParam("colo") String ignore) {
+        return submitBatchToColos(request, false);
+    }
+
+    @POST
+    @Path("batch/submitAndSchedule")
+    @Consumes({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN, "application/zip", "application/x-tar" })
+    @Produces({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN })
+    @Monitored(event = "submitAndScheduleBatch")
+    @Override
+    public BatchResult submitAndScheduleBatch(@Context HttpServletRequest request,
+            @Dimension("colo") @QueryParam("colo") String ignore) {
+        return submitBatchToColos(request, true);
+    }
+
+    /**
+     * Submits the batch to prism and then sends each colo the entities of the
+     * batch that apply to it, as a batch of their own, to all colos at once.
+     */
+    private BatchResult submitBatchToColos(HttpServletRequest request, final boolean schedule) {
+        BufferedRequest bufferedRequest = getBufferedRequest(request);
+        try {
+            if (!embeddedMode) {
+                super.submitBatch(bufferedRequest, currentColo);
+            }
+
+            List<Entity> entities = getBatch(bufferedRequest);
+            final Map<String, List<Entity>> coloEntities = new TreeMap<String, List<Entity>>();
+            for (Entity entity : entities) {
+                for (String colo : getApplicableColos(entity.getEntityType().name(), entity)) {
+                    List<Entity> batch = coloEntities.get(colo);
+                    if (batch == null) {
+                        batch = new ArrayList<Entity>();
+                        coloEntities.put(colo, batch);
+                    }
+                    batch.add(entity);
+                }
+            }
+
+            String method = schedule ? "submitAndScheduleBatch" : "submitBatch";
+            Map<String, BatchResult> results = ColoFanOut.execute(coloEntities.keySet(), "batch", method,
+                    new ColoFanOut.ColoCall<BatchResult>() {
+                        @Override
+                        public BatchResult execute(String colo) throws IvoryException {
+                            HttpServletRequest coloRequest = getBatchRequest(coloEntities.get(colo));
+                            try {
+                                if (schedule) {
+                                    return getEntityManager(colo).invoke("submitAndScheduleBatch", coloRequest, colo);
+                                } else {
+                                    return getConfigSyncChannel(colo).invoke("submitBatch", coloRequest, colo);
+                                }
+                            } catch (IvoryWebException e) {
+                                Object entity = e.getResponse().getEntity();
+                                return entity instanceof BatchResult ? (BatchResult) entity
+                                        : new BatchResult(APIResult.Status.FAILED, String.valueOf(entity), null);
+                            }
+                        }
+
+                        @Override
+                        public BatchResult failed(String colo, Throwable cause) {
+                            return new BatchResult(APIResult.Status.FAILED, cause.getClass().getName() + "::"
+                                    + cause.getMessage(), null);
+                        }
+                    });
+            return consolidateBatchResult(entities, coloEntities, results);
+        } finally {
+            close(bufferedRequest, request);
+        }
+    }
+
+    private List<Entity> getBatch(HttpServletRequest request) {
+        try {
+            request.getInputStream().reset();
+            List<Entity> entities = parseBatch(request);
+            request.getInputStream().reset();
+            return entities;
+        } catch (Exception e) {
+            throw IvoryWebException.newException(e, Response.Status.BAD_REQUEST);
+        }
+    }
+
+    private HttpServletRequest getBatchRequest(List<Entity> entities) throws IvoryException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EntityBatchParser.write(entities, out);
+        return new BufferedRequest(new NullServletRequest(), out.toByteArray());
+    }
+
+    private static String batchKey(String type, String name) {
+        return type + "/" + name;
+    }
+
+    private BatchResult consolidateBatchResult(List<Entity> entities, Map<String, List<Entity>> coloEntities,
+            Map<String, BatchResult> results) {
+        // result of each entity of the batch in each colo it applies to, by
+        // colo and then by type and name
+        Map<String, Map<String, BatchResult.EntityResult>> coloResults =
+                new TreeMap<String, Map<String, BatchResult.EntityResult>>();
+        for (Entry<String, List<Entity>> entry : coloEntities.entrySet()) {
+            BatchResult coloResult = results.get(entry.getKey());
+            Map<String, BatchResult.EntityResult> entityResults = new HashMap<String, BatchResult.EntityResult>();
+            for (Entity entity : entry.getValue()) {
+                String type = entity.getEntityType().name().toLowerCase();
+                entityResults.put(batchKey(type, entity.getName()), new BatchResult.EntityResult(type,
+                        entity.getName(), coloResult.getStatus(), coloResult.getMessage()));
+            }
+            if (coloResult.getResults() != null) {
+                for (BatchResult.EntityResult result : coloResult.getResults()) {
+                    String key = batchKey(result.type, result.name);
+                    if (entityResults.containsKey(key)) {
+                        entityResults.put(key, result);
+                    }
+                }
+            }
+            coloResults.put(entry.getKey(), entityResults);
+        }
+
+        List<BatchResult.EntityResult> consolidated = new ArrayList<BatchResult.EntityResult>();
+        for (Entity entity : entities) {
+            String type = entity.getEntityType().name().toLowerCase();
+            String key = batchKey(type, entity.getName());
+            StringBuilder buffer = new StringBuilder();
+            int statusCount = 0;
+            int colos = 0;
+            for (Entry<String, Map<String, BatchResult.EntityResult>> entry : coloResults.entrySet()) {
+                BatchResult.EntityResult result = entry.getValue().get(key);
+                if (result == null) {
+                    continue;
+                }
+                buffer.append(entry.getKey()).append('/').append(result.message).append('\n');
+                statusCount += result.status.ordinal();
+                colos++;
+            }
+            APIResult.Status status = (statusCount == 0) ? APIResult.Status.SUCCEEDED
+                    : ((statusCount == colos * 2) ? APIResult.Status.FAILED : APIResult.Status.PARTIAL);
+            consolidated.add(new BatchResult.EntityResult(type, entity.getName(), status, buffer.toString()));
+        }
+
+        StringBuilder buffer = new StringBuilder();
+        StringBuilder requestIds = new StringBuilder();
+        for (Entry<String, BatchResult> entry : results.entrySet()) {
+            buffer.append(entry.getKey()).append('/').append(entry.getValue().getMessage()).append('\n');
+            requestIds.append(entry.getKey()).append('/').append(entry.getValue().getRequestId()).append('\n');
+        }
+        BatchResult result = new BatchResult(buffer.toString(), consolidated);
+        result.setRequestId(requestIds.toString());
+        if (result.getStatus() != APIResult.Status.SUCCEEDED) {
+            throw IvoryWebException.newException(result, Response.Status.BAD_REQUEST);
+        }
+        return result;
+    }
+
     @POST
     @Path("validate/{type}")
     @Consumes({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN })
@@ -134,32 +313,36 @@ public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityMana
     public APIResult delete(@Context HttpServletRequest request, @Dimension("entityType") @PathParam("type") final String type,
             @Dimension("entityName") @PathParam("entity") final String entity, @Dimension("colo") @QueryParam("colo") String ignore) {
 
-        final HttpServletRequest bufferedRequest = new BufferedRequest(request);
-        Map<String, APIResult> results = new HashMap<String, APIResult>();
+        final BufferedRequest bufferedRequest = new BufferedRequest(request);
+        try {
+            Map<String, APIResult> results = new HashMap<String, APIResult>();
         
-        results.put("ivory", new EntityProxy(type, entity) {
-            @Override
-            public APIResult execute() {
-                try {
-                    EntityUtil.getEntity(type, entity);
-                    return super.execute();
-                } catch (EntityNotRegisteredException e) {
-                    return new APIResult(APIResult.Status.SUCCEEDED, entity + "(" + type + ") removed successfully");
-                } catch (IvoryException e) {
-                    throw IvoryWebException.newException(e, Response.Status.BAD_REQUEST);
+            results.put("ivory", new EntityProxy(type, entity) {
+                @Override
+                public APIResult execute() {
+                    try {
+                        EntityUtil.getEntity(type, entity);
+                        return super.execute();
+                    } catch (EntityNotRegisteredException e) {
+                        return new APIResult(APIResult.Status.SUCCEEDED, entity + "(" + type + ") removed successfully");
+                    } catch (IvoryException e) {
+                        throw IvoryWebException.newException(e, Response.Status.BAD_REQUEST);
+                    }
                 }
-            }
             
-            @Override
-            protected APIResult doExecute(String colo) throws IvoryException {
-                return getConfigSyncChannel(colo).invoke("delete", bufferedRequest, type, entity, colo);
-            }
-        }.execute());
+                @Override
+                protected APIResult doExecute(String colo) throws IvoryException {
+                    return getConfigSyncChannel(colo).invoke("delete", bufferedRequest, type, entity, colo);
+                }
+            }.execute());
 
-        if (!embeddedMode) {
-            results.put(PRISM_TAG,  super.delete(bufferedRequest, type, entity, currentColo));
+            if (!embeddedMode) {
+                results.put(PRISM_TAG,  super.delete(bufferedRequest, type, entity, currentColo));
+            }
+            return consolidateResult(results);
+        } finally {
+            bufferedRequest.close();
         }
-        return consolidateResult(results);
     }
 
     @POST
@@ -171,63 +354,67 @@ public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityMana
             @Dimension("entityName") @PathParam("entity") final String entityName,
             @Dimension("colo") @QueryParam("colo") String ignore) {
 
-        final HttpServletRequest bufferedRequest = new BufferedRequest(request);
-        final Set<String> oldColos = getApplicableColos(type, entityName);
-        final Set<String> newColos = getApplicableColos(type, getEntity(bufferedRequest, type));
-        final Set<String> mergedColos = new HashSet<String>();
-        mergedColos.addAll(oldColos);
-        mergedColos.retainAll(newColos);    //Common colos where update should be called
-        newColos.removeAll(oldColos);   //New colos where submit should be called
-        oldColos.removeAll(mergedColos);   //Old colos where delete should be called
-
-        Map<String, APIResult> results = new HashMap<String, APIResult>();
-        if(!oldColos.isEmpty()) {
-            results.put("delete", new EntityProxy(type, entityName) {
-                @Override
-                protected Set<String> getColosToApply() {
-                    return oldColos;
-                }
+        final BufferedRequest bufferedRequest = new BufferedRequest(request);
+        try {
+            final Set<String> oldColos = getApplicableColos(type, entityName);
+            final Set<String> newColos = getApplicableColos(type, getEntity(bufferedRequest, type));
+            final Set<String> mergedColos = new HashSet<String>();
+            mergedColos.addAll(oldColos);
+            mergedColos.retainAll(newColos);    //Common colos where update should be called
+            newColos.removeAll(oldColos);   //New colos where submit should be called
+            oldColos.removeAll(mergedColos);   //Old colos where delete should be called
+
+            Map<String, APIResult> results = new HashMap<String, APIResult>();
+            if(!oldColos.isEmpty()) {
+                results.put("delete", new EntityProxy(type, entityName) {
+                    @Override
+                    protected Set<String> getColosToApply() {
+                        return oldColos;
+                    }
     
-                @Override
-                protected APIResult doExecute(String colo) throws IvoryException {
-                    return getConfigSyncChannel(colo).invoke("delete", bufferedRequest, type, entityName, colo);
-                }
-            }.execute());
-        }
+                    @Override
+                    protected APIResult doExecute(String colo) throws IvoryException {
+                        return getConfigSyncChannel(colo).invoke("delete", bufferedRequest, type, entityName, colo);
+                    }
+                }.execute());
+            }
 
-        if(!mergedColos.isEmpty()) {
-            results.put("update", new EntityProxy(type, entityName) {
-                @Override
-                protected Set<String> getColosToApply() {
-                    return mergedColos;
-                }
+            if(!mergedColos.isEmpty()) {
+                results.put("update", new EntityProxy(type, entityName) {
+                    @Override
+                    protected Set<String> getColosToApply() {
+                        return mergedColos;
+                    }
     
-                @Override
-                protected APIResult doExecute(String colo) throws IvoryException {
-                    return getConfigSyncChannel(colo).invoke("update", bufferedRequest, type, entityName, colo);
-                }
-            }.execute());
-        }
+                    @Override
+                    protected APIResult doExecute(String colo) throws IvoryException {
+                        return getConfigSyncChannel(colo).invoke("update", bufferedRequest, type, entityName, colo);
+                    }
+                }.execute());
+            }
 
-        if(!newColos.isEmpty()) {
-            results.put("submit", new EntityProxy(type, entityName) {
-                @Override
-                protected Set<String> getColosToApply() {
-                    return newColos;
-                }
+            if(!newColos.isEmpty()) {
+                results.put("submit", new EntityProxy(type, entityName) {
+                    @Override
+                    protected Set<String> getColosToApply() {
+                        return newColos;
+                    }
     
-                @Override
-                protected APIResult doExecute(String colo) throws IvoryException {
-                    return getConfigSyncChannel(colo).invoke("submit", bufferedRequest, type, colo);
-                }
-            }.execute());
-        }
+                    @Override
+                    protected APIResult doExecute(String colo) throws IvoryException {
+                        return getConfigSyncChannel(colo).invoke("submit", bufferedRequest, type, colo);
+                    }
+                }.execute());
+            }
         
-        if (!embeddedMode) {
-            results.put(PRISM_TAG, super.update(bufferedRequest, type, entityName, currentColo));
-        }
+            if (!embeddedMode) {
+                results.put(PRISM_TAG, super.update(bufferedRequest, type, entityName, currentColo));
+            }
         
-        return consolidateResult(results);
+            return consolidateResult(results);
+        } finally {
+            bufferedRequest.close();
+        }
     }
 
     @GET
@@ -261,12 +448,40 @@ public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityMana
         return super.getDependencies(type, entity);
     }
 
+    @GET
+    @Path("lineage/{type}/{entity}")
+    @Produces(MediaType.TEXT_XML)
+    @Monitored(event = "lineage")
+    @Override
+    public EntityList getLineage(@Dimension("entityType") @PathParam("type") String type,
+            @Dimension("entityName") @PathParam("entity") String entity,
+            @Dimension("direction") @DefaultValue("downstream") @QueryParam("direction") String direction,
+            @DefaultValue("0") @QueryParam("depth") int depth) {
+        return super.getLineage(type, entity, direction, depth);
+    }
+
+    @GET
+    @Path("search/{type}")
+    @Produces(MediaType.TEXT_XML)
+    @Monitored(event = "search")
+    @Override
+    public EntityList search(@Dimension("entityType") @PathParam("type") String type,
+            @QueryParam("keywords") String keywords,
+            @DefaultValue("0") @QueryParam("offset") int offset,
+            @DefaultValue("100") @QueryParam("limit") int limit) {
+        return super.search(type, keywords, offset, limit);
+    }
+
     @GET
     @Path("list/{type}")
     @Produces(MediaType.TEXT_XML)
     @Override
-    public EntityList getDependencies(@PathParam("type") String type) {
-        return super.getDependencies(type);
+    public Response getEntityList(@PathParam("type") String type,
+            @DefaultValue("name") @QueryParam("fields") String fields,
+            @DefaultValue("0") @QueryParam("offset") int offset,
+            @DefaultValue("-1") @QueryParam("limit") int limit,
+            @DefaultValue("false") @QueryParam("stream") boolean stream) {
+        return super.getEntityList(type, fields, offset, limit, stream);
     }
 
     @GET
@@ -287,18 +502,22 @@ public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityMana
             @Dimension("entityName") @PathParam("entity") final String entity,
             @Dimension("colo") @QueryParam("colo") final String coloExpr) {
 
-        final HttpServletRequest bufferedRequest = getBufferedRequest(request);
-        return new EntityProxy(type, entity) {
-            @Override
-            protected Set<String> getColosToApply() {
-                return getColosFromExpression(coloExpr, type, entity);
-            }
+        final BufferedRequest bufferedRequest = getBufferedRequest(request);
+        try {
+            return new EntityProxy(type, entity) {
+                @Override
+                protected Set<String> getColosToApply() {
+                    return getColosFromExpression(coloExpr, type, entity);
+                }
 
-            @Override
-            protected APIResult doExecute(String colo) throws IvoryException {
-                return getEntityManager(colo).invoke("schedule", bufferedRequest, type, entity, colo);
-            }
-        }.execute();
+                @Override
+                protected APIResult doExecute(String colo) throws IvoryException {
+                    return getEntityManager(colo).invoke("schedule", bufferedRequest, type, entity, colo);
+                }
+            }.execute();
+        } finally {
+            close(bufferedRequest, request);
+        }
     }
 
     @POST
@@ -310,11 +529,15 @@ public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityMana
     public APIResult submitAndSchedule(@Context HttpServletRequest request, @Dimension("entityType") @PathParam("type") String type,
             @Dimension("colo") @QueryParam("colo") String coloExpr) {
         BufferedRequest bufferedRequest = new BufferedRequest(request);
-        String entity = getEntity(bufferedRequest, type).getName();
-        Map<String, APIResult> results = new HashMap<String, APIResult>();
-        results.put("submit", submit(bufferedRequest, type, coloExpr));
-        results.put("schedule", schedule(bufferedRequest, type, entity, coloExpr));
-        return consolidateResult(results);
+        try {
+            String entity = getEntity(bufferedRequest, type).getName();
+            Map<String, APIResult> results = new HashMap<String, APIResult>();
+            results.put("submit", submit(bufferedRequest, type, coloExpr));
+            results.put("schedule", schedule(bufferedRequest, type, entity, coloExpr));
+            return consolidateResult(results);
+        } finally {
+            bufferedRequest.close();
+        }
     }
 
     @POST
@@ -327,18 +550,22 @@ public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityMana
             @Dimension("entityName") @PathParam("entity") final String entity,
             @Dimension("colo") @QueryParam("colo") final String coloExpr) {
 
-        final HttpServletRequest bufferedRequest = new BufferedRequest(request);
-        return new EntityProxy(type, entity) {
-            @Override
-            protected Set<String> getColosToApply() {
-                return getColosFromExpression(coloExpr, type, entity);
-            }
+        final BufferedRequest bufferedRequest = new BufferedRequest(request);
+        try {
+            return new EntityProxy(type, entity) {
+                @Override
+                protected Set<String> getColosToApply() {
+                    return getColosFromExpression(coloExpr, type, entity);
+                }
 
-            @Override
-            protected APIResult doExecute(String colo) throws IvoryException {
-                return getEntityManager(colo).invoke("suspend", bufferedRequest, type, entity, colo);
-            }
-        }.execute();
+                @Override
+                protected APIResult doExecute(String colo) throws IvoryException {
+                    return getEntityManager(colo).invoke("suspend", bufferedRequest, type, entity, colo);
+                }
+            }.execute();
+        } finally {
+            bufferedRequest.close();
+        }
     }
 
     @POST
@@ -350,18 +577,22 @@ public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityMana
             @Dimension("entityName") @PathParam("entity") final String entity,
             @Dimension("colo") @QueryParam("colo") final String coloExpr) {
 
-        final HttpServletRequest bufferedRequest = new BufferedRequest(request);
-        return new EntityProxy(type, entity) {
-            @Override
-            protected Set<String> getColosToApply() {
-                return getColosFromExpression(coloExpr, type, entity);
-            }
+        final BufferedRequest bufferedRequest = new BufferedRequest(request);
+        try {
+            return new EntityProxy(type, entity) {
+                @Override
+                protected Set<String> getColosToApply() {
+                    return getColosFromExpression(coloExpr, type, entity);
+                }
 
-            @Override
-            protected APIResult doExecute(String colo) throws IvoryException {
-                return getEntityManager(colo).invoke("resume", bufferedRequest, type, entity, colo);
-            }
-        }.execute();
+                @Override
+                protected APIResult doExecute(String colo) throws IvoryException {
+                    return getEntityManager(colo).invoke("resume", bufferedRequest, type, entity, colo);
+                }
+            }.execute();
+        } finally {
+            bufferedRequest.close();
+        }
     }
 
     private abstract class EntityProxy {
@@ -376,15 +607,17 @@ public class SchedulableEntityManagerProxy extends AbstractSchedulableEntityMana
         public APIResult execute() {
             Set<String> colos = getColosToApply();
 
-            Map<String, APIResult> results = new HashMap<String, APIResult>();
+            Map<String, APIResult> results = ColoFanOut.execute(colos, type, name, new ColoFanOut.ColoCall<APIResult>() {
+                @Override
+                public APIResult execute(String colo) throws IvoryException {
+                    return doExecute(colo);
+                }
 
-            for (String colo : colos) {
-                try {
-                    results.put(colo, doExecute(colo));
-                } catch (IvoryException e) {
-                    results.put(colo, new APIResult(APIResult.Status.FAILED, e.getClass().getName() + "::" + e.getMessage()));
+                @Override
+                public APIResult failed(String colo, Throwable cause) {
+                    return new APIResult(APIResult.Status.FAILED, cause.getClass().getName() + "::" + cause.getMessage());
                 }
-            }
+            });
             APIResult finalResult = consolidateResult(results);
             if (finalResult.getStatus() != APIResult.Status.SUCCEEDED) {
                 throw IvoryWebException.newException(finalResult, Response.Status.BAD_REQUEST);
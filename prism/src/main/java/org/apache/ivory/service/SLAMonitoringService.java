@@ -3,6 +3,7 @@ package org.apache.ivory.service;
 import org.apache.ivory.IvoryException;
 import org.apache.ivory.aspect.GenericAlert;
 import org.apache.ivory.entity.EntityUtil;
+import org.apache.ivory.entity.InstanceCalendar;
 import org.apache.ivory.entity.v0.Entity;
 import org.apache.ivory.entity.v0.Frequency;
 import org.apache.ivory.entity.v0.SchemaHelper;
@@ -155,10 +156,9 @@ public class SLAMonitoringService implements IvoryService, WorkflowEngineActionL
                 Date startTime = EntityUtil.getStartTime(entity, cluster);
                 Frequency frequency = EntityUtil.getFrequency(entity);
                 TimeZone timeZone = EntityUtil.getTimeZone(entity);
-                Date nextStart = EntityUtil.getNextStartTime(startTime, frequency, timeZone, now);
-                if (nextStart.after(windowEndTime)) continue;
                 ConcurrentMap<Date, Date> pendingInstances = pendingJobs.get(key);
-                while (!nextStart.after(windowEndTime)) {
+                for (Date nextStart : new InstanceCalendar(startTime, frequency, timeZone).getInstances(now,
+                        windowEndTime)) {
                     if (pendingInstances == null) {
                         pendingJobs.putIfAbsent(key, new ConcurrentHashMap<Date, Date>());
                         pendingInstances = pendingJobs.get(key);
@@ -169,10 +169,6 @@ public class SLAMonitoringService implements IvoryService, WorkflowEngineActionL
                             latency * 1500));  //1.5 times latency is when it is supposed to have breached
                     LOG.debug("Adding to pending jobs: " + key + " ---> " +
                             SchemaHelper.formatDateUTC(nextStart));
-                    Calendar startCal = Calendar.getInstance(timeZone);
-                    startCal.setTime(nextStart);
-                    startCal.add(frequency.getTimeUnit().getCalendarUnit(), frequency.getFrequency());
-                    nextStart = startCal.getTime();
                 }
             }
         }
@@ -19,6 +19,9 @@ package org.apache.ivory.resource;
 
 import org.apache.ivory.IvoryWebException;
 import org.apache.ivory.entity.v0.EntityType;
+import org.apache.ivory.entity.v0.cluster.Cluster;
+import org.apache.ivory.security.CurrentUser;
+import org.apache.ivory.util.DeploymentUtil;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.Assert;
@@ -28,6 +31,11 @@ import org.testng.annotations.Test;
 
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.JAXBContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -100,6 +108,114 @@ public class EntityManagerTest extends AbstractEntityManager {
         } catch (IvoryWebException ignore) {}
     }
 
+    @Test
+    public void testEntityList() throws Exception {
+        for (int index = 0; index < 5; index++) {
+            Cluster cluster = new Cluster();
+            cluster.setName("list-cluster-" + index);
+            configStore.publish(EntityType.CLUSTER, cluster);
+        }
+
+        EntityList page = (EntityList) getEntityList("cluster", "name", 1, 2, false).getEntity();
+        Assert.assertEquals(page.getElements().length, 2);
+        Assert.assertEquals(page.getElements()[0].name, "list-cluster-1");
+        Assert.assertEquals(page.getElements()[1].name, "list-cluster-2");
+        Assert.assertNull(page.getElements()[0].status);
+        Assert.assertEquals(page.getTotalResults(), Integer.valueOf(5));
+
+        StreamingOutput output = (StreamingOutput) getEntityList("cluster", "name,status", 3, -1, true).getEntity();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        output.write(out);
+        EntityList streamed = (EntityList) JAXBContext.newInstance(EntityList.class).createUnmarshaller().
+                unmarshal(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(streamed.getElements().length, 2);
+        Assert.assertEquals(streamed.getElements()[0].type, "cluster");
+        Assert.assertEquals(streamed.getElements()[1].name, "list-cluster-4");
+        Assert.assertEquals(streamed.getElements()[1].status, "SUBMITTED");
+        Assert.assertEquals(streamed.getTotalResults(), Integer.valueOf(5));
+
+        try {
+            getEntityList("cluster", "name,definition", 0, -1, false);
+            Assert.fail("Invalid field was accepted by the system");
+        } catch (IvoryWebException ignore) {}
+    }
+
+    private String batchCluster(String name, String dir) {
+        return "<cluster colo=\"batch-colo\" name=\"" + name + "\" xmlns=\"uri:ivory:cluster:0.1\"><interfaces>"
+                + "<interface type=\"readonly\" endpoint=\"hftp://localhost:50010\" version=\"0.20.2\"/>"
+                + "<interface type=\"write\" endpoint=\"file:///tmp\" version=\"0.20.2\"/>"
+                + "<interface type=\"execute\" endpoint=\"localhost:8021\" version=\"0.20.2\"/>"
+                + "<interface type=\"workflow\" endpoint=\"http://localhost:11000/oozie/\" version=\"3.1\"/>"
+                + "<interface type=\"messaging\" endpoint=\"tcp://localhost:61616\" version=\"5.1.6\"/>"
+                + "<interface type=\"registry\" endpoint=\"Hcat\" version=\"1\"/></interfaces><locations>"
+                + "<location name=\"staging\" path=\"" + dir + "/staging\"/>"
+                + "<location name=\"temp\" path=\"" + dir + "/temp\"/>"
+                + "<location name=\"working\" path=\"" + dir + "/working\"/></locations></cluster>";
+    }
+
+    private String batchFeed(String name, String cluster) {
+        return "<feed name=\"" + name + "\" xmlns=\"uri:ivory:feed:0.1\"><frequency>hours(1)</frequency>"
+                + "<late-arrival cut-off=\"hours(6)\"/><clusters><cluster name=\"" + cluster + "\" type=\"source\">"
+                + "<validity start=\"2011-11-01T00:00Z\" end=\"2011-12-31T00:00Z\"/>"
+                + "<retention limit=\"hours(48)\" action=\"delete\"/></cluster></clusters><locations>"
+                + "<location type=\"data\" path=\"/projects/ivory/" + name + "/${YEAR}-${MONTH}-${DAY}-${HOUR}\"/>"
+                + "</locations><ACL owner=\"testuser\" group=\"group\" permission=\"0x755\"/>"
+                + "<schema location=\"/schema/clicks\" provider=\"protobuf\"/></feed>";
+    }
+
+    private String batchProcess(String name, String cluster, String feed, String dir) {
+        return "<process name=\"" + name + "\" xmlns=\"uri:ivory:process:0.1\"><clusters><cluster name=\"" + cluster
+                + "\"><validity start=\"2011-11-02T00:00Z\" end=\"2011-12-30T00:00Z\"/></cluster></clusters>"
+                + "<parallel>1</parallel><order>LIFO</order><frequency>hours(1)</frequency><inputs>"
+                + "<input name=\"input\" feed=\"" + feed + "\" start=\"today(0,0)\" end=\"today(0,0)\"/></inputs>"
+                + "<workflow engine=\"oozie\" path=\"" + dir + "\"/></process>";
+    }
+
+    private BatchResult submitBatch(String batch) throws IOException {
+        CurrentUser.authenticate(System.getProperty("user.name"));
+        when(mockHttpServletRequest.getInputStream()).thenReturn(
+                getServletInputStream(new ByteArrayInputStream(batch.getBytes())));
+        return submitBatch(mockHttpServletRequest, DeploymentUtil.getCurrentColo());
+    }
+
+    @Test
+    public void testSubmitBatch() throws Exception {
+        String dir = new File("target/batch").getAbsolutePath();
+        new File(dir).mkdirs();
+
+        // the process is listed before the feed it reads and the feed before
+        // its cluster, none of them being submitted yet
+        String batch = "<batch>" + batchProcess("batch-process", "batch-cluster", "batch-feed", dir)
+                + batchFeed("batch-feed", "batch-cluster") + batchCluster("batch-cluster", dir) + "</batch>";
+        BatchResult result = submitBatch(batch);
+        Assert.assertEquals(result.getStatus(), APIResult.Status.SUCCEEDED, result.toString());
+        Assert.assertEquals(result.getResults().length, 3);
+        Assert.assertEquals(result.getResults()[0].type, "cluster");
+        Assert.assertEquals(result.getResults()[1].type, "feed");
+        Assert.assertEquals(result.getResults()[2].name, "batch-process");
+        Assert.assertNotNull(configStore.get(EntityType.PROCESS, "batch-process"));
+
+        // submitting the same batch again changes nothing
+        result = submitBatch(batch);
+        Assert.assertEquals(result.getStatus(), APIResult.Status.SUCCEEDED, result.toString());
+        Assert.assertEquals(result.getResults()[2].message, "Already submitted");
+
+        // one invalid entity rejects the whole batch
+        batch = "<batch>" + batchCluster("batch-cluster-2", dir) + batchFeed("batch-feed-2", "batch-cluster-2")
+                + batchFeed("batch-feed-3", "missing-cluster") + "</batch>";
+        try {
+            submitBatch(batch);
+            Assert.fail("Invalid batch was accepted by the system");
+        } catch (IvoryWebException e) {
+            result = (BatchResult) e.getResponse().getEntity();
+            Assert.assertEquals(result.getStatus(), APIResult.Status.FAILED);
+            Assert.assertEquals(result.getResults()[1].status, APIResult.Status.FAILED);
+            Assert.assertTrue(result.getResults()[2].message.contains("missing-cluster"), result.toString());
+        }
+        Assert.assertNull(configStore.get(EntityType.CLUSTER, "batch-cluster-2"));
+        Assert.assertNull(configStore.get(EntityType.FEED, "batch-feed-2"));
+    }
+
     /**
      * Converts a InputStream into ServletInputStream
      *
@@ -107,9 +223,10 @@ public class EntityManagerTest extends AbstractEntityManager {
      * @return ServletInputStream
      */
     private ServletInputStream getServletInputStream(String resourceName) {
-        final InputStream stream = this.getClass().getResourceAsStream(
-                resourceName);
+        return getServletInputStream(this.getClass().getResourceAsStream(resourceName));
+    }
 
+    private ServletInputStream getServletInputStream(final InputStream stream) {
         return new ServletInputStream() {
 
             @Override
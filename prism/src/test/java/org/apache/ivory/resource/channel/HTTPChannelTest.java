@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.resource.channel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletInputStream;
+import javax.ws.rs.core.MediaType;
+import javax.xml.bind.JAXBContext;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.ivory.resource.APIResult;
+import org.apache.ivory.resource.InstancesResult;
+import org.apache.ivory.resource.proxy.BufferedRequest;
+import org.apache.ivory.security.CurrentUser;
+import org.apache.ivory.util.RuntimeProperties;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Invokes a channel against a local http server. The overhead of channel
+ * invoke is measured by the benchmark group test, run with -Pbenchmark; the
+ * number of calls measured can be changed with -Divory.channel.benchmark.size.
+ */
+public class HTTPChannelTest {
+
+    private static Logger LOG = Logger.getLogger(HTTPChannelTest.class);
+
+    private static final int SIZE = Integer.getInteger("ivory.channel.benchmark.size", 1000);
+
+    private HttpServer server;
+    private String endpoint;
+    private volatile String lastUri;
+    private volatile String lastBody;
+    private final List<BufferedRequest> requests = new ArrayList<BufferedRequest>();
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        StringWriter xml = new StringWriter();
+        JAXBContext.newInstance(InstancesResult.class).createMarshaller().marshal(
+                new InstancesResult(APIResult.Status.SUCCEEDED, "ok", new InstancesResult.Instance[0]), xml);
+        final byte[] response = xml.toString().getBytes("UTF-8");
+
+        System.setProperty("sun.net.httpserver.nodelay", "true"); // or acks are delayed by ~40ms
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                lastUri = exchange.getRequestURI().toString();
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                IOUtils.copy(exchange.getRequestBody(), body);
+                lastBody = body.toString("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", MediaType.APPLICATION_XML);
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        server.start();
+        endpoint = "http://localhost:" + server.getAddress().getPort();
+        RuntimeProperties.get().setProperty("ivory.bench.endpoint", endpoint);
+        CurrentUser.authenticate("testuser");
+    }
+
+    @AfterClass
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    // removes the files of the bodies spilled to disk
+    @AfterMethod(alwaysRun = true)
+    public void closeRequests() {
+        for (BufferedRequest request : requests) {
+            request.close();
+        }
+        requests.clear();
+    }
+
+    private BufferedRequest request(String body) {
+        final ByteArrayInputStream in = new ByteArrayInputStream(body.getBytes());
+        BufferedRequest request = new BufferedRequest(new NullServletRequest() {
+            @Override
+            public ServletInputStream getInputStream() throws IOException {
+                return new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        return in.read();
+                    }
+                };
+            }
+        });
+        requests.add(request);
+        return request;
+    }
+
+    @Test
+    public void testInvoke() throws Exception {
+        HTTPChannel channel = new HTTPChannel();
+        channel.init("bench", "ProcessInstanceManager");
+
+        InstancesResult result = channel.invoke("getStatus", "process", "sample", "s", "e", "bench");
+        Assert.assertEquals(result.getStatus(), APIResult.Status.SUCCEEDED);
+        Assert.assertEquals(lastUri, "/api/instance/status/process/sample?start=s&end=e&colo=bench&");
+
+        BufferedRequest request = request("a=b");
+        for (int index = 0; index < 2; index++) {
+            result = channel.invoke("killInstance", request, "process", "sample", "s", "e", "bench");
+            Assert.assertEquals(result.getStatus(), APIResult.Status.SUCCEEDED);
+            Assert.assertEquals(lastUri, "/api/instance/kill/process/sample?start=s&end=e&colo=bench&");
+            Assert.assertEquals(lastBody, "a=b");
+        }
+
+        // larger than prism.request.buffer.max.bytes, so sent from a file
+        StringBuilder properties = new StringBuilder();
+        while (properties.length() < 2 * 1024 * 1024) {
+            properties.append("key").append(properties.length()).append("=value\n");
+        }
+        request = request(properties.toString());
+        result = channel.invoke("killInstance", request, "process", "sample", "s", "e", "bench");
+        Assert.assertEquals(result.getStatus(), APIResult.Status.SUCCEEDED);
+        Assert.assertEquals(lastBody, properties.toString());
+    }
+
+    @Test
+    public void testCachedInvocations() throws Exception {
+        HTTPChannel channel = new HTTPChannel();
+        channel.init("bench", "ProcessInstanceManager");
+
+        // each call fills in its own arguments, not those of earlier calls
+        // of the same method
+        channel.invoke("getStatus", "process", "sample", "s", "e", "bench");
+        Assert.assertEquals(lastUri, "/api/instance/status/process/sample?start=s&end=e&colo=bench&");
+        channel.invoke("getStatus", "feed", "clicks", "s2", "e2", "bench");
+        Assert.assertEquals(lastUri, "/api/instance/status/feed/clicks?start=s2&end=e2&colo=bench&");
+        channel.invoke("getStatus", "process", "other", "s3", null, "bench");
+        Assert.assertEquals(lastUri, "/api/instance/status/process/other?start=s3&colo=bench&");
+
+        // nor those of other methods
+        channel.invoke("killInstance", request("a=b"), "feed", "clicks", "s4", "e4", "bench");
+        Assert.assertEquals(lastUri, "/api/instance/kill/feed/clicks?start=s4&end=e4&colo=bench&");
+        Assert.assertEquals(lastBody, "a=b");
+        channel.invoke("getStatus", "process", "sample", "s", "e", "bench");
+        Assert.assertEquals(lastUri, "/api/instance/status/process/sample?start=s&end=e&colo=bench&");
+        Assert.assertEquals(lastBody, "");
+    }
+
+    @Test(groups = "benchmark")
+    public void testInvokeOverhead() throws Exception {
+        HTTPChannel channel = new HTTPChannel();
+        channel.init("bench", "ProcessInstanceManager");
+        String url = endpoint + "/api/instance/status/process/sample?start=s&end=e&colo=bench&";
+        for (int index = 0; index < 100; index++) { // warm up
+            channel.invoke("getStatus", "process", "sample", "s", "e", "bench");
+            Client.create(new DefaultClientConfig()).resource(url).get(InstancesResult.class);
+        }
+
+        long start = System.nanoTime();
+        for (int index = 0; index < SIZE; index++) {
+            Client.create(new DefaultClientConfig()).resource(url).get(InstancesResult.class);
+        }
+        long baseline = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int index = 0; index < SIZE; index++) {
+            channel.invoke("getStatus", "process", "sample", "s", "e", "bench");
+        }
+        long invoke = System.nanoTime() - start;
+
+        LOG.info(SIZE + " calls: channel invoke " + invoke / SIZE / 1000 + " us/call, client per call "
+                + baseline / SIZE / 1000 + " us/call");
+    }
+}
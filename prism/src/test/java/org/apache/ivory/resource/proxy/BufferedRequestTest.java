@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.resource.proxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.servlet.ServletInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.ivory.resource.channel.NullServletRequest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class BufferedRequestTest {
+
+    private NullServletRequest request(final byte[] body) {
+        final ByteArrayInputStream in = new ByteArrayInputStream(body);
+        return new NullServletRequest() {
+            @Override
+            public ServletInputStream getInputStream() throws IOException {
+                return new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        return in.read();
+                    }
+
+                    @Override
+                    public int read(byte[] bytes, int offset, int count) {
+                        return in.read(bytes, offset, count);
+                    }
+                };
+            }
+        };
+    }
+
+    private byte[] body(int size) {
+        byte[] body = new byte[size];
+        for (int index = 0; index < size; index++) {
+            body[index] = (byte) index;
+        }
+        return body;
+    }
+
+    private void assertReads(final BufferedRequest request, byte[] body) throws Exception {
+        // read back and forth
+        InputStream in = request.getInputStream();
+        Assert.assertEquals(IOUtils.toByteArray(in), body);
+        Assert.assertEquals(in.read(), -1);
+        in.reset();
+        Assert.assertEquals(IOUtils.toByteArray(in), body);
+        Assert.assertEquals(IOUtils.toByteArray(request.getBody()), body);
+        Assert.assertEquals(request.getBodyLength(), body.length);
+
+        // threads read the body at the same time
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> reads = new ArrayList<Future<byte[]>>();
+            for (int index = 0; index < 8; index++) {
+                reads.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        InputStream in = request.getInputStream();
+                        in.reset(); // threads of the pool read the body more than once
+                        return IOUtils.toByteArray(in);
+                    }
+                }));
+            }
+            for (Future<byte[]> read : reads) {
+                Assert.assertEquals(read.get(), body);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        byte[] body = body(10000);
+        BufferedRequest request = new BufferedRequest(request(body), 10000);
+        Assert.assertTrue(request.getBody() instanceof ByteArrayInputStream);
+        assertReads(request, body);
+
+        request = new BufferedRequest(request(new byte[0]), 10000);
+        Assert.assertEquals(request.getInputStream().read(), -1);
+    }
+
+    @Test
+    public void testSpilled() throws Exception {
+        byte[] body = body(100000);
+        BufferedRequest request = new BufferedRequest(request(body), 9999);
+        Assert.assertFalse(request.getBody() instanceof ByteArrayInputStream);
+        assertReads(request, body);
+
+        // closing releases the file
+        InputStream in = request.getInputStream();
+        request.close();
+        try {
+            in.read();
+            Assert.fail("Expected the body to be closed");
+        } catch (IOException expected) {
+        }
+        request.close();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ivory.resource.proxy;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.security.CurrentUser;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ColoFanOutTest {
+
+    private static class SleepingCall implements ColoFanOut.ColoCall<String> {
+        @Override
+        public String execute(String colo) throws IvoryException {
+            try {
+                Thread.sleep(colo.equals("slow") ? 5000 : 500);
+            } catch (InterruptedException e) {
+                throw new IvoryException(e);
+            }
+            if (colo.equals("bad")) {
+                throw new IvoryException("bad colo");
+            }
+            return colo + "/" + CurrentUser.getUser();
+        }
+
+        @Override
+        public String failed(String colo, Throwable cause) {
+            return colo + "/" + cause.getClass().getSimpleName();
+        }
+    }
+
+    @Test
+    public void testPartialResults() throws Exception {
+        CurrentUser.authenticate("testuser");
+        Set<String> colos = new LinkedHashSet<String>(Arrays.asList("ua1", "ua2", "bad", "slow"));
+
+        long start = System.currentTimeMillis();
+        Map<String, String> results = ColoFanOut.execute(colos, "process", "sample", new SleepingCall(), 1500);
+        long elapsed = System.currentTimeMillis() - start;
+
+        // colos are called at once and the slow one is given up on
+        Assert.assertTrue(elapsed < 3000, "Took " + elapsed + " ms");
+        Assert.assertEquals(results.keySet().toString(), "[ua1, ua2, bad, slow]");
+        Assert.assertEquals(results.get("ua1"), "ua1/testuser");
+        Assert.assertEquals(results.get("ua2"), "ua2/testuser");
+        Assert.assertEquals(results.get("bad"), "bad/IvoryException");
+        Assert.assertEquals(results.get("slow"), "slow/TimeoutException");
+
+        Map<String, ColoFanOut.ColoLatency> latencies = ColoFanOut.getLatencies();
+        Assert.assertEquals(latencies.get("ua1").getCalls(), 1);
+        Assert.assertTrue(latencies.get("ua1").getMaxMillis() >= 500);
+        Assert.assertEquals(latencies.get("bad").getFailures(), 1);
+        Assert.assertEquals(latencies.get("slow").getTimeouts(), 1);
+    }
+
+    @Test
+    public void testCallsActAsCaller() throws Exception {
+        Set<String> colos = new LinkedHashSet<String>(Arrays.asList("uk1", "uk2"));
+        CurrentUser.authenticate("firstuser");
+        Assert.assertEquals(ColoFanOut.execute(colos, "process", "sample", new SleepingCall()).get("uk2"),
+                "uk2/firstuser");
+
+        // the pooled threads don't keep the previous caller's identity
+        CurrentUser.setSubject(null);
+        Map<String, String> results = ColoFanOut.execute(colos, "process", "sample", new SleepingCall() {
+            @Override
+            public String execute(String colo) throws IvoryException {
+                return colo + "/" + (CurrentUser.getSubject() == null ? "nobody" : CurrentUser.getUser());
+            }
+        });
+        Assert.assertEquals(results.get("uk1"), "uk1/nobody");
+        Assert.assertEquals(results.get("uk2"), "uk2/nobody");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testUncheckedFailure() {
+        Set<String> colos = new LinkedHashSet<String>(Arrays.asList("ua1", "ua2"));
+        ColoFanOut.execute(colos, "process", "sample", new SleepingCall() {
+            @Override
+            public String execute(String colo) throws IvoryException {
+                throw new IllegalStateException(colo);
+            }
+        });
+    }
+}
@@ -23,8 +23,11 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.GnuParser;
@@ -46,6 +49,10 @@ public class LateDataHandler extends Configured implements Tool {
 
 	static PrintStream stream = System.out;
 
+	private static final String FINGERPRINT_SEP = ":";
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
 	public static void main(String[] args) throws Exception {
 		Configuration conf = new Configuration();
 		Path confPath = new Path("file:///"
@@ -81,7 +88,7 @@ public class LateDataHandler extends Configured implements Tool {
 		CommandLine command = getCommand(args);
 
 		Path file = new Path(command.getOptionValue("out"));
-		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		Map<String, String> map = new LinkedHashMap<String, String>();
 		String pathStr = getOptionValue(command, "paths");
 		if(pathStr == null)
 		    return 0;
@@ -90,17 +97,12 @@ public class LateDataHandler extends Configured implements Tool {
 		String[] inputFeeds = getOptionValue(command, "ivoryInputFeeds").split(
 				"#");
 		for (int index = 0; index < pathGroups.length; index++) {
-			long usage = 0;
-			for (String pathElement : pathGroups[index].split(",")) {
-				Path inPath = new Path(pathElement);
-				usage += usage(inPath, getConf());
-			}
-			map.put(inputFeeds[index], usage);
+			map.put(inputFeeds[index], fingerprint(pathGroups[index], getConf()));
 		}
 		LOG.info("MAP data: " + map);
 
 		OutputStream out = file.getFileSystem(getConf()).create(file);
-		for (Map.Entry<String, Long> entry : map.entrySet()) {
+		for (Map.Entry<String, String> entry : map.entrySet()) {
 			out.write((entry.getKey() + "=" + entry.getValue() + "\n")
 					.getBytes());
 		}
@@ -115,31 +117,41 @@ public class LateDataHandler extends Configured implements Tool {
 	    return value;
 	}
 	
-	public String detectChanges(Path file, Map<String, Long> map, Configuration conf)
-			throws Exception {
+	/**
+	 * @param feedPaths
+	 *            comma separated paths of each input feed
+	 * @return comma separated input feeds that changed since they were
+	 *         recorded in the given file
+	 */
+	public String detectChanges(Path file, Map<String, String> feedPaths,
+			Configuration conf) throws Exception {
 
 		StringBuffer buffer = new StringBuffer();
 		BufferedReader in = new BufferedReader(new InputStreamReader(file
 				.getFileSystem(conf).open(file)));
 		String line;
 		try {
-			Map<String, Long> recorded = new LinkedHashMap<String, Long>();
+			Map<String, String> recorded = new LinkedHashMap<String, String>();
 			while ((line = in.readLine()) != null) {
 				if (line.isEmpty())
 					continue;
 				int index = line.indexOf('=');
-				String key = line.substring(0, index);
-				long size = Long.parseLong(line.substring(index + 1));
-				recorded.put(key, size);
+				recorded.put(line.substring(0, index), line.substring(index + 1));
 			}
 
-			for (Map.Entry<String, Long> entry : map.entrySet()) {
-				if (recorded.get(entry.getKey()) == null) {
+			for (Map.Entry<String, String> entry : feedPaths.entrySet()) {
+				String recordedValue = recorded.get(entry.getKey());
+				if (recordedValue == null) {
 					LOG.info("No matching key " + entry.getKey());
 					continue;
 				}
-				if (!recorded.get(entry.getKey()).equals(entry.getValue())) {
-					LOG.info("Recorded size:"+recorded.get(entry.getKey())+"  is different from new size" + entry.getValue());
+				// sizes were recorded by workflows started before fingerprints
+				String value = recordedValue.indexOf(FINGERPRINT_SEP) < 0 ? Long
+						.toString(usage(entry.getValue(), conf)) : fingerprint(
+						entry.getValue(), conf);
+				if (!recordedValue.equals(value)) {
+					LOG.info("Recorded fingerprint:" + recordedValue
+							+ "  is different from new fingerprint " + value);
 					buffer.append(entry.getKey()).append(',');
 				}
 			}
@@ -155,6 +167,14 @@ public class LateDataHandler extends Configured implements Tool {
 
 	}
 
+	private long usage(String paths, Configuration conf) throws IOException {
+		long usage = 0;
+		for (String pathElement : paths.split(",")) {
+			usage += usage(new Path(pathElement), conf);
+		}
+		return usage;
+	}
+
 	public long usage(Path inPath, Configuration conf) throws IOException {
 		FileSystem fs = inPath.getFileSystem(conf);
 		FileStatus status[] = fs.globStatus(inPath);
@@ -167,4 +187,69 @@ public class LateDataHandler extends Configured implements Tool {
 		}
 		return totalSize;
 	}
+
+	/**
+	 * Fingerprint of the files and directories the given comma separated
+	 * paths match, and of the entries directly under matched directories:
+	 * their number, total length, latest modification time and a hash of
+	 * their names, lengths and modification times. Unlike the content summary
+	 * of each path, this takes no walk of the trees under the paths, and
+	 * catches files rewritten with the same size.
+	 */
+	public String fingerprint(String paths, Configuration conf)
+			throws IOException {
+		Map<String, FileStatus> entries = new TreeMap<String, FileStatus>();
+		Map<FileSystem, List<Path>> dirs = new LinkedHashMap<FileSystem, List<Path>>();
+		for (String pathElement : paths.split(",")) {
+			Path inPath = new Path(pathElement);
+			FileSystem fs = inPath.getFileSystem(conf);
+			FileStatus[] matches = fs.globStatus(inPath);
+			if (matches == null) {
+				continue;
+			}
+			for (FileStatus match : matches) {
+				entries.put(match.getPath().toString(), match);
+				if (match.isDir()) {
+					if (!dirs.containsKey(fs)) {
+						dirs.put(fs, new ArrayList<Path>());
+					}
+					dirs.get(fs).add(match.getPath());
+				}
+			}
+		}
+		// the directories of a feed are listed in one call per file system
+		for (Map.Entry<FileSystem, List<Path>> entry : dirs.entrySet()) {
+			List<Path> dirPaths = entry.getValue();
+			FileStatus[] children = entry.getKey().listStatus(
+					dirPaths.toArray(new Path[dirPaths.size()]));
+			for (FileStatus child : children) {
+				entries.put(child.getPath().toString(), child);
+			}
+		}
+
+		long length = 0;
+		long modificationTime = 0;
+		long hash = FNV_OFFSET;
+		for (Map.Entry<String, FileStatus> entry : entries.entrySet()) {
+			FileStatus status = entry.getValue();
+			if (!status.isDir()) {
+				length += status.getLen();
+			}
+			modificationTime = Math.max(modificationTime,
+					status.getModificationTime());
+			hash = hash(hash, entry.getKey() + FINGERPRINT_SEP + status.getLen()
+					+ FINGERPRINT_SEP + status.getModificationTime());
+		}
+		return entries.size() + FINGERPRINT_SEP + length + FINGERPRINT_SEP
+				+ modificationTime + FINGERPRINT_SEP + Long.toHexString(hash);
+	}
+
+	// 64 bit FNV-1a
+	private static long hash(long hash, String value) {
+		for (int index = 0; index < value.length(); index++) {
+			hash ^= value.charAt(index);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
 }
@@ -80,18 +80,10 @@ public class RerunEvent implements Delayed {
 
 	@Override
 	public int compareTo(Delayed o) {
-		int ret = 0;
 		RerunEvent event = (RerunEvent) o;
-
-		if (this.delayInMilliSec < event.delayInMilliSec)
-			ret = -1;
-		else if (this.delayInMilliSec > event.delayInMilliSec)
-			ret = 1;
-		else if (this.msgInsertTime == event.msgInsertTime)
-			ret = 0;
-
-		return ret;
-
+		long dueTime = msgInsertTime + delayInMilliSec;
+		long otherDueTime = event.msgInsertTime + event.delayInMilliSec;
+		return dueTime < otherDueTime ? -1 : (dueTime == otherDueTime ? 0 : 1);
 	}
 
 	@Override
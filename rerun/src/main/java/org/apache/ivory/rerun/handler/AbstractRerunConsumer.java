@@ -17,6 +17,12 @@
  */
 package org.apache.ivory.rerun.handler;
 
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.ivory.IvoryException;
 import org.apache.ivory.aspect.GenericAlert;
 import org.apache.ivory.entity.v0.Frequency;
@@ -24,8 +30,18 @@ import org.apache.ivory.rerun.event.RerunEvent;
 import org.apache.ivory.rerun.policy.AbstractRerunPolicy;
 import org.apache.ivory.rerun.policy.ExpBackoffPolicy;
 import org.apache.ivory.rerun.queue.DelayedQueue;
+import org.apache.ivory.util.StartupProperties;
 import org.apache.log4j.Logger;
 
+/**
+ * Takes events off the handler's queue as they are due and hands them to a
+ * pool of rerun.consumer.threads threads. Events of an entity instance are
+ * always handled by the same thread, in the order they were due, and each
+ * thread has at most rerun.consumer.shard.capacity events waiting; beyond
+ * that, events are left on the queue until it catches up. Events are
+ * acknowledged to the queue once handled, so that a queue that keeps them
+ * queues those taken but not handled again on restart.
+ */
 public abstract class AbstractRerunConsumer<T extends RerunEvent, M extends AbstractRerunHandler<T, DelayedQueue<T>>>
 		implements Runnable {
 
@@ -34,12 +50,35 @@ public abstract class AbstractRerunConsumer<T extends RerunEvent, M extends Abst
 
 	protected M handler;
 
+	private final BlockingQueue<T>[] shards;
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicLong handled = new AtomicLong();
+	private volatile long lagMillis;
+	private volatile long maxLagMillis;
+
 	public AbstractRerunConsumer(M handler) {
+		this(handler, getProperty("rerun.consumer.threads", 4), getProperty(
+				"rerun.consumer.shard.capacity", 100));
+	}
+
+	@SuppressWarnings("unchecked")
+	public AbstractRerunConsumer(M handler, int threads, int shardCapacity) {
 		this.handler = handler;
+		this.shards = new BlockingQueue[Math.max(1, threads)];
+		for (int index = 0; index < shards.length; index++) {
+			shards[index] = new ArrayBlockingQueue<T>(Math.max(1, shardCapacity));
+		}
+	}
+
+	private static int getProperty(String name, int defaultValue) {
+		Properties props = StartupProperties.get();
+		return Integer.parseInt(props.getProperty(name,
+				Integer.toString(defaultValue)));
 	}
 
 	@Override
 	public void run() {
+		startShards(Thread.currentThread().getName());
 		int attempt = 1;
 		AbstractRerunPolicy policy = new ExpBackoffPolicy();
 		Frequency frequency = new Frequency("minutes(1)");
@@ -58,10 +97,14 @@ public abstract class AbstractRerunConsumer<T extends RerunEvent, M extends Abst
 					attempt++;
 					continue;
 				}
-				String jobStatus = handler.getWfEngine().getWorkflowStatus(
-						message.getClusterName(), message.getWfId());
-				handleRerun(message.getClusterName(), jobStatus, message);
-
+				pending.incrementAndGet();
+				try {
+					shards[getShard(message)].put(message);
+				} catch (InterruptedException e) {
+					// not acknowledged, so queued again on restart
+					pending.decrementAndGet();
+					throw e;
+				}
 			} catch (Throwable e) {
 				LOG.error("Error in rerun consumer:", e);
 			}
@@ -69,5 +112,85 @@ public abstract class AbstractRerunConsumer<T extends RerunEvent, M extends Abst
 
 	}
 
+	private void startShards(String name) {
+		for (int index = 0; index < shards.length; index++) {
+			final BlockingQueue<T> shard = shards[index];
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (true) {
+						try {
+							T message = shard.take();
+							try {
+								recordLag(message);
+								consume(message);
+							} finally {
+								try {
+									handler.ackInQueue(message);
+								} finally {
+									pending.decrementAndGet();
+								}
+							}
+						} catch (Throwable e) {
+							LOG.error("Error in rerun consumer:", e);
+						}
+					}
+				}
+			});
+			thread.setName(name + "-" + index);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private int getShard(T message) {
+		String key = message.getEntityType() + "/" + message.getEntityName()
+				+ "/" + message.getInstance();
+		return (key.hashCode() & Integer.MAX_VALUE) % shards.length;
+	}
+
+	private void recordLag(T message) {
+		long lag = System.currentTimeMillis() - message.getMsgInsertTime()
+				- message.getDelayInMilliSec();
+		lagMillis = lag;
+		if (lag > maxLagMillis) {
+			maxLagMillis = lag;
+		}
+		handled.incrementAndGet();
+	}
+
+	protected void consume(T message) throws IvoryException {
+		String jobStatus = handler.getWfEngine().getWorkflowStatus(
+				message.getClusterName(), message.getWfId());
+		handleRerun(message.getClusterName(), jobStatus, message);
+	}
+
 	protected abstract void handleRerun(String cluster, String jobStatus, T message);
+
+	public int getThreads() {
+		return shards.length;
+	}
+
+	/**
+	 * @return number of events taken off the queue that are waiting for or
+	 *         being handled by a consumer thread
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+
+	public long getHandled() {
+		return handled.get();
+	}
+
+	/**
+	 * @return how long after it was due the last event started to be handled
+	 */
+	public long getLagMillis() {
+		return lagMillis;
+	}
+
+	public long getMaxLagMillis() {
+		return maxLagMillis;
+	}
 }
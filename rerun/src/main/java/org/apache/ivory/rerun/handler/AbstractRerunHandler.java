@@ -32,6 +32,7 @@ public abstract class AbstractRerunHandler<T extends RerunEvent, M extends Delay
 	protected static final Logger LOG = Logger
 			.getLogger(LateRerunHandler.class);
 	protected M delayQueue;
+	protected AbstractRerunConsumer<T, ?> consumer;
 	private AbstractWorkflowEngine wfEngine;
 
 	public void init(M delayQueue) throws IvoryException {
@@ -55,11 +56,27 @@ public abstract class AbstractRerunHandler<T extends RerunEvent, M extends Delay
 	public T takeFromQueue() throws IvoryException {
 		return delayQueue.take();
 	}
+
+	public void ackInQueue(T event) throws IvoryException {
+		delayQueue.ack(event);
+	}
 	
 	public void reconnect() throws IvoryException {
 		delayQueue.reconnect();
 	}
 
+	/**
+	 * @return number of events waiting on the queue, or -1 if the queue
+	 *         doesn't tell
+	 */
+	public int getQueueSize() {
+		return delayQueue == null ? 0 : delayQueue.size();
+	}
+
+	public AbstractRerunConsumer<T, ?> getConsumer() {
+		return consumer;
+	}
+
 	public Entity getEntity(String entityType, String entityName)
 			throws IvoryException {
 		return EntityUtil.getEntity(entityType, entityName);
@@ -22,6 +22,7 @@ import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
@@ -95,19 +96,15 @@ public class LateRerunConsumer<T extends LateRerunHandler<DelayedQueue<LaterunEv
 
 	public String detectLate(LaterunEvent message) throws Exception {
 		LateDataHandler late = new LateDataHandler();
-		String ivoryInputFeeds = handler.getWfEngine().getWorkflowProperty(
-				message.getClusterName(), message.getWfId(), "ivoryInputFeeds");
-		String logDir = handler.getWfEngine().getWorkflowProperty(
-				message.getClusterName(), message.getWfId(), "logDir");
-		String ivoryInPaths = handler.getWfEngine().getWorkflowProperty(
-				message.getClusterName(), message.getWfId(), "ivoryInPaths");
-		String nominalTime = handler.getWfEngine().getWorkflowProperty(
-				message.getClusterName(), message.getWfId(), "nominalTime");
-		String srcClusterName = handler.getWfEngine().getWorkflowProperty(
-				message.getClusterName(), message.getWfId(), "srcClusterName");
+		Properties properties = handler.getWfEngine().getWorkflowProperties(
+				message.getClusterName(), message.getWfId());
+		String ivoryInputFeeds = properties.getProperty("ivoryInputFeeds");
+		String logDir = properties.getProperty("logDir");
+		String ivoryInPaths = properties.getProperty("ivoryInPaths");
+		String nominalTime = properties.getProperty("nominalTime");
+		String srcClusterName = properties.getProperty("srcClusterName");
 
-		Configuration conf = handler.getConfiguration(message.getClusterName(),
-				message.getWfId());
+		Configuration conf = handler.getConfiguration(properties);
 		Path lateLogPath = handler.getLateLogPath(logDir, nominalTime,
 				srcClusterName);
 		FileSystem fs = FileSystem.get(conf);
@@ -115,7 +112,7 @@ public class LateRerunConsumer<T extends LateRerunHandler<DelayedQueue<LaterunEv
 			LOG.warn("Late log file:" + lateLogPath + " not found:");
 			return "";
 		}
-		Map<String, Long> feedSizes = new LinkedHashMap<String, Long>();
+		Map<String, String> feedPaths = new LinkedHashMap<String, String>();
 		String[] pathGroups = ivoryInPaths.split("#");
 		String[] inputFeeds = ivoryInputFeeds.split("#");
 		Entity entity = EntityUtil.getEntity(message.getEntityType(),
@@ -129,12 +126,7 @@ public class LateRerunConsumer<T extends LateRerunHandler<DelayedQueue<LaterunEv
 			}
 			for (int index = 0; index < pathGroups.length; index++) {
 				if (lateFeed.contains(inputFeeds[index])) {
-					long usage = 0;
-					for (String pathElement : pathGroups[index].split(",")) {
-						Path inPath = new Path(pathElement);
-						usage += late.usage(inPath, conf);
-					}
-					feedSizes.put(inputFeeds[index], usage);
+					feedPaths.put(inputFeeds[index], pathGroups[index]);
 				}
 			}
 		} else {
@@ -143,7 +135,7 @@ public class LateRerunConsumer<T extends LateRerunHandler<DelayedQueue<LaterunEv
 					+ ")");
 		}
 
-		return late.detectChanges(lateLogPath, feedSizes, conf);
+		return late.detectChanges(lateLogPath, feedPaths, conf);
 	}
 
 }
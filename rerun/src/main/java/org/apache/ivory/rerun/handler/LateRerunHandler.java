@@ -18,6 +18,7 @@
 package org.apache.ivory.rerun.handler;
 
 import java.util.Date;
+import java.util.Properties;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
@@ -70,15 +71,14 @@ public class LateRerunHandler<M extends DelayedQueue<LaterunEvent>> extends
 			Long wait = getEventDelay(entity, nominalTime);
 			if (wait == -1) {
 				LOG.info("Late rerun expired for entity: "+entityType+"("+entityName+")");
-				String logDir = this.getWfEngine().getWorkflowProperty(cluster,
-						wfId, "logDir");
-				String srcClusterName = this.getWfEngine().getWorkflowProperty(
-						cluster, wfId, "srcClusterName");
+				Properties properties = this.getWfEngine()
+						.getWorkflowProperties(cluster, wfId);
+				String logDir = properties.getProperty("logDir");
+				String srcClusterName = properties.getProperty("srcClusterName");
 				Path lateLogPath = this.getLateLogPath(logDir,
 						EntityUtil.UTCtoURIDate(nominalTime), srcClusterName);
 				LOG.info("Going to delete path:" +lateLogPath);
-				FileSystem fs = FileSystem.get(getConfiguration(cluster,
-						wfId));
+				FileSystem fs = FileSystem.get(getConfiguration(properties));
 				if (fs.exists(lateLogPath)) {
 					boolean deleted = fs.delete(lateLogPath, true);
 					if (deleted == true) {
@@ -197,7 +197,8 @@ public class LateRerunHandler<M extends DelayedQueue<LaterunEvent>> extends
 	@Override
 	public void init(M delayQueue) throws IvoryException {
 		super.init(delayQueue);
-		Thread daemon = new Thread(new LateRerunConsumer(this));
+		consumer = new LateRerunConsumer(this);
+		Thread daemon = new Thread(consumer);
 		daemon.setName("LaterunHandler");
 		daemon.setDaemon(true);
 		daemon.start();
@@ -215,11 +216,14 @@ public class LateRerunHandler<M extends DelayedQueue<LaterunEvent>> extends
 	
 	public Configuration getConfiguration(String cluster, String wfId)
 			throws IvoryException {
+		return getConfiguration(this.getWfEngine().getWorkflowProperties(
+				cluster, wfId));
+	}
+
+	public Configuration getConfiguration(Properties workflowProperties) {
 		Configuration conf = new Configuration();
-		conf.set(
-				CommonConfigurationKeys.FS_DEFAULT_NAME_KEY,
-				this.getWfEngine().getWorkflowProperty(cluster, wfId,
-						AbstractWorkflowEngine.NAME_NODE));
+		conf.set(CommonConfigurationKeys.FS_DEFAULT_NAME_KEY,
+				workflowProperties.getProperty(AbstractWorkflowEngine.NAME_NODE));
 		return conf;
 	}
 
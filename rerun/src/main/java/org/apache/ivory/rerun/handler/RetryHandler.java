@@ -83,7 +83,8 @@ public class RetryHandler<M extends DelayedQueue<RetryEvent>> extends
 	@Override
 	public void init(M queue) throws IvoryException {
 		super.init(queue);
-		Thread daemon = new Thread(new RetryConsumer(this));
+		consumer = new RetryConsumer(this);
+		Thread daemon = new Thread(consumer);
 		daemon.setName("RetryHandler");
 		daemon.setDaemon(true);
 		daemon.start();
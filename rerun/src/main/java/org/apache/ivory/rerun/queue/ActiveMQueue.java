@@ -35,6 +35,14 @@ import org.apache.ivory.IvoryException;
 import org.apache.ivory.rerun.event.RerunEvent;
 import org.apache.ivory.rerun.event.RerunEventFactory;
 
+/**
+ * Delayed queue on an activemq destination, using the broker's scheduler.
+ * <p/>
+ * Messages are acknowledged by the session as they are received, as the
+ * session may not be shared with the threads that handle them, so events
+ * taken but not yet handled are lost if the server stops. There are at most
+ * rerun.consumer.threads * (rerun.consumer.shard.capacity + 1) of those.
+ */
 public class ActiveMQueue<T extends RerunEvent> extends DelayedQueue<T> {
 
 	private ActiveMQConnection connection;
@@ -28,6 +28,15 @@ public abstract class  DelayedQueue<T extends RerunEvent> {
 	public abstract boolean offer(T event) throws IvoryException;
 
 	public abstract T take() throws IvoryException;
+
+	/**
+	 * Acknowledges an event taken off the queue once it has been handled.
+	 * Events taken but not acknowledged are queued again on restart by
+	 * queues that keep them; queues that can't hold an event back consider it
+	 * acknowledged as it is taken.
+	 */
+	public void ack(T event) throws IvoryException {
+	}
 	
 	public abstract void populateQueue(List<T> events);
 	
@@ -35,4 +44,11 @@ public abstract class  DelayedQueue<T extends RerunEvent> {
 	
 	public abstract void reconnect() throws IvoryException;
 
+	/**
+	 * @return number of events waiting, or -1 if not known
+	 */
+	public int size() {
+		return -1;
+	}
+
 }
@@ -24,8 +24,11 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.DelayQueue;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ivory.IvoryException;
 import org.apache.ivory.aspect.GenericAlert;
@@ -33,30 +36,70 @@ import org.apache.ivory.rerun.event.RerunEvent;
 import org.apache.ivory.rerun.event.RerunEventFactory;
 import org.apache.log4j.Logger;
 
+/**
+ * Queue of rerun events held in memory, each offer also being written to its
+ * own file so that it survives a restart. The file of an event is deleted
+ * when the event is acknowledged, once handled, so an event offered again
+ * while being handled keeps the file of its new offer.
+ */
 public class InMemoryQueue<T extends RerunEvent> extends DelayedQueue<T> {
 	public static final Logger LOG = Logger.getLogger(DelayedQueue.class);
-	protected DelayQueue<T> QUEUE = new DelayQueue<T>();
+
+	private static final class Offer<T> {
+		private final T event;
+		private final File file;
+
+		private Offer(T event, File file) {
+			this.event = event;
+			this.file = file;
+		}
+	}
+
+	protected TimingWheel<Offer<T>> QUEUE = new TimingWheel<Offer<T>>();
 	private File serializeFilePath;
+	private final AtomicLong fileSequence = new AtomicLong();
+	// files of the events taken and not yet acknowledged, in the order taken
+	private final Map<T, LinkedList<File>> taken = new IdentityHashMap<T, LinkedList<File>>();
 
 	@Override
 	public boolean offer(T event) {
-		boolean flag = QUEUE.offer(event);
-		beforeRetry(event);
+		File retryFile = beforeRetry(event);
+		QUEUE.add(new Offer<T>(event, retryFile), event.getMsgInsertTime() + event.getDelayInMilliSec());
 		LOG.debug("Enqueued Message:" + event.toString());
-		return flag;
+		return true;
 	}
 
 	@Override
 	public T take() throws IvoryException {
-		T event;
+		Offer<T> offer;
 		try {
-			event = QUEUE.take();
-			LOG.debug("Dequeued Message:" + event.toString());
-			afterRetry(event);
+			offer = QUEUE.take();
+			LOG.debug("Dequeued Message:" + offer.event.toString());
 		} catch (InterruptedException e) {
 			throw new IvoryException(e);
 		}
-		return event;
+		synchronized (taken) {
+			LinkedList<File> files = taken.get(offer.event);
+			if (files == null) {
+				files = new LinkedList<File>();
+				taken.put(offer.event, files);
+			}
+			files.add(offer.file);
+		}
+		return offer.event;
+	}
+
+	@Override
+	public void ack(T event) {
+		File retryFile;
+		synchronized (taken) {
+			LinkedList<File> files = taken.get(event);
+			retryFile = files == null ? null : files.removeFirst();
+			if (files != null && files.isEmpty()) {
+				taken.remove(event);
+			}
+		}
+		afterRetry(event, retryFile);
 	}
 
 	public InMemoryQueue(File serializeFilePath) {
@@ -65,24 +108,26 @@ public class InMemoryQueue<T extends RerunEvent> extends DelayedQueue<T> {
 
 	public void populateQueue(List<T> events) {
 		for (T event : events) {
-			QUEUE.offer(event);
+			offer(event);
 		}
-
 	}
 
 	@Override
 	public void init() {
-		List<T> events = bootstrap();
-		populateQueue(events);
-
+		bootstrap();
 	}
 
 	@Override
 	public void reconnect() throws IvoryException {
 		//Do Nothing
 	}
+
+	@Override
+	public int size() {
+		return QUEUE.size();
+	}
 	
-	private void beforeRetry(T event) {
+	private File beforeRetry(T event) {
 		File retryFile = getRetryFile(serializeFilePath, event);
 		try {
 			BufferedWriter out = new BufferedWriter(new FileWriter(retryFile,
@@ -96,17 +141,19 @@ public class InMemoryQueue<T extends RerunEvent> extends DelayedQueue<T> {
 							+ event.getEntityName() + ":"
 							+ event.getInstance(), e);
 		}
+		return retryFile;
 	}
 
+	// TYPE-entityName-instance.sequence, the type leading for bootstrap
 	private File getRetryFile(File basePath, T event) {
 		return new File(basePath, (event.getType().name()) + "-"
 				+ event.getEntityName() + "-"
-				+ event.getInstance().replaceAll(":", "-"));
+				+ event.getInstance().replaceAll(":", "-") + "."
+				+ fileSequence.incrementAndGet());
 	}
 
-	private void afterRetry(T event) {
-		File retryFile = getRetryFile(serializeFilePath, event);
-		if (!retryFile.exists()) {
+	private void afterRetry(T event, File retryFile) {
+		if (retryFile == null || !retryFile.exists()) {
 			LOG.warn("Rerun file deleted or renamed for process-instance: "
 					+ event.getEntityName() + ":" + event.getInstance());
 			GenericAlert.alertRetryFailed(event.getEntityType(),
@@ -121,26 +168,48 @@ public class InMemoryQueue<T extends RerunEvent> extends DelayedQueue<T> {
 		}
 	}
 
-	private List<T> bootstrap() {
-		List<T> rerunEvents = new ArrayList<T>();
-		for (File rerunFile : this.serializeFilePath.listFiles()) {
+	// files may hold several events, as written before each offer had its
+	// own file: the events are offered again, each to a file of its own,
+	// before the file read is deleted
+	private void bootstrap() {
+		File[] rerunFiles = this.serializeFilePath.listFiles();
+		for (File rerunFile : rerunFiles) {
+			fileSequence.set(Math.max(fileSequence.get(), sequenceOf(rerunFile)));
+		}
+		for (File rerunFile : rerunFiles) {
+			List<T> rerunEvents = new ArrayList<T>();
 			try {
 				BufferedReader reader = new BufferedReader(new FileReader(
 						rerunFile));
-				String line;
-				while ((line = reader.readLine()) != null) {
-					line.split("");
-					T event = new RerunEventFactory<T>().getRerunEvent(
-							rerunFile.getName(), line);
-					rerunEvents.add(event);
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						T event = new RerunEventFactory<T>().getRerunEvent(
+								rerunFile.getName(), line);
+						rerunEvents.add(event);
+					}
+				} finally {
+					reader.close();
 				}
 			} catch (Exception e) {
 				LOG.warn(
 						"Not able to read rerun entry "
 								+ rerunFile.getAbsolutePath(), e);
+				continue;
+			}
+			populateQueue(rerunEvents);
+			if (!rerunFile.delete()) {
+				LOG.warn("Unable to remove rerun file " + rerunFile);
 			}
 		}
-		return rerunEvents;
+	}
 
+	private long sequenceOf(File rerunFile) {
+		String name = rerunFile.getName();
+		try {
+			return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
 	}
 }
@@ -0,0 +1,459 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ivory.rerun.queue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.rerun.event.RerunEvent;
+import org.apache.ivory.rerun.event.RerunEvent.RerunType;
+import org.apache.ivory.rerun.event.RerunEventFactory;
+
+/**
+ * Delayed queue that records its events in a log of segment files, instead
+ * of a file per event.
+ * <p/>
+ * Each offer appends a record of the event to the active segment and syncs
+ * it to disk before it is queued. Each ack of an event taken appends an
+ * acknowledgement, which is synced along with the next offer, or once
+ * ackCheckpoint of them are pending; events taken but not acknowledged, or
+ * acknowledged since the last checkpoint, are queued again after a crash.
+ * The active segment is rolled once it grows past segmentBytes.
+ * Segments whose events are all taken are deleted, oldest first; once there
+ * are more than maxSegments, the events left in the oldest one are written
+ * to the active segment again so that it can be deleted too. On init, the
+ * segments are read in order and the events not acknowledged are queued
+ * again.
+ * Files left by {@link InMemoryQueue} are moved into the log.
+ */
+public class SegmentedLogQueue<T extends RerunEvent> extends DelayedQueue<T> {
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String OFFER = "O";
+	private static final String ACK = "A";
+	private static final String UTF8 = "UTF-8";
+
+	private final File basePath;
+	private final long segmentBytes;
+	private final int ackCheckpoint;
+	private final int maxSegments;
+
+	private final TimingWheel<Entry<T>> queue = new TimingWheel<Entry<T>>();
+
+	// events not acknowledged yet, by id
+	private final Map<Long, Entry<T>> live = new HashMap<Long, Entry<T>>();
+	// events taken but not acknowledged yet, in the order taken; consumers
+	// may offer an event they handle again, so it can be taken again before
+	// it is acknowledged
+	private final Map<T, LinkedList<Entry<T>>> taken = new IdentityHashMap<T, LinkedList<Entry<T>>>();
+	// number of events not acknowledged yet recorded in each segment, oldest
+	// first
+	private final TreeMap<Long, Integer> segments = new TreeMap<Long, Integer>();
+
+	private long nextId;
+	private long activeSegment;
+	private FileOutputStream out;
+	private Writer writer;
+	private long activeBytes;
+	private int pendingAcks;
+	private boolean closed;
+
+	private static final class Entry<T extends RerunEvent> {
+		private final long id;
+		private final T event;
+		private long segment;
+
+		private Entry(long id, T event) {
+			this.id = id;
+			this.event = event;
+		}
+
+		private long getDueTime() {
+			return event.getMsgInsertTime() + event.getDelayInMilliSec();
+		}
+	}
+
+	public SegmentedLogQueue(File basePath, long segmentBytes,
+			int ackCheckpoint, int maxSegments) {
+		this.basePath = basePath;
+		this.segmentBytes = segmentBytes;
+		this.ackCheckpoint = ackCheckpoint;
+		this.maxSegments = Math.max(2, maxSegments);
+	}
+
+	@Override
+	public boolean offer(T event) throws IvoryException {
+		Entry<T> entry;
+		synchronized (this) {
+			if (closed) {
+				throw new IvoryException("Unable to record event " + event
+						+ ", delayed queue @" + basePath + " is closed");
+			}
+			entry = new Entry<T>(nextId++, event);
+			try {
+				append(offerRecord(entry), true);
+			} catch (IOException e) {
+				throw new IvoryException("Unable to record event " + event
+						+ " @" + basePath, e);
+			}
+			addLive(entry);
+		}
+		queue.add(entry, entry.getDueTime());
+		LOG.debug("Enqueued Message:" + event.toString());
+		return true;
+	}
+
+	@Override
+	public T take() throws IvoryException {
+		Entry<T> entry;
+		try {
+			entry = queue.take();
+		} catch (InterruptedException e) {
+			throw new IvoryException(e);
+		}
+		LOG.debug("Dequeued Message:" + entry.event.toString());
+		synchronized (this) {
+			LinkedList<Entry<T>> entries = taken.get(entry.event);
+			if (entries == null) {
+				entries = new LinkedList<Entry<T>>();
+				taken.put(entry.event, entries);
+			}
+			entries.add(entry);
+		}
+		return entry.event;
+	}
+
+	/**
+	 * Acknowledges the earliest take of the event that isn't acknowledged
+	 * yet.
+	 */
+	@Override
+	public synchronized void ack(T event) {
+		if (closed) {
+			LOG.info("Delayed queue @" + basePath + " is closed, event "
+					+ event + " may be queued again on restart");
+			return;
+		}
+		LinkedList<Entry<T>> entries = taken.get(event);
+		if (entries == null) {
+			return;
+		}
+		Entry<T> entry = entries.removeFirst();
+		if (entries.isEmpty()) {
+			taken.remove(event);
+		}
+		acknowledge(entry);
+	}
+
+	@Override
+	public void populateQueue(List<T> events) {
+		for (T event : events) {
+			try {
+				offer(event);
+			} catch (IvoryException e) {
+				LOG.error("Unable to queue event " + event, e);
+			}
+		}
+	}
+
+	@Override
+	public void init() {
+		try {
+			synchronized (this) {
+				recover();
+				importEventFiles();
+				compact();
+			}
+		} catch (IOException e) {
+			LOG.error("Unable to recover delayed queue @" + basePath, e);
+			throw new RuntimeException("Unable to recover delayed queue @"
+					+ basePath, e);
+		}
+	}
+
+	@Override
+	public void reconnect() throws IvoryException {
+		// Do Nothing
+	}
+
+	/**
+	 * Syncs pending acknowledgements and closes the active segment. Events
+	 * offered after are refused, and acknowledgements are ignored.
+	 */
+	public synchronized void close() throws IvoryException {
+		closed = true;
+		if (writer == null) {
+			return;
+		}
+		try {
+			checkpoint();
+			writer.close();
+		} catch (IOException e) {
+			throw new IvoryException("Unable to close delayed queue @"
+					+ basePath, e);
+		} finally {
+			writer = null;
+		}
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	private void acknowledge(Entry<T> entry) {
+		if (live.remove(entry.id) == null) {
+			return;
+		}
+		segments.put(entry.segment, segments.get(entry.segment) - 1);
+		try {
+			append(ACK + " " + entry.id, false);
+			if (++pendingAcks >= ackCheckpoint) {
+				checkpoint();
+			}
+			compact();
+		} catch (IOException e) {
+			LOG.warn("Unable to record handling event " + entry.event
+					+ ", it may be queued again on restart", e);
+		}
+	}
+
+	private String offerRecord(Entry<T> entry) {
+		return OFFER + " " + entry.id + " " + entry.event.getType().name()
+				+ " " + entry.event;
+	}
+
+	private void addLive(Entry<T> entry) {
+		entry.segment = activeSegment;
+		live.put(entry.id, entry);
+		segments.put(activeSegment, segments.get(activeSegment) + 1);
+	}
+
+	private void append(String record, boolean sync) throws IOException {
+		if (activeBytes >= segmentBytes) {
+			roll();
+		}
+		writer.write(record);
+		writer.write('\n');
+		activeBytes += record.length() + 1;
+		if (sync) {
+			checkpoint();
+		}
+	}
+
+	private void checkpoint() throws IOException {
+		writer.flush();
+		out.getFD().sync();
+		pendingAcks = 0;
+	}
+
+	private void roll() throws IOException {
+		if (writer != null) {
+			checkpoint();
+			writer.close();
+		}
+		activeSegment++;
+		out = new FileOutputStream(segmentFile(activeSegment), true);
+		writer = new BufferedWriter(new OutputStreamWriter(out, UTF8));
+		activeBytes = 0;
+		segments.put(activeSegment, 0);
+	}
+
+	/**
+	 * Deletes segments that have no events left, oldest first, as the
+	 * acknowledgements recorded in a segment are of events in that segment
+	 * or older ones.
+	 */
+	private void compact() throws IOException {
+		while (segments.size() > 1) {
+			Map.Entry<Long, Integer> oldest = segments.firstEntry();
+			if (oldest.getValue() > 0) {
+				if (segments.size() <= maxSegments) {
+					return;
+				}
+				relocate(oldest.getKey());
+			}
+			segments.remove(oldest.getKey());
+			File file = segmentFile(oldest.getKey());
+			if (file.exists() && !file.delete()) {
+				LOG.warn("Unable to delete segment " + file);
+			}
+		}
+	}
+
+	// records the events left in the given segment in the active one, under
+	// the same ids, so that the segment can be deleted
+	private void relocate(long segment) throws IOException {
+		List<Entry<T>> entries = new ArrayList<Entry<T>>();
+		for (Entry<T> entry : live.values()) {
+			if (entry.segment == segment) {
+				entries.add(entry);
+			}
+		}
+		for (Entry<T> entry : entries) {
+			append(offerRecord(entry), false);
+			segments.put(segment, segments.get(segment) - 1);
+			addLive(entry);
+		}
+		checkpoint();
+		LOG.info("Moved " + entries.size() + " events out of segment "
+				+ segmentFile(segment));
+	}
+
+	private File segmentFile(long segment) {
+		return new File(basePath, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+	}
+
+	private long segmentNumber(File file) {
+		String name = file.getName();
+		if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+					name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private void recover() throws IOException {
+		TreeMap<Long, File> files = new TreeMap<Long, File>();
+		for (File file : basePath.listFiles()) {
+			long segment = segmentNumber(file);
+			if (segment >= 0) {
+				files.put(segment, file);
+			}
+		}
+
+		RerunEventFactory<T> factory = new RerunEventFactory<T>();
+		for (Map.Entry<Long, File> file : files.entrySet()) {
+			segments.put(file.getKey(), 0);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file.getValue()), UTF8));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					readRecord(factory, file.getKey(), line);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		for (Entry<T> entry : live.values()) {
+			segments.put(entry.segment, segments.get(entry.segment) + 1);
+			queue.add(entry, entry.getDueTime());
+		}
+
+		activeSegment = files.isEmpty() ? 0 : files.lastKey();
+		roll();
+		LOG.info("Recovered " + live.size() + " events from " + files.size()
+				+ " segments @" + basePath);
+	}
+
+	private void readRecord(RerunEventFactory<T> factory, long segment,
+			String line) {
+		String[] fields = line.split(" ", 4);
+		try {
+			long id = Long.parseLong(fields[1]);
+			nextId = Math.max(nextId, id + 1);
+			if (OFFER.equals(fields[0]) && fields.length == 4) {
+				T event = factory.getRerunEvent(fields[2], fields[3]);
+				if (event != null) {
+					Entry<T> entry = new Entry<T>(id, event);
+					entry.segment = segment;
+					live.put(id, entry);
+					return;
+				}
+			} else if (ACK.equals(fields[0])) {
+				live.remove(id);
+				return;
+			}
+		} catch (RuntimeException ignore) {
+		}
+		// such as a record cut short by a crash
+		LOG.warn("Skipping unreadable record in segment "
+				+ segmentFile(segment) + ": " + line);
+	}
+
+	// moves the file per event left by InMemoryQueue into the log
+	private void importEventFiles() throws IOException {
+		RerunEventFactory<T> factory = new RerunEventFactory<T>();
+		for (File file : basePath.listFiles()) {
+			if (!file.isFile() || segmentNumber(file) >= 0
+					|| !isEventFile(file)) {
+				continue;
+			}
+			List<T> events = new ArrayList<T>();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), UTF8));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					events.add(factory.getRerunEvent(file.getName(), line));
+				}
+			} catch (RuntimeException e) {
+				LOG.warn("Not able to read rerun entry " + file, e);
+				continue;
+			} finally {
+				reader.close();
+			}
+
+			for (T event : events) {
+				Entry<T> entry = new Entry<T>(nextId++, event);
+				append(offerRecord(entry), false);
+				addLive(entry);
+				queue.add(entry, entry.getDueTime());
+			}
+			checkpoint();
+			if (!file.delete()) {
+				LOG.warn("Unable to delete imported rerun file " + file);
+			}
+			LOG.info("Imported " + events.size() + " events from " + file);
+		}
+	}
+
+	private boolean isEventFile(File file) {
+		for (RerunType type : RerunType.values()) {
+			if (file.getName().startsWith(type.name() + "-")) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
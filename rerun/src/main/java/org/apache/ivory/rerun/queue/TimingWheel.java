@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ivory.rerun.queue;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical timing wheel of elements due at given times, in
+ * milliseconds.
+ * <p/>
+ * Level k has 64 slots of 64^k ms each, indexed by the k-th base 64 digit of
+ * the due time. An element is put in the slot of the highest digit in which
+ * its due time differs from the wheel's current time. As the current time
+ * reaches a slot, its elements are moved down to lower levels, at most once
+ * per level, and those of level 0 are due. A bitmap per level finds the next
+ * slot that isn't empty, so idle time is skipped at once. Due elements are
+ * handed out in order of due time, then of adding.
+ * <p/>
+ * Adding takes no lock: elements are pushed onto a lock-free stack, which the
+ * thread taking or polling elements moves into the slots, under the lock of
+ * the expiry path. Adding wakes up the threads waiting in take, which wait
+ * outside that lock.
+ */
+public class TimingWheel<E> {
+
+	private static final int DIGIT_BITS = 6;
+	private static final int SLOTS = 1 << DIGIT_BITS;
+	private static final int LEVELS = (Long.SIZE + DIGIT_BITS - 1) / DIGIT_BITS;
+
+	private static final class Node<E> implements Comparable<Node<E>> {
+		private final E element;
+		private final long dueTime;
+		private final long sequence;
+		private Node<E> next;
+
+		private Node(E element, long dueTime, long sequence) {
+			this.element = element;
+			this.dueTime = dueTime;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Node<E> other) {
+			if (dueTime != other.dueTime) {
+				return dueTime < other.dueTime ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+
+	// elements added and not yet placed, most recent first
+	private final AtomicReference<Node<E>> added = new AtomicReference<Node<E>>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicInteger size = new AtomicInteger();
+	private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+
+	// held while the slots are read or changed
+	private final ReentrantLock lock = new ReentrantLock();
+
+	@SuppressWarnings("unchecked")
+	private final Node<E>[][] slots = new Node[LEVELS][SLOTS];
+	private final long[] occupied = new long[LEVELS];
+	private final PriorityQueue<Node<E>> due = new PriorityQueue<Node<E>>();
+
+	private long currentTime;
+	private int inWheel;
+
+	public TimingWheel() {
+		this.currentTime = System.currentTimeMillis();
+	}
+
+	public void add(E element, long dueTime) {
+		Node<E> node = new Node<E>(element, dueTime, sequence.getAndIncrement());
+		Node<E> head;
+		do {
+			head = added.get();
+			node.next = head;
+		} while (!added.compareAndSet(head, node));
+		size.incrementAndGet();
+		for (Thread waiter : waiters) {
+			LockSupport.unpark(waiter);
+		}
+	}
+
+	/**
+	 * Waits for the next element to be due, and removes it.
+	 */
+	public E take() throws InterruptedException {
+		Thread current = Thread.currentThread();
+		// registered before looking, so that an element added after the look
+		// unparks this thread
+		waiters.add(current);
+		try {
+			while (true) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				long now = System.currentTimeMillis();
+				long next;
+				lock.lock();
+				try {
+					E element = pollLocked(now);
+					if (element != null) {
+						return element;
+					}
+					next = nextTime();
+				} finally {
+					lock.unlock();
+				}
+				if (added.get() != null) {
+					continue;
+				}
+				if (next == Long.MAX_VALUE) {
+					LockSupport.park(this);
+				} else {
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(next - now));
+				}
+			}
+		} finally {
+			waiters.remove(current);
+		}
+	}
+
+	/**
+	 * @return next element due, or null if none is due yet
+	 */
+	public E poll() {
+		return poll(System.currentTimeMillis());
+	}
+
+	/**
+	 * @return next element due at the given time, which may not be earlier
+	 *         than that of previous calls, or null if none is due
+	 */
+	E poll(long now) {
+		lock.lock();
+		try {
+			return pollLocked(now);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private E pollLocked(long now) {
+		placeAdded();
+		advance(now);
+		Node<E> node = due.poll();
+		if (node == null) {
+			return null;
+		}
+		size.decrementAndGet();
+		return node.element;
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	private static int digit(long time, int level) {
+		return (int) (time >>> (level * DIGIT_BITS)) & (SLOTS - 1);
+	}
+
+	private void placeAdded() {
+		Node<E> node = added.getAndSet(null);
+		while (node != null) {
+			Node<E> following = node.next;
+			node.next = null;
+			place(node);
+			node = following;
+		}
+	}
+
+	private void place(Node<E> node) {
+		if (node.dueTime <= currentTime) {
+			due.add(node);
+			return;
+		}
+		int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(node.dueTime ^ currentTime)) / DIGIT_BITS;
+		int slot = digit(node.dueTime, level);
+		node.next = slots[level][slot];
+		slots[level][slot] = node;
+		occupied[level] |= 1L << slot;
+		inWheel++;
+	}
+
+	// time at which the earliest slot that isn't empty starts
+	private long nextTime() {
+		if (inWheel == 0) {
+			return Long.MAX_VALUE;
+		}
+		long next = Long.MAX_VALUE;
+		for (int level = 0; level < LEVELS; level++) {
+			int current = digit(currentTime, level);
+			long later = current == SLOTS - 1 ? 0 : occupied[level] & (-1L << (current + 1));
+			if (later != 0) {
+				int shift = level * DIGIT_BITS;
+				long block = shift + DIGIT_BITS >= Long.SIZE ? 0 : currentTime & (-1L << (shift + DIGIT_BITS));
+				next = Math.min(next, block + ((long) Long.numberOfTrailingZeros(later) << shift));
+			}
+		}
+		return next;
+	}
+
+	private void advance(long now) {
+		while (true) {
+			long time = nextTime();
+			if (time > now) {
+				break;
+			}
+			currentTime = time;
+			for (int level = LEVELS - 1; level >= 0; level--) {
+				int slot = digit(currentTime, level);
+				Node<E> node = slots[level][slot];
+				if (node == null) {
+					continue;
+				}
+				slots[level][slot] = null;
+				occupied[level] &= ~(1L << slot);
+				while (node != null) {
+					Node<E> following = node.next;
+					node.next = null;
+					inWheel--;
+					place(node);
+					node = following;
+				}
+			}
+		}
+		currentTime = Math.max(currentTime, now);
+	}
+}
@@ -18,6 +18,7 @@
 package org.apache.ivory.rerun.service;
 
 import java.io.File;
+import java.util.Properties;
 
 import org.apache.ivory.IvoryException;
 import org.apache.ivory.rerun.event.RerunEvent.RerunType;
@@ -25,7 +26,7 @@ import org.apache.ivory.rerun.event.RetryEvent;
 import org.apache.ivory.rerun.handler.AbstractRerunHandler;
 import org.apache.ivory.rerun.handler.RerunHandlerFactory;
 import org.apache.ivory.rerun.queue.DelayedQueue;
-import org.apache.ivory.rerun.queue.InMemoryQueue;
+import org.apache.ivory.rerun.queue.SegmentedLogQueue;
 import org.apache.ivory.service.IvoryService;
 import org.apache.ivory.util.StartupProperties;
 import org.apache.log4j.Logger;
@@ -34,6 +35,8 @@ public class RetryService implements IvoryService {
 
 	private static final Logger LOG = Logger.getLogger(RetryService.class);
 
+	private SegmentedLogQueue<RetryEvent> queue;
+
 	@Override
 	public String getName() {
 		return "Ivory Retry failed Instance";
@@ -43,13 +46,19 @@ public class RetryService implements IvoryService {
 	public void init() throws IvoryException {
 		AbstractRerunHandler<RetryEvent, DelayedQueue<RetryEvent>> rerunHandler = RerunHandlerFactory
 				.getRerunHandler(RerunType.RETRY);
-		 InMemoryQueue<RetryEvent> queue = new InMemoryQueue<RetryEvent>(
-		 getBasePath());
+		Properties props = StartupProperties.get();
+		queue = new SegmentedLogQueue<RetryEvent>(getBasePath(),
+				Long.parseLong(props.getProperty("retry.queue.segment.bytes", "4194304")),
+				Integer.parseInt(props.getProperty("retry.queue.ack.checkpoint", "100")),
+				Integer.parseInt(props.getProperty("retry.queue.max.segments", "8")));
 		rerunHandler.init(queue);
 	}
 
 	@Override
 	public void destroy() throws IvoryException {
+		if (queue != null) {
+			queue.close();
+		}
 		LOG.info("RetryHandler  thread destroyed");
 	}
 
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ivory.latedata;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class LateDataHandlerTest {
+
+	private final Configuration conf = new Configuration();
+	private final String base = new File("target/latedata").getAbsoluteFile().toURI().toString();
+	private FileSystem fs;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		fs = new Path(base).getFileSystem(conf);
+		fs.delete(new Path(base), true);
+		write(base + "/clicks/2012/05/17/10/part-0", "0123456789");
+		write(base + "/clicks/2012/05/17/11/part-0", "0123456789");
+		write(base + "/impressions/2012/05/17/10/part-0", "01234");
+	}
+
+	private void write(String path, String data) throws Exception {
+		OutputStream out = fs.create(new Path(path), true);
+		out.write(data.getBytes());
+		out.close();
+	}
+
+	// setTimes isn't supported by the local file system
+	private void touch(String path, long time) {
+		Assert.assertTrue(new File(new Path(path).toUri().getPath()).setLastModified(time));
+	}
+
+	private Map<String, String> feedPaths() {
+		Map<String, String> feedPaths = new LinkedHashMap<String, String>();
+		feedPaths.put("clicks", base + "/clicks/2012/05/17/10," + base + "/clicks/2012/05/17/11");
+		feedPaths.put("impressions", base + "/impressions/2012/05/17/*");
+		return feedPaths;
+	}
+
+	private Path record() throws Exception {
+		Path out = new Path(base + "/logs/latedata/2012-05-17-10-00");
+		Assert.assertEquals(ToolRunner.run(conf, new LateDataHandler(), new String[] { "-out", out.toString(),
+				"-paths", base + "/clicks/2012/05/17/10," + base + "/clicks/2012/05/17/11#" + base
+						+ "/impressions/2012/05/17/*", "-ivoryInputFeeds", "clicks#impressions" }), 0);
+		return out;
+	}
+
+	@Test
+	public void testFingerprint() throws Exception {
+		LateDataHandler handler = new LateDataHandler();
+		String fingerprint = handler.fingerprint(feedPaths().get("clicks"), conf);
+		Assert.assertTrue(fingerprint.startsWith("4:20:"), fingerprint);
+		Assert.assertEquals(handler.fingerprint(feedPaths().get("clicks"), conf), fingerprint);
+
+		// rewritten with the same size
+		long size = handler.usage(new Path(base + "/clicks/2012/05/17/1*"), conf);
+		write(base + "/clicks/2012/05/17/11/part-0", "9876543210");
+		touch(base + "/clicks/2012/05/17/11/part-0", System.currentTimeMillis() + 60000);
+		Assert.assertEquals(handler.usage(new Path(base + "/clicks/2012/05/17/1*"), conf), size);
+		Assert.assertFalse(handler.fingerprint(feedPaths().get("clicks"), conf).equals(fingerprint));
+
+		Assert.assertTrue(handler.fingerprint(base + "/missing/*", conf).startsWith("0:0:0:"));
+	}
+
+	@Test
+	public void testDetectChanges() throws Exception {
+		Path recorded = record();
+		LateDataHandler handler = new LateDataHandler();
+		Assert.assertEquals(handler.detectChanges(recorded, feedPaths(), conf), "");
+
+		write(base + "/impressions/2012/05/17/10/part-1", "late");
+		Assert.assertEquals(handler.detectChanges(recorded, feedPaths(), conf), "impressions");
+
+		write(base + "/clicks/2012/05/17/10/part-0", "9876543210");
+		touch(base + "/clicks/2012/05/17/10/part-0", System.currentTimeMillis() + 60000);
+		Assert.assertEquals(handler.detectChanges(recorded, feedPaths(), conf), "clicks,impressions");
+	}
+
+	@Test
+	public void testDetectChangesOfRecordedSizes() throws Exception {
+		// as recorded by workflows started before fingerprints
+		Path recorded = new Path(base + "/logs/latedata/sizes");
+		OutputStream out = fs.create(recorded);
+		out.write("clicks=20\nimpressions=5\n".getBytes());
+		out.close();
+
+		LateDataHandler handler = new LateDataHandler();
+		Assert.assertEquals(handler.detectChanges(recorded, feedPaths(), conf), "");
+		write(base + "/impressions/2012/05/17/10/part-1", "late");
+		Assert.assertEquals(handler.detectChanges(recorded, feedPaths(), conf), "impressions");
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ivory.rerun.handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.rerun.event.RetryEvent;
+import org.apache.ivory.rerun.queue.DelayedQueue;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class AbstractRerunConsumerTest {
+
+	private static class BlockingQueue extends DelayedQueue<RetryEvent> {
+		private final LinkedBlockingQueue<RetryEvent> events = new LinkedBlockingQueue<RetryEvent>();
+		private final AtomicInteger acks = new AtomicInteger();
+
+		@Override
+		public boolean offer(RetryEvent event) {
+			return events.offer(event);
+		}
+
+		@Override
+		public RetryEvent take() throws IvoryException {
+			try {
+				return events.take();
+			} catch (InterruptedException e) {
+				throw new IvoryException(e);
+			}
+		}
+
+		@Override
+		public void ack(RetryEvent event) {
+			acks.incrementAndGet();
+		}
+
+		@Override
+		public void populateQueue(List<RetryEvent> events) {
+		}
+
+		@Override
+		public void init() {
+		}
+
+		@Override
+		public void reconnect() {
+		}
+
+		@Override
+		public int size() {
+			return events.size();
+		}
+	}
+
+	private static class Handler extends AbstractRerunHandler<RetryEvent, DelayedQueue<RetryEvent>> {
+		@Override
+		public void handleRerun(String cluster, String entityType, String entityName, String nominalTime,
+				String runId, String wfId, long msgReceivedTime) {
+		}
+	}
+
+	private static class Consumer extends AbstractRerunConsumer<RetryEvent, Handler> {
+		private final Map<String, List<Integer>> runs = new HashMap<String, List<Integer>>();
+		private final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+
+		private Consumer(Handler handler) {
+			super(handler, 4, 2);
+		}
+
+		@Override
+		protected void consume(RetryEvent message) {
+			threads.add(Thread.currentThread().getName());
+			try {
+				Thread.sleep(1); // as slow as a call to oozie, or slower
+			} catch (InterruptedException ignore) {
+			}
+			synchronized (runs) {
+				List<Integer> instanceRuns = runs.get(message.getInstance());
+				if (instanceRuns == null) {
+					instanceRuns = new ArrayList<Integer>();
+					runs.put(message.getInstance(), instanceRuns);
+				}
+				instanceRuns.add(message.getRunId());
+			}
+		}
+
+		@Override
+		protected void handleRerun(String cluster, String jobStatus, RetryEvent message) {
+		}
+	}
+
+	@Test
+	public void testOrderPerInstance() throws Exception {
+		Handler handler = new Handler();
+		BlockingQueue queue = new BlockingQueue();
+		handler.delayQueue = queue;
+		Consumer consumer = new Consumer(handler);
+		handler.consumer = consumer;
+
+		long now = System.currentTimeMillis();
+		for (int runId = 0; runId < 50; runId++) {
+			for (int instance = 0; instance < 20; instance++) {
+				handler.offerToQueue(new RetryEvent("cluster", "wf-" + instance, now, 0, "process", "sample",
+						"instance-" + instance, runId, 3, 0));
+			}
+		}
+		Thread dispatcher = new Thread(consumer);
+		dispatcher.setName("RetryHandler");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+
+		for (int wait = 0; wait < 300 && (consumer.getHandled() < 1000 || consumer.getPending() > 0); wait++) {
+			Thread.sleep(100);
+		}
+		Assert.assertEquals(handler.getQueueSize(), 0);
+		Assert.assertEquals(consumer.getPending(), 0);
+		Assert.assertEquals(consumer.getHandled(), 1000);
+		Assert.assertEquals(queue.acks.get(), 1000);
+		Assert.assertTrue(consumer.getMaxLagMillis() >= consumer.getLagMillis());
+
+		Assert.assertEquals(consumer.runs.size(), 20);
+		for (List<Integer> instanceRuns : consumer.runs.values()) {
+			Assert.assertEquals(instanceRuns.size(), 50);
+			for (int runId = 0; runId < 50; runId++) {
+				Assert.assertEquals(instanceRuns.get(runId).intValue(), runId);
+			}
+		}
+		Assert.assertTrue(consumer.threads.size() > 1, "threads " + consumer.threads);
+		for (String thread : consumer.threads) {
+			Assert.assertTrue(thread.startsWith("RetryHandler-"), thread);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ivory.rerun.queue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.ivory.rerun.event.RetryEvent;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class InMemoryQueueTest {
+
+	private final File basePath = new File("target/in-memory-queue");
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		FileUtils.deleteDirectory(basePath);
+		basePath.mkdirs();
+	}
+
+	private RetryEvent event(String instance, long delay) {
+		return new RetryEvent("cluster", "wf-" + instance,
+				System.currentTimeMillis(), delay, "process", "sample",
+				instance, 0, 1, 0);
+	}
+
+	private InMemoryQueue<RetryEvent> queue() {
+		InMemoryQueue<RetryEvent> queue = new InMemoryQueue<RetryEvent>(basePath);
+		queue.init();
+		return queue;
+	}
+
+	@Test
+	public void testOfferedAgainWhileHandled() throws Exception {
+		InMemoryQueue<RetryEvent> queue = queue();
+		RetryEvent event = event("2012-01-01T00:00Z", 0);
+		queue.offer(event);
+		Assert.assertSame(queue.take(), event);
+
+		// offered again before the first offer is acknowledged
+		queue.offer(event);
+		Assert.assertEquals(basePath.list().length, 2);
+		queue.ack(event);
+		Assert.assertEquals(basePath.list().length, 1);
+
+		// the file of the second offer outlives a restart
+		queue = queue();
+		Assert.assertEquals(queue.size(), 1);
+		RetryEvent recovered = queue.take();
+		Assert.assertEquals(recovered.getInstance(), event.getInstance());
+		queue.ack(recovered);
+		Assert.assertEquals(basePath.list().length, 0);
+	}
+
+	@Test
+	public void testBootstrapFileOfSeveralEvents() throws Exception {
+		// as written when events of an instance shared a file
+		FileWriter out = new FileWriter(new File(basePath,
+				"RETRY-sample-2012-01-01T00-00Z"));
+		out.write(event("2012-01-01T00:00Z", 0) + "\n");
+		out.write(event("2012-01-01T00:00Z", 10) + "\n");
+		out.close();
+
+		InMemoryQueue<RetryEvent> queue = queue();
+		Assert.assertEquals(queue.size(), 2);
+		Assert.assertEquals(basePath.list().length, 2);
+		queue.ack(queue.take());
+		Assert.assertEquals(basePath.list().length, 1);
+		queue.ack(queue.take());
+		Assert.assertEquals(basePath.list().length, 0);
+	}
+}
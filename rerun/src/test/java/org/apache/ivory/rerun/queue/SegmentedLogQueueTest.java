@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ivory.rerun.queue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.ivory.IvoryException;
+import org.apache.ivory.rerun.event.RetryEvent;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SegmentedLogQueueTest {
+
+	private final File basePath = new File("target/retry-queue");
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		FileUtils.deleteDirectory(basePath);
+		basePath.mkdirs();
+	}
+
+	private RetryEvent event(String instance, long delay) {
+		return new RetryEvent("cluster", "wf-" + instance,
+				System.currentTimeMillis(), delay, "process", "sample",
+				instance, 0, 1, 0);
+	}
+
+	private SegmentedLogQueue<RetryEvent> queue(long segmentBytes,
+			int maxSegments) {
+		SegmentedLogQueue<RetryEvent> queue = new SegmentedLogQueue<RetryEvent>(
+				basePath, segmentBytes, 10, maxSegments);
+		queue.init();
+		return queue;
+	}
+
+	@Test
+	public void testTakeInDueOrder() throws Exception {
+		SegmentedLogQueue<RetryEvent> queue = queue(4096, 4);
+		queue.offer(event("2012-01-01T00:02Z", 200));
+		queue.offer(event("2012-01-01T00:01Z", 100));
+		queue.offer(event("2012-01-01T00:00Z", 0));
+
+		Assert.assertEquals(queue.take().getInstance(), "2012-01-01T00:00Z");
+		Assert.assertEquals(queue.take().getInstance(), "2012-01-01T00:01Z");
+		Assert.assertEquals(queue.take().getInstance(), "2012-01-01T00:02Z");
+		queue.close();
+	}
+
+	@Test
+	public void testClosed() throws Exception {
+		SegmentedLogQueue<RetryEvent> queue = queue(4096, 4);
+		queue.offer(event("2012-01-01T00:00Z", 0));
+		RetryEvent event = queue.take();
+		queue.close();
+
+		queue.ack(event);
+		try {
+			queue.offer(event("2012-01-01T00:01Z", 0));
+			Assert.fail("Expected the closed queue to refuse the event");
+		} catch (IvoryException expected) {
+			// expected
+		}
+
+		// not acknowledged, so queued again on restart
+		queue = queue(4096, 4);
+		Assert.assertEquals(queue.size(), 1);
+		Assert.assertEquals(queue.take().getInstance(), "2012-01-01T00:00Z");
+		queue.close();
+	}
+
+	@Test
+	public void testRecovery() throws Exception {
+		SegmentedLogQueue<RetryEvent> queue = queue(256, 100);
+		for (int index = 0; index < 20; index++) {
+			queue.offer(event("instance-" + index, index));
+		}
+		for (int index = 0; index < 5; index++) {
+			RetryEvent event = queue.take();
+			Assert.assertEquals(event.getInstance(), "instance-" + index);
+			queue.ack(event);
+		}
+		queue.close();
+
+		// a record cut short by a crash is skipped
+		FileWriter writer = new FileWriter(new File(basePath, "segment-1.log"),
+				true);
+		writer.write("O 99 RETRY clusterName=");
+		writer.close();
+
+		queue = queue(256, 100);
+		Assert.assertEquals(queue.size(), 15);
+		for (int index = 5; index < 20; index++) {
+			RetryEvent event = queue.take();
+			Assert.assertEquals(event.getInstance(), "instance-" + index);
+			Assert.assertEquals(event.getWfId(), "wf-instance-" + index);
+			Assert.assertEquals(event.getAttempts(), 1);
+			queue.ack(event);
+		}
+		queue.close();
+
+		queue = queue(256, 100);
+		Assert.assertEquals(queue.size(), 0);
+		queue.close();
+	}
+
+	@Test
+	public void testTakenNotAcknowledged() throws Exception {
+		SegmentedLogQueue<RetryEvent> queue = queue(4096, 4);
+		RetryEvent event = event("2012-01-01T00:00Z", 0);
+		queue.offer(event);
+		Assert.assertSame(queue.take(), event);
+		// offered again while it is handled, and taken before the first take
+		// is acknowledged
+		queue.offer(event);
+		Assert.assertSame(queue.take(), event);
+		queue.ack(event);
+		queue.close();
+
+		// as after a crash while handling it
+		queue = queue(4096, 4);
+		Assert.assertEquals(queue.size(), 1);
+		queue.ack(queue.take());
+		queue.close();
+
+		queue = queue(4096, 4);
+		Assert.assertEquals(queue.size(), 0);
+		queue.close();
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		SegmentedLogQueue<RetryEvent> queue = queue(512, 3);
+		// pins the oldest segment
+		queue.offer(event("late", 3600000));
+		for (int index = 0; index < 100; index++) {
+			queue.offer(event("instance-" + index, 0));
+			queue.ack(queue.take());
+		}
+		Assert.assertTrue(queue.getSegmentCount() <= 3, "segments "
+				+ queue.getSegmentCount());
+		Assert.assertEquals(basePath.list().length, queue.getSegmentCount());
+		queue.close();
+
+		queue = queue(512, 3);
+		Assert.assertEquals(queue.size(), 1);
+		queue.close();
+	}
+
+	@Test
+	public void testImportEventFiles() throws Exception {
+		RetryEvent event = event("2012-01-01T00:00Z", 0);
+		File file = new File(basePath, "RETRY-sample-2012-01-01T00-00Z");
+		FileWriter writer = new FileWriter(file);
+		writer.write(event.toString() + "\n");
+		writer.close();
+
+		SegmentedLogQueue<RetryEvent> queue = queue(4096, 4);
+		Assert.assertFalse(file.exists());
+		Assert.assertEquals(queue.take().toString(), event.toString());
+		queue.close();
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ivory.rerun.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.DelayQueue;
+
+import org.apache.ivory.rerun.event.LaterunEvent;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the order in which a timing wheel hands out elements against a
+ * priority queue. The benchmark group, run with -Pbenchmark, times a wheel
+ * and a DelayQueue with many pending late reruns, whose number can be changed
+ * with -Divory.rerun.benchmark.size.
+ */
+public class TimingWheelTest {
+
+	private static Logger LOG = Logger.getLogger(TimingWheelTest.class);
+
+	private static final int SIZE = Integer.getInteger("ivory.rerun.benchmark.size", 1000000);
+
+	private static final long HOUR_IN_MS = 3600000L;
+
+	private static final class Due implements Comparable<Due> {
+		private final long dueTime;
+		private final int index;
+
+		private Due(long dueTime, int index) {
+			this.dueTime = dueTime;
+			this.index = index;
+		}
+
+		@Override
+		public int compareTo(Due other) {
+			if (dueTime != other.dueTime) {
+				return dueTime < other.dueTime ? -1 : 1;
+			}
+			return index - other.index;
+		}
+	}
+
+	@Test
+	public void testOrder() throws Exception {
+		Random random = new Random(5);
+		long start = System.currentTimeMillis();
+		TimingWheel<Integer> wheel = new TimingWheel<Integer>();
+		PriorityQueue<Due> expected = new PriorityQueue<Due>();
+		long now = start;
+		int added = 0;
+		for (int round = 0; round < 2000; round++) {
+			for (int index = random.nextInt(20); index > 0; index--) {
+				// from overdue to days ahead, with many ties
+				long span = random.nextBoolean() ? 100 : (long) Math.pow(64, 1 + random.nextInt(5));
+				long dueTime = now - 10 + (long) (random.nextDouble() * span);
+				wheel.add(added, dueTime);
+				expected.add(new Due(dueTime, added++));
+			}
+			now += random.nextBoolean() ? random.nextInt(50) : random.nextInt(10000000);
+			Integer element;
+			while ((element = wheel.poll(now)) != null) {
+				Due next = expected.poll();
+				Assert.assertEquals(element.intValue(), next.index, "at " + (now - start));
+				Assert.assertTrue(next.dueTime <= now);
+			}
+			Assert.assertTrue(expected.isEmpty() || expected.peek().dueTime > now, "at " + (now - start));
+			Assert.assertEquals(wheel.size(), expected.size());
+		}
+	}
+
+	@Test
+	public void testOrderByFireTime() throws Exception {
+		long now = System.currentTimeMillis();
+		// same delay, inserted at different times
+		LaterunEvent later = new LaterunEvent("cluster", "wf-1", now, 60000, "process", "sample",
+				"2012-01-01T00:01Z", 0);
+		LaterunEvent earlier = new LaterunEvent("cluster", "wf-0", now - 30000, 60000, "process", "sample",
+				"2012-01-01T00:00Z", 0);
+		Assert.assertTrue(earlier.compareTo(later) < 0);
+
+		TimingWheel<LaterunEvent> wheel = new TimingWheel<LaterunEvent>();
+		wheel.add(later, later.getMsgInsertTime() + later.getDelayInMilliSec());
+		wheel.add(earlier, earlier.getMsgInsertTime() + earlier.getDelayInMilliSec());
+		Assert.assertNull(wheel.poll(now + 29999));
+		Assert.assertSame(wheel.poll(now + 30000), earlier);
+		Assert.assertNull(wheel.poll(now + 59999));
+		Assert.assertSame(wheel.poll(now + 60000), later);
+	}
+
+	@Test
+	public void testTake() throws Exception {
+		final TimingWheel<String> wheel = new TimingWheel<String>();
+		long start = System.currentTimeMillis();
+		wheel.add("second", start + 200);
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				wheel.add("first", System.currentTimeMillis() + 50);
+			}
+		};
+		producer.start();
+		Assert.assertEquals(wheel.take(), "first");
+		Assert.assertEquals(wheel.take(), "second");
+		Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+		producer.join();
+	}
+
+	@Test
+	public void testConcurrentAdds() throws Exception {
+		final TimingWheel<Integer> wheel = new TimingWheel<Integer>();
+		final long start = System.currentTimeMillis();
+		final int threads = 4;
+		final int perThread = 2000;
+		final CountDownLatch ready = new CountDownLatch(1);
+		List<Thread> producers = new ArrayList<Thread>();
+		for (int thread = 0; thread < threads; thread++) {
+			final int first = thread * perThread;
+			Thread producer = new Thread() {
+				@Override
+				public void run() {
+					try {
+						ready.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int index = first; index < first + perThread; index++) {
+						// due at most 100 ms ahead, spread over the slots
+						wheel.add(index, start + index % 100);
+					}
+				}
+			};
+			producer.start();
+			producers.add(producer);
+		}
+		ready.countDown();
+
+		// taken while being added: each once, and not before it is due
+		boolean[] taken = new boolean[threads * perThread];
+		long last = Long.MIN_VALUE;
+		for (int count = 0; count < taken.length; count++) {
+			int index = wheel.take();
+			Assert.assertFalse(taken[index], "taken twice: " + index);
+			taken[index] = true;
+			long dueTime = start + index % 100;
+			Assert.assertTrue(dueTime <= System.currentTimeMillis());
+			last = Math.max(last, dueTime);
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		Assert.assertEquals(wheel.size(), 0);
+		Assert.assertNull(wheel.poll(last + 1000));
+	}
+
+	private List<LaterunEvent> lateEvents(long now) {
+		Random random = new Random(3);
+		List<LaterunEvent> events = new ArrayList<LaterunEvent>(SIZE);
+		for (int index = 0; index < SIZE; index++) {
+			// late reruns waiting from minutes to six hours
+			events.add(new LaterunEvent("cluster", "wf-" + index, now - random.nextInt(60000),
+					60000 + (long) (random.nextDouble() * 6 * HOUR_IN_MS), "process", "sample",
+					"2012-01-01T00:00Z", 0));
+		}
+		return events;
+	}
+
+	// nanoseconds taken to add the events to a timing wheel, to hand them
+	// out, to add them to a DelayQueue, and to remove them from it
+	private long[] time(List<LaterunEvent> events, long now) {
+		long[] times = new long[4];
+		long begin = System.nanoTime();
+		TimingWheel<LaterunEvent> wheel = new TimingWheel<LaterunEvent>();
+		for (LaterunEvent event : events) {
+			wheel.add(event, event.getMsgInsertTime() + event.getDelayInMilliSec());
+		}
+		times[0] = System.nanoTime() - begin;
+		begin = System.nanoTime();
+		long last = Long.MIN_VALUE;
+		int count = 0;
+		// a second at a time over the next seven hours
+		for (long time = now; time <= now + 7 * HOUR_IN_MS; time += 1000) {
+			LaterunEvent event;
+			while ((event = wheel.poll(time)) != null) {
+				long dueTime = event.getMsgInsertTime() + event.getDelayInMilliSec();
+				Assert.assertTrue(dueTime >= last && dueTime <= time);
+				last = dueTime;
+				count++;
+			}
+		}
+		times[1] = System.nanoTime() - begin;
+		Assert.assertEquals(count, events.size());
+
+		begin = System.nanoTime();
+		DelayQueue<LaterunEvent> queue = new DelayQueue<LaterunEvent>();
+		for (LaterunEvent event : events) {
+			queue.offer(event);
+		}
+		times[2] = System.nanoTime() - begin;
+		// DelayQueue only hands out what is due by the clock, so empty it in
+		// order instead
+		begin = System.nanoTime();
+		while (queue.size() > 0) {
+			queue.remove(queue.peek());
+		}
+		times[3] = System.nanoTime() - begin;
+		return times;
+	}
+
+	@Test(groups = "benchmark")
+	public void testPendingLateReruns() throws Exception {
+		long now = System.currentTimeMillis();
+		List<LaterunEvent> events = lateEvents(now);
+		time(events.subList(0, events.size() / 10), now); // warm up
+		long[] times = time(events, now);
+
+		LOG.info(SIZE + " pending late reruns: timing wheel " + times[0] / SIZE + " ns/add, " + times[1] / SIZE
+				+ " ns/expiry; DelayQueue " + times[2] / SIZE + " ns/add, " + times[3] / SIZE + " ns/removal");
+	}
+}
@@ -23,6 +23,17 @@ public class ConfigSyncService extends AbstractEntityManager {
         return super.submit(request, type, colo);
     }
 
+    @POST
+    @Path("batch/submit")
+    @Consumes({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN, "application/zip", "application/x-tar" })
+    @Produces({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN })
+    @Monitored(event = "submitBatch")
+    @Override
+    public BatchResult submitBatch(@Context HttpServletRequest request,
+                                   @Dimension("colo") @QueryParam("colo") String colo) {
+        return super.submitBatch(request, colo);
+    }
+
     @DELETE
     @Path("delete/{type}/{entity}")
     @Produces({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN })
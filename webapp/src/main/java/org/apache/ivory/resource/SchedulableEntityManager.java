@@ -8,6 +8,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 @Path("entities")
 public class SchedulableEntityManager extends AbstractSchedulableEntityManager {
@@ -34,13 +35,41 @@ public class SchedulableEntityManager extends AbstractSchedulableEntityManager {
         return super.getDependencies(type, entity);
     }
 
+    @GET
+    @Path("lineage/{type}/{entity}")
+    @Produces(MediaType.TEXT_XML)
+    @Monitored(event = "lineage")
+    @Override
+    public EntityList getLineage(@Dimension("entityType") @PathParam("type") String type,
+                                 @Dimension("entityName") @PathParam("entity") String entity,
+                                 @Dimension("direction") @DefaultValue("downstream") @QueryParam("direction") String direction,
+                                 @DefaultValue("0") @QueryParam("depth") int depth) {
+        return super.getLineage(type, entity, direction, depth);
+    }
+
+    @GET
+    @Path("search/{type}")
+    @Produces(MediaType.TEXT_XML)
+    @Monitored(event = "search")
+    @Override
+    public EntityList search(@Dimension("entityType") @PathParam("type") String type,
+                             @QueryParam("keywords") String keywords,
+                             @DefaultValue("0") @QueryParam("offset") int offset,
+                             @DefaultValue("100") @QueryParam("limit") int limit) {
+        return super.search(type, keywords, offset, limit);
+    }
+
     @GET
     @Path("list/{type}")
     @Produces(MediaType.TEXT_XML)
     @Monitored(event = "dependencies")
     @Override
-    public EntityList getDependencies(@Dimension("type") @PathParam("type") String type) {
-        return super.getDependencies(type);
+    public Response getEntityList(@Dimension("type") @PathParam("type") String type,
+                                  @DefaultValue("name") @QueryParam("fields") String fields,
+                                  @DefaultValue("0") @QueryParam("offset") int offset,
+                                  @DefaultValue("-1") @QueryParam("limit") int limit,
+                                  @DefaultValue("false") @QueryParam("stream") boolean stream) {
+        return super.getEntityList(type, fields, offset, limit, stream);
     }
 
     @GET
@@ -65,6 +94,17 @@ public class SchedulableEntityManager extends AbstractSchedulableEntityManager {
         return super.schedule(request, type, entity, colo);
     }
 
+    @POST
+    @Path("batch/submitAndSchedule")
+    @Consumes({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN, "application/zip", "application/x-tar" })
+    @Produces({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN })
+    @Monitored(event = "submitAndScheduleBatch")
+    @Override
+    public BatchResult submitAndScheduleBatch(@Context HttpServletRequest request,
+                                              @Dimension("colo") @QueryParam("colo") String colo) {
+        return super.submitAndScheduleBatch(request, colo);
+    }
+
     @POST
     @Path("suspend/{type}/{entity}")
     @Produces({ MediaType.TEXT_XML, MediaType.TEXT_PLAIN })